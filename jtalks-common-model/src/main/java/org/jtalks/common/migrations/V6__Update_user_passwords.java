@@ -19,22 +19,63 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.security.authentication.encoding.MessageDigestPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.jtalks.common.util.SaltGenerator;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Migration for generate salt and encode existing users password.
+ * <p>Users are read page by page in the order of their ids, every page is hashed in parallel on all the processors
+ * while the next page is being read, and written with a single batch update. Each page is written along with the id
+ * of its last user saved to the {@code USERS_PASSWORD_MIGRATION} table in its own transaction, separate from the one
+ * Flyway runs the migration in, so an interrupted migration continues from the last committed page when it's run
+ * again. The table is dropped when all the users are migrated.
  *
  * @author Masich Ivan
  */
 public class V6__Update_user_passwords implements JavaMigration {
+    static final int DEFAULT_PAGE_SIZE = 1000;
+    static final String SELECT_USERS = "SELECT `ID`, `PASSWORD` FROM `USERS` WHERE `SALT` = '' AND `ID` > ? "
+            + "ORDER BY `ID` LIMIT ?";
+    static final String UPDATE_USER = "UPDATE `USERS` SET `PASSWORD` = ?, `SALT` = ? WHERE `ID` = ?";
+    static final String CREATE_CHECKPOINT =
+            "CREATE TABLE IF NOT EXISTS `USERS_PASSWORD_MIGRATION` (`LAST_ID` bigint(20) NOT NULL)";
+    static final String SELECT_CHECKPOINT = "SELECT `LAST_ID` FROM `USERS_PASSWORD_MIGRATION`";
+    static final String INSERT_CHECKPOINT = "INSERT INTO `USERS_PASSWORD_MIGRATION` (`LAST_ID`) VALUES (0)";
+    static final String UPDATE_CHECKPOINT = "UPDATE `USERS_PASSWORD_MIGRATION` SET `LAST_ID` = ?";
+    static final String DROP_CHECKPOINT = "DROP TABLE `USERS_PASSWORD_MIGRATION`";
 
     private ApplicationContext context;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private PlatformTransactionManager transactionManager;
+
+    private final RowMapper<UserPassword> userPasswordMapper = new RowMapper<UserPassword>() {
+        /**
+         * @inheritDoc
+         */
+        @Override
+        public UserPassword mapRow(ResultSet resultSet, int i) throws SQLException {
+            return new UserPassword(resultSet.getLong("ID"), resultSet.getString("PASSWORD"));
+        }
+    };
 
     private RowMapper<HashMap<String, String>> rowMapper = new RowMapper<HashMap<String, String>>() {
         /**
@@ -49,6 +90,7 @@ public class V6__Update_user_passwords implements JavaMigration {
             return map;
         }
     };
+    private boolean customRowMapper;
 
     /**
      * {@inheritDoc}
@@ -58,23 +100,147 @@ public class V6__Update_user_passwords implements JavaMigration {
         MessageDigestPasswordEncoder passwordEncoder = getContext().getBean(MessageDigestPasswordEncoder.class);
         SaltGenerator saltGenerator = getContext().getBean(SaltGenerator.class);
 
-        List<HashMap<String, String>> users = jdbcTemplate.query(
-            "SELECT `ID`, `PASSWORD` FROM `USERS` WHERE `SALT` = ''",
-                getRowMapper()
-        );
+        TransactionTemplate pageTransaction = createPageTransaction(jdbcTemplate);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<UserPassword> page = readPage(jdbcTemplate, readCheckpoint(pageTransaction, jdbcTemplate));
+            while (!page.isEmpty()) {
+                List<Future<List<Object[]>>> hashing = hash(executor, page, passwordEncoder, saltGenerator);
+                long lastId = page.get(page.size() - 1).getId();
+                List<UserPassword> nextPage = page.size() < pageSize
+                        ? Collections.<UserPassword>emptyList() : readPage(jdbcTemplate, lastId);
+
+                writePage(pageTransaction, jdbcTemplate, collect(hashing), lastId);
+                page = nextPage;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        jdbcTemplate.execute(DROP_CHECKPOINT);
+    }
+
+    /**
+     * Creates the template that runs each page in a new transaction, the transaction of Flyway is suspended meanwhile.
+     *
+     * @param jdbcTemplate template to access the database, its data source is used if no transaction manager was set
+     * @return the template to write the pages with
+     */
+    private TransactionTemplate createPageTransaction(JdbcTemplate jdbcTemplate) {
+        PlatformTransactionManager manager = transactionManager;
+        if (manager == null) {
+            manager = new DataSourceTransactionManager(jdbcTemplate.getDataSource());
+        }
+        TransactionTemplate pageTransaction = new TransactionTemplate(manager);
+        pageTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return pageTransaction;
+    }
+
+    /**
+     * Creates the checkpoint table if this is the first run and reads the id of the last migrated user from it. The
+     * checkpoint row is committed right away, so that page transactions can update it.
+     *
+     * @param pageTransaction template to run the transaction with
+     * @param jdbcTemplate    template to access the database
+     * @return the id the users after which are not migrated yet
+     */
+    private long readCheckpoint(TransactionTemplate pageTransaction, final JdbcTemplate jdbcTemplate) {
+        return pageTransaction.execute(new TransactionCallback<Long>() {
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                jdbcTemplate.execute(CREATE_CHECKPOINT);
+                List<Long> checkpoints = jdbcTemplate.queryForList(SELECT_CHECKPOINT, Long.class);
+                if (checkpoints.isEmpty()) {
+                    jdbcTemplate.update(INSERT_CHECKPOINT);
+                    return 0L;
+                }
+                return checkpoints.get(0);
+            }
+        });
+    }
 
-        for (HashMap<String, String> user : users) {
+    /**
+     * Writes the encoded passwords of the page along with the checkpoint in a separate transaction, so they are not
+     * rolled back if a later page fails.
+     *
+     * @param pageTransaction template to run the transaction with
+     * @param jdbcTemplate    template to access the database
+     * @param updates         arguments of the update statement for each user of the page
+     * @param lastId          the id of the last user of the page
+     */
+    private void writePage(TransactionTemplate pageTransaction, final JdbcTemplate jdbcTemplate,
+                           final List<Object[]> updates, final long lastId) {
+        pageTransaction.execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                jdbcTemplate.batchUpdate(UPDATE_USER, updates);
+                jdbcTemplate.update(UPDATE_CHECKPOINT, lastId);
+                return null;
+            }
+        });
+    }
 
-            String salt = saltGenerator.generate();
-            String encodedPassword = passwordEncoder.encodePassword(
-                user.get("password"), salt
-            );
+    /**
+     * Reads the next page of users that have no salt yet.
+     *
+     * @param jdbcTemplate template to access the database
+     * @param afterId      the page starts from the user with the next id after this one
+     * @return users ordered by their ids
+     */
+    private List<UserPassword> readPage(JdbcTemplate jdbcTemplate, long afterId) {
+        if (!customRowMapper) {
+            return jdbcTemplate.query(SELECT_USERS, getUserPasswordMapper(), afterId, pageSize);
+        }
+        List<HashMap<String, String>> rows = jdbcTemplate.query(SELECT_USERS, getRowMapper(), afterId, pageSize);
+        List<UserPassword> page = new ArrayList<UserPassword>(rows.size());
+        for (HashMap<String, String> row : rows) {
+            page.add(new UserPassword(Long.parseLong(row.get("id")), row.get("password")));
+        }
+        return page;
+    }
+
+    /**
+     * Splits the page between the threads and starts generating salts and encoding passwords.
+     *
+     * @return arguments of the update statement for each user, one list per thread
+     */
+    private List<Future<List<Object[]>>> hash(ExecutorService executor, List<UserPassword> page,
+                                              final MessageDigestPasswordEncoder passwordEncoder,
+                                              final SaltGenerator saltGenerator) {
+        int chunkSize = (page.size() + threads - 1) / threads;
+        List<Future<List<Object[]>>> futures = new ArrayList<Future<List<Object[]>>>(threads);
+        for (int from = 0; from < page.size(); from += chunkSize) {
+            final List<UserPassword> chunk = page.subList(from, Math.min(from + chunkSize, page.size()));
+            futures.add(executor.submit(new Callable<List<Object[]>>() {
+                @Override
+                public List<Object[]> call() {
+                    List<Object[]> updates = new ArrayList<Object[]>(chunk.size());
+                    for (UserPassword user : chunk) {
+                        String salt = saltGenerator.generate();
+                        String encodedPassword = passwordEncoder.encodePassword(user.getPassword(), salt);
+                        updates.add(new Object[]{encodedPassword, salt, user.getId()});
+                    }
+                    return updates;
+                }
+            }));
+        }
+        return futures;
+    }
 
-            jdbcTemplate.update(
-                "UPDATE `USERS` SET `PASSWORD` = ?, `SALT` = ? WHERE `ID` = ?",
-                encodedPassword, salt, Integer.parseInt(user.get("id"))
-            );
+    /**
+     * Waits for the threads to encode the page.
+     *
+     * @return arguments of the update statement for each user of the page
+     */
+    private List<Object[]> collect(List<Future<List<Object[]>>> hashing) throws InterruptedException {
+        List<Object[]> updates = new ArrayList<Object[]>(pageSize);
+        for (Future<List<Object[]>> future : hashing) {
+            try {
+                updates.addAll(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not encode user passwords", e.getCause());
+            }
         }
+        return updates;
     }
 
     /**
@@ -100,16 +266,72 @@ public class V6__Update_user_passwords implements JavaMigration {
     }
 
     /**
-     * {@inheritDoc}
+     * @return maps rows of the users table to the users being migrated
      */
+    RowMapper<UserPassword> getUserPasswordMapper() {
+        return userPasswordMapper;
+    }
+
+    /**
+     * @return maps rows of the users table to maps with {@code id} and {@code password}
+     * @deprecated the users are mapped to {@code UserPassword} now, this mapper is used only if it was replaced with
+     *             {@link #setRowMapper(RowMapper)}
+     */
+    @Deprecated
     public RowMapper<HashMap<String, String>> getRowMapper() {
         return rowMapper;
     }
 
     /**
-     * {@inheritDoc}
+     * @param rowMapper maps rows of the users table to maps with {@code id} and {@code password}
+     * @deprecated the users are mapped to {@code UserPassword} now, a mapper set here is still used to read the users
      */
+    @Deprecated
     public void setRowMapper(RowMapper<HashMap<String, String>> rowMapper) {
         this.rowMapper = rowMapper;
+        this.customRowMapper = true;
+    }
+
+    /**
+     * @param transactionManager the manager to commit each page with, by default a {@link
+     *                           DataSourceTransactionManager} of the data source of the migration is used
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * @param pageSize how many users are read, encoded and written at once
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param threads how many threads encode the passwords, the number of processors by default
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Id and password of a user being migrated.
+     */
+    static final class UserPassword {
+        private final long id;
+        private final String password;
+
+        UserPassword(long id, String password) {
+            this.id = id;
+            this.password = password;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        String getPassword() {
+            return password;
+        }
     }
 }
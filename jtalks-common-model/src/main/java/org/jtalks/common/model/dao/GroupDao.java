@@ -17,6 +17,7 @@ package org.jtalks.common.model.dao;
 import org.jtalks.common.model.entity.Group;
 import org.jtalks.common.model.entity.User;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -56,4 +57,12 @@ public interface GroupDao extends Crud<Group> {
      * @return user group
      */
     Group getGroupByName(String name);
+
+    /**
+     * Get the groups with the specified ids with a single query.
+     *
+     * @param ids ids of the groups
+     * @return the groups that exist, ids of deleted groups are ignored
+     */
+    List<Group> getGroupsByIds(Collection<Long> ids);
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ import org.jtalks.common.model.entity.Group;
 import org.jtalks.common.model.entity.User;
 import ru.javatalks.utils.general.Assert;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -81,6 +83,23 @@ public class GroupHibernateDao extends GenericDao<Group> implements GroupDao {
         return (Group) query.uniqueResult();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Group> getGroupsByIds(Collection<Long> ids) {
+        Assert.throwIfNull(ids, "ids");
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Query query = session().createQuery("from Group g where g.id in (:ids)");
+        query.setParameterList("ids", ids);
+
+        return query.list();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -134,6 +134,7 @@ public class User extends Entity implements UserDetails {
 
     private boolean enabled;
     private Long version;
+    private int rememberMeVersion;
 
     /**
      * Only for hibernate usage.
@@ -458,4 +459,22 @@ public class User extends Entity implements UserDetails {
     public void setVersion(Long version) {
         this.version = version;
     }
+
+    /**
+     * Gets the version of remember-me tokens of the user, the tokens issued with other versions are revoked. It's
+     * the {@code REMEMBER_ME_VERSION} column that is incremented with SQL to revoke the tokens, so it should be
+     * mapped as not updatable.
+     *
+     * @return the version the remember-me tokens of the user are issued with
+     */
+    public int getRememberMeVersion() {
+        return rememberMeVersion;
+    }
+
+    /**
+     * @param rememberMeVersion the version the remember-me tokens of the user are issued with
+     */
+    public void setRememberMeVersion(int rememberMeVersion) {
+        this.rememberMeVersion = rememberMeVersion;
+    }
 }
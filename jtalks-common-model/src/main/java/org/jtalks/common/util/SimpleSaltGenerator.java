@@ -49,7 +49,7 @@ public class SimpleSaltGenerator implements SaltGenerator {
         String randomString = new BigInteger(bitLength, generator).toString(36);
         while (randomString.length() < bitLength / 8) {
             currentBitLength = currentBitLength * 2;
-            randomString = new BigInteger(bitLength, generator).toString(36);
+            randomString = new BigInteger(currentBitLength, generator).toString(36);
         }
         return randomString.substring(0, bitLength / 8);
     }
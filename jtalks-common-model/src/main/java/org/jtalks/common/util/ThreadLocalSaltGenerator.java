@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.util;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Salt generator for registration bursts and bulk migrations. Unlike {@link SimpleSaltGenerator}, threads don't share
+ * one {@link SecureRandom}: every thread gets its own instance along with a buffer of random bytes, and the bytes are
+ * mapped to characters directly without building a {@link java.math.BigInteger}. The salts consist of digits and lower
+ * case letters like the base-36 salts of {@link SimpleSaltGenerator}, so they can replace each other. The bytes that
+ * would make some characters more likely than others are skipped, so every character carries log2(36) bits of entropy.
+ */
+public class ThreadLocalSaltGenerator implements SaltGenerator {
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+    /**
+     * The bytes starting from this one are skipped, the rest map to the alphabet evenly.
+     */
+    private static final int UNBIASED_LIMIT = 256 - 256 % ALPHABET.length;
+    private static final int BUFFER_SIZE = 512;
+
+    private final int length;
+    private final ThreadLocal<RandomBuffer> buffers = new ThreadLocal<RandomBuffer>() {
+        @Override
+        protected RandomBuffer initialValue() {
+            return new RandomBuffer();
+        }
+    };
+
+    /**
+     * Creates generator of strings with length equal to {@code bitLength / 8}, the same as {@link SimpleSaltGenerator}
+     * does.
+     *
+     * @param bitLength Required length in bits (single-byte encoding) for result string.
+     */
+    public ThreadLocalSaltGenerator(int bitLength) {
+        if (bitLength < 8) {
+            throw new IllegalArgumentException("Salt should be at least 8 bits long: " + bitLength);
+        }
+        this.length = bitLength / 8;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String generate() {
+        return generate(buffers.get());
+    }
+
+    /**
+     * Generates several salts at once, e.g. for a batch of users being migrated.
+     *
+     * @param count how many salts to generate
+     * @return new salts
+     */
+    public List<String> generate(int count) {
+        RandomBuffer buffer = buffers.get();
+        List<String> salts = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            salts.add(generate(buffer));
+        }
+        return salts;
+    }
+
+    private String generate(RandomBuffer buffer) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET[buffer.nextUnbiased() % ALPHABET.length];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Random bytes of a single thread that are read sequentially and refilled when exhausted.
+     */
+    private static final class RandomBuffer {
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] bytes = new byte[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+
+        /**
+         * @return the next random byte that is less than {@link #UNBIASED_LIMIT}, as an unsigned number
+         */
+        int nextUnbiased() {
+            while (true) {
+                if (position == bytes.length) {
+                    random.nextBytes(bytes);
+                    position = 0;
+                }
+                int value = bytes[position++] & 0xFF;
+                if (value < UNBIASED_LIMIT) {
+                    return value;
+                }
+            }
+        }
+    }
+}
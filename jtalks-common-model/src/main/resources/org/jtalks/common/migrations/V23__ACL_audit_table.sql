@@ -0,0 +1,15 @@
+--
+-- Permission decisions logged by org.jtalks.common.security.acl.audit.JdbcAuditSink
+--
+CREATE TABLE `acl_audit` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `event_time` datetime NOT NULL,                          -- when the decision was made
+  `granted` tinyint(1) NOT NULL,                           -- whether the permission was granted or denied
+  `ace_id` bigint(20) DEFAULT NULL,                        -- id of acl_entry that made the decision
+  `object_type` varchar(255) DEFAULT NULL,                 -- acl_class.class of the secured object
+  `object_id` bigint(20) DEFAULT NULL,                     -- id of the secured object
+  `sid` varchar(100) DEFAULT NULL,                         -- acl_sid.sid of the entry
+  `mask` int(11) NOT NULL,                                 -- the permission of the entry
+  PRIMARY KEY (`id`),
+  KEY `idx_acl_audit_time` (`event_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1 @@
+ALTER TABLE `USERS` ADD `REMEMBER_ME_VERSION` INT NOT NULL DEFAULT 0;
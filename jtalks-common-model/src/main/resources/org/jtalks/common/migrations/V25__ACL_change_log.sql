@@ -0,0 +1,28 @@
+--
+-- The ids of object identities whose rows of acl_object_identity or acl_entry were changed, filled by the triggers
+-- below so that every way of writing the ACL tables is logged. ACL snapshots remember the last id of this table and
+-- re-read only the ACLs logged after it, see org.jtalks.common.security.acl.snapshot.AclSnapshotImporter.
+-- The user running the migration needs the TRIGGER privilege (and SUPER if binary logging is on and
+-- log_bin_trust_function_creators is not set)
+--
+CREATE TABLE `acl_change` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `acl_object_identity` bigint(20) NOT NULL,                      -- the id of the changed object identity, not a foreign key since deletions are logged too
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TRIGGER `acl_entry_inserted` AFTER INSERT ON `acl_entry` FOR EACH ROW
+  INSERT INTO `acl_change` (`acl_object_identity`) VALUES (NEW.`acl_object_identity`);
+
+CREATE TRIGGER `acl_entry_updated` AFTER UPDATE ON `acl_entry` FOR EACH ROW
+  INSERT INTO `acl_change` (`acl_object_identity`)
+  SELECT OLD.`acl_object_identity` UNION SELECT NEW.`acl_object_identity`;
+
+CREATE TRIGGER `acl_entry_deleted` AFTER DELETE ON `acl_entry` FOR EACH ROW
+  INSERT INTO `acl_change` (`acl_object_identity`) VALUES (OLD.`acl_object_identity`);
+
+CREATE TRIGGER `acl_object_identity_updated` AFTER UPDATE ON `acl_object_identity` FOR EACH ROW
+  INSERT INTO `acl_change` (`acl_object_identity`) SELECT OLD.`id` UNION SELECT NEW.`id`;
+
+CREATE TRIGGER `acl_object_identity_deleted` AFTER DELETE ON `acl_object_identity` FOR EACH ROW
+  INSERT INTO `acl_change` (`acl_object_identity`) VALUES (OLD.`id`);
@@ -15,23 +15,32 @@
 package org.jtalks.common.migrations;
 
 import org.jtalks.common.util.SaltGenerator;
+import org.mockito.ArgumentCaptor;
 import org.springframework.context.ApplicationContext;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.authentication.encoding.MessageDigestPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
 
 /**
  * @author Masich Ivan
@@ -40,12 +49,14 @@ public class V6__Update_user_passwordsTest {
     private static final String PASSWORD = "qaz123";
     private static final String SALT = "0123456789";
     private static final String ENCODED_PASSWORD = "a7hf32a7hf32a7hf32";
-    private static final String ID = "10";
-    private static final V6__Update_user_passwords MIGRATION = new V6__Update_user_passwords();
+    private static final long ID = 10;
 
-    @Test
-    public void testMigrate() throws Exception {
+    private V6__Update_user_passwords migration;
+    private JdbcTemplate jdbc;
+    private PlatformTransactionManager transactionManager;
 
+    @BeforeMethod
+    public void setUp() {
         MessageDigestPasswordEncoder encoder = mock(MessageDigestPasswordEncoder.class);
         when(encoder.encodePassword(anyString(), anyString())).thenReturn(ENCODED_PASSWORD);
 
@@ -56,33 +67,129 @@ public class V6__Update_user_passwordsTest {
         when(context.getBean(MessageDigestPasswordEncoder.class)).thenReturn(encoder);
         when(context.getBean(SaltGenerator.class)).thenReturn(saltGenerator);
 
-        HashMap<String, String> user = new HashMap<String, String>();
-        user.put("id", ID);
-        user.put("password", PASSWORD);
+        jdbc = mock(JdbcTemplate.class);
+        migration = new V6__Update_user_passwords();
+        migration.setContext(context);
+        migration.setThreads(2);
+        transactionManager = mock(PlatformTransactionManager.class);
+        migration.setTransactionManager(transactionManager);
+    }
 
-        List<HashMap<String, String>> users = new ArrayList<HashMap<String, String>>();
-        users.add(user);
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrate() throws Exception {
+        when(jdbc.query(eq(V6__Update_user_passwords.SELECT_USERS), any(RowMapper.class), eq(0L),
+                eq(V6__Update_user_passwords.DEFAULT_PAGE_SIZE)))
+                .thenReturn(Arrays.asList(user(ID), user(ID + 1)));
+
+        migration.migrate(jdbc);
+
+        ArgumentCaptor<List> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbc).batchUpdate(eq(V6__Update_user_passwords.UPDATE_USER), updates.capture());
+        List<Object[]> args = updates.getValue();
+        assertEquals(args.size(), 2);
+        assertEquals(args.get(0), new Object[]{ENCODED_PASSWORD, SALT, ID});
+        assertEquals(args.get(1), new Object[]{ENCODED_PASSWORD, SALT, ID + 1});
+        verify(jdbc).update(V6__Update_user_passwords.INSERT_CHECKPOINT);
+        verify(jdbc).update(V6__Update_user_passwords.UPDATE_CHECKPOINT, ID + 1);
+        verify(transactionManager, times(2)).commit(any(TransactionStatus.class));
+        verify(jdbc).execute(V6__Update_user_passwords.DROP_CHECKPOINT);
+    }
 
-        JdbcTemplate jdbc = mock(JdbcTemplate.class);
-        when(jdbc.query(anyString(), any(RowMapper.class))).thenReturn(users);
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrateReadsNextPageAfterLastId() throws Exception {
+        migration.setPageSize(1);
+        when(jdbc.query(eq(V6__Update_user_passwords.SELECT_USERS), any(RowMapper.class), eq(0L), eq(1)))
+                .thenReturn(Collections.singletonList(user(ID)));
+        when(jdbc.query(eq(V6__Update_user_passwords.SELECT_USERS), any(RowMapper.class), eq(ID), eq(1)))
+                .thenReturn(Collections.singletonList(user(ID + 5)));
+
+        migration.migrate(jdbc);
+
+        verify(jdbc, times(2)).batchUpdate(eq(V6__Update_user_passwords.UPDATE_USER), any(List.class));
+        verify(jdbc).update(V6__Update_user_passwords.UPDATE_CHECKPOINT, ID);
+        verify(jdbc).update(V6__Update_user_passwords.UPDATE_CHECKPOINT, ID + 5);
+        verify(transactionManager, times(3)).commit(any(TransactionStatus.class));
+    }
 
-        MIGRATION.setContext(context);
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedPageDoesNotRollBackPreviousPages() throws Exception {
+        migration.setPageSize(1);
+        when(jdbc.query(eq(V6__Update_user_passwords.SELECT_USERS), any(RowMapper.class), eq(0L), eq(1)))
+                .thenReturn(Collections.singletonList(user(ID)));
+        when(jdbc.query(eq(V6__Update_user_passwords.SELECT_USERS), any(RowMapper.class), eq(ID), eq(1)))
+                .thenReturn(Collections.singletonList(user(ID + 5)));
+        doThrow(new IllegalStateException()).when(jdbc).update(V6__Update_user_passwords.UPDATE_CHECKPOINT, ID + 5);
+
+        try {
+            migration.migrate(jdbc);
+            fail("The failure of the page should be thrown");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        verify(transactionManager, times(2)).commit(any(TransactionStatus.class));
+        verify(transactionManager).rollback(any(TransactionStatus.class));
+        verify(jdbc, never()).execute(V6__Update_user_passwords.DROP_CHECKPOINT);
+    }
 
-        MIGRATION.migrate(jdbc);
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrateResumesFromCheckpoint() throws Exception {
+        when(jdbc.queryForList(V6__Update_user_passwords.SELECT_CHECKPOINT, Long.class))
+                .thenReturn(Collections.singletonList(ID));
+
+        migration.migrate(jdbc);
+
+        verify(jdbc).query(eq(V6__Update_user_passwords.SELECT_USERS), any(RowMapper.class), eq(ID),
+                eq(V6__Update_user_passwords.DEFAULT_PAGE_SIZE));
+        verify(jdbc, never()).update(V6__Update_user_passwords.INSERT_CHECKPOINT);
+        verify(jdbc, never()).batchUpdate(anyString(), any(List.class));
+        verify(jdbc).execute(V6__Update_user_passwords.DROP_CHECKPOINT);
+    }
 
-        verify(saltGenerator).generate();
-        verify(encoder).encodePassword(PASSWORD, SALT);
-        verify(jdbc).update(anyString(), eq(ENCODED_PASSWORD), eq(SALT), eq(Integer.parseInt(ID)));
+    @Test
+    @SuppressWarnings({"unchecked", "deprecation"})
+    public void testCustomRowMapperIsStillUsed() throws Exception {
+        RowMapper<HashMap<String, String>> rowMapper = mock(RowMapper.class);
+        migration.setRowMapper(rowMapper);
+        HashMap<String, String> row = new HashMap<String, String>();
+        row.put("id", String.valueOf(ID));
+        row.put("password", PASSWORD);
+        when(jdbc.query(V6__Update_user_passwords.SELECT_USERS, rowMapper, 0L,
+                V6__Update_user_passwords.DEFAULT_PAGE_SIZE)).thenReturn(Collections.singletonList(row));
+
+        migration.migrate(jdbc);
+
+        verify(jdbc).update(V6__Update_user_passwords.UPDATE_CHECKPOINT, ID);
     }
 
     @Test
     public void testRowMapper() throws SQLException {
         ResultSet resultSet = mock(ResultSet.class);
-        when(resultSet.getString("ID")).thenReturn(ID);
+        when(resultSet.getLong("ID")).thenReturn(ID);
+        when(resultSet.getString("PASSWORD")).thenReturn(PASSWORD);
+
+        V6__Update_user_passwords.UserPassword result = migration.getUserPasswordMapper().mapRow(resultSet, 1);
+        assertEquals(result.getId(), ID);
+        assertEquals(result.getPassword(), PASSWORD);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedRowMapper() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString("ID")).thenReturn(String.valueOf(ID));
         when(resultSet.getString("PASSWORD")).thenReturn(PASSWORD);
 
-        HashMap<String, String> result = MIGRATION.getRowMapper().mapRow(resultSet, 1);
-        assertEquals(result.get("id"), ID);
+        HashMap<String, String> result = migration.getRowMapper().mapRow(resultSet, 1);
+        assertEquals(result.get("id"), String.valueOf(ID));
         assertEquals(result.get("password"), PASSWORD);
     }
+
+    private static V6__Update_user_passwords.UserPassword user(long id) {
+        return new V6__Update_user_passwords.UserPassword(id, PASSWORD);
+    }
 }
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * The benchmark compares the throughput of {@link ThreadLocalSaltGenerator} and {@link SimpleSaltGenerator} with
+ * several threads generating salts at once and logs the results, it's in the {@code benchmark} group which is
+ * disabled by default.
+ */
+public class ThreadLocalSaltGeneratorTest {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final int BIT_LENGTH = 512;
+    private static final int THREADS = 8;
+    private static final int SALTS_PER_THREAD = 20000;
+
+    private ThreadLocalSaltGenerator sut;
+
+    @BeforeMethod
+    public void setUp() {
+        this.sut = new ThreadLocalSaltGenerator(BIT_LENGTH);
+    }
+
+    @Test
+    public void testGeneratedStringIsAlphanumerical() {
+        assertTrue(sut.generate().matches("^[a-z0-9]+$"));
+    }
+
+    @Test
+    public void testAllCharactersAreUsed() {
+        Set<Character> used = new HashSet<Character>();
+        for (String salt : sut.generate(100)) {
+            for (char c : salt.toCharArray()) {
+                used.add(c);
+            }
+        }
+        assertEquals(used.size(), 36);
+    }
+
+    @Test
+    public void testGeneratedStringLength() {
+        assertEquals(sut.generate().length(), BIT_LENGTH / 8);
+    }
+
+    @Test
+    public void testGenerateSeveral() {
+        List<String> salts = sut.generate(100);
+
+        assertEquals(salts.size(), 100);
+        assertEquals(new HashSet<String>(salts).size(), 100);
+        for (String salt : salts) {
+            assertEquals(salt.length(), BIT_LENGTH / 8);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTooShortSaltIsRejected() {
+        new ThreadLocalSaltGenerator(7);
+    }
+
+    @Test(groups = "benchmark", enabled = false)
+    public void benchmark() throws Exception {
+        SaltGenerator simple = new SimpleSaltGenerator(BIT_LENGTH);
+        for (int round = 1; round <= 3; round++) {
+            logger.info(String.format("%d salts in %d threads, round %d: simple %d ms, thread-local %d ms",
+                    THREADS * SALTS_PER_THREAD, THREADS, round, measure(simple), measure(sut)));
+        }
+    }
+
+    private static long measure(final SaltGenerator generator) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                futures[i] = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int j = 0; j < SALTS_PER_THREAD; j++) {
+                            generator.generate();
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
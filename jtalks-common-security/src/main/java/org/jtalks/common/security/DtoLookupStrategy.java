@@ -23,10 +23,8 @@ import org.springframework.security.acls.model.Sid;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * <p>This implementation of the {@link LookupStrategy} is very similar to
@@ -63,46 +61,48 @@ public class DtoLookupStrategy implements LookupStrategy {
     /**
      * <p>This method looks through all provided objects and replace them with their mappings, if ones exists,
      * before further processing performed by BasicLookupStrategy.</p>
+     * <p>If none of the objects is mapped, they are passed to the underlying strategy as is and its result is
+     * returned without copying.</p>
      * <p/>
      * {@inheritDoc}
      */
     @Override
     public Map<ObjectIdentity, Acl> readAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
-        //first, we create an empty list for the identities possibly mapped to DTOs
-        List<ObjectIdentity> mappedObjects = new ArrayList<ObjectIdentity>(objects.size());
-        //reverse mapping: model entity-related identities -> set of DTO-related identities
-        Map<ObjectIdentity, Set<ObjectIdentity>> usedMapping = new HashMap<ObjectIdentity, Set<ObjectIdentity>>();
-        for (ObjectIdentity objectIdentity : objects) {
+        List<ObjectIdentity> mappedObjects = null;
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectIdentity objectIdentity = objects.get(i);
             ObjectIdentity mappedIdentity = getMappedIdentity(objectIdentity);
-
-            //save original mapping - set of all classes that is mapped to this model entity class
-            Set<ObjectIdentity> mappedToModelClasses = usedMapping.get(mappedIdentity);
-            if (mappedToModelClasses == null) {
-                mappedToModelClasses = new HashSet<ObjectIdentity>();
+            if (mappedObjects == null && mappedIdentity != objectIdentity) {
+                //the first mapped identity found, the previous ones are not mapped
+                mappedObjects = new ArrayList<ObjectIdentity>(objects.size());
+                mappedObjects.addAll(objects.subList(0, i));
+            }
+            if (mappedObjects != null) {
+                mappedObjects.add(mappedIdentity);
             }
-            mappedToModelClasses.add(objectIdentity);
-            usedMapping.put(mappedIdentity, mappedToModelClasses);
-
-            mappedObjects.add(mappedIdentity);
         }
-
+        if (mappedObjects == null) {
+            return lookupStrategy.readAclsById(objects, sids);
+        }
         //get a map [mapped_identity -> acl] from BaseLookupStrategy
-        return restoreOriginalIdentities(usedMapping, this.lookupStrategy.readAclsById(mappedObjects, sids));
+        return restoreOriginalIdentities(objects, mappedObjects, lookupStrategy.readAclsById(mappedObjects, sids));
     }
 
     /**
      * This method restores original identities basing on mapping of "model" identities.
      *
-     * @param usedMapping      Mapping of "model" identities to DTO identities.
+     * @param objects          Original identities.
+     * @param mappedObjects    "Model" identities, in the same order as original ones.
      * @param mappedIdentities Map of identities to Acls, in which identities needs to be replaced.
      * @return Map, similar to <code>mappedIdentities</code> - "model" identities will be replaced with DTO identities.
      */
-    private static Map<ObjectIdentity, Acl> restoreOriginalIdentities(
-            Map<ObjectIdentity, Set<ObjectIdentity>> usedMapping, Map<ObjectIdentity, Acl> mappedIdentities) {
-        Map<ObjectIdentity, Acl> acls = new HashMap<ObjectIdentity, Acl>();
-        for (Map.Entry<ObjectIdentity, Acl> mappedIdentittiesEntry : mappedIdentities.entrySet()) {
-            for (ObjectIdentity mappedToThisIdentity : usedMapping.get(mappedIdentittiesEntry.getKey())) {
-                acls.put(mappedToThisIdentity, mappedIdentittiesEntry.getValue());
+    private static Map<ObjectIdentity, Acl> restoreOriginalIdentities(List<ObjectIdentity> objects,
+            List<ObjectIdentity> mappedObjects, Map<ObjectIdentity, Acl> mappedIdentities) {
+        Map<ObjectIdentity, Acl> acls = new HashMap<ObjectIdentity, Acl>(objects.size() * 2);
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectIdentity mappedIdentity = mappedObjects.get(i);
+            if (mappedIdentities.containsKey(mappedIdentity)) {
+                acls.put(objects.get(i), mappedIdentities.get(mappedIdentity));
             }
         }
         return acls;
@@ -120,15 +120,10 @@ public class DtoLookupStrategy implements LookupStrategy {
      * @return Mapped identity as described above.
      */
     private ObjectIdentity getMappedIdentity(ObjectIdentity identity) {
-        ObjectIdentity result = identity;
-
-        String identityClass = identity.getType();
-        Class identityMappedTo = mapper.getMapping(identityClass);
-        if (identityMappedTo != null) {
-            result = new ObjectIdentityImpl(identityMappedTo.getCanonicalName(), identity.getIdentifier());
+        String mappedType = mapper.getMappedTypeName(identity.getType());
+        if (mappedType == null) {
+            return identity;
         }
-
-        return result;
+        return new ObjectIdentityImpl(mappedType, identity.getIdentifier());
     }
 }
-
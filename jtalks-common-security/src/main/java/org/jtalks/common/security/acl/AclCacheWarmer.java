@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preloads ACLs of branches, sections and components into the cache when the application starts. The range of object
+ * ids of each type is split into partitions that are read in parallel on a bounded pool, each partition is read
+ * through {@link LookupStrategy#readAclsById} in batches, so the lookup strategy puts the ACLs into the cache and
+ * skips the ones already there.
+ * <p/>
+ * By default {@link #start()} returns only after the cache is warmed up so that the node doesn't report it's ready
+ * with a cold cache. With {@link #setBackground(boolean)} the warm-up runs on low priority threads instead.
+ */
+public class AclCacheWarmer {
+    private static final String SELECT_RANGE = "select min(o.object_id_identity), max(o.object_id_identity), "
+            + "count(*) from acl_object_identity o join acl_class c on o.object_id_class = c.id where c.class = ?";
+    private static final String SELECT_IDS = "select o.object_id_identity from acl_object_identity o "
+            + "join acl_class c on o.object_id_class = c.id where c.class = ? "
+            + "and o.object_id_identity between ? and ?";
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final JdbcTemplate jdbcTemplate;
+    private final LookupStrategy lookupStrategy;
+    private List<String> types = Arrays.asList("BRANCH", "SECTION", "COMPONENT");
+    private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private int batchSize = 50;
+    private boolean background;
+    private volatile boolean warmedUp;
+    private volatile ExecutorService executor;
+
+    /**
+     * @param dataSource     the data source with ACL tables to select object identities from
+     * @param lookupStrategy the strategy that reads ACLs and puts them into the cache
+     */
+    public AclCacheWarmer(@Nonnull DataSource dataSource, @Nonnull LookupStrategy lookupStrategy) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.lookupStrategy = lookupStrategy;
+    }
+
+    /**
+     * Warms the cache up, either in the current thread or in background depending on {@link
+     * #setBackground(boolean)}. Failures are logged and not thrown since the cache is filled on demand anyway.
+     */
+    public void start() {
+        if (!background) {
+            warmUpQuietly();
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warmUpQuietly();
+            }
+        }, "acl-cache-warmer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Interrupts the warm-up if it's still running.
+     */
+    public void stop() {
+        ExecutorService current = executor;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    private void warmUpQuietly() {
+        try {
+            long start = System.currentTimeMillis();
+            int count = warmUp();
+            logger.info("ACL cache is warmed up with {} ACLs in {} ms", count, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            logger.info("ACL cache warm-up is interrupted");
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warn("Could not warm ACL cache up", e);
+        }
+    }
+
+    /**
+     * Reads ACLs of all the object identities of the configured types in parallel and blocks until all of them are
+     * read.
+     *
+     * @return the number of object identities whose ACLs were requested
+     * @throws InterruptedException if the warm-up was interrupted
+     */
+    public int warmUp() throws InterruptedException {
+        List<Partition> partitions = new ArrayList<Partition>();
+        for (String type : types) {
+            partitions.addAll(partition(type));
+        }
+        ExecutorService pool = createExecutor();
+        executor = pool;
+        try {
+            final AtomicInteger count = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<Future<?>>(partitions.size());
+            for (final Partition partition : partitions) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        count.addAndGet(load(partition));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.warn("Could not warm ACL cache up for a partition", e.getCause());
+                }
+            }
+            warmedUp = true;
+            return count.get();
+        } finally {
+            executor = null;
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits the range of object ids of the type into partitions of about equal size.
+     *
+     * @param type the type of object identities
+     * @return the partitions, empty if there are no object identities of the type
+     */
+    private List<Partition> partition(String type) {
+        SqlRowSet range = jdbcTemplate.queryForRowSet(SELECT_RANGE, type);
+        List<Partition> partitions = new ArrayList<Partition>();
+        if (!range.next() || range.getLong(3) == 0) {
+            return partitions;
+        }
+        long min = range.getLong(1);
+        long max = range.getLong(2);
+        long count = range.getLong(3);
+        long partitionCount = Math.max(1, Math.min(threads * PARTITIONS_PER_THREAD, count / batchSize));
+        long step = (max - min) / partitionCount + 1;
+        for (long from = min; from <= max; from += step) {
+            partitions.add(new Partition(type, from, Math.min(max, from + step - 1)));
+        }
+        return partitions;
+    }
+
+    /**
+     * Reads ACLs of the object identities of the partition batch by batch.
+     *
+     * @param partition the partition to read
+     * @return the number of object identities whose ACLs were requested
+     */
+    private int load(final Partition partition) {
+        List<ObjectIdentity> identities = jdbcTemplate.query(SELECT_IDS, new RowMapper<ObjectIdentity>() {
+            @Override
+            public ObjectIdentity mapRow(ResultSet rs, int rowNum) throws SQLException {
+                return new ObjectIdentityImpl(partition.type, rs.getLong(1));
+            }
+        }, partition.type, partition.from, partition.to);
+        for (int from = 0; from < identities.size() && !Thread.currentThread().isInterrupted(); from += batchSize) {
+            lookupStrategy.readAclsById(identities.subList(from, Math.min(identities.size(), from + batchSize)), null);
+        }
+        return identities.size();
+    }
+
+    private ExecutorService createExecutor() {
+        final int priority = background ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * PARTITIONS_PER_THREAD),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "acl-cache-warmer-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(priority);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * @return whether the last warm-up has completed
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * @param types the types of object identities to preload ACLs of as they are stored in {@code acl_class}, the
+     *              types of branches, sections and components given by {@link
+     *              TypeConvertingObjectIdentityGenerator#createDefaultGenerator()} by default
+     */
+    public void setTypes(List<String> types) {
+        this.types = types;
+    }
+
+    /**
+     * @param threads the number of threads reading ACLs, the number of processors but not more than 4 by default
+     */
+    public void setThreads(int threads) {
+        Assert.isTrue(threads > 0, "Number of threads should be positive");
+        this.threads = threads;
+    }
+
+    /**
+     * @param batchSize the number of object identities read by one call of the lookup strategy, 50 by default
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size should be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param background whether {@link #start()} returns at once and warms the cache up on low priority threads
+     */
+    public void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    /**
+     * A range of object ids of one type.
+     */
+    private static class Partition {
+        private final String type;
+        private final long from;
+        private final long to;
+
+        Partition(String type, long from, long to) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
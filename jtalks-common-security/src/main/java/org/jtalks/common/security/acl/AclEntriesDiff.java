@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.AuditableAccessControlEntry;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the entries of the ACL that are stored in {@code acl_entry} table with the entries of the {@link
+ * org.springframework.security.acls.model.MutableAcl} that is going to be saved and finds out what rows should be
+ * deleted, updated or inserted. The rows that weren't changed are left untouched, their {@code ace_order} stays the
+ * same since only the relative order of the entries matters when the ACL is read back. New entries get the free
+ * {@code ace_order} values between the rows that are kept, and if there is no free room for them, the following row is
+ * re-inserted as well.
+ *
+ * @see JtalksMutableAcService#updateAcl(org.springframework.security.acls.model.MutableAcl)
+ */
+class AclEntriesDiff {
+    private final List<Long> deletedIds = new ArrayList<Long>();
+    private final List<AccessControlEntry> updatedEntries = new ArrayList<AccessControlEntry>();
+    private final List<AccessControlEntry> insertedEntries = new ArrayList<AccessControlEntry>();
+    private final List<Integer> insertedOrders = new ArrayList<Integer>();
+
+    private AclEntriesDiff() {
+    }
+
+    /**
+     * Computes the difference between the rows in the database and the entries of the ACL.
+     *
+     * @param storedRows     the rows of {@code acl_entry} table that belong to the ACL, ordered by {@code ace_order}
+     * @param currentEntries the entries of the ACL that should be saved, new entries don't have their id yet
+     * @return the changes to be applied to the database so that it contains the same entries as the ACL
+     */
+    static AclEntriesDiff compute(@Nonnull List<StoredAce> storedRows,
+                                  @Nonnull List<AccessControlEntry> currentEntries) {
+        AclEntriesDiff diff = new AclEntriesDiff();
+        Map<Long, StoredAce> storedById = new HashMap<Long, StoredAce>(storedRows.size() * 2);
+        for (StoredAce row : storedRows) {
+            storedById.put(row.getId(), row);
+        }
+        List<AccessControlEntry> pending = new ArrayList<AccessControlEntry>();
+        int lastOrder = -1;
+        for (AccessControlEntry entry : currentEntries) {
+            StoredAce stored = entry.getId() == null ? null : storedById.get(toLong(entry.getId()));
+            boolean fitsAfterPending = stored != null && stored.getOrder() - lastOrder > pending.size();
+            if (fitsAfterPending) {
+                storedById.remove(stored.getId());
+                lastOrder = diff.insertPending(pending, lastOrder);
+                if (!stored.sameAs(entry)) {
+                    diff.updatedEntries.add(entry);
+                }
+                lastOrder = stored.getOrder();
+            } else {
+                pending.add(entry);
+            }
+        }
+        diff.insertPending(pending, lastOrder);
+        diff.deletedIds.addAll(storedById.keySet());
+        return diff;
+    }
+
+    /**
+     * Schedules all the pending entries to be inserted right after the specified order and clears the list.
+     *
+     * @param pending   entries to be inserted
+     * @param lastOrder the {@code ace_order} of the last entry that is placed before the pending ones
+     * @return the {@code ace_order} of the last inserted entry
+     */
+    private int insertPending(List<AccessControlEntry> pending, int lastOrder) {
+        for (AccessControlEntry next : pending) {
+            insertedEntries.add(next);
+            insertedOrders.add(++lastOrder);
+        }
+        pending.clear();
+        return lastOrder;
+    }
+
+    private static Long toLong(Object id) {
+        return ((Number) id).longValue();
+    }
+
+    /**
+     * Gets the ids of the rows that should be removed from {@code acl_entry} table. This includes the entries that
+     * have to be re-inserted with another {@code ace_order}.
+     *
+     * @return the ids of the rows to be deleted
+     */
+    Collection<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * Gets the entries that are kept at their places, but their permission or auditing flags changed.
+     *
+     * @return the entries which rows should be updated by their ids
+     */
+    List<AccessControlEntry> getUpdatedEntries() {
+        return updatedEntries;
+    }
+
+    /**
+     * Gets the entries that should be inserted to the {@code acl_entry} table.
+     *
+     * @return the entries to be inserted, the value of {@code ace_order} for each of them is at the same index in
+     *         {@link #getInsertedOrders()}
+     */
+    List<AccessControlEntry> getInsertedEntries() {
+        return insertedEntries;
+    }
+
+    /**
+     * Gets the {@code ace_order} values of the inserted entries.
+     *
+     * @return the values of {@code ace_order} column for each of the {@link #getInsertedEntries()}
+     */
+    List<Integer> getInsertedOrders() {
+        return insertedOrders;
+    }
+
+    /**
+     * Defines whether there is something to write to the database.
+     *
+     * @return {@code true} if the stored rows are the same as entries of the ACL
+     */
+    boolean isEmpty() {
+        return deletedIds.isEmpty() && updatedEntries.isEmpty() && insertedEntries.isEmpty();
+    }
+
+    /**
+     * A row of {@code acl_entry} table that was read from the database. Sid is not included since it can't be changed
+     * for the existing entry of the ACL.
+     */
+    static class StoredAce {
+        private final long id;
+        private final int order;
+        private final int mask;
+        private final boolean granting;
+        private final boolean auditSuccess;
+        private final boolean auditFailure;
+
+        StoredAce(long id, int order, int mask, boolean granting, boolean auditSuccess, boolean auditFailure) {
+            this.id = id;
+            this.order = order;
+            this.mask = mask;
+            this.granting = granting;
+            this.auditSuccess = auditSuccess;
+            this.auditFailure = auditFailure;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        int getOrder() {
+            return order;
+        }
+
+        /**
+         * Defines whether the row has the same values as the specified entry of the ACL.
+         *
+         * @param entry the entry with the same id as this row
+         * @return {@code true} if the row doesn't need to be updated
+         */
+        boolean sameAs(AccessControlEntry entry) {
+            if (mask != entry.getPermission().getMask() || granting != entry.isGranting()) {
+                return false;
+            }
+            if (entry instanceof AuditableAccessControlEntry) {
+                AuditableAccessControlEntry auditable = (AuditableAccessControlEntry) entry;
+                return auditSuccess == auditable.isAuditSuccess() && auditFailure == auditable.isAuditFailure();
+            }
+            return true;
+        }
+    }
+}
@@ -15,6 +15,7 @@
 package org.jtalks.common.security.acl;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang.Validate;
 import org.jtalks.common.model.dao.GroupDao;
 import org.jtalks.common.model.entity.Branch;
 import org.jtalks.common.model.entity.Entity;
@@ -27,7 +28,9 @@ import org.springframework.security.acls.domain.ObjectIdentityImpl;
 import org.springframework.security.acls.model.*;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -55,6 +58,7 @@ public class AclManager {
      * @param entity an object for which the permissions were given
      * @return permissions assigned on {@link Group}s without any other permissions. Returns empty collection if there
      *         are no group permissions given on the specified object identity
+     * @see GroupPermissionMatrixResolver
      */
     public List<GroupAce> getGroupPermissionsOn(@Nonnull Entity entity) {
         MutableAcl branchAcl = aclUtil.getAclFor(entity);
@@ -162,9 +166,101 @@ public class AclManager {
         mutableAclService.updateAcl(acl);
     }
 
+    /**
+     * Grant permissions from list to every sid in list on every of the {@code targets}. The ACLs of all the targets are
+     * read and saved at once instead of doing it for each target separately. Must be invoked in a transaction.
+     *
+     * @param sids        list of sids
+     * @param permissions list of permissions
+     * @param targets     secured objects
+     */
+    public void grant(List<? extends Sid> sids, List<Permission> permissions, Collection<? extends Entity> targets) {
+        updateAcls(aclUtil.grant(sids, permissions, targets));
+    }
+
+    /**
+     * Revoke permissions from lists for every sid in list on every of the {@code targets}. The ACLs of all the targets
+     * are read and saved at once instead of doing it for each target separately. Must be invoked in a transaction.
+     *
+     * @param sids        list of sids
+     * @param permissions list of permissions
+     * @param targets     secured objects
+     */
+    public void restrict(List<? extends Sid> sids, List<Permission> permissions, Collection<? extends Entity> targets) {
+        updateAcls(aclUtil.restrict(sids, permissions, targets));
+    }
+
+    /**
+     * Delete permissions from list for every sid in list on every of the {@code targets}. The ACLs of all the targets
+     * are read and saved at once instead of doing it for each target separately. Must be invoked in a transaction.
+     *
+     * @param sids        list of sids
+     * @param permissions list of permissions
+     * @param targets     secured objects
+     */
+    public void delete(List<? extends Sid> sids, List<Permission> permissions, Collection<? extends Entity> targets) {
+        updateAcls(aclUtil.delete(sids, permissions, targets));
+    }
+
+    /**
+     * Makes the ACL of the {@code child} inherit the entries of the ACL of the {@code parent}, so that the permissions
+     * given on the parent apply to the child unless the child has its own entries for the same sid and permission. The
+     * entries are not copied, see {@link EffectiveAclResolver} for how permissions are checked then.
+     *
+     * @param child  the entity that should inherit the permissions, e.g. a branch
+     * @param parent the entity to inherit the permissions from, e.g. the section of the branch; pass {@code null} to
+     *               stop inheriting
+     */
+    public void setParent(@Nonnull Entity child, @Nullable Entity parent) {
+        ExtendedMutableAcl acl = aclUtil.getAclFor(child);
+        if (parent == null) {
+            acl.setParent(null);
+            acl.setEntriesInheriting(false);
+        } else {
+            acl.setParent(aclUtil.getAclFor(parent).getAcl());
+            acl.setEntriesInheriting(true);
+        }
+        mutableAclService.updateAcl(acl);
+    }
+
+    /**
+     * Makes the branch inherit the permissions given on its section.
+     *
+     * @param branch the branch that should inherit the permissions of its section, the section should be set
+     * @see #setParent(Entity, Entity)
+     */
+    public void inheritFromSection(@Nonnull Branch branch) {
+        Validate.notNull(branch.getSection(), "The branch should be in a section to inherit its permissions");
+        setParent(branch, branch.getSection());
+    }
+
+    /**
+     * Saves all the specified ACLs. If the ACL service is able to save them with the batch operations, it's used,
+     * otherwise the ACLs are saved one by one. Either way the caller has to wrap the call into a transaction, so that
+     * a failure doesn't leave only a part of the ACLs saved ({@link JtalksMutableAcService#updateAcls(List)} fails
+     * without it, like {@link MutableAclService#updateAcl(MutableAcl)} of Spring does).
+     *
+     * @param acls the ACLs to be saved
+     */
+    private void updateAcls(List<ExtendedMutableAcl> acls) {
+        if (acls.isEmpty()) {
+            return;
+        }
+        if (mutableAclService instanceof JtalksMutableAcService) {
+            ((JtalksMutableAcService) mutableAclService).updateAcls(acls);
+        } else {
+            for (MutableAcl acl : acls) {
+                mutableAclService.updateAcl(acl);
+            }
+        }
+    }
+
    /**
      * Deletes all ACEs defined in the acl_entry table, wired with the presented SID, also wires owner_sid of OID
-     * belongs to SID to another SID, deletes given SID defined in acl_sid.
+     * belongs to SID to another SID, deletes given SID defined in acl_sid. Does everything in the transaction of the
+     * caller, so the sid is removed together with the changes the caller makes (e.g. deleting the group). That's why
+     * it's not switched to {@link ChunkedSidRemover}: it commits each chunk in a transaction of its own and has to be
+     * run outside of a transaction, use it directly for sids with a lot of entries.
      *
      * @param sid     to ACL delete
      * @param sidHeir will became the owner of ObjectIdentities belongs to sid
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.entity.Entity;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.entity.User;
+import org.jtalks.common.model.permissions.JtalksPermission;
+import org.jtalks.common.security.acl.sids.SidFactory;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jtalks.common.security.acl.TypeConvertingObjectIdentityGenerator.createDefaultGenerator;
+
+/**
+ * Leaves only those entities of a collection the user has the permission on, e.g. the branches the user may view.
+ * Unlike evaluating {@code hasPermission} for each element (which is what {@code @PostFilter} does), the sids of the
+ * user are resolved once and the ACLs of all the entities are read with one batched lookup, so it's suitable for
+ * large lists. The permission is checked the same way {@link org.springframework.security.acls.AclPermissionEvaluator}
+ * does: entities without ACL or without matching entries are not permitted. If {@link
+ * #setEffectiveAclResolver(EffectiveAclResolver) effective ACL resolver} is set, the entries inherited from the parent
+ * ACLs are taken into account the same way {@link EffectiveAclPermissionEvaluator} does.
+ *
+ * @see AclManager
+ */
+public class AclPermissionFilter {
+    private final LookupStrategy lookupStrategy;
+    private final SidFactory sidFactory;
+    private TypeConvertingObjectIdentityGenerator objectIdentityGenerator = createDefaultGenerator();
+    private EffectiveAclResolver effectiveAclResolver;
+
+    /**
+     * @param lookupStrategy the strategy to read ACLs with, it shouldn't fail when some of the ACLs are absent
+     * @param sidFactory     the factory to create sids of the user with
+     */
+    public AclPermissionFilter(@Nonnull LookupStrategy lookupStrategy, @Nonnull SidFactory sidFactory) {
+        this.lookupStrategy = lookupStrategy;
+        this.sidFactory = sidFactory;
+    }
+
+    /**
+     * Leaves only the entities the current user has the specified permission on.
+     *
+     * @param entities   the entities to filter
+     * @param permission the permission the user should have
+     * @param <T>        type of the entities
+     * @return the permitted entities in the same order as they were specified
+     * @see #filter(Collection, JtalksPermission, Authentication)
+     */
+    public <T extends Entity> List<T> filterForCurrentUser(@Nonnull Collection<T> entities,
+                                                           @Nonnull JtalksPermission permission) {
+        return filter(entities, permission, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    /**
+     * Leaves only the entities the authenticated user has the specified permission on.
+     *
+     * @param entities       the entities to filter
+     * @param permission     the permission the user should have
+     * @param authentication the authentication of the user, if it's {@code null}, nothing is permitted
+     * @param <T>            type of the entities
+     * @return the permitted entities in the same order as they were specified
+     * @see #getSids(Authentication)
+     */
+    public <T extends Entity> List<T> filter(@Nonnull Collection<T> entities, @Nonnull JtalksPermission permission,
+                                             Authentication authentication) {
+        if (authentication == null || entities.isEmpty()) {
+            return new ArrayList<T>();
+        }
+        return filter(entities, permission, getSids(authentication));
+    }
+
+    /**
+     * Leaves only the entities on which any of the sids has the specified permission.
+     *
+     * @param entities   the entities to filter
+     * @param permission the permission the sids should have
+     * @param sids       the sids of the user
+     * @param <T>        type of the entities
+     * @return the permitted entities in the same order as they were specified
+     */
+    public <T extends Entity> List<T> filter(@Nonnull Collection<T> entities, @Nonnull JtalksPermission permission,
+                                             @Nonnull List<Sid> sids) {
+        List<T> permitted = new ArrayList<T>(entities.size());
+        if (entities.isEmpty() || sids.isEmpty()) {
+            return permitted;
+        }
+        List<ObjectIdentity> identities = new ArrayList<ObjectIdentity>(entities.size());
+        Set<ObjectIdentity> uniqueIdentities = new LinkedHashSet<ObjectIdentity>();
+        for (T entity : entities) {
+            ObjectIdentity identity = objectIdentityGenerator.getObjectIdentity(entity);
+            identities.add(identity);
+            uniqueIdentities.add(identity);
+        }
+        Map<ObjectIdentity, Acl> acls = lookupStrategy.readAclsById(
+                new ArrayList<ObjectIdentity>(uniqueIdentities), sids);
+
+        List<Permission> required = Collections.<Permission>singletonList(permission);
+        Map<ObjectIdentity, Boolean> decisions = new HashMap<ObjectIdentity, Boolean>(uniqueIdentities.size() * 2);
+        int i = 0;
+        for (T entity : entities) {
+            ObjectIdentity identity = identities.get(i++);
+            Boolean granted = decisions.get(identity);
+            if (granted == null) {
+                granted = isGranted(acls.get(identity), required, sids);
+                decisions.put(identity, granted);
+            }
+            if (granted) {
+                permitted.add(entity);
+            }
+        }
+        return permitted;
+    }
+
+    /**
+     * Resolves all the sids of the authenticated user: the sid of the user itself, the sids of the groups the user is
+     * in (if the principal is a {@link User}) and the sids of the granted authorities.
+     *
+     * @param authentication the authentication of the user
+     * @return the sids that may be mentioned in ACL entries applicable to the user
+     */
+    public List<Sid> getSids(@Nonnull Authentication authentication) {
+        List<Sid> sids = new ArrayList<Sid>();
+        sids.add(sidFactory.createPrincipal(authentication));
+        Object principal = authentication.getPrincipal();
+        if (principal instanceof User) {
+            for (Group group : ((User) principal).getGroups()) {
+                sids.add(new UserGroupSid(group));
+            }
+        }
+        sids.addAll(sidFactory.createGrantedAuthorities(authentication.getAuthorities()));
+        return sids;
+    }
+
+    private boolean isGranted(Acl acl, List<Permission> required, List<Sid> sids) {
+        if (acl == null) {
+            return false;
+        }
+        if (effectiveAclResolver != null) {
+            return effectiveAclResolver.getEffectiveAcl(acl).isGranted(required, sids);
+        }
+        try {
+            return acl.isGranted(required, sids, false);
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    public void setObjectIdentityGenerator(TypeConvertingObjectIdentityGenerator objectIdentityGenerator) {
+        this.objectIdentityGenerator = objectIdentityGenerator;
+    }
+
+    /**
+     * @param effectiveAclResolver gives the effective ACLs of the read ACLs to check permissions with, if not set the
+     *                             permissions are checked by the ACLs themselves
+     */
+    public void setEffectiveAclResolver(EffectiveAclResolver effectiveAclResolver) {
+        this.effectiveAclResolver = effectiveAclResolver;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the primary keys of {@code acl_sid} and {@code acl_class} rows in memory in both directions (sid name to its id
+ * and back, class name to its id and back). These tables are small and their rows are almost never changed, so there
+ * is no need to query them each time an ACL is saved. The cache is filled by {@link JtalksMutableAcService} when it
+ * starts and when it finds or creates a row that is not cached yet.
+ *
+ * @see JtalksMutableAcService#preloadPrimaryKeys()
+ */
+@ThreadSafe
+public class AclPrimaryKeyCache {
+    private final ConcurrentMap<SidKey, Long> sidIds = new ConcurrentHashMap<SidKey, Long>();
+    private final ConcurrentMap<Long, SidKey> sidsById = new ConcurrentHashMap<Long, SidKey>();
+    private final ConcurrentMap<String, Long> classIds = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<Long, String> classesById = new ConcurrentHashMap<Long, String>();
+
+    /**
+     * Gets the id of the {@code acl_sid} row.
+     *
+     * @param sidName   the value of {@code sid} column
+     * @param principal the value of {@code principal} column
+     * @return the id of the row or {@code null} if it's not cached
+     */
+    @Nullable
+    public Long getSidId(@Nonnull String sidName, boolean principal) {
+        return sidIds.get(new SidKey(sidName, principal));
+    }
+
+    /**
+     * Gets the name of the sid by the id of its {@code acl_sid} row.
+     *
+     * @param id the id of the {@code acl_sid} row
+     * @return the value of {@code sid} column or {@code null} if it's not cached
+     */
+    @Nullable
+    public String getSidName(long id) {
+        SidKey sid = sidsById.get(id);
+        return sid == null ? null : sid.name;
+    }
+
+    /**
+     * Defines whether the sid with the specified id is a principal.
+     *
+     * @param id the id of the {@code acl_sid} row
+     * @return the value of {@code principal} column or {@code null} if it's not cached
+     */
+    @Nullable
+    public Boolean isPrincipal(long id) {
+        SidKey sid = sidsById.get(id);
+        return sid == null ? null : sid.principal;
+    }
+
+    /**
+     * Remembers the {@code acl_sid} row.
+     *
+     * @param id        the id of the row
+     * @param sidName   the value of {@code sid} column
+     * @param principal the value of {@code principal} column
+     */
+    public void putSid(long id, @Nonnull String sidName, boolean principal) {
+        SidKey sid = new SidKey(sidName, principal);
+        sidIds.put(sid, id);
+        sidsById.put(id, sid);
+    }
+
+    /**
+     * Forgets the {@code acl_sid} row, should be invoked when the row is removed from the database.
+     *
+     * @param sidName   the value of {@code sid} column
+     * @param principal the value of {@code principal} column
+     */
+    public void removeSid(@Nonnull String sidName, boolean principal) {
+        Long id = sidIds.remove(new SidKey(sidName, principal));
+        if (id != null) {
+            sidsById.remove(id);
+        }
+    }
+
+    /**
+     * Gets the id of the {@code acl_class} row.
+     *
+     * @param className the value of {@code class} column
+     * @return the id of the row or {@code null} if it's not cached
+     */
+    @Nullable
+    public Long getClassId(@Nonnull String className) {
+        return classIds.get(className);
+    }
+
+    /**
+     * Gets the name of the class by the id of its {@code acl_class} row.
+     *
+     * @param id the id of the {@code acl_class} row
+     * @return the value of {@code class} column or {@code null} if it's not cached
+     */
+    @Nullable
+    public String getClassName(long id) {
+        return classesById.get(id);
+    }
+
+    /**
+     * Remembers the {@code acl_class} row.
+     *
+     * @param id        the id of the row
+     * @param className the value of {@code class} column
+     */
+    public void putClass(long id, @Nonnull String className) {
+        classIds.put(className, id);
+        classesById.put(id, className);
+    }
+
+    /**
+     * Forgets all the cached rows.
+     */
+    public void clear() {
+        sidIds.clear();
+        sidsById.clear();
+        classIds.clear();
+        classesById.clear();
+    }
+
+    /**
+     * The {@code acl_sid} table has a unique key on both the name of the sid and the principal flag, so they both
+     * identify the row.
+     */
+    private static final class SidKey {
+        private final String name;
+        private final boolean principal;
+
+        private SidKey(String name, boolean principal) {
+            this.name = name;
+            this.principal = principal;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SidKey)) {
+                return false;
+            }
+            SidKey that = (SidKey) o;
+            return principal == that.principal && name.equals(that.name);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + (principal ? 1 : 0);
+        }
+    }
+}
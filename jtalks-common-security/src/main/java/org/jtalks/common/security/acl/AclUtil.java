@@ -14,17 +14,19 @@
  */
 package org.jtalks.common.security.acl;
 
-import com.google.common.base.Predicate;
 import org.jtalks.common.model.entity.Entity;
 import org.springframework.security.acls.model.*;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import javax.validation.constraints.Min;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Lists.newArrayList;
 import static org.jtalks.common.security.acl.TypeConvertingObjectIdentityGenerator.createDefaultGenerator;
 
 /**
@@ -75,6 +77,50 @@ public class AclUtil {
         }
     }
 
+    /**
+     * Gets the ACLs of all the specified entities reading them with a single batch lookup. If some of the entities
+     * don't have their ACLs yet, only those are read or created one by one.
+     *
+     * @param entities the entities to get their ACLs, duplicates are ignored
+     * @return the ACLs of the specified entities in the same order the entities were specified
+     */
+    public List<ExtendedMutableAcl> getAclsFor(Collection<? extends Entity> entities) {
+        List<ObjectIdentity> oids = createIdentitiesFor(entities);
+        Map<ObjectIdentity, Acl> existing = new HashMap<ObjectIdentity, Acl>(oids.size() * 2);
+        readExistingAcls(oids, existing);
+        List<ExtendedMutableAcl> acls = new ArrayList<ExtendedMutableAcl>(oids.size());
+        for (ObjectIdentity oid : oids) {
+            Acl acl = existing.get(oid);
+            acls.add(acl == null ? getAclFor(oid) : ExtendedMutableAcl.castAndCreate(acl));
+        }
+        return acls;
+    }
+
+    /**
+     * Reads the ACLs that exist skipping the missing ones. {@link JtalksMutableAcService} is able to do that with a
+     * single lookup. Other services throw {@link NotFoundException} if any of the ACLs is missing, in that case the
+     * identities are split in halves and each half is read again, so that the lookup narrows down to the missing
+     * identities instead of giving up the whole batch (the ACLs found by the failed lookup are in the cache already).
+     *
+     * @param oids     the object identities to read their ACLs
+     * @param existing the map to put the found ACLs to
+     */
+    private void readExistingAcls(List<ObjectIdentity> oids, Map<ObjectIdentity, Acl> existing) {
+        if (mutableAclService instanceof JtalksMutableAcService) {
+            existing.putAll(((JtalksMutableAcService) mutableAclService).readExistingAclsById(oids));
+            return;
+        }
+        try {
+            existing.putAll(mutableAclService.readAclsById(oids));
+        } catch (NotFoundException nfe) {
+            if (oids.size() > 1) {
+                int middle = oids.size() / 2;
+                readExistingAcls(oids.subList(0, middle), existing);
+                readExistingAcls(oids.subList(middle, oids.size()), existing);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -113,14 +159,61 @@ public class AclUtil {
         return acl;
     }
 
+    /**
+     * Grants the permissions to the sids on all the specified targets, see {@link #grant(List, List, Entity)}.
+     *
+     * @param sids        sids to grant the permissions to
+     * @param permissions permissions to be granted
+     * @param targets     secured objects, duplicates are ignored
+     * @return the changed ACLs of the targets that are not saved yet
+     */
+    public List<ExtendedMutableAcl> grant(
+            List<? extends Sid> sids, List<Permission> permissions, Collection<? extends Entity> targets) {
+        return applyPermissionsToSids(sids, permissions, targets, true);
+    }
+
+    /**
+     * Restricts the permissions to the sids on all the specified targets, see {@link #restrict(List, List, Entity)}.
+     *
+     * @param sids        sids to restrict the permissions to
+     * @param permissions permissions to be restricted
+     * @param targets     secured objects, duplicates are ignored
+     * @return the changed ACLs of the targets that are not saved yet
+     */
+    public List<ExtendedMutableAcl> restrict(
+            List<? extends Sid> sids, List<Permission> permissions, Collection<? extends Entity> targets) {
+        return applyPermissionsToSids(sids, permissions, targets, false);
+    }
+
+    /**
+     * Deletes the permissions of the sids on all the specified targets, see {@link #delete(List, List, Entity)}. The
+     * ACLs of all the targets are read with a single batch lookup.
+     *
+     * @param sids        sids to remove the permissions from
+     * @param permissions permissions to be removed
+     * @param targets     secured objects, duplicates are ignored
+     * @return the changed ACLs of the targets that are not saved yet
+     * @throws NotFoundException if some of the targets don't have ACL
+     */
+    public List<ExtendedMutableAcl> delete(
+            List<? extends Sid> sids, List<Permission> permissions, Collection<? extends Entity> targets) {
+        List<ObjectIdentity> oids = createIdentitiesFor(targets);
+        Map<ObjectIdentity, Acl> existing = mutableAclService.readAclsById(oids);
+        List<ExtendedMutableAcl> acls = new ArrayList<ExtendedMutableAcl>(oids.size());
+        for (ObjectIdentity oid : oids) {
+            ExtendedMutableAcl acl = ExtendedMutableAcl.castAndCreate(existing.get(oid));
+            deletePermissionsFromAcl(acl, sids, permissions);
+            acls.add(acl);
+        }
+        return acls;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void deletePermissionsFromAcl(
             ExtendedMutableAcl acl, List<? extends Sid> sids, List<Permission> permissions) {
-        List<AccessControlEntry> allEntries = acl.getEntries(); // it's a copy
-        List<AccessControlEntry> filtered = newArrayList(filter(allEntries, new BySidAndPermissionFilter(sids, permissions)));
-        acl.delete(filtered);
+        acl.deletePermissions(sids, permissions);
     }
 
     public Acl aclFromObjectIdentity(@Min(1) long id, @Nonnull String type) {
@@ -133,6 +226,38 @@ public class AclUtil {
         this.objectIdentityGenerator = objectIdentityGenerator;
     }
 
+    /**
+     * Creates object identities for the specified entities skipping the duplicates.
+     *
+     * @param entities the secured objects to create their object identities
+     * @return the distinct object identities in the same order as entities were specified
+     */
+    private List<ObjectIdentity> createIdentitiesFor(Collection<? extends Entity> entities) {
+        Set<ObjectIdentity> oids = new LinkedHashSet<ObjectIdentity>(entities.size() * 2);
+        for (Entity entity : entities) {
+            oids.add(createIdentityFor(entity));
+        }
+        return new ArrayList<ObjectIdentity>(oids);
+    }
+
+    /**
+     * Apply every permission from list to every sid from list on every target.
+     *
+     * @param sids        list of sids
+     * @param permissions list of permissions
+     * @param targets     securable objects
+     * @param granting    grant if true, restrict if false
+     * @return the ACLs that manage the specified {@code targets} and their Sids & Permissions
+     */
+    private List<ExtendedMutableAcl> applyPermissionsToSids(List<? extends Sid> sids, List<Permission> permissions,
+                                                            Collection<? extends Entity> targets, boolean granting) {
+        List<ExtendedMutableAcl> acls = getAclsFor(targets);
+        for (ExtendedMutableAcl acl : acls) {
+            deletePermissionsFromAcl(acl, sids, permissions);
+            acl.addPermissions(sids, permissions, granting);
+        }
+        return acls;
+    }
 
     /**
      * Apply every permission from list to every sid from list.
@@ -151,36 +276,4 @@ public class AclUtil {
         return acl;
     }
 
-
-    /**
-     * Gets the list of Sids and Permissions into the constructor and filters out those {@link AccessControlEntry} whose
-     * Sid & Permission is not in the specified lists.
-     *
-     * @see com.google.common.collect.Iterators#filter(java.util.Iterator, com.google.common.base.Predicate)
-     */
-    private static class BySidAndPermissionFilter implements Predicate<AccessControlEntry> {
-        private final List<? extends Sid> sids;
-        private final List<Permission> permissions;
-
-        /**
-         * @param sids        to find {@link AccessControlEntry}s that contain them
-         * @param permissions to find the {@link AccessControlEntry}s where specified {@code sids} have these
-         *                    permissions
-         */
-        private BySidAndPermissionFilter(@Nonnull List<? extends Sid> sids, @Nonnull List<Permission> permissions) {
-            this.sids = sids;
-            this.permissions = permissions;
-        }
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public boolean apply(@Nullable AccessControlEntry input) {
-            if (input == null) {
-                return false;
-            }
-            return sids.contains(input.getSid()) && permissions.contains(input.getPermission());
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.security.acl.sids.UniversalSid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes a sid the same way as {@link org.springframework.security.acls.model.MutableAclService#deleteEntriesForSid}
+ * does (deletes its entries, passes the object identities it owns to the heir and deletes the sid itself), but in
+ * chunks of limited size, each one in its own transaction. So removing a group with a lot of permissions doesn't lock
+ * {@code acl_entry} for long. ACLs changed by a chunk are evicted from the cache right after it's committed.
+ * <p/>
+ * Since each chunk removes the rows it processed, the removal can be stopped by the {@link SidRemovalListener} or
+ * interrupted by a failure and then resumed by simply starting it again for the same sid.
+ */
+public class ChunkedSidRemover {
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final String SELECT_SID = "select id from acl_sid where sid = ? and principal = ?";
+    private static final String INSERT_SID = "insert into acl_sid (principal, sid) values (?, ?)";
+    private static final String DELETE_SID = "delete from acl_sid where id = ?";
+    private static final String COUNT_ENTRIES = "select count(*) from acl_entry where sid = ?";
+    private static final String COUNT_OWNED = "select count(*) from acl_object_identity where owner_sid = ?";
+    private static final String SELECT_ENTRIES = "select e.id, c.class, o.object_id_identity from acl_entry e "
+            + "join acl_object_identity o on e.acl_object_identity = o.id join acl_class c on o.object_id_class = c.id "
+            + "where e.sid = ? order by e.id";
+    private static final String SELECT_OWNED = "select o.id, c.class, o.object_id_identity from acl_object_identity o "
+            + "join acl_class c on o.object_id_class = c.id where o.owner_sid = ? order by o.id";
+    private static final String DELETE_ENTRIES_PREFIX = "delete from acl_entry where id in (";
+    private static final String UPDATE_OWNER_PREFIX = "update acl_object_identity set owner_sid = ? where id in (";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final JtalksMutableAcService aclService;
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate chunkTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * @param aclService         the service which cache should be kept up to date
+     * @param dataSource         the data source with ACL tables
+     * @param transactionManager the manager to run each chunk in a separate transaction with
+     */
+    public ChunkedSidRemover(@Nonnull JtalksMutableAcService aclService, @Nonnull DataSource dataSource,
+                             @Nonnull PlatformTransactionManager transactionManager) {
+        this.aclService = aclService;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.chunkTemplate = new JdbcTemplate(dataSource);
+        this.chunkTemplate.setMaxRows(DEFAULT_CHUNK_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Removes the sid in chunks. Should be invoked outside of a transaction, otherwise that transaction is suspended
+     * while chunks are committed.
+     *
+     * @param sid      the sid to remove
+     * @param sidHeir  the sid that becomes the owner of the object identities owned by the removed sid, may be {@code
+     *                 null} if the sid owns nothing
+     * @param listener is notified after each chunk, may be {@code null}
+     * @return the progress of the removal, it's finished unless the listener stopped it
+     * @throws IllegalArgumentException if the sid owns object identities and the heir is not specified, nothing is
+     *                                  removed in that case
+     */
+    public SidRemovalProgress removeSid(@Nonnull Sid sid, @Nullable Sid sidHeir,
+                                        @Nullable SidRemovalListener listener) {
+        final UniversalSid universalSid = asUniversalSid(sid);
+        final Long sidId = findSidId(universalSid);
+        SidRemovalProgress progress = new SidRemovalProgress(0, 0, 0, false);
+        if (sidId == null) {
+            return progress.finish();
+        }
+        long owned = jdbcTemplate.queryForLong(COUNT_OWNED, sidId);
+        Assert.isTrue(owned == 0 || sidHeir != null, "The sid owns object identities, the heir is required");
+        long total = jdbcTemplate.queryForLong(COUNT_ENTRIES, sidId) + owned;
+        progress = new SidRemovalProgress(total, 0, 0, false);
+
+        int processed;
+        while ((processed = deleteEntriesChunk(sidId)) > 0) {
+            progress = progress.withDeletedEntries(processed);
+            if (!notify(listener, progress)) {
+                return progress;
+            }
+        }
+        Long heirId = null;
+        while (true) {
+            if (heirId == null && jdbcTemplate.queryForLong(COUNT_OWNED, sidId) > 0) {
+                Assert.notNull(sidHeir, "The sid owns object identities, the heir is required");
+                heirId = findOrCreateSidId(asUniversalSid(sidHeir));
+            }
+            if (heirId == null || (processed = reassignOwnersChunk(sidId, heirId)) == 0) {
+                break;
+            }
+            progress = progress.withReassignedObjects(processed);
+            if (!notify(listener, progress)) {
+                return progress;
+            }
+        }
+        transactionTemplate.execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                jdbcTemplate.update(DELETE_SID, sidId);
+                return null;
+            }
+        });
+        aclService.getPrimaryKeyCache().removeSid(universalSid.getSidId(), universalSid.isPrincipal());
+        if (aclService.getInvalidationPublisher() != null) {
+            aclService.getInvalidationPublisher().invalidateSid(universalSid.getSidId(), universalSid.isPrincipal());
+        }
+        progress = progress.finish();
+        notify(listener, progress);
+        return progress;
+    }
+
+    /**
+     * Deletes the next chunk of the entries of the sid and evicts the affected ACLs.
+     *
+     * @param sidId the id of the sid
+     * @return the number of deleted entries
+     */
+    private int deleteEntriesChunk(final Long sidId) {
+        final Set<ObjectIdentity> affected = new LinkedHashSet<ObjectIdentity>();
+        int processed = transactionTemplate.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                List<Long> ids = selectChunk(SELECT_ENTRIES, sidId, affected);
+                if (!ids.isEmpty()) {
+                    jdbcTemplate.update(DELETE_ENTRIES_PREFIX + placeholders(ids.size()) + ")", ids.toArray());
+                }
+                return ids.size();
+            }
+        });
+        if (!affected.isEmpty()) {
+            aclService.evictFromCache(affected);
+        }
+        return processed;
+    }
+
+    /**
+     * Passes the next chunk of the object identities owned by the sid to the heir and evicts their ACLs.
+     *
+     * @param sidId  the id of the sid
+     * @param heirId the id of the heir
+     * @return the number of object identities passed to the heir
+     */
+    private int reassignOwnersChunk(final Long sidId, final Long heirId) {
+        final Set<ObjectIdentity> affected = new LinkedHashSet<ObjectIdentity>();
+        int processed = transactionTemplate.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                List<Long> ids = selectChunk(SELECT_OWNED, sidId, affected);
+                if (!ids.isEmpty()) {
+                    List<Object> args = new ArrayList<Object>(ids.size() + 1);
+                    args.add(heirId);
+                    args.addAll(ids);
+                    jdbcTemplate.update(UPDATE_OWNER_PREFIX + placeholders(ids.size()) + ")", args.toArray());
+                }
+                return ids.size();
+            }
+        });
+        if (!affected.isEmpty()) {
+            aclService.evictFromCache(affected);
+        }
+        return processed;
+    }
+
+    /**
+     * Selects the next chunk of rows that have the id of the row, the class and the identifier of the object identity
+     * in the first three columns.
+     *
+     * @param query    the query to select the rows with
+     * @param sidId    the id of the sid to pass to the query
+     * @param affected collects the object identities of the rows
+     * @return the ids of the selected rows
+     */
+    private List<Long> selectChunk(String query, Long sidId, final Set<ObjectIdentity> affected) {
+        final List<Long> ids = new ArrayList<Long>();
+        chunkTemplate.query(query, new Object[]{sidId}, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                ids.add(rs.getLong(1));
+                affected.add(new ObjectIdentityImpl(rs.getString(2), rs.getLong(3)));
+            }
+        });
+        return ids;
+    }
+
+    private Long findSidId(UniversalSid sid) {
+        List<Long> ids = jdbcTemplate.queryForList(SELECT_SID, Long.class, sid.getSidId(), sid.isPrincipal());
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * Finds the id of the sid creating the sid if it doesn't exist yet. The id is put to the {@link AclPrimaryKeyCache}
+     * of the service since the sid is committed right away.
+     *
+     * @param sid the sid to find or create
+     * @return the id of the sid
+     */
+    private Long findOrCreateSidId(UniversalSid sid) {
+        Long id = findSidId(sid);
+        if (id == null) {
+            jdbcTemplate.update(INSERT_SID, sid.isPrincipal(), sid.getSidId());
+            id = findSidId(sid);
+            aclService.getPrimaryKeyCache().putSid(id, sid.getSidId(), sid.isPrincipal());
+        }
+        return id;
+    }
+
+    private boolean notify(SidRemovalListener listener, SidRemovalProgress progress) {
+        logger.debug("Sid removal: {}", progress);
+        return listener == null || listener.onChunkCommitted(progress);
+    }
+
+    private static UniversalSid asUniversalSid(Sid sid) {
+        Assert.isInstanceOf(UniversalSid.class, sid, "Unsupported sid implementation");
+        return (UniversalSid) sid;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ",?");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param chunkSize the maximum number of rows processed in one transaction, 500 by default
+     */
+    public void setChunkSize(int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "Chunk size should be positive");
+        chunkTemplate.setMaxRows(chunkSize);
+    }
+}
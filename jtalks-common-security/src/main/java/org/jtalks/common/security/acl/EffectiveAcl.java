@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entries of an ACL together with the entries it inherits from its parents (e.g. Branch from its Section),
+ * flattened into hash tables when the effective ACL is created. Thus checking a permission takes a few hash lookups
+ * per level of inheritance and doesn't need to go through the parent ACLs. Permissions are decided the same way as
+ * {@link org.springframework.security.acls.domain.DefaultPermissionGrantingStrategy} does: the first entry of the
+ * nearest level that matches the permission and the sid wins, parents are looked at only if the child has no matching
+ * entries.
+ *
+ * @see EffectiveAclResolver
+ */
+@Immutable
+public final class EffectiveAcl {
+    private final ObjectIdentity objectIdentity;
+    private final List<Map<AceKey, AccessControlEntry>> levels;
+
+    private EffectiveAcl(ObjectIdentity objectIdentity, List<Map<AceKey, AccessControlEntry>> levels) {
+        this.objectIdentity = objectIdentity;
+        this.levels = levels;
+    }
+
+    /**
+     * Flattens the ACL and the parents it inherits entries from.
+     *
+     * @param acl the ACL to flatten, its parents should be loaded
+     * @return the effective ACL
+     */
+    public static EffectiveAcl of(@Nonnull Acl acl) {
+        List<Map<AceKey, AccessControlEntry>> levels = new ArrayList<Map<AceKey, AccessControlEntry>>(2);
+        Acl level = acl;
+        while (level != null) {
+            levels.add(indexEntries(level.getEntries()));
+            level = level.isEntriesInheriting() ? level.getParentAcl() : null;
+        }
+        return new EffectiveAcl(acl.getObjectIdentity(), levels);
+    }
+
+    private static Map<AceKey, AccessControlEntry> indexEntries(List<AccessControlEntry> entries) {
+        Map<AceKey, AccessControlEntry> index = new HashMap<AceKey, AccessControlEntry>(entries.size() * 2);
+        for (AccessControlEntry entry : entries) {
+            AceKey key = new AceKey(entry.getSid(), entry.getPermission().getMask());
+            if (!index.containsKey(key)) {
+                index.put(key, entry);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Decides whether any of the sids has any of the permissions.
+     *
+     * @param permissions the permissions to check
+     * @param sids        the sids of the user
+     * @return {@code true} if the nearest level with matching entries grants the permission, {@code false} if it
+     *         denies it or if there are no matching entries at all
+     */
+    public boolean isGranted(@Nonnull List<? extends Permission> permissions, @Nonnull List<? extends Sid> sids) {
+        for (Map<AceKey, AccessControlEntry> level : levels) {
+            boolean rejected = false;
+            for (Permission permission : permissions) {
+                for (Sid sid : sids) {
+                    AccessControlEntry entry = level.get(new AceKey(sid, permission.getMask()));
+                    if (entry != null) {
+                        if (entry.isGranting()) {
+                            return true;
+                        }
+                        rejected = true;
+                        break;
+                    }
+                }
+            }
+            if (rejected) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public ObjectIdentity getObjectIdentity() {
+        return objectIdentity;
+    }
+
+    /**
+     * @return the number of ACLs the entries were taken from, {@code 1} if nothing is inherited
+     */
+    public int getDepth() {
+        return levels.size();
+    }
+
+    /**
+     * Sid and permission mask the entry is applied to.
+     */
+    private static final class AceKey {
+        private final Sid sid;
+        private final int mask;
+
+        private AceKey(Sid sid, int mask) {
+            this.sid = sid;
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AceKey)) {
+                return false;
+            }
+            AceKey that = (AceKey) o;
+            return mask == that.mask && sid.equals(that.sid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sid.hashCode() + mask;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.acls.domain.DefaultPermissionFactory;
+import org.springframework.security.acls.domain.ObjectIdentityRetrievalStrategyImpl;
+import org.springframework.security.acls.domain.PermissionFactory;
+import org.springframework.security.acls.domain.SidRetrievalStrategyImpl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.ObjectIdentityGenerator;
+import org.springframework.security.acls.model.ObjectIdentityRetrievalStrategy;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.acls.model.SidRetrievalStrategy;
+import org.springframework.security.core.Authentication;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates {@code hasPermission} expressions like {@link org.springframework.security.acls.AclPermissionEvaluator}
+ * does, but decides by the {@link EffectiveAcl}s given by {@link EffectiveAclResolver}, so the entries inherited from
+ * the parent ACLs are found with a few hash lookups instead of going through the entries of each parent.
+ */
+public class EffectiveAclPermissionEvaluator implements PermissionEvaluator {
+    private final EffectiveAclResolver effectiveAclResolver;
+    private ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy = new ObjectIdentityRetrievalStrategyImpl();
+    private ObjectIdentityGenerator objectIdentityGenerator = new ObjectIdentityRetrievalStrategyImpl();
+    private SidRetrievalStrategy sidRetrievalStrategy = new SidRetrievalStrategyImpl();
+    private PermissionFactory permissionFactory = new DefaultPermissionFactory();
+
+    /**
+     * @param effectiveAclResolver gives the effective ACLs to check permissions with
+     */
+    public EffectiveAclPermissionEvaluator(@Nonnull EffectiveAclResolver effectiveAclResolver) {
+        this.effectiveAclResolver = effectiveAclResolver;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasPermission(Authentication authentication, Object domainObject, Object permission) {
+        if (domainObject == null) {
+            return false;
+        }
+        return isGranted(authentication, objectIdentityRetrievalStrategy.getObjectIdentity(domainObject), permission);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasPermission(Authentication authentication, Serializable targetId, String targetType,
+                                 Object permission) {
+        return isGranted(authentication, objectIdentityGenerator.createObjectIdentity(targetId, targetType),
+                permission);
+    }
+
+    private boolean isGranted(Authentication authentication, ObjectIdentity objectIdentity, Object permission) {
+        List<Sid> sids = sidRetrievalStrategy.getSids(authentication);
+        return effectiveAclResolver.isGranted(objectIdentity, resolvePermission(permission), sids);
+    }
+
+    /**
+     * Converts the permission of the expression the same way {@link
+     * org.springframework.security.acls.AclPermissionEvaluator} does.
+     *
+     * @param permission a permission, an array of permissions, a mask or a name of the permission
+     * @return the permissions any of which is required
+     * @throws IllegalArgumentException if the permission is of unsupported type or is unknown
+     */
+    List<Permission> resolvePermission(Object permission) {
+        if (permission instanceof Integer) {
+            return Arrays.asList(permissionFactory.buildFromMask((Integer) permission));
+        }
+        if (permission instanceof Permission) {
+            return Arrays.asList((Permission) permission);
+        }
+        if (permission instanceof Permission[]) {
+            return Arrays.asList((Permission[]) permission);
+        }
+        if (permission instanceof String) {
+            String name = (String) permission;
+            Permission resolved;
+            try {
+                resolved = permissionFactory.buildFromName(name);
+            } catch (IllegalArgumentException notFound) {
+                resolved = permissionFactory.buildFromName(name.toUpperCase());
+            }
+            if (resolved != null) {
+                return Arrays.asList(resolved);
+            }
+        }
+        throw new IllegalArgumentException("Unsupported permission: " + permission);
+    }
+
+    public void setObjectIdentityRetrievalStrategy(ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy) {
+        this.objectIdentityRetrievalStrategy = objectIdentityRetrievalStrategy;
+    }
+
+    public void setObjectIdentityGenerator(ObjectIdentityGenerator objectIdentityGenerator) {
+        this.objectIdentityGenerator = objectIdentityGenerator;
+    }
+
+    public void setSidRetrievalStrategy(SidRetrievalStrategy sidRetrievalStrategy) {
+        this.sidRetrievalStrategy = sidRetrievalStrategy;
+    }
+
+    public void setPermissionFactory(PermissionFactory permissionFactory) {
+        this.permissionFactory = permissionFactory;
+    }
+}
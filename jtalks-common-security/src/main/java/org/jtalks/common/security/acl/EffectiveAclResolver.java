@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import com.google.common.collect.MapMaker;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gives the {@link EffectiveAcl}s of object identities, the ones that inherit entries from their parents (see {@link
+ * AclManager#setParent}). Effective ACLs are computed once per ACL instance that the ACL service returns and are
+ * kept while that instance is alive. When a parent ACL is changed, the ACL service evicts it and all its children from
+ * the ACL cache (on other nodes too, see {@link org.jtalks.common.security.acl.invalidation.AclInvalidationPublisher}),
+ * so the children are re-read with the new parent and their effective ACLs are computed anew.
+ */
+@ThreadSafe
+public class EffectiveAclResolver {
+    private final AclService aclService;
+    /** Weak identity keys: an entry lives while the ACL instance is cached somewhere. */
+    private final ConcurrentMap<Acl, EffectiveAcl> effectiveAcls = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * @param aclService the service to read ACLs with, it should cache them, otherwise each read produces a new ACL
+     *                   instance and the effective ACL is computed each time
+     */
+    public EffectiveAclResolver(@Nonnull AclService aclService) {
+        this.aclService = aclService;
+    }
+
+    /**
+     * Gets the effective ACL of the object identity.
+     *
+     * @param objectIdentity the object identity to get its effective ACL
+     * @return the effective ACL or {@code null} if the object identity has no ACL
+     */
+    @Nullable
+    public EffectiveAcl getEffectiveAcl(@Nonnull ObjectIdentity objectIdentity) {
+        Acl acl;
+        try {
+            acl = aclService.readAclById(objectIdentity);
+        } catch (NotFoundException e) {
+            return null;
+        }
+        return getEffectiveAcl(acl);
+    }
+
+    /**
+     * Gets the effective ACL of the ACL that was already read, e.g. by a batched lookup. The effective ACL is shared
+     * with {@link #getEffectiveAcl(ObjectIdentity)} as long as the lookup returns the same cached instances.
+     *
+     * @param acl the ACL to get its effective ACL, its parents should be loaded
+     * @return the effective ACL
+     */
+    @Nonnull
+    public EffectiveAcl getEffectiveAcl(@Nonnull Acl acl) {
+        EffectiveAcl effectiveAcl = effectiveAcls.get(acl);
+        if (effectiveAcl == null) {
+            effectiveAcl = EffectiveAcl.of(acl);
+            effectiveAcls.putIfAbsent(acl, effectiveAcl);
+        }
+        return effectiveAcl;
+    }
+
+    /**
+     * Decides whether any of the sids has any of the permissions on the object identity taking into account the
+     * entries inherited from its parents.
+     *
+     * @param objectIdentity the object identity to check the permissions on
+     * @param permissions    the permissions to check
+     * @param sids           the sids of the user
+     * @return {@code true} if the permission is granted, {@code false} if it's denied or there are no matching entries
+     *         or no ACL at all
+     */
+    public boolean isGranted(@Nonnull ObjectIdentity objectIdentity, @Nonnull List<? extends Permission> permissions,
+                             @Nonnull List<? extends Sid> sids) {
+        EffectiveAcl effectiveAcl = getEffectiveAcl(objectIdentity);
+        return effectiveAcl != null && effectiveAcl.isGranted(permissions, sids);
+    }
+}
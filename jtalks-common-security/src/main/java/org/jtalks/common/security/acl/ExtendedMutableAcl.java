@@ -19,7 +19,13 @@ import org.springframework.security.acls.model.*;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This implementations of {@link MutableAcl} adds additional handy methods like {@link #delete(AccessControlEntry)}.
@@ -73,14 +79,66 @@ public class ExtendedMutableAcl implements MutableAcl {
 
     /**
      * Deletes all the specified entries from the {@link Acl#getEntries()} list. If some or all entries were not found
-     * in the list, those elements are not removed and nothing happens.
+     * in the list, those elements are not removed and nothing happens. The entries of the ACL are indexed by their sid
+     * and mask once, so the whole operation takes linear time instead of scanning the entries for each element being
+     * removed.
      *
      * @param entriesToDelete the list of entries to remove from the {@link Acl#getEntries()}
      */
     public void delete(@Nonnull List<AccessControlEntry> entriesToDelete) {
+        if (entriesToDelete.isEmpty()) {
+            return;
+        }
+        List<AccessControlEntry> aclEntries = acl.getEntries();
+        Map<AceKey, List<Integer>> index = indexBySidAndMask(aclEntries);
+        boolean[] toDelete = new boolean[aclEntries.size()];
         for (AccessControlEntry next : entriesToDelete) {
-            delete(next);
+            List<Integer> candidates = index.get(new AceKey(next.getSid(), next.getPermission().getMask()));
+            if (candidates == null) {
+                continue;
+            }
+            for (Integer candidate : candidates) {
+                if (!toDelete[candidate] && aclEntries.get(candidate).equals(next)) {
+                    toDelete[candidate] = true;
+                    break;
+                }
+            }
+        }
+        deleteMarked(toDelete);
+    }
+
+    /**
+     * Removes all the entries which sid is one of the specified {@code sids} and which permission has the same mask as
+     * one of the specified {@code permissions}. It doesn't matter whether the entry is granting or restricting. The
+     * entries are scanned only once, so it's a linear operation on the size of the ACL plus the size of the
+     * arguments.
+     *
+     * @param sids        the sids to remove the permissions from
+     * @param permissions the permissions to be removed from the specified sids
+     * @return the number of entries that were removed from the ACL
+     */
+    public int deletePermissions(@Nonnull Collection<? extends Sid> sids,
+                                 @Nonnull Collection<? extends Permission> permissions) {
+        if (sids.isEmpty() || permissions.isEmpty()) {
+            return 0;
+        }
+        Set<Sid> sidsToDelete = new HashSet<Sid>(sids);
+        Set<Integer> masksToDelete = new HashSet<Integer>(permissions.size() * 2);
+        for (Permission permission : permissions) {
+            masksToDelete.add(permission.getMask());
+        }
+        List<AccessControlEntry> aclEntries = acl.getEntries();
+        boolean[] toDelete = new boolean[aclEntries.size()];
+        int deletedAmount = 0;
+        for (int i = 0; i < aclEntries.size(); i++) {
+            AccessControlEntry next = aclEntries.get(i);
+            if (sidsToDelete.contains(next.getSid()) && masksToDelete.contains(next.getPermission().getMask())) {
+                toDelete[i] = true;
+                deletedAmount++;
+            }
         }
+        deleteMarked(toDelete);
+        return deletedAmount;
     }
 
     /**
@@ -94,15 +152,13 @@ public class ExtendedMutableAcl implements MutableAcl {
      * @see #addPermissions(java.util.List, java.util.List, boolean)
      */
     public void addPermissions(@Nonnull Sid sid, @Nonnull List<Permission> permissions, boolean granting) {
-        int entriesAmount = acl.getEntries().size();
-        for (Permission permission : permissions) {
-            acl.insertAce(entriesAmount++, permission, sid, granting);
-        }
+        appendPermissions(acl.getEntries().size(), sid, permissions, granting);
     }
 
     /**
      * Adds all the permissions to all the specified sids. Note, that it doesn't check whether there are already such
-     * Sids with such Permission in the ACL, so you should check it on your own.
+     * Sids with such Permission in the ACL, so you should check it on your own. All the new entries are appended to
+     * the end of the ACL, so the entries are read only once no matter how many sids are specified.
      *
      * @param sids        the sids to grant the permissions to
      * @param permissions the list of permissions that should be granted to the Sid
@@ -111,9 +167,61 @@ public class ExtendedMutableAcl implements MutableAcl {
      * @see #addPermissions(Sid, List, boolean)
      */
     public void addPermissions(@Nonnull List<? extends Sid> sids, @Nonnull List<Permission> permissions, boolean granting) {
+        int entriesAmount = acl.getEntries().size();
         for (Sid recipient : sids) {
-            addPermissions(recipient, permissions, granting);
+            entriesAmount = appendPermissions(entriesAmount, recipient, permissions, granting);
+        }
+    }
+
+    /**
+     * Inserts the entries for the specified sid one after another starting from the specified position.
+     *
+     * @param position    the index to insert the first entry at, usually it's the size of the ACL
+     * @param sid         sid to grant the permissions to
+     * @param permissions the list of permissions that should be granted to the Sid
+     * @param granting    whether the permissions are granted or restricted
+     * @return the index right after the last inserted entry
+     */
+    private int appendPermissions(int position, Sid sid, List<Permission> permissions, boolean granting) {
+        for (Permission permission : permissions) {
+            acl.insertAce(position++, permission, sid, granting);
+        }
+        return position;
+    }
+
+    /**
+     * Deletes the entries which indexes are marked with {@code true}. The entries are removed starting from the end of
+     * the list so that indexes of the entries that are not removed yet stay the same.
+     *
+     * @param toDelete the flags for each entry of the ACL whether it should be removed
+     */
+    private void deleteMarked(boolean[] toDelete) {
+        for (int i = toDelete.length - 1; i >= 0; i--) {
+            if (toDelete[i]) {
+                acl.deleteAce(i);
+            }
+        }
+    }
+
+    /**
+     * Groups the indexes of the specified entries by their sid and permission mask.
+     *
+     * @param aclEntries the entries of the ACL to be indexed
+     * @return the map of the sid and mask pair to the indexes of the entries in the specified list
+     */
+    private static Map<AceKey, List<Integer>> indexBySidAndMask(List<AccessControlEntry> aclEntries) {
+        Map<AceKey, List<Integer>> index = new HashMap<AceKey, List<Integer>>(aclEntries.size() * 2);
+        for (int i = 0; i < aclEntries.size(); i++) {
+            AccessControlEntry next = aclEntries.get(i);
+            AceKey key = new AceKey(next.getSid(), next.getPermission().getMask());
+            List<Integer> indexes = index.get(key);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>(1);
+                index.put(key, indexes);
+            }
+            indexes.add(i);
         }
+        return index;
     }
 
     /**
@@ -261,4 +369,40 @@ public class ExtendedMutableAcl implements MutableAcl {
         acl.updateAce(aceIndex, permission);
     }
 
+    /**
+     * A pair of sid and permission mask that identifies the entries of the ACL regardless of whether they are granting
+     * or restricting.
+     */
+    private static final class AceKey {
+        private final Sid sid;
+        private final int mask;
+
+        private AceKey(Sid sid, int mask) {
+            this.sid = sid;
+            this.mask = mask;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AceKey)) {
+                return false;
+            }
+            AceKey that = (AceKey) o;
+            return mask == that.mask && sid.equals(that.sid);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * sid.hashCode() + mask;
+        }
+    }
 }
@@ -22,10 +22,25 @@ import org.jtalks.common.model.permissions.JtalksPermission;
 import org.jtalks.common.security.acl.sids.UserGroupSid;
 import org.springframework.security.acls.model.AccessControlEntry;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author stanislav bashkirtsev
  */
 public class GroupAce {
+    /** Branch permissions take precedence over general ones with the same mask. */
+    private static final Map<Integer, JtalksPermission> PERMISSIONS_BY_MASK = new HashMap<Integer, JtalksPermission>();
+
+    static {
+        for (GeneralPermission permission : GeneralPermission.values()) {
+            PERMISSIONS_BY_MASK.put(permission.getMask(), permission);
+        }
+        for (BranchPermission permission : BranchPermission.values()) {
+            PERMISSIONS_BY_MASK.put(permission.getMask(), permission);
+        }
+    }
+
     private final AccessControlEntry ace;
 
     public GroupAce(AccessControlEntry ace) {
@@ -51,11 +66,17 @@ public class GroupAce {
     }
 
     public JtalksPermission getPermission() {
-        JtalksPermission permission = BranchPermission.findByMask(getPermissionMask());
-        if (permission == null) {
-            permission = GeneralPermission.findByMask(getPermissionMask());
-        }
-        return permission;
+        return findPermission(getPermissionMask());
+    }
+
+    /**
+     * Finds the branch or general permission by its mask.
+     *
+     * @param mask the mask of the permission
+     * @return the permission or {@code null} if there is no branch or general permission with such mask
+     */
+    static JtalksPermission findPermission(int mask) {
+        return PERMISSIONS_BY_MASK.get(mask);
     }
 
     public int getPermissionMask() {
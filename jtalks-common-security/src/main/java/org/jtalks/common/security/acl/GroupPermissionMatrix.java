@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.permissions.JtalksPermission;
+import org.springframework.security.acls.model.ObjectIdentity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group permissions on one object identity as a table: groups that have entries in the ACL are rows, permissions
+ * that are granted or restricted to any of them are columns. Is built by {@link GroupPermissionMatrixResolver}.
+ */
+@Immutable
+public final class GroupPermissionMatrix {
+    /**
+     * The state of a permission for a group.
+     */
+    public enum Cell {
+        GRANTED, RESTRICTED, NOT_SET
+    }
+
+    private final ObjectIdentity objectIdentity;
+    private final List<Group> groups;
+    private final List<JtalksPermission> permissions;
+    private final List<Long> missingGroupIds;
+    private final Map<Long, Integer> groupIndexes;
+    private final Map<JtalksPermission, Integer> permissionIndexes;
+    private final Cell[][] cells;
+
+    /**
+     * @param objectIdentity  the object identity the permissions are given on
+     * @param groups          the rows of the matrix
+     * @param permissions     the columns of the matrix
+     * @param cells           the cells indexed by the indexes of the group and the permission
+     * @param missingGroupIds the ids of deleted groups that still have entries in the ACL
+     */
+    GroupPermissionMatrix(ObjectIdentity objectIdentity, List<Group> groups, List<JtalksPermission> permissions,
+                          Cell[][] cells, List<Long> missingGroupIds) {
+        this.objectIdentity = objectIdentity;
+        this.groups = Collections.unmodifiableList(new ArrayList<Group>(groups));
+        this.permissions = Collections.unmodifiableList(new ArrayList<JtalksPermission>(permissions));
+        this.missingGroupIds = Collections.unmodifiableList(new ArrayList<Long>(missingGroupIds));
+        this.cells = cells;
+        this.groupIndexes = new HashMap<Long, Integer>(groups.size() * 2);
+        for (int i = 0; i < groups.size(); i++) {
+            groupIndexes.put(groups.get(i).getId(), i);
+        }
+        this.permissionIndexes = new HashMap<JtalksPermission, Integer>(permissions.size() * 2);
+        for (int i = 0; i < permissions.size(); i++) {
+            permissionIndexes.put(permissions.get(i), i);
+        }
+    }
+
+    /**
+     * Gets the state of the permission for the group.
+     *
+     * @param group      the group to get the state for
+     * @param permission the permission to get the state of
+     * @return the state, {@link Cell#NOT_SET} if the group or the permission is not in the matrix
+     */
+    public Cell getCell(@Nonnull Group group, @Nonnull JtalksPermission permission) {
+        return getCell(group.getId(), permission);
+    }
+
+    /**
+     * Gets the state of the permission for the group.
+     *
+     * @param groupId    the id of the group to get the state for
+     * @param permission the permission to get the state of
+     * @return the state, {@link Cell#NOT_SET} if the group or the permission is not in the matrix
+     */
+    public Cell getCell(long groupId, @Nonnull JtalksPermission permission) {
+        Integer row = groupIndexes.get(groupId);
+        Integer column = permissionIndexes.get(permission);
+        if (row == null || column == null) {
+            return Cell.NOT_SET;
+        }
+        return cells[row][column];
+    }
+
+    /**
+     * @param permission the permission to find groups by
+     * @return the groups the permission is granted to
+     */
+    public List<Group> getGrantedGroups(@Nonnull JtalksPermission permission) {
+        return getGroups(permission, Cell.GRANTED);
+    }
+
+    /**
+     * @param permission the permission to find groups by
+     * @return the groups the permission is restricted to
+     */
+    public List<Group> getRestrictedGroups(@Nonnull JtalksPermission permission) {
+        return getGroups(permission, Cell.RESTRICTED);
+    }
+
+    private List<Group> getGroups(JtalksPermission permission, Cell state) {
+        Integer column = permissionIndexes.get(permission);
+        List<Group> result = new ArrayList<Group>();
+        if (column != null) {
+            for (int row = 0; row < groups.size(); row++) {
+                if (cells[row][column] == state) {
+                    result.add(groups.get(row));
+                }
+            }
+        }
+        return result;
+    }
+
+    public ObjectIdentity getObjectIdentity() {
+        return objectIdentity;
+    }
+
+    /**
+     * @return the groups that have entries in the ACL in the order of their first entries
+     */
+    public List<Group> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the permissions of the entries of groups in the order of their first entries
+     */
+    public List<JtalksPermission> getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * Gets the ids of the groups that were deleted but are still in the ACL, {@link GroupAce#getGroup} would throw
+     * {@link GroupAce.ObsoleteAclException} for them. They are not in the matrix.
+     *
+     * @return the ids of deleted groups
+     */
+    public List<Long> getMissingGroupIds() {
+        return missingGroupIds;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import com.google.common.collect.MapMaker;
+import org.jtalks.common.model.dao.GroupDao;
+import org.jtalks.common.model.entity.Entity;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.permissions.JtalksPermission;
+import org.jtalks.common.security.acl.GroupPermissionMatrix.Cell;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.MutableAclService;
+import org.springframework.security.acls.model.ObjectIdentity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds {@link GroupPermissionMatrix}es for admin screens instead of {@link AclManager#getGroupPermissionsOn} with
+ * {@link GroupAce#getGroup} per entry: all the groups of the ACL are read with one query. Like {@link
+ * EffectiveAclResolver}, the cells are computed once per ACL instance returned by the ACL service, so they are
+ * recomputed after the ACL is changed and evicted from the ACL cache. Only the ids of the groups are kept with the
+ * cells: groups may be renamed or deleted without touching the ACL, so they are read on each call.
+ */
+@ThreadSafe
+public class GroupPermissionMatrixResolver {
+    private final GroupDao groupDao;
+    private final AclUtil aclUtil;
+    /** Weak identity keys: an entry lives while the ACL instance is cached somewhere. */
+    private final ConcurrentMap<Acl, AclCells> cellsOfAcls = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * @param mutableAclService the service to read ACLs with, it should cache them
+     * @param groupDao          reads groups of the ACLs
+     */
+    public GroupPermissionMatrixResolver(@Nonnull MutableAclService mutableAclService, @Nonnull GroupDao groupDao) {
+        this(new AclUtil(mutableAclService), groupDao);
+    }
+
+    GroupPermissionMatrixResolver(AclUtil aclUtil, GroupDao groupDao) {
+        this.aclUtil = aclUtil;
+        this.groupDao = groupDao;
+    }
+
+    /**
+     * Gets group permissions on the entity, creates its ACL if it doesn't exist like {@link
+     * AclManager#getGroupPermissionsOn(Entity)} does.
+     *
+     * @param entity the object the permissions are given on
+     * @return the matrix of group permissions
+     */
+    public GroupPermissionMatrix getMatrix(@Nonnull Entity entity) {
+        return getMatrix(aclUtil.createIdentityFor(entity));
+    }
+
+    /**
+     * Gets group permissions on the object identity, creates its ACL if it doesn't exist like {@link
+     * AclManager#getGroupPermissionsOn(ObjectIdentity)} does.
+     *
+     * @param objectIdentity the object identity the permissions are given on
+     * @return the matrix of group permissions
+     */
+    public GroupPermissionMatrix getMatrix(@Nonnull ObjectIdentity objectIdentity) {
+        Acl acl = aclUtil.getAclFor(objectIdentity).getAcl();
+        AclCells aclCells = cellsOfAcls.get(acl);
+        if (aclCells == null) {
+            aclCells = AclCells.of(acl);
+            cellsOfAcls.putIfAbsent(acl, aclCells);
+        }
+        return build(objectIdentity, aclCells);
+    }
+
+    /**
+     * Reads the groups of the cells with one query and leaves only the rows of the groups that still exist.
+     *
+     * @param objectIdentity the object identity the permissions are given on
+     * @param aclCells       the cells computed from the ACL
+     * @return the matrix of group permissions
+     */
+    private GroupPermissionMatrix build(ObjectIdentity objectIdentity, AclCells aclCells) {
+        Map<Long, Group> groupsById = new HashMap<Long, Group>();
+        if (!aclCells.groupIds.isEmpty()) {
+            for (Group group : groupDao.getGroupsByIds(aclCells.groupIds)) {
+                groupsById.put(group.getId(), group);
+            }
+        }
+        List<Group> groups = new ArrayList<Group>(groupsById.size());
+        List<Cell[]> rows = new ArrayList<Cell[]>(groupsById.size());
+        List<Long> missingGroupIds = new ArrayList<Long>();
+        for (int i = 0; i < aclCells.groupIds.size(); i++) {
+            Long groupId = aclCells.groupIds.get(i);
+            Group group = groupsById.get(groupId);
+            if (group == null) {
+                missingGroupIds.add(groupId);
+            } else {
+                groups.add(group);
+                rows.add(aclCells.cells[i]);
+            }
+        }
+        return new GroupPermissionMatrix(objectIdentity, groups, aclCells.permissions,
+                rows.toArray(new Cell[rows.size()][]), missingGroupIds);
+    }
+
+    private static long groupIdOf(AccessControlEntry entry) {
+        return Long.parseLong(((UserGroupSid) entry.getSid()).getGroupId());
+    }
+
+    /**
+     * Group permissions of one ACL: a row of cells for each group id that has entries in the ACL.
+     */
+    private static final class AclCells {
+        private final List<Long> groupIds;
+        private final List<JtalksPermission> permissions;
+        private final Cell[][] cells;
+
+        private AclCells(List<Long> groupIds, List<JtalksPermission> permissions, Cell[][] cells) {
+            this.groupIds = groupIds;
+            this.permissions = permissions;
+            this.cells = cells;
+        }
+
+        static AclCells of(Acl acl) {
+            Map<Long, Integer> rows = new LinkedHashMap<Long, Integer>();
+            Map<JtalksPermission, Integer> columns = new LinkedHashMap<JtalksPermission, Integer>();
+            List<AccessControlEntry> groupEntries = new ArrayList<AccessControlEntry>();
+            for (AccessControlEntry entry : acl.getEntries()) {
+                if (!(entry.getSid() instanceof UserGroupSid)) {
+                    continue;
+                }
+                JtalksPermission permission = GroupAce.findPermission(entry.getPermission().getMask());
+                if (permission == null) {
+                    continue;
+                }
+                groupEntries.add(entry);
+                if (!rows.containsKey(groupIdOf(entry))) {
+                    rows.put(groupIdOf(entry), rows.size());
+                }
+                if (!columns.containsKey(permission)) {
+                    columns.put(permission, columns.size());
+                }
+            }
+            Cell[][] cells = new Cell[rows.size()][columns.size()];
+            for (AccessControlEntry entry : groupEntries) {
+                int row = rows.get(groupIdOf(entry));
+                int column = columns.get(GroupAce.findPermission(entry.getPermission().getMask()));
+                // the first entry wins as it does when permissions are checked
+                if (cells[row][column] == null) {
+                    cells[row][column] = entry.isGranting() ? Cell.GRANTED : Cell.RESTRICTED;
+                }
+            }
+            for (Cell[] row : cells) {
+                for (int column = 0; column < row.length; column++) {
+                    if (row[column] == null) {
+                        row[column] = Cell.NOT_SET;
+                    }
+                }
+            }
+            return new AclCells(new ArrayList<Long>(rows.keySet()), new ArrayList<JtalksPermission>(columns.keySet()),
+                    cells);
+        }
+    }
+}
@@ -13,28 +13,86 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
  */
 package org.jtalks.common.security.acl;
-
 import org.jtalks.common.security.acl.sids.SidFactory;
+import org.jtalks.common.security.acl.snapshot.AclAssembler;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.Entry;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.SidName;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.security.acls.domain.AclAuthorizationStrategy;
 import org.springframework.security.acls.domain.AuditLogger;
+import org.springframework.security.acls.domain.DefaultPermissionFactory;
+import org.springframework.security.acls.domain.DefaultPermissionGrantingStrategy;
+import org.springframework.security.acls.domain.PermissionFactory;
 import org.springframework.security.acls.jdbc.BasicLookupStrategy;
+import org.springframework.security.acls.model.Acl;
 import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.ObjectIdentity;
 import org.springframework.security.acls.model.Sid;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
- * Gives possibility to implement custom Sid
+ * Gives possibility to implement custom Sid. Also replaces the lookup of {@link BasicLookupStrategy}, which selects
+ * each batch with a chain of {@code (object_id_identity = ? and class = ?)} conditions, with a lookup that selects
+ * object identities of the same class with {@code object_id_identity in (...)} and so uses {@code uk_acl_objid}
+ * index. Batches of large requests may be selected in parallel, see {@link #setLookupExecutor(ExecutorService)}.
+ *
  * @author Mikhail Stryzhonok
  * @see org.springframework.security.acls.model.Sid
  */
 public class JtalksLookupStrategy extends BasicLookupStrategy {
+    private static final String SELECT_CLAUSE = "select acl_object_identity.id, acl_class.class, "
+            + "acl_object_identity.object_id_identity, acl_object_identity.parent_object, "
+            + "acl_object_identity.entries_inheriting, acli_sid.sid, acli_sid.principal, acl_entry.id, "
+            + "acl_entry.mask, acl_entry.granting, acl_entry.audit_success, acl_entry.audit_failure, acl_sid.sid, "
+            + "acl_sid.principal "
+            + "from acl_object_identity "
+            + "join acl_class on acl_class.id = acl_object_identity.object_id_class "
+            + "left join acl_sid acli_sid on acli_sid.id = acl_object_identity.owner_sid "
+            + "left join acl_entry on acl_entry.acl_object_identity = acl_object_identity.id "
+            + "left join acl_sid on acl_sid.id = acl_entry.sid ";
+    private static final String WHERE_IDENTITIES = "where acl_object_identity.object_id_class = "
+            + "(select id from acl_class where class = ?) and acl_object_identity.object_id_identity in (";
+    private static final String WHERE_PRIMARY_KEYS = "where acl_object_identity.id in (";
+    private static final String ORDER_BY = ") order by acl_object_identity.id, acl_entry.ace_order";
+    private static final int DEFAULT_BATCH_SIZE = 50;
 
+    private final JdbcTemplate jdbcTemplate;
+    private final AclCache aclCache;
+    private final AclAuthorizationStrategy aclAuthorizationStrategy;
+    private final DefaultPermissionGrantingStrategy grantingStrategy;
     private SidFactory sidFactory;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private PermissionFactory permissionFactory = new DefaultPermissionFactory();
+    private boolean inClauseLookup = true;
+    private ExecutorService lookupExecutor;
+    private int parallelThreshold = 500;
 
     public JtalksLookupStrategy(DataSource dataSource, AclCache aclCache,
                                AclAuthorizationStrategy aclAuthorizationStrategy, AuditLogger auditLogger) {
         super(dataSource, aclCache, aclAuthorizationStrategy, auditLogger);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.aclCache = aclCache;
+        this.aclAuthorizationStrategy = aclAuthorizationStrategy;
+        this.grantingStrategy = new DefaultPermissionGrantingStrategy(auditLogger);
     }
 
     /**
@@ -45,6 +103,123 @@ public class JtalksLookupStrategy extends BasicLookupStrategy {
         return sidFactory.create(sid, isPrincipal);
     }
 
+    /**
+     * Takes ACLs from the cache and selects the rest of them with {@code in} queries of at most {@link
+     * #setLookupBatchSize(int) batch size} identifiers each, the selected ACLs and their parents are put into the cache.
+     * Object identities with non-numeric identifiers as well as all of them if {@link #setInClauseLookup(boolean)} is
+     * off are looked up by {@link BasicLookupStrategy}.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<ObjectIdentity, Acl> readAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
+        if (!inClauseLookup) {
+            return super.readAclsById(objects, sids);
+        }
+        Map<ObjectIdentity, Acl> result = new HashMap<ObjectIdentity, Acl>();
+        Map<String, List<Long>> missingByType = new LinkedHashMap<String, List<Long>>();
+        List<ObjectIdentity> notNumeric = new ArrayList<ObjectIdentity>();
+        for (ObjectIdentity oid : objects) {
+            MutableAcl cached = aclCache.getFromCache(oid);
+            if (cached != null && cached.isSidLoaded(sids)) {
+                result.put(oid, cached);
+            } else if (oid.getIdentifier() instanceof Number) {
+                List<Long> missing = missingByType.get(oid.getType());
+                if (missing == null) {
+                    missing = new ArrayList<Long>();
+                    missingByType.put(oid.getType(), missing);
+                }
+                missing.add(((Number) oid.getIdentifier()).longValue());
+            } else {
+                notNumeric.add(oid);
+            }
+        }
+        if (!notNumeric.isEmpty()) {
+            result.putAll(super.readAclsById(notNumeric, sids));
+        }
+        for (Acl acl : lookup(missingByType)) {
+            result.put(acl.getObjectIdentity(), acl);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the identifiers into batches and selects them, in parallel if there are enough of them and {@link
+     * #setLookupExecutor(ExecutorService) executor} is set. Inside of a transaction the batches are always selected
+     * one by one: the threads of the executor don't take part in it, so they could read and put into the cache the
+     * ACLs as they were before the changes made by the transaction.
+     *
+     * @param identifiersByType the identifiers of object identities grouped by their types
+     * @return the selected ACLs
+     */
+    private List<Acl> lookup(Map<String, List<Long>> identifiersByType) {
+        List<Callable<List<Acl>>> batches = new ArrayList<Callable<List<Acl>>>();
+        int total = 0;
+        for (Map.Entry<String, List<Long>> type : identifiersByType.entrySet()) {
+            List<Long> identifiers = type.getValue();
+            total += identifiers.size();
+            for (int from = 0; from < identifiers.size(); from += batchSize) {
+                batches.add(new BatchLookup(type.getKey(),
+                        identifiers.subList(from, Math.min(identifiers.size(), from + batchSize))));
+            }
+        }
+        List<Acl> acls = new ArrayList<Acl>();
+        if (lookupExecutor == null || total < parallelThreshold || batches.size() < 2
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (Callable<List<Acl>> batch : batches) {
+                acls.addAll(call(batch));
+            }
+            return acls;
+        }
+        List<Future<List<Acl>>> futures = new ArrayList<Future<List<Acl>>>(batches.size() - 1);
+        for (Callable<List<Acl>> batch : batches.subList(1, batches.size())) {
+            futures.add(lookupExecutor.submit(batch));
+        }
+        acls.addAll(call(batches.get(0)));
+        for (Future<List<Acl>> future : futures) {
+            try {
+                acls.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("ACL lookup was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("ACL lookup failed", e.getCause());
+            }
+        }
+        return acls;
+    }
+
+    private static List<Acl> call(Callable<List<Acl>> batch) {
+        try {
+            return batch.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("ACL lookup failed", e);
+        }
+    }
+
+    /**
+     * Selects the rows of the object identities with the specified conditions into the records.
+     *
+     * @param where   the where clause with the opening parenthesis of {@code in}
+     * @param args    the arguments of the query, the last {@code count} of them are listed in {@code in}
+     * @param count   the number of values in {@code in}
+     * @param records the records to add the selected rows to
+     */
+    private void select(String where, Object[] args, int count, Map<Long, AclSnapshotRecord> records) {
+        StringBuilder sql = new StringBuilder(SELECT_CLAUSE.length() + where.length() + count * 2 + 64);
+        sql.append(SELECT_CLAUSE).append(where);
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(ORDER_BY);
+        jdbcTemplate.query(sql.toString(), args, new RecordCollector(records));
+    }
+
     public SidFactory getSidFactory() {
         return sidFactory;
     }
@@ -52,4 +227,176 @@ public class JtalksLookupStrategy extends BasicLookupStrategy {
     public void setSidFactory(SidFactory sidFactory) {
         this.sidFactory = sidFactory;
     }
+
+    /**
+     * Sets the number of identifiers selected by one query of both the {@code in} lookup and {@link
+     * BasicLookupStrategy} lookup. {@link BasicLookupStrategy#setBatchSize(int)} can't be overridden and sets the
+     * size of the latter only.
+     *
+     * @param batchSize the maximum number of identifiers in one query, 50 by default
+     */
+    public void setLookupBatchSize(int batchSize) {
+        super.setBatchSize(batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the factory of permissions of both the {@code in} lookup and {@link BasicLookupStrategy} lookup. {@link
+     * BasicLookupStrategy#setPermissionFactory(PermissionFactory)} can't be overridden and sets the factory of the
+     * latter only.
+     *
+     * @param permissionFactory creates permissions from masks, {@link DefaultPermissionFactory} by default
+     */
+    public void setLookupPermissionFactory(PermissionFactory permissionFactory) {
+        super.setPermissionFactory(permissionFactory);
+        this.permissionFactory = permissionFactory;
+    }
+
+    /**
+     * @param inClauseLookup whether ACLs are selected with {@code in} queries, {@code true} by default; {@link
+     *                       BasicLookupStrategy} lookup is used otherwise
+     */
+    public void setInClauseLookup(boolean inClauseLookup) {
+        this.inClauseLookup = inClauseLookup;
+    }
+
+    /**
+     * @param lookupExecutor the executor to select batches of large requests in parallel on, each running batch takes
+     *                       a connection from the pool, so the executor should have less threads than the pool has
+     *                       connections. If not set, batches are selected one by one, as well as inside of a
+     *                       transaction.
+     */
+    public void setLookupExecutor(ExecutorService lookupExecutor) {
+        this.lookupExecutor = lookupExecutor;
+    }
+
+    /**
+     * @param parallelThreshold the number of object identities missing in the cache starting from which batches are
+     *                          selected in parallel, 500 by default
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Selects one batch of object identities of the same type along with their parents that are not in the cache.
+     */
+    private class BatchLookup implements Callable<List<Acl>> {
+        private final String type;
+        private final List<Long> identifiers;
+
+        BatchLookup(String type, List<Long> identifiers) {
+            this.type = type;
+            this.identifiers = identifiers;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public List<Acl> call() {
+            Map<Long, AclSnapshotRecord> records = new LinkedHashMap<Long, AclSnapshotRecord>();
+            List<Object> args = new ArrayList<Object>(identifiers.size() + 1);
+            args.add(type);
+            args.addAll(identifiers);
+            select(WHERE_IDENTITIES, args.toArray(), identifiers.size(), records);
+            List<Long> requested = new ArrayList<Long>(records.keySet());
+
+            Map<Long, Acl> acls = new HashMap<Long, Acl>();
+            Set<Long> missingParents = new HashSet<Long>();
+            Collection<AclSnapshotRecord> selected = records.values();
+            while (!selected.isEmpty()) {
+                for (AclSnapshotRecord record : selected) {
+                    Long parentId = record.getParentId();
+                    if (parentId != null && !records.containsKey(parentId) && !acls.containsKey(parentId)) {
+                        MutableAcl cached = aclCache.getFromCache(parentId);
+                        if (cached != null) {
+                            acls.put(parentId, cached);
+                        } else {
+                            missingParents.add(parentId);
+                        }
+                    }
+                }
+                if (missingParents.isEmpty()) {
+                    break;
+                }
+                Map<Long, AclSnapshotRecord> parents = new LinkedHashMap<Long, AclSnapshotRecord>();
+                select(WHERE_PRIMARY_KEYS, missingParents.toArray(), missingParents.size(), parents);
+                missingParents.clear();
+                records.putAll(parents);
+                selected = parents.values();
+            }
+
+            AclAssembler assembler = new AclAssembler(
+                    aclAuthorizationStrategy, grantingStrategy, permissionFactory, sidFactory);
+            List<Acl> result = new ArrayList<Acl>(requested.size());
+            for (Long id : requested) {
+                Acl acl = assemble(id, records, acls, assembler);
+                if (acl instanceof MutableAcl) {
+                    aclCache.putInCache((MutableAcl) acl);
+                }
+                result.add(acl);
+            }
+            return result;
+        }
+
+        /**
+         * Creates the ACL after creating its parents.
+         *
+         * @param id        the id of the object identity
+         * @param records   the selected records by their ids
+         * @param acls      the ACLs created so far and the parents taken from the cache
+         * @param assembler creates ACLs from records
+         * @return the ACL of the object identity
+         */
+        private Acl assemble(Long id, Map<Long, AclSnapshotRecord> records, Map<Long, Acl> acls,
+                             AclAssembler assembler) {
+            Acl acl = acls.get(id);
+            if (acl == null) {
+                AclSnapshotRecord record = records.get(id);
+                if (record == null) {
+                    throw new IllegalStateException("Parent ACL " + id + " was not found");
+                }
+                Acl parent = record.getParentId() == null ? null
+                        : assemble(record.getParentId(), records, acls, assembler);
+                acl = assembler.assemble(record, parent);
+                acls.put(id, acl);
+            }
+            return acl;
+        }
+    }
+
+    /**
+     * Groups the rows of the same object identity into a record.
+     */
+    private static class RecordCollector implements RowCallbackHandler {
+        private final Map<Long, AclSnapshotRecord> records;
+
+        RecordCollector(Map<Long, AclSnapshotRecord> records) {
+            this.records = records;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            AclSnapshotRecord record = records.get(id);
+            if (record == null) {
+                long parent = rs.getLong(4);
+                Long parentId = rs.wasNull() ? null : parent;
+                String ownerName = rs.getString(6);
+                SidName owner = ownerName == null ? null : new SidName(ownerName, rs.getBoolean(7));
+                record = new AclSnapshotRecord(id, rs.getString(2), rs.getLong(3), parentId, owner,
+                        rs.getBoolean(5));
+                records.put(id, record);
+            }
+            long entryId = rs.getLong(8);
+            if (!rs.wasNull()) {
+                record.addEntry(new Entry(entryId, new SidName(rs.getString(13), rs.getBoolean(14)), rs.getInt(9),
+                        rs.getBoolean(10), rs.getBoolean(11), rs.getBoolean(12)));
+            }
+        }
+    }
 }
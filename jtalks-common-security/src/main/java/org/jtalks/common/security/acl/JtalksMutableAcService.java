@@ -14,16 +14,38 @@
  */
 package org.jtalks.common.security.acl;
 
+import org.jtalks.common.security.acl.AclEntriesDiff.StoredAce;
+import org.jtalks.common.security.acl.invalidation.AclInvalidationPublisher;
 import org.jtalks.common.security.acl.sids.SidFactory;
 import org.jtalks.common.security.acl.sids.UniversalSid;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
 import org.springframework.security.acls.jdbc.JdbcMutableAclService;
 import org.springframework.security.acls.jdbc.LookupStrategy;
 import org.springframework.security.acls.model.*;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
+import javax.annotation.Nonnull;
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Gives possibility to implement custom Sid
@@ -32,11 +54,47 @@ import javax.sql.DataSource;
  * @see org.jtalks.common.security.acl.sids.UniversalSid
  */
 public class JtalksMutableAcService extends JdbcMutableAclService {
+    private static final int MAX_IDS_IN_QUERY = 500;
+    private static final String SELECT_ENTRIES_PREFIX = "select acl_object_identity, id, ace_order, mask, granting, "
+            + "audit_success, audit_failure from acl_entry where acl_object_identity in (";
+    private static final String SELECT_ENTRIES_SUFFIX = ") order by acl_object_identity, ace_order";
+    private static final String DELETE_ENTRY = "delete from acl_entry where id = ?";
+    private static final String UPDATE_ENTRY = "update acl_entry set mask = ?, granting = ?, audit_success = ?, "
+            + "audit_failure = ? where id = ?";
+    private static final String INSERT_ENTRY = "insert into acl_entry (acl_object_identity, ace_order, sid, mask, "
+            + "granting, audit_success, audit_failure) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_OBJECT_IDENTITY = "update acl_object_identity set parent_object = ?, "
+            + "owner_sid = ?, entries_inheriting = ? where id = ?";
+    private static final String SELECT_CHILDREN_PREFIX = "select o.id, o.object_id_identity, c.class "
+            + "from acl_object_identity o join acl_class c on c.id = o.object_id_class where o.parent_object in (";
 
+    private static final String SELECT_ALL_SIDS = "select id, principal, sid from acl_sid";
+    private static final String SELECT_ALL_CLASSES = "select id, class from acl_class";
+    private static final String SELECT_OBJECT_IDENTITY_PRIMARY_KEY = "select id from acl_object_identity "
+            + "where object_id_class = ? and object_id_identity = ?";
+
+    private final AclCache aclCache;
+    private final LookupStrategy lookupStrategy;
     private SidFactory sidFactory;
+    private AclPrimaryKeyCache primaryKeyCache = new AclPrimaryKeyCache();
+    private AclInvalidationPublisher invalidationPublisher;
 
     public JtalksMutableAcService(DataSource dataSource, LookupStrategy lookupStrategy, AclCache aclCache) {
         super(dataSource, lookupStrategy, aclCache);
+        this.aclCache = aclCache;
+        this.lookupStrategy = lookupStrategy;
+    }
+
+    /**
+     * Reads the ACLs of the specified object identities with a single lookup. Unlike {@link #readAclsById(List)}
+     * doesn't throw {@link NotFoundException} if some of the ACLs don't exist, those are just absent in the result, so
+     * the caller can find out which of the object identities need their ACLs to be created.
+     *
+     * @param objectIdentities the object identities to read their ACLs
+     * @return the found ACLs by their object identities
+     */
+    public Map<ObjectIdentity, Acl> readExistingAclsById(@Nonnull List<ObjectIdentity> objectIdentities) {
+        return lookupStrategy.readAclsById(objectIdentities, null);
     }
 
     /**
@@ -63,6 +121,478 @@ public class JtalksMutableAcService extends JdbcMutableAclService {
         return (MutableAcl) acl;
     }
 
+    /**
+     * Unlike the parent implementation that removes all the entries of the ACL and inserts them back one by one, this
+     * method compares the entries with the rows stored in {@code acl_entry} table and writes only those rows that were
+     * actually changed, using batch statements. See {@link AclEntriesDiff} for details on how the rows are compared.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public MutableAcl updateAcl(MutableAcl acl) throws NotFoundException {
+        return updateAcls(Collections.singletonList(acl)).get(0);
+    }
+
+    /**
+     * Saves the changes of several ACLs at once. The stored entries of all the ACLs are read with one query, and the
+     * changed rows of all of them are written with one batch of deletes, one batch of updates and one batch of
+     * inserts. The object identities are updated with one more batch and their children are looked up level by level
+     * to evict them from the cache. Works the same way as {@link #updateAcl(MutableAcl)} otherwise.
+     * <p/>
+     * Must be invoked inside of a transaction (like all the other modifications of the parent class), otherwise a
+     * failure in the middle of the batches would leave a part of the ACLs saved.
+     *
+     * @param acls the ACLs to be saved, each object identity should be present only once in the list
+     * @return the ACLs re-read from the database in the same order as they were specified
+     * @throws NotFoundException if some of the ACLs were not found in the database
+     */
+    public List<MutableAcl> updateAcls(@Nonnull List<? extends MutableAcl> acls) throws NotFoundException {
+        Assert.isTrue(TransactionSynchronizationManager.isSynchronizationActive(), "Transaction must be running");
+        List<Long> oidPrimaryKeys = new ArrayList<Long>(acls.size());
+        for (MutableAcl acl : acls) {
+            Assert.notNull(acl.getId(), "Object Identity doesn't provide an identifier");
+            oidPrimaryKeys.add(((Number) acl.getId()).longValue());
+        }
+        Map<Long, List<StoredAce>> storedRows = readStoredEntries(oidPrimaryKeys);
+
+        EntryChanges changes = new EntryChanges();
+        for (int i = 0; i < acls.size(); i++) {
+            Long oidPrimaryKey = oidPrimaryKeys.get(i);
+            List<StoredAce> storedOfAcl = storedRows.get(oidPrimaryKey);
+            if (storedOfAcl == null) {
+                storedOfAcl = Collections.emptyList();
+            }
+            changes.add(oidPrimaryKey, AclEntriesDiff.compute(storedOfAcl, acls.get(i).getEntries()));
+        }
+        deleteEntries(changes.deletedIds);
+        updateEntries(changes.updatedEntries);
+        insertEntries(changes);
+        updateObjectIdentities(acls, oidPrimaryKeys);
+
+        List<ObjectIdentity> objectIdentities = new ArrayList<ObjectIdentity>(acls.size());
+        for (MutableAcl acl : acls) {
+            objectIdentities.add(acl.getObjectIdentity());
+        }
+        Set<ObjectIdentity> evicted = new LinkedHashSet<ObjectIdentity>(objectIdentities);
+        evicted.addAll(findDescendants(oidPrimaryKeys));
+        for (ObjectIdentity each : evicted) {
+            aclCache.evictFromCache(each);
+        }
+        if (invalidationPublisher != null) {
+            invalidationPublisher.invalidate(evicted);
+        }
+        Map<ObjectIdentity, Acl> updatedAcls = super.readAclsById(objectIdentities);
+        List<MutableAcl> result = new ArrayList<MutableAcl>(acls.size());
+        for (ObjectIdentity objectIdentity : objectIdentities) {
+            result.add((MutableAcl) updatedAcls.get(objectIdentity));
+        }
+        return result;
+    }
+
+    /**
+     * Updates the parent, the owner and the inheriting flag of the object identities with a single batch, the same
+     * way as {@link #updateObjectIdentity(MutableAcl)} does that for one ACL.
+     *
+     * @param acls           the ACLs to update their object identities
+     * @param oidPrimaryKeys the ids of {@code acl_object_identity} rows of the ACLs in the same order
+     * @throws NotFoundException if some of the object identities were not found in the database
+     */
+    private void updateObjectIdentities(final List<? extends MutableAcl> acls, final List<Long> oidPrimaryKeys) {
+        final List<Long> parentPrimaryKeys = new ArrayList<Long>(acls.size());
+        final List<Long> ownerPrimaryKeys = new ArrayList<Long>(acls.size());
+        for (MutableAcl acl : acls) {
+            Acl parentAcl = acl.getParentAcl();
+            Long parentPrimaryKey = null;
+            if (parentAcl != null && parentAcl.getId() != null) {
+                parentPrimaryKey = ((Number) parentAcl.getId()).longValue();
+            } else if (parentAcl != null) {
+                parentPrimaryKey = retrieveObjectIdentityPrimaryKey(parentAcl.getObjectIdentity());
+            }
+            parentPrimaryKeys.add(parentPrimaryKey);
+            Assert.notNull(acl.getOwner(), "Owner is required in this implementation");
+            ownerPrimaryKeys.add(createOrRetrieveSidPrimaryKey(acl.getOwner(), true));
+        }
+        int[] updatedRows = jdbcTemplate.batchUpdate(UPDATE_OBJECT_IDENTITY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Long parentPrimaryKey = parentPrimaryKeys.get(i);
+                if (parentPrimaryKey == null) {
+                    ps.setNull(1, Types.BIGINT);
+                } else {
+                    ps.setLong(1, parentPrimaryKey);
+                }
+                ps.setLong(2, ownerPrimaryKeys.get(i));
+                ps.setBoolean(3, acls.get(i).isEntriesInheriting());
+                ps.setLong(4, oidPrimaryKeys.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return acls.size();
+            }
+        });
+        for (int i = 0; i < updatedRows.length; i++) {
+            if (updatedRows[i] != 1 && updatedRows[i] != Statement.SUCCESS_NO_INFO) {
+                throw new NotFoundException("Unable to locate ACL to update: " + acls.get(i).getObjectIdentity());
+            }
+        }
+    }
+
+    /**
+     * Reads the stored entries of the specified object identities. The ids are split into chunks so that the query
+     * doesn't get too long.
+     *
+     * @param oidPrimaryKeys the ids of {@code acl_object_identity} rows to read their entries
+     * @return the stored entries ordered by {@code ace_order} grouped by the id of object identity, object identities
+     *         without entries are absent in the map
+     */
+    private Map<Long, List<StoredAce>> readStoredEntries(List<Long> oidPrimaryKeys) {
+        final Map<Long, List<StoredAce>> storedRows = new HashMap<Long, List<StoredAce>>(oidPrimaryKeys.size() * 2);
+        for (int from = 0; from < oidPrimaryKeys.size(); from += MAX_IDS_IN_QUERY) {
+            List<Long> chunk = oidPrimaryKeys.subList(from, Math.min(from + MAX_IDS_IN_QUERY, oidPrimaryKeys.size()));
+            String query = SELECT_ENTRIES_PREFIX + placeholders(chunk.size()) + SELECT_ENTRIES_SUFFIX;
+            jdbcTemplate.query(query, chunk.toArray(), new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    Long oidPrimaryKey = rs.getLong("acl_object_identity");
+                    List<StoredAce> rowsOfAcl = storedRows.get(oidPrimaryKey);
+                    if (rowsOfAcl == null) {
+                        rowsOfAcl = new ArrayList<StoredAce>();
+                        storedRows.put(oidPrimaryKey, rowsOfAcl);
+                    }
+                    rowsOfAcl.add(new StoredAce(rs.getLong("id"), rs.getInt("ace_order"), rs.getInt("mask"),
+                            rs.getBoolean("granting"), rs.getBoolean("audit_success"),
+                            rs.getBoolean("audit_failure")));
+                }
+            });
+        }
+        return storedRows;
+    }
+
+    /**
+     * Removes the rows that are not present in the ACLs anymore. Must be invoked before the insertion since the new
+     * rows may take the {@code ace_order} of the removed ones.
+     *
+     * @param ids the ids of the rows to be removed
+     */
+    private void deleteEntries(final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(DELETE_ENTRY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, ids.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+    }
+
+    /**
+     * Updates the rows which entries are kept at their places but changed their permission or auditing flags.
+     *
+     * @param entries the entries to update their rows by ids
+     */
+    private void updateEntries(final List<AccessControlEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_ENTRY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                AccessControlEntry entry = entries.get(i);
+                ps.setInt(1, entry.getPermission().getMask());
+                ps.setBoolean(2, entry.isGranting());
+                ps.setBoolean(3, isAuditSuccess(entry));
+                ps.setBoolean(4, isAuditFailure(entry));
+                ps.setLong(5, ((Number) entry.getId()).longValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+    }
+
+    /**
+     * Inserts new rows for the entries that were added to the ACLs or that had to be moved.
+     *
+     * @param changes the changes of the ACL entries
+     */
+    private void insertEntries(final EntryChanges changes) {
+        final List<AccessControlEntry> entries = changes.insertedEntries;
+        if (entries.isEmpty()) {
+            return;
+        }
+        final List<Long> sidPrimaryKeys = new ArrayList<Long>(entries.size());
+        for (AccessControlEntry entry : entries) {
+            sidPrimaryKeys.add(createOrRetrieveSidPrimaryKey(entry.getSid(), true));
+        }
+        jdbcTemplate.batchUpdate(INSERT_ENTRY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                AccessControlEntry entry = entries.get(i);
+                ps.setLong(1, changes.insertedOidPrimaryKeys.get(i));
+                ps.setInt(2, changes.insertedOrders.get(i));
+                ps.setLong(3, sidPrimaryKeys.get(i));
+                ps.setInt(4, entry.getPermission().getMask());
+                ps.setBoolean(5, entry.isGranting());
+                ps.setBoolean(6, isAuditSuccess(entry));
+                ps.setBoolean(7, isAuditFailure(entry));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+    }
+
+    /**
+     * Evicts the ACLs of the specified object identities and of all their children from the cache and tells other
+     * nodes to evict them as well. Is used when ACL rows are changed bypassing this service.
+     *
+     * @param objectIdentities the object identities whose ACLs were changed
+     */
+    public void evictFromCache(@Nonnull Collection<? extends ObjectIdentity> objectIdentities) {
+        Set<ObjectIdentity> evicted = collectWithDescendants(objectIdentities);
+        for (ObjectIdentity each : evicted) {
+            aclCache.evictFromCache(each);
+        }
+        if (invalidationPublisher != null) {
+            invalidationPublisher.invalidate(evicted);
+        }
+    }
+
+    /**
+     * Collects the specified object identities and all their descendants, see {@link #findDescendants(Collection)}.
+     *
+     * @param objectIdentities the object identities to start from
+     * @return the specified object identities followed by their descendants
+     */
+    private Set<ObjectIdentity> collectWithDescendants(Collection<? extends ObjectIdentity> objectIdentities) {
+        Set<ObjectIdentity> collected = new LinkedHashSet<ObjectIdentity>(objectIdentities);
+        List<Long> oidPrimaryKeys = new ArrayList<Long>(objectIdentities.size());
+        for (ObjectIdentity objectIdentity : objectIdentities) {
+            Assert.notNull(objectIdentity, "ObjectIdentity required");
+            Long oidPrimaryKey = retrieveObjectIdentityPrimaryKey(objectIdentity);
+            if (oidPrimaryKey != null) {
+                oidPrimaryKeys.add(oidPrimaryKey);
+            }
+        }
+        collected.addAll(findDescendants(oidPrimaryKeys));
+        return collected;
+    }
+
+    /**
+     * Finds all the descendants of the specified object identities. Unlike {@link #findChildren(ObjectIdentity)} that
+     * issues a query per object identity, the children of the whole level of the tree are selected at once, so the
+     * number of queries depends on the depth of the tree only (and on the amount of ids in the level if it's bigger
+     * than the limit of ids per query).
+     *
+     * @param oidPrimaryKeys the ids of {@code acl_object_identity} rows to find their descendants
+     * @return the descendants of the object identities not including the object identities themselves
+     */
+    private List<ObjectIdentity> findDescendants(Collection<Long> oidPrimaryKeys) {
+        final List<ObjectIdentity> descendants = new ArrayList<ObjectIdentity>();
+        final Set<Long> visited = new HashSet<Long>(oidPrimaryKeys);
+        List<Long> level = new ArrayList<Long>(visited);
+        while (!level.isEmpty()) {
+            final List<Long> nextLevel = new ArrayList<Long>();
+            for (int from = 0; from < level.size(); from += MAX_IDS_IN_QUERY) {
+                List<Long> chunk = level.subList(from, Math.min(from + MAX_IDS_IN_QUERY, level.size()));
+                String query = SELECT_CHILDREN_PREFIX + placeholders(chunk.size()) + ")";
+                jdbcTemplate.query(query, chunk.toArray(), new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        if (visited.add(rs.getLong("id"))) {
+                            nextLevel.add(rs.getLong("id"));
+                            descendants.add(new ObjectIdentityImpl(rs.getString("class"),
+                                    rs.getLong("object_id_identity")));
+                        }
+                    }
+                });
+            }
+            level = nextLevel;
+        }
+        return descendants;
+    }
+
+    /**
+     * Tells other nodes to evict the deleted ACL and, if they were deleted too, its children.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteAcl(ObjectIdentity objectIdentity, boolean deleteChildren) throws ChildrenExistException {
+        if (invalidationPublisher == null) {
+            super.deleteAcl(objectIdentity, deleteChildren);
+            return;
+        }
+        Set<ObjectIdentity> deleted;
+        if (deleteChildren) {
+            deleted = collectWithDescendants(Collections.singletonList(objectIdentity));
+        } else {
+            deleted = Collections.singleton(objectIdentity);
+        }
+        super.deleteAcl(objectIdentity, deleteChildren);
+        invalidationPublisher.invalidate(deleted);
+    }
+
+    private static boolean isAuditSuccess(AccessControlEntry entry) {
+        return entry instanceof AuditableAccessControlEntry && ((AuditableAccessControlEntry) entry).isAuditSuccess();
+    }
+
+    private static boolean isAuditFailure(AccessControlEntry entry) {
+        return entry instanceof AuditableAccessControlEntry && ((AuditableAccessControlEntry) entry).isAuditFailure();
+    }
+
+    /**
+     * Reads all the rows of {@code acl_sid} and {@code acl_class} tables into the {@link AclPrimaryKeyCache}, so that
+     * saving ACLs doesn't need to look up their ids. Should be invoked once when the application starts.
+     */
+    public void preloadPrimaryKeys() {
+        jdbcTemplate.query(SELECT_ALL_SIDS, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                primaryKeyCache.putSid(rs.getLong("id"), rs.getString("sid"), rs.getBoolean("principal"));
+            }
+        });
+        jdbcTemplate.query(SELECT_ALL_CLASSES, new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                primaryKeyCache.putClass(rs.getLong("id"), rs.getString("class"));
+            }
+        });
+    }
+
+    /**
+     * Looks up the id in the {@link AclPrimaryKeyCache} first and queries the database only if it's not there. Ids of
+     * the created rows are cached only after the transaction is committed so that the cache doesn't contain rows that
+     * were rolled back.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    protected Long createOrRetrieveSidPrimaryKey(String sidName, boolean sidIsPrincipal, boolean allowCreate) {
+        Long cached = primaryKeyCache.getSidId(sidName, sidIsPrincipal);
+        if (cached != null) {
+            return cached;
+        }
+        Long existing = super.createOrRetrieveSidPrimaryKey(sidName, sidIsPrincipal, false);
+        if (existing != null) {
+            primaryKeyCache.putSid(existing, sidName, sidIsPrincipal);
+            return existing;
+        }
+        if (!allowCreate) {
+            return null;
+        }
+        final Long created = super.createOrRetrieveSidPrimaryKey(sidName, sidIsPrincipal, true);
+        final String name = sidName;
+        final boolean principal = sidIsPrincipal;
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                primaryKeyCache.putSid(created, name, principal);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Looks up the id in the {@link AclPrimaryKeyCache} first and queries the database only if it's not there.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    protected Long createOrRetrieveClassPrimaryKey(String type, boolean allowCreate) {
+        Long cached = primaryKeyCache.getClassId(type);
+        if (cached != null) {
+            return cached;
+        }
+        Long existing = super.createOrRetrieveClassPrimaryKey(type, false);
+        if (existing != null) {
+            primaryKeyCache.putClass(existing, type);
+            return existing;
+        }
+        if (!allowCreate) {
+            return null;
+        }
+        final Long created = super.createOrRetrieveClassPrimaryKey(type, true);
+        final String className = type;
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                primaryKeyCache.putClass(created, className);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Takes the id of the class from the {@link AclPrimaryKeyCache} and searches the object identity by the class id,
+     * so there is no need to join {@code acl_class} table.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    protected Long retrieveObjectIdentityPrimaryKey(ObjectIdentity oid) {
+        Long classId = createOrRetrieveClassPrimaryKey(oid.getType(), false);
+        if (classId == null) {
+            return null;
+        }
+        List<Long> ids = jdbcTemplate.queryForList(
+                SELECT_OBJECT_IDENTITY_PRIMARY_KEY, new Object[]{classId, oid.getIdentifier()}, Long.class);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * Removes the sid from the {@link AclPrimaryKeyCache} as well since its row is removed from {@code acl_sid}, other
+     * nodes are told to remove it from their caches too.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteEntriesForSid(Sid sid, Sid sidHeir) {
+        super.deleteEntriesForSid(sid, sidHeir);
+        final String sidName = getSidId(sid);
+        final boolean principal = ((UniversalSid) sid).isPrincipal();
+        if (invalidationPublisher != null) {
+            invalidationPublisher.invalidateAll();
+            invalidationPublisher.invalidateSid(sidName, principal);
+        }
+        primaryKeyCache.removeSid(sidName, principal);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                primaryKeyCache.removeSid(sidName, principal);
+            }
+        });
+    }
+
+    /**
+     * Runs the specified action after the current transaction is committed or right away if there is no transaction.
+     *
+     * @param action the action to run
+     */
+    private static void afterCommit(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     /**
      *{@inheritDoc}
      */
@@ -93,4 +623,69 @@ public class JtalksMutableAcService extends JdbcMutableAclService {
     public void setSidFactory(SidFactory sidFactory) {
         this.sidFactory = sidFactory;
     }
+
+    public AclPrimaryKeyCache getPrimaryKeyCache() {
+        return primaryKeyCache;
+    }
+
+    /**
+     * Sets the cache of {@code acl_sid} and {@code acl_class} ids, by default each service has its own cache.
+     *
+     * @param primaryKeyCache the cache of ids of sids and classes
+     */
+    public void setPrimaryKeyCache(AclPrimaryKeyCache primaryKeyCache) {
+        this.primaryKeyCache = primaryKeyCache;
+    }
+
+    /**
+     * Creates the list of JDBC parameter placeholders to be used in the {@code in} clause.
+     *
+     * @param amount the number of parameters
+     * @return the string like {@code ?, ?, ?}
+     */
+    private static String placeholders(int amount) {
+        StringBuilder placeholders = new StringBuilder(amount * 3);
+        for (int i = 0; i < amount; i++) {
+            if (i != 0) {
+                placeholders.append(", ");
+            }
+            placeholders.append('?');
+        }
+        return placeholders.toString();
+    }
+
+    /**
+     * Collects the changes of the entries of several ACLs so that they can be written with a single batch each.
+     */
+    private static class EntryChanges {
+        private final List<Long> deletedIds = new ArrayList<Long>();
+        private final List<AccessControlEntry> updatedEntries = new ArrayList<AccessControlEntry>();
+        private final List<AccessControlEntry> insertedEntries = new ArrayList<AccessControlEntry>();
+        private final List<Long> insertedOidPrimaryKeys = new ArrayList<Long>();
+        private final List<Integer> insertedOrders = new ArrayList<Integer>();
+
+        private void add(Long oidPrimaryKey, AclEntriesDiff diff) {
+            deletedIds.addAll(diff.getDeletedIds());
+            updatedEntries.addAll(diff.getUpdatedEntries());
+            insertedEntries.addAll(diff.getInsertedEntries());
+            insertedOrders.addAll(diff.getInsertedOrders());
+            for (int i = 0; i < diff.getInsertedEntries().size(); i++) {
+                insertedOidPrimaryKeys.add(oidPrimaryKey);
+            }
+        }
+    }
+
+    public AclInvalidationPublisher getInvalidationPublisher() {
+        return invalidationPublisher;
+    }
+
+    /**
+     * Sets the publisher that tells other nodes of the cluster to evict changed ACLs from their caches. Is not needed
+     * if there is only one node.
+     *
+     * @param invalidationPublisher the publisher of ACL invalidations
+     */
+    public void setInvalidationPublisher(AclInvalidationPublisher invalidationPublisher) {
+        this.invalidationPublisher = invalidationPublisher;
+    }
 }
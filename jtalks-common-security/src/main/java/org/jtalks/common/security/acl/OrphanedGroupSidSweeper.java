@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.security.acl.sids.UniversalSid;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes sids of deleted groups from ACL tables. Such sids make {@link GroupAce#getGroup} throw {@link
+ * GroupAce.ObsoleteAclException} on every read of the ACLs they are in. The {@code usergroup} sids are scanned in
+ * chunks, each chunk is checked against {@code GROUPS} with one query and the orphaned sids are removed by {@link
+ * ChunkedSidRemover}, so their entries are deleted in small transactions.
+ * <p/>
+ * Can sweep periodically in background, see {@link #start()}.
+ */
+@ThreadSafe
+public class OrphanedGroupSidSweeper {
+    private static final String SELECT_GROUP_SIDS = "select id, sid from acl_sid where principal = ? and sid like ? "
+            + "and id > ? order by id";
+    private static final String SELECT_EXISTING_GROUPS = "select GROUP_ID from GROUPS where GROUP_ID in (";
+    private static final int DEFAULT_CHUNK_SIZE = 200;
+    private static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ChunkedSidRemover sidRemover;
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate chunkTemplate;
+    private volatile Sid sidHeir;
+    private volatile long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param sidRemover removes orphaned sids
+     * @param dataSource the data source with ACL tables and {@code GROUPS}
+     */
+    public OrphanedGroupSidSweeper(@Nonnull ChunkedSidRemover sidRemover, @Nonnull DataSource dataSource) {
+        this.sidRemover = sidRemover;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.chunkTemplate = new JdbcTemplate(dataSource);
+        this.chunkTemplate.setMaxRows(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Sweeps every {@link #setIntervalMillis(long) interval} on a background daemon thread until {@link #stop()}.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "acl-orphaned-sid-sweeper");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    logger.warn("Sweeping of orphaned group sids failed", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops background sweeping, the chunk being removed is finished since each chunk is a separate transaction.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Scans all the group sids and removes the ones whose groups don't exist anymore.
+     *
+     * @return what was cleaned
+     */
+    public SweepReport sweep() {
+        SweepReport report = new SweepReport();
+        long lastId = 0;
+        Map<Long, String> chunk;
+        while (!(chunk = selectGroupSids(lastId)).isEmpty()) {
+            report.scannedSids += chunk.size();
+            for (String sidName : findOrphaned(chunk.values())) {
+                removeSid(sidName, report);
+            }
+            for (Long id : chunk.keySet()) {
+                lastId = Math.max(lastId, id);
+            }
+        }
+        if (report.removedSids > 0 || report.failedSids > 0) {
+            logger.info("Orphaned group sids are swept: {}", report);
+        }
+        return report;
+    }
+
+    private Map<Long, String> selectGroupSids(long afterId) {
+        final Map<Long, String> sids = new LinkedHashMap<Long, String>();
+        chunkTemplate.query(SELECT_GROUP_SIDS,
+                new Object[]{false, UserGroupSid.SID_PREFIX + UniversalSid.SID_NAME_SEPARATOR + "%", afterId},
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        sids.put(rs.getLong(1), rs.getString(2));
+                    }
+                });
+        return sids;
+    }
+
+    /**
+     * Checks the groups of the sids with one query.
+     *
+     * @param sidNames the names of group sids
+     * @return the names of the sids whose groups don't exist, malformed names are skipped
+     */
+    private List<String> findOrphaned(Iterable<String> sidNames) {
+        Map<Long, String> byGroupId = new LinkedHashMap<Long, String>();
+        for (String sidName : sidNames) {
+            try {
+                byGroupId.put(Long.parseLong(new UserGroupSid(sidName).getGroupId()), sidName);
+            } catch (RuntimeException e) {
+                logger.debug("Skipping group sid with malformed name {}", sidName);
+            }
+        }
+        List<String> orphaned = new ArrayList<String>();
+        if (byGroupId.isEmpty()) {
+            return orphaned;
+        }
+        StringBuilder sql = new StringBuilder(SELECT_EXISTING_GROUPS);
+        for (int i = 0; i < byGroupId.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        Set<Long> existing = new HashSet<Long>(
+                jdbcTemplate.queryForList(sql.toString(), Long.class, byGroupId.keySet().toArray()));
+        for (Map.Entry<Long, String> group : byGroupId.entrySet()) {
+            if (!existing.contains(group.getKey())) {
+                orphaned.add(group.getValue());
+            }
+        }
+        return orphaned;
+    }
+
+    private void removeSid(String sidName, SweepReport report) {
+        try {
+            SidRemovalProgress progress = sidRemover.removeSid(new UserGroupSid(sidName), sidHeir, null);
+            report.removedSids++;
+            report.deletedEntries += progress.getDeletedEntries();
+            report.reassignedObjects += progress.getReassignedObjects();
+        } catch (RuntimeException e) {
+            report.failedSids++;
+            logger.warn("Could not remove orphaned group sid " + sidName, e);
+        }
+    }
+
+    /**
+     * @param sidHeir the sid that becomes the owner of object identities owned by removed sids, sids owning object
+     *                identities are not removed if it's not set
+     */
+    public void setSidHeir(Sid sidHeir) {
+        this.sidHeir = sidHeir;
+    }
+
+    /**
+     * @param chunkSize the number of sids checked against {@code GROUPS} with one query, 200 by default
+     */
+    public void setChunkSize(int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "Chunk size should be positive");
+        chunkTemplate.setMaxRows(chunkSize);
+    }
+
+    /**
+     * @param intervalMillis the delay between background sweeps, 1 hour by default, is applied on {@link #start()}
+     */
+    public void setIntervalMillis(long intervalMillis) {
+        Assert.isTrue(intervalMillis > 0, "Interval should be positive");
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * What was cleaned by one sweep.
+     */
+    public static class SweepReport {
+        private int scannedSids;
+        private int removedSids;
+        private int failedSids;
+        private long deletedEntries;
+        private long reassignedObjects;
+
+        /**
+         * @return the number of group sids checked
+         */
+        public int getScannedSids() {
+            return scannedSids;
+        }
+
+        /**
+         * @return the number of orphaned sids removed
+         */
+        public int getRemovedSids() {
+            return removedSids;
+        }
+
+        /**
+         * @return the number of orphaned sids that could not be removed
+         */
+        public int getFailedSids() {
+            return failedSids;
+        }
+
+        /**
+         * @return the number of entries of orphaned sids deleted
+         */
+        public long getDeletedEntries() {
+            return deletedEntries;
+        }
+
+        /**
+         * @return the number of object identities passed from orphaned sids to the heir
+         */
+        public long getReassignedObjects() {
+            return reassignedObjects;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "scanned " + scannedSids + " sids, removed " + removedSids + " (failed " + failedSids
+                    + "), deleted " + deletedEntries + " entries, reassigned " + reassignedObjects + " objects";
+        }
+    }
+}
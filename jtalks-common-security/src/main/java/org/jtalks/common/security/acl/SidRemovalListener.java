@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Is notified by {@link ChunkedSidRemover} after each committed chunk.
+ */
+public interface SidRemovalListener {
+
+    /**
+     * Is invoked after a chunk is committed and the affected ACLs are evicted from the cache.
+     *
+     * @param progress the progress of the removal so far
+     * @return {@code false} to stop the removal after this chunk, it can be resumed by starting the removal again
+     */
+    boolean onChunkCommitted(@Nonnull SidRemovalProgress progress);
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Shows how far {@link ChunkedSidRemover} has got with removing a sid.
+ */
+@Immutable
+public final class SidRemovalProgress {
+    private final long totalRows;
+    private final long deletedEntries;
+    private final long reassignedObjects;
+    private final boolean finished;
+
+    /**
+     * @param totalRows         the number of entries and owned object identities of the sid when the removal started
+     * @param deletedEntries    the number of deleted {@code acl_entry} rows
+     * @param reassignedObjects the number of {@code acl_object_identity} rows passed to the heir
+     * @param finished          whether the sid itself is removed
+     */
+    public SidRemovalProgress(long totalRows, long deletedEntries, long reassignedObjects, boolean finished) {
+        this.totalRows = totalRows;
+        this.deletedEntries = deletedEntries;
+        this.reassignedObjects = reassignedObjects;
+        this.finished = finished;
+    }
+
+    SidRemovalProgress withDeletedEntries(int count) {
+        return new SidRemovalProgress(totalRows, deletedEntries + count, reassignedObjects, false);
+    }
+
+    SidRemovalProgress withReassignedObjects(int count) {
+        return new SidRemovalProgress(totalRows, deletedEntries, reassignedObjects + count, false);
+    }
+
+    SidRemovalProgress finish() {
+        return new SidRemovalProgress(totalRows, deletedEntries, reassignedObjects, true);
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public long getDeletedEntries() {
+        return deletedEntries;
+    }
+
+    public long getReassignedObjects() {
+        return reassignedObjects;
+    }
+
+    /**
+     * @return the number of processed rows, might be greater than {@link #getTotalRows()} if rows were added during
+     *         the removal
+     */
+    public long getProcessedRows() {
+        return deletedEntries + reassignedObjects;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "SidRemovalProgress{" + getProcessedRows() + " of " + totalRows + " rows, entries=" + deletedEntries
+                + ", objects=" + reassignedObjects + (finished ? ", finished}" : "}");
+    }
+}
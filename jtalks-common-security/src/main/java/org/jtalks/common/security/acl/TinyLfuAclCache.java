@@ -0,0 +1,672 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.util.Assert;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory {@link AclCache} that is bounded by the number of ACLs (or by the number of their entries) and uses
+ * W-TinyLFU eviction policy: new ACLs get into a small LRU window, and when they leave it they compete with the least
+ * recently used ACL of the main space, where the one that was accessed more often according to the
+ * {@link FrequencySketch} survives. Main space is a segmented LRU, ACLs that were read again move to its protected
+ * segment. Thus ACLs of popular branches stay in the cache even if a lot of rarely visited ones are read once.
+ * <p/>
+ * Reads don't block: accesses are buffered and applied to the eviction policy by the thread that manages to take the
+ * lock. If {@link #setRefreshStrategy(LookupStrategy) refresh strategy} and
+ * {@link #setRefreshAfterWriteMillis(long) refresh interval} are set, an ACL that is read when it's older than the
+ * interval is reloaded in background while the readers keep getting the cached one. Number of hits, misses, evictions
+ * and refreshes is counted and can be used to tune the size of the cache. A reloaded ACL is dropped if the entry was
+ * evicted or replaced while it was being reloaded, otherwise an ACL read before a concurrent update is committed could
+ * be put over the updated one.
+ * <p/>
+ * Unlike {@link org.springframework.security.acls.domain.EhCacheBasedAclCache} ACLs are not serialized, so their
+ * authorization and permission granting strategies don't need to be injected back when they are read.
+ */
+@ThreadSafe
+public class TinyLfuAclCache implements AclCache {
+    private static final int READ_BUFFER_LIMIT = 128;
+    private static final double WINDOW_PERCENTAGE = 0.01;
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+    /** Is set when the current thread reloads an ACL, so that the lookup strategy doesn't get it from this cache. */
+    private static final ThreadLocal<Refresh> REFRESHING = new ThreadLocal<Refresh>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ConcurrentMap<ObjectIdentity, Node> byIdentity = new ConcurrentHashMap<ObjectIdentity, Node>();
+    private final ConcurrentMap<Serializable, Node> byId = new ConcurrentHashMap<Serializable, Node>();
+    private final Queue<Node> readBuffer = new ConcurrentLinkedQueue<Node>();
+    private final AtomicInteger pendingReads = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    /* guarded by lock */
+    private final FrequencySketch sketch;
+    private final AccessOrderDeque window = new AccessOrderDeque();
+    private final AccessOrderDeque probation = new AccessOrderDeque();
+    private final AccessOrderDeque protectedSegment = new AccessOrderDeque();
+    private long weightedSize;
+    private long windowWeight;
+    private long protectedWeight;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private volatile boolean weighByEntries;
+    private volatile long refreshAfterWriteNanos;
+    private volatile LookupStrategy refreshStrategy;
+    private volatile Executor refreshExecutor;
+    private ExecutorService ownExecutor;
+
+    /**
+     * @param maximumWeight the maximum number of ACLs in the cache or the maximum number of their entries if
+     *                      {@link #setWeighByEntries(boolean)} is switched on
+     */
+    public TinyLfuAclCache(long maximumWeight) {
+        Assert.isTrue(maximumWeight > 0, "Maximum weight should be positive");
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_PERCENTAGE));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENTAGE);
+        this.sketch = new FrequencySketch(maximumWeight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MutableAcl getFromCache(ObjectIdentity objectIdentity) {
+        Assert.notNull(objectIdentity, "ObjectIdentity required");
+        if (REFRESHING.get() != null) {
+            return null;
+        }
+        return read(byIdentity.get(objectIdentity));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MutableAcl getFromCache(Serializable pk) {
+        Assert.notNull(pk, "Primary key (identifier) required");
+        if (REFRESHING.get() != null) {
+            return null;
+        }
+        return read(byId.get(pk));
+    }
+
+    /**
+     * Puts the ACL and all its parents into the cache, an ACL that was cached for the same object identity is
+     * replaced. When it's invoked by the lookup strategy that reloads an ACL in background, only the reloaded ACL is
+     * put and only if its entry is still the same as when reloading started.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public void putInCache(MutableAcl acl) {
+        Assert.notNull(acl, "Acl required");
+        Assert.notNull(acl.getObjectIdentity(), "ObjectIdentity required");
+        Assert.notNull(acl.getId(), "ID required");
+        Refresh refresh = REFRESHING.get();
+        if (refresh != null && !refresh.node.key.equals(acl.getObjectIdentity())) {
+            return;
+        }
+        if (refresh == null && acl.getParentAcl() instanceof MutableAcl) {
+            putInCache((MutableAcl) acl.getParentAcl());
+        }
+        int weight = weigh(acl);
+        lock.lock();
+        try {
+            drainReadBuffer();
+            Node node = byIdentity.get(acl.getObjectIdentity());
+            if (refresh != null && (node != refresh.node || node.generation != refresh.generation)) {
+                logger.debug("ACL of {} was changed while it was refreshed, the refreshed one is dropped", acl.getObjectIdentity());
+                return;
+            }
+            if (node == null) {
+                Node sameId = byId.get(acl.getId());
+                if (sameId != null) {
+                    removeNode(sameId);
+                }
+                node = new Node(acl.getObjectIdentity(), acl.getId());
+                node.weight = weight;
+                byIdentity.put(node.key, node);
+                window.addLast(node);
+                windowWeight += weight;
+                weightedSize += weight;
+                sketch.increment(node.key);
+            } else {
+                if (!node.id.equals(acl.getId())) {
+                    byId.remove(node.id, node);
+                    node.id = acl.getId();
+                }
+                changeWeight(node, weight);
+                onAccess(node);
+            }
+            node.acl = acl;
+            node.writeTime = System.nanoTime();
+            node.generation++;
+            byId.put(node.id, node);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void evictFromCache(Serializable pk) {
+        Assert.notNull(pk, "Primary key (identifier) required");
+        lock.lock();
+        try {
+            Node node = byId.get(pk);
+            if (node != null) {
+                removeNode(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void evictFromCache(ObjectIdentity objectIdentity) {
+        Assert.notNull(objectIdentity, "ObjectIdentity required");
+        lock.lock();
+        try {
+            Node node = byIdentity.get(objectIdentity);
+            if (node != null) {
+                removeNode(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearCache() {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            for (Node node : byIdentity.values()) {
+                node.alive = false;
+            }
+            byIdentity.clear();
+            byId.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            weightedSize = 0;
+            windowWeight = 0;
+            protectedWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the thread that reloads ACLs if it was created by the cache itself.
+     */
+    public void destroy() {
+        synchronized (this) {
+            if (ownExecutor != null) {
+                ownExecutor.shutdownNow();
+                ownExecutor = null;
+            }
+        }
+    }
+
+    private MutableAcl read(Node node) {
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        MutableAcl acl = node.acl;
+        recordRead(node);
+        refreshIfStale(node);
+        return acl;
+    }
+
+    /**
+     * Buffers the access so that the reader doesn't wait for the lock, the buffer is drained by the thread that takes
+     * the lock. If the buffer is full, the access is not recorded at all which only makes the policy less precise.
+     *
+     * @param node the entry that was read
+     */
+    private void recordRead(Node node) {
+        if (pendingReads.get() < READ_BUFFER_LIMIT) {
+            pendingReads.incrementAndGet();
+            readBuffer.add(node);
+        }
+        if (lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffer() {
+        Node node;
+        while ((node = readBuffer.poll()) != null) {
+            pendingReads.decrementAndGet();
+            if (node.alive) {
+                onAccess(node);
+            }
+        }
+    }
+
+    /**
+     * Moves the entry according to the policy: inside the window and the protected segment it just becomes the most
+     * recently used one, while from the probation segment it's promoted to the protected one.
+     *
+     * @param node the entry that was accessed
+     */
+    private void onAccess(Node node) {
+        sketch.increment(node.key);
+        switch (node.segment) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedSegment.addLast(node);
+                node.segment = Segment.PROTECTED;
+                protectedWeight += node.weight;
+                demoteProtected();
+                break;
+            case PROTECTED:
+                protectedSegment.moveToLast(node);
+                break;
+            default:
+                throw new IllegalStateException("Unknown segment " + node.segment);
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedWeight > protectedMaximum) {
+            Node demoted = protectedSegment.first();
+            if (demoted == null) {
+                break;
+            }
+            protectedSegment.remove(demoted);
+            protectedWeight -= demoted.weight;
+            probation.addLast(demoted);
+            demoted.segment = Segment.PROBATION;
+        }
+    }
+
+    /**
+     * Moves the entries that don't fit into the window to the probation segment and, while the cache is too big,
+     * evicts either the least recently used entry of the probation segment or the one that came from the window,
+     * depending on which of them was accessed more often.
+     */
+    private void evict() {
+        while (windowWeight > windowMaximum) {
+            Node candidate = window.first();
+            window.remove(candidate);
+            windowWeight -= candidate.weight;
+            probation.addLast(candidate);
+            candidate.segment = Segment.PROBATION;
+        }
+        while (weightedSize > maximumWeight) {
+            Node victim = probation.first();
+            Node candidate = probation.last();
+            if (victim == null) {
+                victim = protectedSegment.first() != null ? protectedSegment.first() : window.first();
+                if (victim == null) {
+                    break;
+                }
+            } else if (candidate != victim && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                victim = candidate;
+            }
+            removeNode(victim);
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void removeNode(Node node) {
+        byIdentity.remove(node.key, node);
+        byId.remove(node.id, node);
+        changeWeight(node, 0);
+        segmentOf(node).remove(node);
+        node.alive = false;
+        node.generation++;
+    }
+
+    private void changeWeight(Node node, int weight) {
+        int delta = weight - node.weight;
+        weightedSize += delta;
+        if (node.segment == Segment.WINDOW) {
+            windowWeight += delta;
+        } else if (node.segment == Segment.PROTECTED) {
+            protectedWeight += delta;
+        }
+        node.weight = weight;
+    }
+
+    private AccessOrderDeque segmentOf(Node node) {
+        switch (node.segment) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private int weigh(MutableAcl acl) {
+        return weighByEntries ? 1 + acl.getEntries().size() : 1;
+    }
+
+    /**
+     * Schedules reloading of the ACL if it's older than refresh interval and it's not being reloaded already.
+     *
+     * @param node the entry that was read
+     */
+    private void refreshIfStale(final Node node) {
+        long refreshAfter = refreshAfterWriteNanos;
+        if (refreshAfter <= 0 || refreshStrategy == null || System.nanoTime() - node.writeTime < refreshAfter) {
+            return;
+        }
+        if (node.refreshing.compareAndSet(false, true)) {
+            try {
+                getRefreshExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh(node);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                node.refreshing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Reads the ACL from the database bypassing the cache, the lookup strategy puts the fresh ACL into the cache
+     * itself. The generation of the entry is remembered before reading, so that the ACL is dropped if the entry was
+     * evicted or replaced meanwhile.
+     *
+     * @param node the entry to reload
+     */
+    private void refresh(Node node) {
+        long generation;
+        lock.lock();
+        try {
+            generation = node.generation;
+        } finally {
+            lock.unlock();
+        }
+        REFRESHING.set(new Refresh(node, generation));
+        try {
+            refreshStrategy.readAclsById(Collections.singletonList(node.key), null);
+            refreshCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.warn("Could not refresh ACL of " + node.key, e);
+        } finally {
+            REFRESHING.remove();
+            node.refreshing.set(false);
+        }
+    }
+
+    private Executor getRefreshExecutor() {
+        Executor executor = refreshExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (ownExecutor == null) {
+                ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "acl-cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return ownExecutor;
+        }
+    }
+
+    /**
+     * Defines whether the ACL weighs as much as the number of its entries plus one, otherwise each ACL weighs one and
+     * the maximum weight is just the maximum number of ACLs. Should be set before the cache is used.
+     *
+     * @param weighByEntries whether to take the number of ACL entries into account
+     */
+    public void setWeighByEntries(boolean weighByEntries) {
+        this.weighByEntries = weighByEntries;
+    }
+
+    /**
+     * Sets how long the ACL is considered fresh, when it's read after this time it's reloaded in background. Zero
+     * (default) turns refreshing off.
+     *
+     * @param refreshAfterWriteMillis time in milliseconds after which the ACL should be reloaded
+     */
+    public void setRefreshAfterWriteMillis(long refreshAfterWriteMillis) {
+        this.refreshAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(refreshAfterWriteMillis);
+    }
+
+    /**
+     * Sets the strategy that reloads ACLs from the database, it should put them into this cache. Without it ACLs are
+     * not refreshed.
+     *
+     * @param refreshStrategy the strategy to reload ACLs with
+     */
+    public void setRefreshStrategy(LookupStrategy refreshStrategy) {
+        this.refreshStrategy = refreshStrategy;
+    }
+
+    /**
+     * Sets the executor to reload ACLs in, by default a single daemon thread is created when the first ACL is
+     * refreshed.
+     *
+     * @param refreshExecutor the executor to reload ACLs in
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @return the number of ACLs in the cache
+     */
+    public long getSize() {
+        return byIdentity.size();
+    }
+
+    /**
+     * @return the sum of weights of all the ACLs in the cache
+     */
+    public long getWeightedSize() {
+        lock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * @return the ratio of reads that found the ACL in the cache, {@code 1} if there were no reads yet
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Resets hit, miss, eviction and refresh counters.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+        refreshCount.set(0);
+    }
+
+    private enum Segment {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    /**
+     * Cached ACL along with its position in the eviction policy, the position and the weight are guarded by the lock.
+     */
+    private static final class Node {
+        private final ObjectIdentity key;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile MutableAcl acl;
+        private volatile long writeTime;
+        private volatile boolean alive = true;
+        private Serializable id;
+        private int weight;
+        /** Is incremented each time the ACL is put or the entry is removed. */
+        private long generation;
+        private Segment segment = Segment.WINDOW;
+        private Node prev;
+        private Node next;
+
+        private Node(ObjectIdentity key, Serializable id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+
+    /**
+     * The entry being reloaded by the current thread and its generation at the moment reloading started.
+     */
+    private static final class Refresh {
+        private final Node node;
+        private final long generation;
+
+        private Refresh(Node node, long generation) {
+            this.node = node;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Doubly-linked list of entries from the least recently used to the most recently used one, the links are kept
+     * in the entries themselves so that moving an entry doesn't allocate anything.
+     */
+    private static final class AccessOrderDeque {
+        private Node head;
+        private Node tail;
+
+        Node first() {
+            return head;
+        }
+
+        Node last() {
+            return tail;
+        }
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+}
@@ -15,6 +15,7 @@
 package org.jtalks.common.security.acl;
 
 import org.apache.commons.lang.Validate;
+import org.hibernate.proxy.HibernateProxy;
 import org.jtalks.common.model.entity.*;
 import org.springframework.security.acls.domain.ObjectIdentityImpl;
 import org.springframework.security.acls.model.ObjectIdentity;
@@ -24,6 +25,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import javax.validation.constraints.Min;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * If we don't want to have Object Identity (OID) in the database having the same type as the entity class, we can have
@@ -119,26 +121,74 @@ public class TypeConvertingObjectIdentityGenerator {
      */
     public TypeConvertingObjectIdentityGenerator addConversionRule(Class entityClass, String convertTo) {
         oidClassToTypeMap.put(entityClass, convertTo);
+        resolvedTypes.clear();
         return this;
     }
 
     /**
-     * Iterates through all the conversion rules and searches for the one applicable to the specified entity. If a
-     * conversion rule was set via {@link #addConversionRule(Class, String)} or {@link #setAdditionalConversionRules},
-     * then the string will be returned representing the type of specified object, otherwise a {@link
-     * Class#getSimpleName()} of the specified object will be returned.
+     * Gets the type of the object identity for the specified entity. The type is resolved once per concrete class of
+     * the entity (see {@link #resolveType(Class)}) and then is taken from the memo, so that creating an object identity
+     * doesn't iterate through the rules each time.
      *
      * @param domainObject an object to find its conversion rule or to generate it from its class's simple name
      * @return a type of the object identity according to the conversion rules or the class's simple name if no rule was
      *         found for this entity
      */
     private String getType(Object domainObject) {
+        Class objectClass = domainObject.getClass();
+        String type = resolvedTypes.get(objectClass);
+        if (type == null) {
+            type = resolveType(persistentClassOf(domainObject));
+            resolvedTypes.putIfAbsent(objectClass, type);
+        }
+        return type;
+    }
+
+    /**
+     * Searches for the conversion rule applicable to the specified class. The rules of the class itself and of its
+     * superclasses are checked first starting from the most specific one, then the rules for interfaces are checked.
+     * If a conversion rule was set via {@link #addConversionRule(Class, String)} or {@link
+     * #setAdditionalConversionRules}, then the string will be returned representing the type of specified class,
+     * otherwise a {@link Class#getSimpleName()} of the specified class will be returned.
+     *
+     * @param entityClass the class of an entity (without proxies) to find its conversion rule for
+     * @return a type of the object identity according to the conversion rules or the class's simple name if no rule was
+     *         found for this class
+     */
+    private String resolveType(Class entityClass) {
+        for (Class nextClass = entityClass; nextClass != null; nextClass = nextClass.getSuperclass()) {
+            String type = oidClassToTypeMap.get(nextClass);
+            if (type != null) {
+                return type;
+            }
+        }
         for (Map.Entry<Class, String> nextConversionPair : oidClassToTypeMap.entrySet()) {
-            if (nextConversionPair.getKey().isInstance(domainObject)) {
+            if (nextConversionPair.getKey().isAssignableFrom(entityClass)) {
                 return nextConversionPair.getValue();
             }
         }
-        return domainObject.getClass().getSimpleName();
+        return entityClass.getSimpleName();
+    }
+
+    /**
+     * Gets the class of the entity behind Hibernate proxy (without initializing the proxy) or behind any other
+     * generated subclass like {@code Branch_$$_javassist_1}, so that the simple name of the proxy class is not used as
+     * the type.
+     *
+     * @param domainObject the entity or its proxy
+     * @return the class of the entity itself
+     */
+    private static Class persistentClassOf(Object domainObject) {
+        Class entityClass;
+        if (domainObject instanceof HibernateProxy) {
+            entityClass = ((HibernateProxy) domainObject).getHibernateLazyInitializer().getPersistentClass();
+        } else {
+            entityClass = domainObject.getClass();
+        }
+        while (entityClass.getName().contains("$$") && entityClass.getSuperclass() != null) {
+            entityClass = entityClass.getSuperclass();
+        }
+        return entityClass;
     }
 
     /**
@@ -149,7 +199,12 @@ public class TypeConvertingObjectIdentityGenerator {
      */
     public void setAdditionalConversionRules(@Nonnull Map<Class, String> oidClassToTypeMap) {
         this.oidClassToTypeMap.putAll(oidClassToTypeMap);
+        resolvedTypes.clear();
     }
 
     private final Map<Class, String> oidClassToTypeMap = new ConcurrentHashMap<Class, String>();
+    /**
+     * Types already resolved for concrete classes of entities (including proxy classes), is cleared when rules change.
+     */
+    private final ConcurrentMap<Class, String> resolvedTypes = new ConcurrentHashMap<Class, String>();
 }
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.domain.AuditLogger;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.AuditableAccessControlEntry;
+import org.springframework.util.Assert;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link AuditLogger} that doesn't slow down permission checks: the thread that checks the permission only puts the
+ * event into a bounded lock-free buffer, and a background thread writes the events to the {@link AuditSink} in
+ * batches. When the buffer can't keep up, events are dropped or sampled according to the {@link OverflowPolicy}
+ * rather than blocking the checking thread; the number of dropped events is counted.
+ * <p/>
+ * Decides what to audit the same way as {@link org.springframework.security.acls.domain.ConsoleAuditLogger}: granted
+ * decisions of the entries with {@code audit_success} and denied decisions of the entries with {@code audit_failure}.
+ * Should be started with {@link #start()} and stopped with {@link #stop()}, events left in the buffer are written
+ * when the logger stops.
+ */
+@ThreadSafe
+public class AsyncAuditLogger implements AuditLogger {
+    /**
+     * What to do with the events when the buffer is getting full.
+     */
+    public enum OverflowPolicy {
+        /** Accept all the events while there is a room in the buffer, drop new events when it's full. */
+        DROP,
+        /**
+         * When the buffer is more than half full, accept only every n-th event (see {@link #setSampleRate(int)}), so
+         * that the log still represents all kinds of decisions made during a spike. Events are dropped when the
+         * buffer is full.
+         */
+        SAMPLE
+    }
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    private static final int DEFAULT_SAMPLE_RATE = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final AuditSink sink;
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final AtomicLong offeredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private volatile boolean running;
+    private Thread writer;
+
+    /**
+     * Creates a logger with the buffer for 8192 events.
+     *
+     * @param sink the storage to write the events to
+     */
+    public AsyncAuditLogger(AuditSink sink) {
+        this(sink, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param sink     the storage to write the events to
+     * @param capacity the number of events the buffer can keep, is rounded up to a power of two
+     */
+    public AsyncAuditLogger(AuditSink sink, int capacity) {
+        Assert.notNull(sink, "Audit sink required");
+        Assert.isTrue(capacity > 0, "Capacity should be positive");
+        this.sink = sink;
+        this.buffer = new AuditRingBuffer<AuditEvent>(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void logIfNeeded(boolean granted, AccessControlEntry ace) {
+        Assert.notNull(ace, "AccessControlEntry required");
+        if (!(ace instanceof AuditableAccessControlEntry)) {
+            return;
+        }
+        AuditableAccessControlEntry auditableAce = (AuditableAccessControlEntry) ace;
+        if (granted ? auditableAce.isAuditSuccess() : auditableAce.isAuditFailure()) {
+            log(AuditEvent.of(granted, ace));
+        }
+    }
+
+    /**
+     * Puts the event into the buffer unless it's full or the event is sampled out.
+     *
+     * @param event the event to write
+     * @return {@code true} if the event was accepted
+     */
+    boolean log(AuditEvent event) {
+        long sequence = offeredCount.getAndIncrement();
+        if (overflowPolicy == OverflowPolicy.SAMPLE && buffer.size() > buffer.capacity() / 2
+                && sequence % sampleRate != 0) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        if (!buffer.offer(event)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts the thread that writes the events to the sink.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeUntilStopped();
+            }
+        }, "acl-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread, writes the events that are left in the buffer and closes the sink.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    private void writeUntilStopped() {
+        List<AuditEvent> batch = new ArrayList<AuditEvent>(batchSize);
+        while (running) {
+            if (writeBatch(batch) == 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            }
+        }
+        while (writeBatch(batch) > 0) {
+            //write what's left in the buffer
+        }
+        try {
+            sink.close();
+        } catch (RuntimeException e) {
+            logger.warn("Could not close audit sink", e);
+        }
+    }
+
+    /**
+     * Takes the next batch from the buffer and writes it to the sink.
+     *
+     * @param batch the list to reuse for the batch
+     * @return the number of events taken from the buffer
+     */
+    int writeBatch(List<AuditEvent> batch) {
+        batch.clear();
+        int count = buffer.drainTo(batch, batchSize);
+        if (count > 0) {
+            try {
+                sink.write(batch);
+                writtenCount.addAndGet(count);
+            } catch (RuntimeException e) {
+                logger.error("Could not write " + count + " audit events", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param overflowPolicy what to do with the events when the buffer is getting full, {@link OverflowPolicy#DROP}
+     *                       by default
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        Assert.notNull(overflowPolicy, "Overflow policy required");
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @param sampleRate every which event is accepted when {@link OverflowPolicy#SAMPLE} is used and the buffer is
+     *                   more than half full, 10 by default
+     */
+    public void setSampleRate(int sampleRate) {
+        Assert.isTrue(sampleRate > 0, "Sample rate should be positive");
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param batchSize the maximum number of events written to the sink at once, 256 by default
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size should be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param flushIntervalMillis how long the writer waits for new events when the buffer is empty, 200 by default
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full or sampled out
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of events written to the sink
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+}
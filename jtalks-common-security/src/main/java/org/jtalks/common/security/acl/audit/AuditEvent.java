@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import org.jtalks.common.security.acl.sids.UniversalSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+
+/**
+ * A permission decision that should be audited. Copies everything it needs from the ACL entry when it's created, so
+ * that the entry can be changed or garbage collected while the event waits to be written.
+ */
+@Immutable
+public final class AuditEvent {
+    private final long timestamp;
+    private final boolean granted;
+    private final Serializable aceId;
+    private final String objectType;
+    private final Serializable objectId;
+    private final String sid;
+    private final int mask;
+
+    /**
+     * @param timestamp  time of the decision in milliseconds since epoch
+     * @param granted    whether the permission was granted
+     * @param aceId      id of the entry that made the decision
+     * @param objectType type of the secured object
+     * @param objectId   id of the secured object
+     * @param sid        the sid of the entry
+     * @param mask       the mask of the entry
+     */
+    public AuditEvent(long timestamp, boolean granted, Serializable aceId, String objectType, Serializable objectId,
+                      String sid, int mask) {
+        this.timestamp = timestamp;
+        this.granted = granted;
+        this.aceId = aceId;
+        this.objectType = objectType;
+        this.objectId = objectId;
+        this.sid = sid;
+        this.mask = mask;
+    }
+
+    /**
+     * Creates an event of the decision made by the specified entry right now.
+     *
+     * @param granted whether the permission was granted
+     * @param ace     the entry that made the decision
+     * @return the event describing the decision
+     */
+    public static AuditEvent of(boolean granted, @Nonnull AccessControlEntry ace) {
+        Acl acl = ace.getAcl();
+        ObjectIdentity objectIdentity = acl == null ? null : acl.getObjectIdentity();
+        return new AuditEvent(System.currentTimeMillis(), granted, ace.getId(),
+                objectIdentity == null ? null : objectIdentity.getType(),
+                objectIdentity == null ? null : objectIdentity.getIdentifier(),
+                sidName(ace.getSid()), ace.getPermission().getMask());
+    }
+
+    private static String sidName(Sid sid) {
+        if (sid instanceof UniversalSid) {
+            return ((UniversalSid) sid).getSidId();
+        }
+        return String.valueOf(sid);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isGranted() {
+        return granted;
+    }
+
+    public Serializable getAceId() {
+        return aceId;
+    }
+
+    public String getObjectType() {
+        return objectType;
+    }
+
+    public Serializable getObjectId() {
+        return objectId;
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return (granted ? "GRANTED" : "DENIED") + " due to ACE: id=" + aceId + ", object=" + objectType + ":"
+                + objectId + ", sid=" + sid + ", mask=" + mask;
+    }
+}
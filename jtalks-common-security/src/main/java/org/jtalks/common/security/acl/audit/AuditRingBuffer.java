@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer. Producers claim a slot by incrementing the tail
+ * with CAS and then publish the element into it, the consumer takes elements in order and stops at the first slot
+ * that is claimed but not published yet. Producers never wait: if the buffer is full, the element is rejected.
+ *
+ * @param <E> type of the elements
+ */
+@ThreadSafe
+class AuditRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    /** Is written by the consumer only. */
+    private volatile long head;
+
+    /**
+     * @param capacity the minimum number of elements the buffer can keep, is rounded up to a power of two
+     */
+    AuditRingBuffer(int capacity) {
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1));
+        slots = new AtomicReferenceArray<E>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds the element unless the buffer is full.
+     *
+     * @param element the element to add
+     * @return {@code false} if the buffer is full and the element was not added
+     */
+    boolean offer(E element) {
+        while (true) {
+            long currentTail = tail.get();
+            if (currentTail - head >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                slots.lazySet((int) currentTail & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves published elements to the list, may be invoked only by one thread at a time.
+     *
+     * @param target   the list to add the elements to
+     * @param maxCount the maximum number of elements to take
+     * @return the number of taken elements
+     */
+    int drainTo(List<E> target, int maxCount) {
+        long currentHead = head;
+        int count = 0;
+        while (count < maxCount) {
+            int index = (int) currentHead & mask;
+            E element = slots.get(index);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            target.add(element);
+            currentHead++;
+            count++;
+        }
+        head = currentHead;
+        return count;
+    }
+
+    /**
+     * @return approximate number of elements in the buffer, including the ones that are not published yet
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * The storage audit events are written to by {@link AsyncAuditLogger}. Is invoked from a single background thread, so
+ * implementations don't need to be thread safe.
+ */
+public interface AuditSink {
+
+    /**
+     * Writes the batch of events.
+     *
+     * @param events the events to write, never empty; the list is reused after the method returns, so it shouldn't
+     *               be kept
+     */
+    void write(@Nonnull List<AuditEvent> events);
+
+    /**
+     * Releases the resources of the sink, is invoked when the logger is stopped after the last batch is written.
+     */
+    void close();
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.annotation.Nonnull;
+import javax.sql.DataSource;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Writes audit events to {@code acl_audit} table with one batch insert per batch of events. The table is created by
+ * the {@code V23__ACL_audit_table} migration. Is the default sink of the {@code auditLogger} bean.
+ */
+public class JdbcAuditSink implements AuditSink {
+    private static final String INSERT_EVENT = "insert into acl_audit "
+            + "(event_time, granted, ace_id, object_type, object_id, sid, mask) values (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param dataSource the data source with {@code acl_audit} table
+     */
+    public JdbcAuditSink(@Nonnull DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(@Nonnull final List<AuditEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT_EVENT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                AuditEvent event = events.get(i);
+                ps.setTimestamp(1, new Timestamp(event.getTimestamp()));
+                ps.setBoolean(2, event.isGranted());
+                setLong(ps, 3, event.getAceId());
+                ps.setString(4, event.getObjectType());
+                setLong(ps, 5, event.getObjectId());
+                ps.setString(6, event.getSid());
+                ps.setInt(7, event.getMask());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return events.size();
+            }
+        });
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Serializable value) throws SQLException {
+        if (value instanceof Number) {
+            ps.setLong(index, ((Number) value).longValue());
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        //connections are managed by the data source
+    }
+}
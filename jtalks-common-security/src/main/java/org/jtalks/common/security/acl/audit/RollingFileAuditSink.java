@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import org.springframework.util.Assert;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes audit events to a text file, one event per line. When the file grows bigger than the maximum size, it's
+ * renamed to {@code <name>.1} (the previous {@code <name>.1} becomes {@code <name>.2} and so on) and a new file is
+ * started; only the specified number of old files is kept.
+ */
+@NotThreadSafe
+public class RollingFileAuditSink implements AuditSink {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+    private static final int DEFAULT_MAX_BACKUPS = 5;
+
+    private final File file;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final StringBuilder line = new StringBuilder(128);
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+    private int maxBackups = DEFAULT_MAX_BACKUPS;
+    private Writer writer;
+    private long fileSize;
+
+    /**
+     * @param fileName the path to the file to write the events to, its directory is created if needed; there is no
+     *                 default location since the events shouldn't end up in a temporary directory that is cleaned up
+     *                 or readable by other users
+     */
+    public RollingFileAuditSink(@Nonnull String fileName) {
+        Assert.hasText(fileName, "File name required");
+        this.file = new File(fileName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(@Nonnull List<AuditEvent> events) {
+        try {
+            for (AuditEvent event : events) {
+                if (writer == null || fileSize >= maxFileSize) {
+                    roll();
+                }
+                line.setLength(0);
+                line.append(dateFormat.format(new Date(event.getTimestamp()))).append(' ').append(event).append('\n');
+                writer.write(line.toString());
+                fileSize += line.length();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new IllegalStateException("Could not write audit events to " + file, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        closeQuietly();
+    }
+
+    /**
+     * Opens the file for appending, if it's already too big, moves it to backups first.
+     *
+     * @throws IOException if the file can't be opened
+     */
+    private void roll() throws IOException {
+        closeQuietly();
+        if (file.length() >= maxFileSize) {
+            shiftBackups();
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        fileSize = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+    }
+
+    private void shiftBackups() {
+        new File(file.getPath() + "." + maxBackups).delete();
+        for (int i = maxBackups - 1; i >= 1; i--) {
+            File backup = new File(file.getPath() + "." + i);
+            if (backup.exists()) {
+                backup.renameTo(new File(file.getPath() + "." + (i + 1)));
+            }
+        }
+        if (maxBackups > 0) {
+            file.renameTo(new File(file.getPath() + ".1"));
+        } else {
+            file.delete();
+        }
+    }
+
+    private void closeQuietly() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                //nothing to do, the file will be reopened
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * @param maxFileSize the size in bytes after which the file is rolled, 10 MB by default
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        Assert.isTrue(maxFileSize > 0, "Maximum file size should be positive");
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * @param maxBackups the number of rolled files to keep, 5 by default
+     */
+    public void setMaxBackups(int maxBackups) {
+        Assert.isTrue(maxBackups >= 0, "Number of backups can't be negative");
+        this.maxBackups = maxBackups;
+    }
+}
@@ -17,6 +17,7 @@ package org.jtalks.common.security.acl.builders;
 import org.jtalks.common.model.entity.Entity;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 
 /**
  * A step while creating/modifying ACL structure to assign the permissions on some object identity (like branch, topic,
@@ -30,11 +31,21 @@ import javax.annotation.Nonnull;
  */
 public interface AclOn {
     /**
-     * This method states for what object the SID will get a permission. Object Identity (or secured object) is always
-     * some object SIDs can do something with, e.g. it can be a branch, or a topic, or a post, or anything else.
+     * This method states for what objects the SID will get a permission. Object Identity (or secured object) is always
+     * some object SIDs can do something with, e.g. it can be a branch, or a topic, or a post, or anything else. If
+     * several objects are specified, the permissions are changed on all of them during the same flush.
      *
-     * @param objectIdentity the secured object to set permissions to make actions on it
+     * @param objectIdentities the secured objects to set permissions to make actions on them
      * @return the next step of the chain - flushing the changes to the database
      */
-    AclFlush on(@Nonnull Entity objectIdentity);
+    AclFlush on(@Nonnull Entity... objectIdentities);
+
+    /**
+     * The same as {@link #on(Entity...)}, but takes the secured objects as a collection, which is handy when they were
+     * loaded from the database, e.g. all the branches of some section.
+     *
+     * @param objectIdentities the secured objects to set permissions to make actions on them
+     * @return the next step of the chain - flushing the changes to the database
+     */
+    AclFlush on(@Nonnull Collection<? extends Entity> objectIdentities);
 }
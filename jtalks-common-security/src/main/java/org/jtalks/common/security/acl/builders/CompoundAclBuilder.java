@@ -24,6 +24,7 @@ import org.springframework.security.acls.model.Sid;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,9 +39,9 @@ import java.util.List;
 public class CompoundAclBuilder<T extends Entity> implements AclAction<T>, AclTo<T>, AclFrom<T>, AclOn, AclFlush {
     private final List<Permission> permissions = new ArrayList<Permission>();
     private final List<Sid> sids = new ArrayList<Sid>();
+    private final List<Entity> objectIdentities = new ArrayList<Entity>();
     private final AclManager aclManager;
     private JtalksSidFactory sidFactory = new JtalksSidFactory();
-    private Entity objectIdentity;
     private Actions action;
 
     /**
@@ -103,16 +104,37 @@ public class CompoundAclBuilder<T extends Entity> implements AclAction<T>, AclTo
      * {@inheritDoc}
      */
     @Override
-    public AclFlush on(@Nonnull Entity objectIdentity) {
-        this.objectIdentity = objectIdentity;
-        return this;
+    public AclFlush on(@Nonnull Entity... objectIdentities) {
+        return on(Arrays.asList(objectIdentities));
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
+    public AclFlush on(@Nonnull Collection<? extends Entity> objectIdentities) {
+        this.objectIdentities.addAll(objectIdentities);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc} If the permissions are set on a single object, they are flushed the same way as before, otherwise
+     * the ACLs of all the objects are read, changed and saved together.
+     */
+    @Override
     public void flush() {
+        if (objectIdentities.size() == 1) {
+            flush(objectIdentities.get(0));
+        } else if (action == Actions.GRANT) {
+            aclManager.grant(clone(sids), clone(permissions), clone(objectIdentities));
+        } else if (action == Actions.RESTRICT) {
+            aclManager.restrict(clone(sids), clone(permissions), clone(objectIdentities));
+        } else {
+            aclManager.delete(clone(sids), clone(permissions), clone(objectIdentities));
+        }
+    }
+
+    private void flush(Entity objectIdentity) {
         if (action == Actions.GRANT) {
             aclManager.grant(clone(sids), clone(permissions), objectIdentity);
         } else if (action == Actions.RESTRICT) {
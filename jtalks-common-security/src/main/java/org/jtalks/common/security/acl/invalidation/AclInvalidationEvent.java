@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.invalidation;
+
+import org.springframework.security.acls.model.ObjectIdentity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tells other nodes which ACLs were changed so that they evict them from their caches, and which sids were removed so
+ * that they forget the ids of those sids. Is serializable so that transports can send it as is.
+ */
+@Immutable
+public final class AclInvalidationEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String originNodeId;
+    private final List<ObjectIdentity> objectIdentities;
+    private final boolean all;
+    private final List<RemovedSid> removedSids;
+
+    private AclInvalidationEvent(String originNodeId, List<ObjectIdentity> objectIdentities, boolean all,
+                                 List<RemovedSid> removedSids) {
+        this.originNodeId = originNodeId;
+        this.objectIdentities = objectIdentities;
+        this.all = all;
+        this.removedSids = removedSids;
+    }
+
+    /**
+     * Creates an event that invalidates ACLs of the specified object identities.
+     *
+     * @param originNodeId     the id of the node that changed the ACLs
+     * @param objectIdentities the object identities whose ACLs were changed
+     * @return the event to publish
+     */
+    public static AclInvalidationEvent of(@Nonnull String originNodeId,
+                                          @Nonnull Collection<? extends ObjectIdentity> objectIdentities) {
+        List<ObjectIdentity> copy = Collections.unmodifiableList(new ArrayList<ObjectIdentity>(objectIdentities));
+        return new AclInvalidationEvent(originNodeId, copy, false, Collections.<RemovedSid>emptyList());
+    }
+
+    /**
+     * Creates an event that invalidates all the cached ACLs, is used when it's not known which ACLs were changed.
+     *
+     * @param originNodeId the id of the node that changed the ACLs
+     * @return the event to publish
+     */
+    public static AclInvalidationEvent ofAll(@Nonnull String originNodeId) {
+        return new AclInvalidationEvent(originNodeId, Collections.<ObjectIdentity>emptyList(), true,
+                Collections.<RemovedSid>emptyList());
+    }
+
+    /**
+     * Creates the same event that also tells about the specified removed sids.
+     *
+     * @param removedSids the sids that were removed from {@code acl_sid}
+     * @return the new event with the removed sids
+     */
+    public AclInvalidationEvent withRemovedSids(@Nonnull Collection<RemovedSid> removedSids) {
+        List<RemovedSid> copy = Collections.unmodifiableList(new ArrayList<RemovedSid>(removedSids));
+        return new AclInvalidationEvent(originNodeId, objectIdentities, all, copy);
+    }
+
+    public String getOriginNodeId() {
+        return originNodeId;
+    }
+
+    /**
+     * @return the object identities whose ACLs should be evicted, empty if {@link #isAll()}
+     */
+    public List<ObjectIdentity> getObjectIdentities() {
+        return objectIdentities;
+    }
+
+    /**
+     * @return {@code true} if the whole cache should be cleared
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    /**
+     * @return the sids that were removed, their ids should be forgotten, is empty if no sids were removed
+     */
+    public List<RemovedSid> getRemovedSids() {
+        return removedSids;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "AclInvalidationEvent{origin=" + originNodeId + (all ? ", all" : ", " + objectIdentities)
+                + (removedSids.isEmpty() ? "" : ", removed sids " + removedSids) + "}";
+    }
+
+    /**
+     * The name of the removed sid along with whether it's a principal, the same as a row of {@code acl_sid} has.
+     */
+    @Immutable
+    public static final class RemovedSid implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final boolean principal;
+
+        /**
+         * @param name      the name of the sid, {@code acl_sid.sid}
+         * @param principal whether the sid is a principal, {@code acl_sid.principal}
+         */
+        public RemovedSid(@Nonnull String name, boolean principal) {
+            this.name = name;
+            this.principal = principal;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isPrincipal() {
+            return principal;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RemovedSid that = (RemovedSid) o;
+            return principal == that.principal && name.equals(that.name);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + (principal ? 1 : 0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.invalidation;
+
+import org.jtalks.common.security.acl.AclPrimaryKeyCache;
+import org.jtalks.common.security.acl.invalidation.AclInvalidationEvent.RemovedSid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Tells other nodes of the cluster which ACLs were changed on this node and evicts from the local cache the ACLs
+ * changed on other nodes. Invalidations made during a transaction are collected and sent in one event after the
+ * transaction is committed, so a bulk grant results in one broadcast and other nodes don't reload ACLs that are not
+ * committed yet. Nothing is sent if the transaction is rolled back.
+ * <p/>
+ * The publisher doesn't evict ACLs from the local cache itself, it's done by
+ * {@link org.jtalks.common.security.acl.JtalksMutableAcService} right away; events published by this node are ignored
+ * when they are delivered back.
+ * <p/>
+ * Removed sids are published the same way, other nodes remove them from their {@link AclPrimaryKeyCache} if it's
+ * {@link #setPrimaryKeyCache(AclPrimaryKeyCache) set}, otherwise they would keep using the id of the deleted row.
+ */
+public class AclInvalidationPublisher implements AclInvalidationListener {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AclCache aclCache;
+    private final AclInvalidationTransport transport;
+    private AclPrimaryKeyCache primaryKeyCache;
+
+    /**
+     * @param aclCache  local cache to evict the ACLs changed on other nodes from
+     * @param transport the transport to send and receive the events with, the publisher subscribes to it
+     */
+    public AclInvalidationPublisher(@Nonnull AclCache aclCache, @Nonnull AclInvalidationTransport transport) {
+        this.aclCache = aclCache;
+        this.transport = transport;
+        transport.subscribe(this);
+    }
+
+    /**
+     * Tells other nodes to evict the ACLs of the specified object identities, if there is a transaction, the event is
+     * sent after it's committed along with other invalidations of the same transaction.
+     *
+     * @param objectIdentities the object identities whose ACLs were changed
+     */
+    public void invalidate(@Nonnull Collection<? extends ObjectIdentity> objectIdentities) {
+        if (objectIdentities.isEmpty()) {
+            return;
+        }
+        PendingInvalidations pending = getPendingInvalidations();
+        if (pending == null) {
+            publish(AclInvalidationEvent.of(nodeId, objectIdentities));
+        } else {
+            pending.objectIdentities.addAll(objectIdentities);
+        }
+    }
+
+    /**
+     * Tells other nodes to clear their caches completely, is used when it's not known which ACLs were changed.
+     */
+    public void invalidateAll() {
+        PendingInvalidations pending = getPendingInvalidations();
+        if (pending == null) {
+            publish(AclInvalidationEvent.ofAll(nodeId));
+        } else {
+            pending.all = true;
+        }
+    }
+
+    /**
+     * Tells other nodes that the sid was removed from {@code acl_sid}, so that they remove it from their {@link
+     * AclPrimaryKeyCache}. If there is a transaction, the event is sent after it's committed along with other
+     * invalidations of the same transaction.
+     *
+     * @param sidName   the name of the removed sid
+     * @param principal whether the removed sid is a principal
+     */
+    public void invalidateSid(@Nonnull String sidName, boolean principal) {
+        RemovedSid removedSid = new RemovedSid(sidName, principal);
+        PendingInvalidations pending = getPendingInvalidations();
+        if (pending == null) {
+            publish(AclInvalidationEvent.of(nodeId, Collections.<ObjectIdentity>emptyList())
+                    .withRemovedSids(Collections.singletonList(removedSid)));
+        } else {
+            pending.removedSids.add(removedSid);
+        }
+    }
+
+    /**
+     * Evicts the ACLs changed on other nodes from the local cache and forgets the ids of the sids removed on them.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public void onInvalidation(@Nonnull AclInvalidationEvent event) {
+        if (nodeId.equals(event.getOriginNodeId())) {
+            return;
+        }
+        if (primaryKeyCache != null) {
+            for (RemovedSid removedSid : event.getRemovedSids()) {
+                primaryKeyCache.removeSid(removedSid.getName(), removedSid.isPrincipal());
+            }
+        }
+        if (event.isAll()) {
+            aclCache.clearCache();
+        } else {
+            for (ObjectIdentity objectIdentity : event.getObjectIdentities()) {
+                aclCache.evictFromCache(objectIdentity);
+            }
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Sets the cache of sid ids to remove the sids removed on other nodes from, should be the same cache that {@link
+     * org.jtalks.common.security.acl.JtalksMutableAcService} of this node uses.
+     *
+     * @param primaryKeyCache the cache of {@code acl_sid} and {@code acl_class} ids of this node
+     */
+    public void setPrimaryKeyCache(AclPrimaryKeyCache primaryKeyCache) {
+        this.primaryKeyCache = primaryKeyCache;
+    }
+
+    /**
+     * Gets the invalidations collected during current transaction, the first invocation within the transaction
+     * registers the synchronization that sends them after commit.
+     *
+     * @return the invalidations of current transaction or {@code null} if there is no transaction
+     */
+    private PendingInvalidations getPendingInvalidations() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        PendingInvalidations pending = (PendingInvalidations) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            final PendingInvalidations created = new PendingInvalidations();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    publish(created.toEvent(nodeId));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AclInvalidationPublisher.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private void publish(AclInvalidationEvent event) {
+        try {
+            transport.publish(event);
+        } catch (RuntimeException e) {
+            logger.error("Could not publish " + event + ", other nodes may use stale ACLs", e);
+        }
+    }
+
+    /**
+     * Invalidations collected during one transaction.
+     */
+    private static final class PendingInvalidations {
+        private final Set<ObjectIdentity> objectIdentities = new LinkedHashSet<ObjectIdentity>();
+        private final Set<RemovedSid> removedSids = new LinkedHashSet<RemovedSid>();
+        private boolean all;
+
+        private AclInvalidationEvent toEvent(String nodeId) {
+            AclInvalidationEvent event = all
+                    ? AclInvalidationEvent.ofAll(nodeId) : AclInvalidationEvent.of(nodeId, objectIdentities);
+            return event.withRemovedSids(removedSids);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.invalidation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Delivers ACL invalidation events between the nodes of the cluster. Implement it on top of whatever message bus the
+ * nodes share (JMS topic, Redis pub/sub, JGroups, etc.). Implementations should deliver the event to all the
+ * subscribed listeners of all the nodes, delivering it back to the publishing node is allowed.
+ *
+ * @see LoopbackAclInvalidationTransport
+ */
+public interface AclInvalidationTransport {
+
+    /**
+     * Sends the event to all the nodes. Shouldn't block for long since it's invoked after the transaction that
+     * changed ACLs is committed.
+     *
+     * @param event the event to send
+     */
+    void publish(@Nonnull AclInvalidationEvent event);
+
+    /**
+     * Registers the listener that should receive the events published by all the nodes.
+     *
+     * @param listener the listener to deliver the events to
+     */
+    void subscribe(@Nonnull AclInvalidationListener listener);
+}
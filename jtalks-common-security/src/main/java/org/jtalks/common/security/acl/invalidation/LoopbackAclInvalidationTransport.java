@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the events to the listeners in the same JVM synchronously. Is useful for a single node and for tests where
+ * several nodes are emulated by several services sharing one transport.
+ */
+@ThreadSafe
+public class LoopbackAclInvalidationTransport implements AclInvalidationTransport {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final List<AclInvalidationListener> listeners = new CopyOnWriteArrayList<AclInvalidationListener>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(@Nonnull AclInvalidationEvent event) {
+        for (AclInvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(event);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failed to process " + event, e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(@Nonnull AclInvalidationListener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.sids;
+
+import com.google.common.collect.MapMaker;
+import org.jtalks.common.model.entity.Entity;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.entity.User;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates the same sids as {@link JtalksSidFactory} does, but shares them: a sid is created once and then returned
+ * while anything (e.g. a cached ACL) refers to it. Names of custom sids are parsed with a single look-up of the
+ * separator and their numeric ids are kept as {@code long} keys, so getting a frequent sid like a group or {@link
+ * UserSid#createAnonymous() anonymous user} takes no parsing or allocation of a new sid. Sids are immutable, so sharing
+ * them is safe.
+ */
+@ThreadSafe
+public class InterningSidFactory extends JtalksSidFactory {
+    /** Weak values: a sid is dropped once nothing but the factory refers to it. */
+    private final ConcurrentMap<Long, UserSid> users = new MapMaker().weakValues().makeMap();
+    private final ConcurrentMap<Long, UserGroupSid> groups = new MapMaker().weakValues().makeMap();
+    private final ConcurrentMap<String, PrincipalSid> principals = new MapMaker().weakValues().makeMap();
+    private final ConcurrentMap<String, GrantedAuthoritySid> authorities = new MapMaker().weakValues().makeMap();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Sid create(@Nonnull String sidName, boolean principal) {
+        int separator = sidName.indexOf(UniversalSid.SID_NAME_SEPARATOR_CHAR);
+        if (separator > 0) {
+            long id = SidNames.parseId(sidName, separator + 1);
+            if (isPrefix(sidName, separator, UserGroupSid.SID_PREFIX)) {
+                if (id >= 0) {
+                    return getGroup(id);
+                }
+            } else if (isPrefix(sidName, separator, UserSid.SID_PREFIX)) {
+                if (id >= 0) {
+                    return getUser(id);
+                }
+                if (sidName.equals(AnonymousUserSid.ANONYMOUS_USER_SID_ID)) {
+                    return UserSid.createAnonymous();
+                }
+            }
+        }
+        Sid sid = super.create(sidName, principal);
+        if (sid instanceof UniversalSid) {
+            return sid;
+        }
+        return principal ? getPrincipal(sidName) : getAuthority(sidName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Sid createPrincipal(Authentication authentication) {
+        Object principal = authentication.getPrincipal();
+        if (principal instanceof User) {
+            return getUser(((User) principal).getId());
+        } else if (UserSid.isAnonymous(principal.toString())) {
+            return UserSid.createAnonymous();
+        }
+        return super.createPrincipal(authentication);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<? extends Sid> createGrantedAuthorities(Collection<? extends GrantedAuthority> grantedAuthorities) {
+        List<Sid> sids = new ArrayList<Sid>(grantedAuthorities.size());
+        for (GrantedAuthority authority : grantedAuthorities) {
+            sids.add(getAuthority(authority.getAuthority()));
+        }
+        return sids;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Sid create(Entity receiver) {
+        if (receiver instanceof User) {
+            return getUser(receiver.getId());
+        } else if (receiver instanceof Group) {
+            return getGroup(receiver.getId());
+        }
+        return super.create(receiver);
+    }
+
+    private UserSid getUser(long id) {
+        UserSid sid = users.get(id);
+        if (sid == null) {
+            UserSid created = new UserSid(UserSid.SID_PREFIX + UniversalSid.SID_NAME_SEPARATOR + id);
+            sid = users.putIfAbsent(id, created);
+            if (sid == null) {
+                sid = created;
+            }
+        }
+        return sid;
+    }
+
+    private UserGroupSid getGroup(long id) {
+        UserGroupSid sid = groups.get(id);
+        if (sid == null) {
+            UserGroupSid created = new UserGroupSid(id);
+            sid = groups.putIfAbsent(id, created);
+            if (sid == null) {
+                sid = created;
+            }
+        }
+        return sid;
+    }
+
+    private PrincipalSid getPrincipal(String name) {
+        PrincipalSid sid = principals.get(name);
+        if (sid == null) {
+            PrincipalSid created = new PrincipalSid(name);
+            sid = principals.putIfAbsent(name, created);
+            if (sid == null) {
+                sid = created;
+            }
+        }
+        return sid;
+    }
+
+    private GrantedAuthoritySid getAuthority(String name) {
+        GrantedAuthoritySid sid = authorities.get(name);
+        if (sid == null) {
+            GrantedAuthoritySid created = new GrantedAuthoritySid(name);
+            sid = authorities.putIfAbsent(name, created);
+            if (sid == null) {
+                sid = created;
+            }
+        }
+        return sid;
+    }
+
+    private static boolean isPrefix(String sidName, int separator, String prefix) {
+        return separator == prefix.length() && sidName.startsWith(prefix);
+    }
+}
@@ -142,12 +142,15 @@ public class JtalksSidFactory implements SidFactory {
      *         if no mapping for that name was found and there are no appropriate custom implementations of sid
      */
     private static Sid parseCustomSid(String sidName) {
-        if (sidName.startsWith(UserGroupSid.SID_PREFIX)) {
-            return new UserGroupSid(sidName);
-        } else if (sidName.startsWith(UserSid.SID_PREFIX)) {
-            return new UserSid(sidName);
-        } else {
-            return null;
+        try {
+            if (sidName.startsWith(UserGroupSid.SID_PREFIX)) {
+                return new UserGroupSid(sidName);
+            } else if (sidName.startsWith(UserSid.SID_PREFIX)) {
+                return new UserSid(sidName);
+            }
+        } catch (UniversalSid.WrongFormatException e) {
+            //the name doesn't have a numeric id, it's kept as is by a standard sid then
         }
+        return null;
     }
 }
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.sids;
+
+/**
+ * Parses the ids out of the names of the custom sids, is shared by the sids and the factories so that all of them
+ * accept the same names.
+ */
+final class SidNames {
+    private SidNames() {
+    }
+
+    /**
+     * Parses the id in its canonical form only (no sign, no leading zeros), so that the sid created by the id has the
+     * same name as the parsed one.
+     *
+     * @param sidName the name of the sid
+     * @param from    the index the id starts at
+     * @return the id or -1 if the rest of the name is not a canonical non-negative number
+     */
+    static long parseId(String sidName, int from) {
+        int length = sidName.length() - from;
+        if (length <= 0 || length > 18 || (length > 1 && sidName.charAt(from) == '0')) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = from; i < sidName.length(); i++) {
+            char c = sidName.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
@@ -39,6 +39,10 @@ public interface UniversalSid extends Sid {
      * the database id of the entity which is a Sid. Like in case of user groups: {@code usergroup:2123}.
      */
     static final String SID_NAME_SEPARATOR = ":";
+    /**
+     * The same as {@link #SID_NAME_SEPARATOR}, but as a char to look it up without creating substrings.
+     */
+    static final char SID_NAME_SEPARATOR_CHAR = ':';
 
     /**
      * Since some of Sid implementations accept different arguments while creation, like String, and these arguments
@@ -21,7 +21,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * This class does the same as {@link org.springframework.security.acls.domain.PrincipalSid} does for users. More
@@ -34,7 +33,8 @@ import java.util.regex.Pattern;
 @Immutable
 public class UserGroupSid implements UniversalSid {
     public static final String SID_PREFIX = "usergroup";
-    private final String groupId;
+    private final long groupId;
+    private final String sidId;
 
     /**
      * @param sidId passes the direct sid id which should obey the format "usergroup:[group_id]"
@@ -43,6 +43,7 @@ public class UserGroupSid implements UniversalSid {
      */
     public UserGroupSid(@Nonnull String sidId) {
         this.groupId = parseGroupId(sidId);
+        this.sidId = buildSidId(groupId);
     }
 
     /**
@@ -52,7 +53,8 @@ public class UserGroupSid implements UniversalSid {
      * @see Group#getId()
      */
     public UserGroupSid(@Nonnegative long groupId) {
-        this.groupId = String.valueOf(groupId);
+        this.groupId = groupId;
+        this.sidId = buildSidId(groupId);
     }
 
     /**
@@ -62,15 +64,27 @@ public class UserGroupSid implements UniversalSid {
      * @see Group#getId()
      */
     public UserGroupSid(@Nonnull Group group) {
-        this.groupId = String.valueOf(group.getId());
+        this.groupId = group.getId();
+        this.sidId = buildSidId(groupId);
     }
 
-    private String parseGroupId(String sidId) {
-        String[] splitted = sidId.split(Pattern.quote(":"));
-        if (splitted.length != 2) {
+    /**
+     * Takes the part after the separator with a single scan instead of splitting with a regular expression, this is
+     * done for every sid read from the database.
+     *
+     * @throws WrongFormatException if there is no id after the separator or it's not a number in its canonical form
+     */
+    private static long parseGroupId(String sidId) {
+        int separator = sidId.indexOf(SID_NAME_SEPARATOR_CHAR);
+        if (separator < 0 || separator == sidId.length() - 1
+                || sidId.indexOf(SID_NAME_SEPARATOR_CHAR, separator + 1) >= 0) {
             throw new WrongFormatException(sidId);
         }
-        return splitted[1];
+        long groupId = SidNames.parseId(sidId, separator + 1);
+        if (groupId < 0) {
+            throw new WrongFormatException(sidId);
+        }
+        return groupId;
     }
 
     /**
@@ -79,7 +93,7 @@ public class UserGroupSid implements UniversalSid {
      * @return the id of the {@link Group} which this SID is actually is
      */
     public String getGroupId() {
-        return groupId;
+        return String.valueOf(groupId);
     }
 
     /**
@@ -95,6 +109,10 @@ public class UserGroupSid implements UniversalSid {
      */
     @Override
     public String getSidId() {
+        return sidId;
+    }
+
+    private static String buildSidId(long groupId) {
         return SID_PREFIX + UniversalSid.SID_NAME_SEPARATOR + groupId;
     }
 
@@ -124,11 +142,7 @@ public class UserGroupSid implements UniversalSid {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        UserGroupSid that = (UserGroupSid) o;
-        if (!groupId.equals(that.groupId)) {
-            return false;
-        }
-        return true;
+        return groupId == ((UserGroupSid) o).groupId;
     }
 
     /**
@@ -136,7 +150,7 @@ public class UserGroupSid implements UniversalSid {
      */
     @Override
     public int hashCode() {
-        return groupId.hashCode();
+        return (int) (groupId ^ (groupId >>> 32));
     }
 
     /**
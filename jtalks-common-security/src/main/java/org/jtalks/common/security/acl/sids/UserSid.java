@@ -20,40 +20,63 @@ import org.springframework.security.acls.domain.PrincipalSid;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.regex.Pattern;
 
 /**
  * @author stanislav bashkirstev
  */
 public class UserSid extends PrincipalSid implements UniversalSid {
     public final static String SID_PREFIX = "user";
-    private final String userId;
+    /**
+     * The id of {@link AnonymousUserSid}, its sid name contains {@link AnonymousUserSid#ANONYMOUS_USER_NAME} instead of
+     * the id of a user.
+     */
+    static final long ANONYMOUS_USER_ID = -1;
+    private final long userId;
+    /** Is built once since it's compared in {@link #equals(Object)} through {@link #getPrincipal()}. */
+    private final String sidId;
 
     public UserSid(@Nonnull String sidId) {
         super(sidId);
         this.userId = parseUserId(sidId);
+        this.sidId = buildSidId(getUserId());
     }
 
     public UserSid(@Nonnegative long userId) {
         super(SID_PREFIX + String.valueOf(userId));
-        this.userId = String.valueOf(userId);
+        this.userId = userId;
+        this.sidId = buildSidId(getUserId());
     }
 
     public UserSid(@Nonnull User user) {
         super(String.valueOf(user.getId()));
-        this.userId = String.valueOf(user.getId());
+        this.userId = user.getId();
+        this.sidId = buildSidId(getUserId());
     }
 
-    private String parseUserId(String sidId) {
-        String[] splitted = sidId.split(Pattern.quote(":"));
-        if (splitted.length != 2) {
+    /**
+     * Takes the part after the separator with a single scan instead of splitting with a regular expression, this is
+     * done for every sid read from the database.
+     *
+     * @throws WrongFormatException if there is no id after the separator or it's not a number in its canonical form
+     */
+    private static long parseUserId(String sidId) {
+        int separator = sidId.indexOf(SID_NAME_SEPARATOR_CHAR);
+        if (separator < 0 || separator == sidId.length() - 1
+                || sidId.indexOf(SID_NAME_SEPARATOR_CHAR, separator + 1) >= 0) {
             throw new WrongFormatException(sidId);
         }
-        return splitted[1];
+        long userId = SidNames.parseId(sidId, separator + 1);
+        if (userId >= 0) {
+            return userId;
+        }
+        if (AnonymousUserSid.isAnonymous(sidId.substring(separator + 1))) {
+            return ANONYMOUS_USER_ID;
+        }
+        throw new WrongFormatException(sidId);
     }
 
     public String getUserId() {
-        return userId;
+        return userId == ANONYMOUS_USER_ID ? AnonymousUserSid.ANONYMOUS_USER_NAME : String.valueOf(userId);
     }
 
     @Override
@@ -86,6 +109,10 @@ public class UserSid extends PrincipalSid implements UniversalSid {
      */
     @Override
     public String getSidId() {
+        return sidId;
+    }
+
+    private static String buildSidId(String userId) {
         return SID_PREFIX + UniversalSid.SID_NAME_SEPARATOR + userId;
     }
 
@@ -105,11 +132,10 @@ public class UserSid extends PrincipalSid implements UniversalSid {
         if (o == null || !(o instanceof PrincipalSid)) {
             return false;
         }
-        PrincipalSid that = (PrincipalSid) o;
-        if (!getPrincipal().equals(that.getPrincipal())) {
-            return false;
+        if (o instanceof UserSid) {
+            return userId == ((UserSid) o).userId;
         }
-        return true;
+        return getPrincipal().equals(((PrincipalSid) o).getPrincipal());
     }
 
     /**
@@ -117,7 +143,7 @@ public class UserSid extends PrincipalSid implements UniversalSid {
      */
     @Override
     public int hashCode() {
-        return userId.hashCode();
+        return (int) (userId ^ (userId >>> 32));
     }
 
     /**
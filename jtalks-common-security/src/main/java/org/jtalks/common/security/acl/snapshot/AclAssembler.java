@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.jtalks.common.security.acl.sids.SidFactory;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.Entry;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AclImpl;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.domain.PermissionFactory;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.PermissionGrantingStrategy;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Creates {@link AclImpl}s from {@link AclSnapshotRecord}s the same way {@link
+ * org.springframework.security.acls.jdbc.BasicLookupStrategy} creates them from rows: entries are put directly into
+ * the ACL, so no {@link AclAuthorizationStrategy} check is made for them.
+ */
+public class AclAssembler {
+    /** The same field {@link org.springframework.security.acls.jdbc.BasicLookupStrategy} fills entries through. */
+    private static final Field ACES_FIELD = ReflectionUtils.findField(AclImpl.class, "aces");
+
+    static {
+        ReflectionUtils.makeAccessible(ACES_FIELD);
+    }
+
+    private final AclAuthorizationStrategy aclAuthorizationStrategy;
+    private final PermissionGrantingStrategy grantingStrategy;
+    private final PermissionFactory permissionFactory;
+    private final SidFactory sidFactory;
+
+    /**
+     * @param aclAuthorizationStrategy the strategy of the created ACLs
+     * @param grantingStrategy         the strategy the created ACLs check permissions with
+     * @param permissionFactory        creates permissions from masks
+     * @param sidFactory               creates sids from their names
+     */
+    public AclAssembler(@Nonnull AclAuthorizationStrategy aclAuthorizationStrategy,
+                        @Nonnull PermissionGrantingStrategy grantingStrategy,
+                        @Nonnull PermissionFactory permissionFactory, @Nonnull SidFactory sidFactory) {
+        this.aclAuthorizationStrategy = aclAuthorizationStrategy;
+        this.grantingStrategy = grantingStrategy;
+        this.permissionFactory = permissionFactory;
+        this.sidFactory = sidFactory;
+    }
+
+    /**
+     * Creates the ACL with all the entries of the record.
+     *
+     * @param record the record to create the ACL from, should have an owner
+     * @param parent the ACL of the parent object identity of the record or {@code null} if it has no parent
+     * @return the ACL with all the sids loaded
+     */
+    public AclImpl assemble(@Nonnull AclSnapshotRecord record, @Nullable Acl parent) {
+        Assert.notNull(record.getOwner(), "Owner of ACL " + record.getId() + " is not set");
+        AclImpl acl = new AclImpl(new ObjectIdentityImpl(record.getType(), record.getIdentifier()), record.getId(),
+                aclAuthorizationStrategy, grantingStrategy, parent, null, record.isEntriesInheriting(),
+                sidFactory.create(record.getOwner().getName(), record.getOwner().isPrincipal()));
+        @SuppressWarnings("unchecked")
+        List<AccessControlEntry> aces = (List<AccessControlEntry>) ReflectionUtils.getField(ACES_FIELD, acl);
+        for (Entry entry : record.getEntries()) {
+            aces.add(new AccessControlEntryImpl(entry.getId(), acl,
+                    sidFactory.create(entry.getSid().getName(), entry.getSid().isPrincipal()),
+                    permissionFactory.buildFromMask(entry.getMask()), entry.isGranting(), entry.isAuditSuccess(),
+                    entry.isAuditFailure()));
+        }
+        return acl;
+    }
+}
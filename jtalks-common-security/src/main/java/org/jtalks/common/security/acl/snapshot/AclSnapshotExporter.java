@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.Entry;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.SidName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.annotation.Nonnull;
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes all the ACLs stored in the database to a snapshot that can be loaded into the cache by {@link
+ * AclSnapshotImporter} when a node starts. All the rows are read by one query ordered by the ids of object
+ * identities, so only the entries of one ACL are kept in memory at a time. The id of the last row of {@code
+ * acl_change} is read before them and stored in the snapshot, the importer re-reads only the ACLs logged after it.
+ */
+public class AclSnapshotExporter {
+    private static final String SELECT_ALL = "select o.id, c.class, o.object_id_identity, o.parent_object, "
+            + "os.sid, os.principal, o.entries_inheriting, e.id, es.sid, es.principal, e.mask, e.granting, "
+            + "e.audit_success, e.audit_failure "
+            + "from acl_object_identity o join acl_class c on c.id = o.object_id_class "
+            + "left join acl_sid os on os.id = o.owner_sid "
+            + "left join acl_entry e on e.acl_object_identity = o.id "
+            + "left join acl_sid es on es.id = e.sid "
+            + "order by o.id, e.ace_order";
+    private static final String SELECT_LAST_CHANGE = "select max(id) from acl_change";
+    private static final String DELETE_CHANGES = "delete from acl_change where id < ?";
+    private static final int FETCH_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final JdbcTemplate jdbcTemplate;
+    private File snapshotFile;
+    private int retainedChanges = 100000;
+
+    /**
+     * @param dataSource the data source with ACL tables
+     */
+    public AclSnapshotExporter(@Nonnull DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Writes the snapshot to the configured {@link #setSnapshotFile(File) file}. Failures are logged and not thrown,
+     * so it can be used as a destroy method of the bean, the snapshot just won't be updated then.
+     */
+    public void export() {
+        if (snapshotFile == null) {
+            logger.info("ACL snapshot file is not configured, the snapshot is not written");
+            return;
+        }
+        try {
+            int count = export(snapshotFile);
+            logger.info("ACL snapshot of {} ACLs is written to {}", count, snapshotFile);
+        } catch (Exception e) {
+            logger.warn("Could not write ACL snapshot to " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the specified one and then renames it, so that the snapshot
+     * being read by other nodes is never seen half-written. The temporary file is made readable and writable by its
+     * owner only before anything is written to it, otherwise the importer refuses it.
+     *
+     * @param file the file to write the snapshot to
+     * @return the number of ACLs written
+     * @throws IOException if the file can't be written
+     */
+    public int export(@Nonnull File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        if (temporary.exists() && !temporary.delete() || !temporary.createNewFile()
+                || !SnapshotFiles.restrictToOwner(temporary)) {
+            throw new IOException("Could not create " + temporary + " readable by its owner only");
+        }
+        int count = export(new FileOutputStream(temporary));
+        if (file.exists() && !file.delete() || !temporary.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with " + temporary);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the snapshot to the stream. Once it's written, the rows of {@code acl_change} that are older than the
+     * {@link #setRetainedChanges(int) retained} ones are deleted.
+     *
+     * @param out the stream to write the snapshot to, is closed afterwards
+     * @return the number of ACLs written
+     * @throws IOException if the stream can't be written to
+     */
+    public int export(@Nonnull OutputStream out) throws IOException {
+        long lastChangeId = jdbcTemplate.queryForLong(SELECT_LAST_CHANGE);
+        AclSnapshotWriter writer = new AclSnapshotWriter(out, System.currentTimeMillis(), lastChangeId);
+        try {
+            RecordCollector collector = new RecordCollector(writer);
+            jdbcTemplate.query(SELECT_ALL, collector);
+            collector.flush();
+        } catch (WriteFailure e) {
+            throw e.getCause();
+        } finally {
+            writer.close();
+        }
+        if (lastChangeId > retainedChanges) {
+            int deleted = jdbcTemplate.update(DELETE_CHANGES, lastChangeId - retainedChanges);
+            logger.debug("{} old rows of acl_change are deleted", deleted);
+        }
+        return writer.getCount();
+    }
+
+    /**
+     * @param snapshotFile the file used by {@link #export()}, nothing is exported if it's not set
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Sets how many rows of {@code acl_change} before the last one are kept after the export, the rest is deleted
+     * (the last row is always kept, so that the importer can tell that nothing was deleted after it). They are
+     * still needed by the snapshots of other nodes that were taken earlier: if some of the rows after the snapshot
+     * was taken are deleted, the importer can't tell which ACLs changed and doesn't load the snapshot.
+     *
+     * @param retainedChanges the number of the rows to keep, 100000 by default
+     */
+    public void setRetainedChanges(int retainedChanges) {
+        this.retainedChanges = retainedChanges;
+    }
+
+    /**
+     * Groups the rows of the same object identity into a record and writes it once the rows of the next object
+     * identity begin.
+     */
+    private static class RecordCollector implements RowCallbackHandler {
+        private final AclSnapshotWriter writer;
+        private AclSnapshotRecord current;
+
+        RecordCollector(AclSnapshotWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            if (current == null || current.getId() != id) {
+                flush();
+                long parent = rs.getLong(4);
+                Long parentId = rs.wasNull() ? null : parent;
+                String ownerName = rs.getString(5);
+                SidName owner = ownerName == null ? null : new SidName(ownerName, rs.getBoolean(6));
+                current = new AclSnapshotRecord(id, rs.getString(2), rs.getLong(3), parentId, owner,
+                        rs.getBoolean(7));
+            }
+            long entryId = rs.getLong(8);
+            if (!rs.wasNull()) {
+                current.addEntry(new Entry(entryId, new SidName(rs.getString(9), rs.getBoolean(10)), rs.getInt(11),
+                        rs.getBoolean(12), rs.getBoolean(13), rs.getBoolean(14)));
+            }
+        }
+
+        void flush() {
+            if (current != null) {
+                try {
+                    writer.write(current);
+                } catch (IOException e) {
+                    throw new WriteFailure(e);
+                }
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Carries {@link IOException} out of the row callback which can't throw it.
+     */
+    private static class WriteFailure extends RuntimeException {
+        WriteFailure(IOException cause) {
+            super(cause);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.jtalks.common.security.acl.sids.JtalksSidFactory;
+import org.jtalks.common.security.acl.sids.SidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AclImpl;
+import org.springframework.security.acls.domain.AuditLogger;
+import org.springframework.security.acls.domain.DefaultPermissionFactory;
+import org.springframework.security.acls.domain.DefaultPermissionGrantingStrategy;
+import org.springframework.security.acls.domain.PermissionFactory;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.PermissionGrantingStrategy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads a snapshot written by {@link AclSnapshotExporter} into the ACL cache, so that a node doesn't start with a
+ * cold cache. Every change of {@code acl_object_identity} and {@code acl_entry} is logged to {@code acl_change} by
+ * triggers, so only the rows logged after the snapshot was taken are read: the ACLs they mention (as well as their
+ * children) are not put into the cache, they are read from the database on demand as usual. Since the content of the
+ * snapshot isn't checked in any other way, a file that can be written by users other than its owner is not
+ * imported.
+ */
+public class AclSnapshotImporter {
+    private static final String SELECT_FIRST_CHANGE = "select min(id) from acl_change";
+    private static final String SELECT_CHANGED_IDS = "select distinct acl_object_identity from acl_change where id > ?";
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final JdbcTemplate jdbcTemplate;
+    private final AclCache aclCache;
+    private final AclAuthorizationStrategy aclAuthorizationStrategy;
+    private final PermissionGrantingStrategy grantingStrategy;
+    private PermissionFactory permissionFactory = new DefaultPermissionFactory();
+    private SidFactory sidFactory = new JtalksSidFactory();
+    private File snapshotFile;
+    private int recheckedChanges = 1000;
+
+    /**
+     * @param dataSource               the data source with ACL tables to check the ACLs of the snapshot against
+     * @param aclCache                 the cache to load the ACLs to
+     * @param aclAuthorizationStrategy the strategy of the created ACLs, should be the same as the lookup strategy
+     *                                 uses
+     * @param auditLogger              the logger of the created ACLs, should be the same as the lookup strategy uses
+     */
+    public AclSnapshotImporter(@Nonnull DataSource dataSource, @Nonnull AclCache aclCache,
+                               @Nonnull AclAuthorizationStrategy aclAuthorizationStrategy,
+                               @Nonnull AuditLogger auditLogger) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.aclCache = aclCache;
+        this.aclAuthorizationStrategy = aclAuthorizationStrategy;
+        this.grantingStrategy = new DefaultPermissionGrantingStrategy(auditLogger);
+    }
+
+    /**
+     * Loads the configured {@link #setSnapshotFile(File) snapshot file} if it exists. Failures are logged and not
+     * thrown, so it can be used as an init method of the bean: the cache is just filled on demand then.
+     */
+    public void importIfExists() {
+        if (snapshotFile == null) {
+            logger.info("ACL snapshot file is not configured, the cache will be filled on demand");
+            return;
+        }
+        if (!snapshotFile.isFile()) {
+            logger.info("No ACL snapshot found at {}, the cache will be filled on demand", snapshotFile);
+            return;
+        }
+        if (!SnapshotFiles.isWritableByOwnerOnly(snapshotFile)) {
+            logger.warn("ACL snapshot {} or its directory can be written by other users or its permissions can't be "
+                    + "read, the snapshot is not loaded", snapshotFile);
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int count = importSnapshot(new FileInputStream(snapshotFile));
+            logger.info("{} ACLs are loaded from snapshot {} in {} ms",
+                    new Object[]{count, snapshotFile, System.currentTimeMillis() - start});
+        } catch (Exception e) {
+            logger.warn("Could not load ACL snapshot from " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Loads the ACLs from the snapshot that are up to date into the cache.
+     *
+     * @param in the stream to read the snapshot from, is closed afterwards
+     * @return the number of ACLs put into the cache
+     * @throws IOException if the stream can't be read or is corrupted
+     */
+    public int importSnapshot(@Nonnull InputStream in) throws IOException {
+        Map<Long, AclSnapshotRecord> records = new HashMap<Long, AclSnapshotRecord>();
+        AclSnapshotReader reader = new AclSnapshotReader(in);
+        try {
+            AclSnapshotRecord record;
+            while ((record = reader.read()) != null) {
+                records.put(record.getId(), record);
+            }
+        } finally {
+            reader.close();
+        }
+        Set<Long> changedIds = selectChangedIds(reader.getLastChangeId());
+        if (changedIds == null) {
+            logger.info("Changes of ACLs made after the snapshot was taken were deleted, the snapshot is not loaded");
+            return 0;
+        }
+        AclAssembler assembler = new AclAssembler(
+                aclAuthorizationStrategy, grantingStrategy, permissionFactory, sidFactory);
+        Map<Long, AclImpl> acls = new HashMap<Long, AclImpl>();
+        Set<Long> visited = new HashSet<Long>();
+        for (Long id : records.keySet()) {
+            AclImpl acl = toAcl(assembler, id, records, changedIds, acls, visited);
+            if (acl != null) {
+                aclCache.putInCache(acl);
+            }
+        }
+        logger.debug("{} of {} ACLs from the snapshot are up to date", acls.size(), records.size());
+        return acls.size();
+    }
+
+    /**
+     * Creates the ACL from the record if it and all its parents are up to date.
+     *
+     * @param assembler  creates ACLs from records
+     * @param id         the id of the record to create the ACL from
+     * @param records    all the records of the snapshot by their ids
+     * @param changedIds the ids of the ACLs changed after the snapshot was taken
+     * @param acls       the ACLs created so far
+     * @param visited    the ids of the records that were already processed
+     * @return the ACL or {@code null} if it's not up to date
+     */
+    @Nullable
+    private AclImpl toAcl(AclAssembler assembler, Long id, Map<Long, AclSnapshotRecord> records,
+                          Set<Long> changedIds, Map<Long, AclImpl> acls, Set<Long> visited) {
+        if (!visited.add(id)) {
+            return acls.get(id);
+        }
+        AclSnapshotRecord record = records.get(id);
+        if (record == null || record.getOwner() == null || changedIds.contains(id)) {
+            return null;
+        }
+        AclImpl parent = null;
+        if (record.getParentId() != null) {
+            parent = toAcl(assembler, record.getParentId(), records, changedIds, acls, visited);
+            if (parent == null) {
+                return null;
+            }
+        }
+        AclImpl acl = assembler.assemble(record, parent);
+        acls.put(id, acl);
+        return acl;
+    }
+
+    /**
+     * Reads the ids of the ACLs logged after the snapshot was taken. The ids of {@code acl_change} are allocated when
+     * the rows are inserted, not when they are committed, so a transaction that was running while the snapshot was
+     * taken may commit its rows with ids below the one stored in the snapshot. That's why the {@link
+     * #setRecheckedChanges(int) last rows} before it are read as well.
+     *
+     * @param lastChangeId the id of the last row of {@code acl_change} stored in the snapshot
+     * @return the ids of the changed ACLs or {@code null} if some of the rows to read were already deleted by {@link
+     *         AclSnapshotExporter}, so it's unknown which ACLs were changed
+     */
+    @Nullable
+    private Set<Long> selectChangedIds(long lastChangeId) {
+        long from = Math.max(lastChangeId - recheckedChanges, 0);
+        Long firstChangeId = jdbcTemplate.queryForObject(SELECT_FIRST_CHANGE, Long.class);
+        if (firstChangeId == null ? lastChangeId != 0 : firstChangeId > from + 1) {
+            return null;
+        }
+        return new HashSet<Long>(jdbcTemplate.queryForList(SELECT_CHANGED_IDS, Long.class, from));
+    }
+
+    /**
+     * @param permissionFactory creates permissions from masks, should be the same as the lookup strategy uses
+     */
+    public void setPermissionFactory(PermissionFactory permissionFactory) {
+        this.permissionFactory = permissionFactory;
+    }
+
+    /**
+     * @param sidFactory creates sids, should be the same as the lookup strategy uses
+     */
+    public void setSidFactory(SidFactory sidFactory) {
+        this.sidFactory = sidFactory;
+    }
+
+    /**
+     * @param snapshotFile the file used by {@link #importIfExists()}, nothing is imported if it's not set; should be
+     *                     in a directory that only the user of the application can write to
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @param recheckedChanges how many rows of {@code acl_change} before the one stored in the snapshot are read too,
+     *                         in case they were committed after the snapshot was taken; should not exceed the {@link
+     *                         AclSnapshotExporter#setRetainedChanges(int) retained} ones, 1000 by default
+     */
+    public void setRecheckedChanges(int recheckedChanges) {
+        this.recheckedChanges = recheckedChanges;
+    }
+}
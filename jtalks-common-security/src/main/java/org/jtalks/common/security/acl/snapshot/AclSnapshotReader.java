@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.Entry;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.SidName;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads {@link AclSnapshotRecord}s written by {@link AclSnapshotWriter}, see it for the description of the format.
+ */
+public class AclSnapshotReader implements Closeable {
+    private final DataInputStream in;
+    private final long creationTime;
+    private final long lastChangeId;
+    private final List<String> types = new ArrayList<String>();
+    private final List<SidName> sids = new ArrayList<SidName>();
+    private long previousId;
+    private boolean finished;
+
+    /**
+     * Reads the header of the snapshot.
+     *
+     * @param in the stream to read the snapshot from, is closed along with the reader
+     * @throws IOException if the stream can't be read or doesn't contain a snapshot of the supported version
+     */
+    public AclSnapshotReader(@Nonnull InputStream in) throws IOException {
+        this.in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(in)));
+        if (this.in.readInt() != AclSnapshotWriter.MAGIC) {
+            throw new StreamCorruptedException("Not an ACL snapshot");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != AclSnapshotWriter.VERSION) {
+            throw new IOException("Unsupported version of ACL snapshot: " + version);
+        }
+        this.creationTime = this.in.readLong();
+        this.lastChangeId = this.in.readLong();
+    }
+
+    /**
+     * @return the time the data of the snapshot was read
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return the id of the last row of {@code acl_change} before the data of the snapshot was read, 0 if there were
+     *         no rows
+     */
+    public long getLastChangeId() {
+        return lastChangeId;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the next record or {@code null} if all the records were read
+     * @throws IOException if the stream can't be read or is corrupted
+     */
+    @Nullable
+    public AclSnapshotRecord read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        long idDelta = readVarLong();
+        if (idDelta == 0) {
+            finished = true;
+            return null;
+        }
+        long id = previousId + idDelta;
+        previousId = id;
+        String type = readType();
+        long identifier = unZigZag(readVarLong());
+        long parent = readVarLong();
+        Long parentId = parent == 0 ? null : unZigZag(parent - 1);
+        SidName owner = readSid();
+        boolean entriesInheriting = in.readBoolean();
+        AclSnapshotRecord record = new AclSnapshotRecord(id, type, identifier, parentId, owner, entriesInheriting);
+        long entryCount = readVarLong();
+        long entryId = 0;
+        for (long i = 0; i < entryCount; i++) {
+            entryId += unZigZag(readVarLong());
+            SidName sid = readSid();
+            if (sid == null) {
+                throw new StreamCorruptedException("Entry " + entryId + " has no sid");
+            }
+            long packed = readVarLong();
+            int flags = (int) packed & ((1 << AclSnapshotWriter.FLAG_BITS) - 1);
+            record.addEntry(new Entry(entryId, sid, (int) (packed >>> AclSnapshotWriter.FLAG_BITS),
+                    (flags & AclSnapshotWriter.GRANTING) != 0, (flags & AclSnapshotWriter.AUDIT_SUCCESS) != 0,
+                    (flags & AclSnapshotWriter.AUDIT_FAILURE) != 0));
+        }
+        return record;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readType() throws IOException {
+        int reference = readReference(types.size());
+        if (reference == types.size()) {
+            types.add(in.readUTF());
+        }
+        return types.get(reference);
+    }
+
+    @Nullable
+    private SidName readSid() throws IOException {
+        long value = readVarLong();
+        if (value == 0) {
+            return null;
+        }
+        int reference = toReference(value - 1, sids.size());
+        if (reference == sids.size()) {
+            boolean principal = in.readBoolean();
+            sids.add(new SidName(in.readUTF(), principal));
+        }
+        return sids.get(reference);
+    }
+
+    private int readReference(int dictionarySize) throws IOException {
+        long value = readVarLong();
+        if (value == 0) {
+            throw new StreamCorruptedException("Missing class of object identity " + previousId);
+        }
+        return toReference(value - 1, dictionarySize);
+    }
+
+    /**
+     * @return the index in the dictionary, equals to the size of the dictionary if a new value follows
+     */
+    private int toReference(long value, int dictionarySize) throws IOException {
+        if (value > dictionarySize) {
+            throw new StreamCorruptedException("Reference " + value + " is out of dictionary of size "
+                    + dictionarySize);
+        }
+        return (int) value;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
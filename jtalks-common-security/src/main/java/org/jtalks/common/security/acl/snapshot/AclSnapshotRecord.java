@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One row of {@code acl_object_identity} together with its rows of {@code acl_entry} (in the order of {@code
+ * ace_order}) as they are stored in the snapshot. Sids are kept as their names and principal flags so that the
+ * snapshot doesn't depend on the ids of {@code acl_sid}.
+ */
+public class AclSnapshotRecord {
+    private final long id;
+    private final String type;
+    private final long identifier;
+    private final Long parentId;
+    private final SidName owner;
+    private final boolean entriesInheriting;
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * @param id                the id of the object identity
+     * @param type              the class of the object identity, {@code acl_class.class}
+     * @param identifier        the id of the secured object, {@code object_id_identity}
+     * @param parentId          the id of the parent object identity or {@code null} if there is no parent
+     * @param owner             the owner of the object identity or {@code null} if it's not set
+     * @param entriesInheriting whether the entries of the parent are inherited
+     */
+    public AclSnapshotRecord(long id, @Nonnull String type, long identifier, @Nullable Long parentId,
+                             @Nullable SidName owner, boolean entriesInheriting) {
+        this.id = id;
+        this.type = type;
+        this.identifier = identifier;
+        this.parentId = parentId;
+        this.owner = owner;
+        this.entriesInheriting = entriesInheriting;
+    }
+
+    /**
+     * Adds the entry to the end of the entries of the record.
+     *
+     * @param entry the entry to add
+     * @return this record
+     */
+    public AclSnapshotRecord addEntry(@Nonnull Entry entry) {
+        entries.add(entry);
+        return this;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getIdentifier() {
+        return identifier;
+    }
+
+    @Nullable
+    public Long getParentId() {
+        return parentId;
+    }
+
+    @Nullable
+    public SidName getOwner() {
+        return owner;
+    }
+
+    public boolean isEntriesInheriting() {
+        return entriesInheriting;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * The name of a sid and whether it's a principal, the values of {@code acl_sid} row.
+     */
+    public static final class SidName {
+        private final String name;
+        private final boolean principal;
+
+        /**
+         * @param name      {@code acl_sid.sid}
+         * @param principal {@code acl_sid.principal}
+         */
+        public SidName(@Nonnull String name, boolean principal) {
+            this.name = name;
+            this.principal = principal;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isPrincipal() {
+            return principal;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SidName)) {
+                return false;
+            }
+            SidName other = (SidName) o;
+            return principal == other.principal && name.equals(other.name);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + (principal ? 1 : 0);
+        }
+    }
+
+    /**
+     * A row of {@code acl_entry}.
+     */
+    public static final class Entry {
+        private final long id;
+        private final SidName sid;
+        private final int mask;
+        private final boolean granting;
+        private final boolean auditSuccess;
+        private final boolean auditFailure;
+
+        /**
+         * @param id           the id of the entry
+         * @param sid          the sid the entry is defined for
+         * @param mask         the mask of the permission
+         * @param granting     whether the permission is granted or restricted
+         * @param auditSuccess whether granting by the entry is audited
+         * @param auditFailure whether restricting by the entry is audited
+         */
+        public Entry(long id, @Nonnull SidName sid, int mask, boolean granting, boolean auditSuccess,
+                     boolean auditFailure) {
+            this.id = id;
+            this.sid = sid;
+            this.mask = mask;
+            this.granting = granting;
+            this.auditSuccess = auditSuccess;
+            this.auditFailure = auditFailure;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public SidName getSid() {
+            return sid;
+        }
+
+        public int getMask() {
+            return mask;
+        }
+
+        public boolean isGranting() {
+            return granting;
+        }
+
+        public boolean isAuditSuccess() {
+            return auditSuccess;
+        }
+
+        public boolean isAuditFailure() {
+            return auditFailure;
+        }
+    }
+}
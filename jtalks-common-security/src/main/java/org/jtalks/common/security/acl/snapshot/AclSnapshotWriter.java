@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.Entry;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.SidName;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes {@link AclSnapshotRecord}s in the compact binary format read by {@link AclSnapshotReader}. The stream is
+ * gzipped and has the following layout:
+ * <ul>
+ * <li>header: magic number, format version, the time the snapshot was taken and the id of the last row of {@code
+ * acl_change} written before it was taken;</li>
+ * <li>records ordered by id, each starting with the positive difference from the id of the previous record, followed
+ * by 0 after the last record.</li>
+ * </ul>
+ * Numbers are written as varints. Classes and sids are dictionary-encoded: a class or a sid is written in full the
+ * first time it occurs and as a reference to that occurrence afterwards. The mask of an entry is packed into one
+ * varint together with its granting and audit flags.
+ */
+public class AclSnapshotWriter implements Closeable {
+    static final int MAGIC = 0x4A41434C;
+    static final int VERSION = 2;
+    static final int GRANTING = 1;
+    static final int AUDIT_SUCCESS = 2;
+    static final int AUDIT_FAILURE = 4;
+    static final int FLAG_BITS = 3;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> types = new HashMap<String, Integer>();
+    private final Map<SidName, Integer> sids = new HashMap<SidName, Integer>();
+    private long previousId;
+    private int count;
+
+    /**
+     * Writes the header of the snapshot.
+     *
+     * @param out          the stream to write the snapshot to, is closed along with the writer
+     * @param creationTime the time the data of the snapshot was read
+     * @param lastChangeId the id of the last row of {@code acl_change} before the data of the snapshot was read, 0 if
+     *                     there were no rows
+     * @throws IOException if the stream can't be written to
+     */
+    public AclSnapshotWriter(@Nonnull OutputStream out, long creationTime, long lastChangeId) throws IOException {
+        this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(out)));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeLong(creationTime);
+        this.out.writeLong(lastChangeId);
+    }
+
+    /**
+     * Writes the record, records should be written in the ascending order of their ids.
+     *
+     * @param record the record to write
+     * @throws IOException              if the stream can't be written to
+     * @throws IllegalArgumentException if the id of the record is not greater than the id of the previous one
+     */
+    public void write(@Nonnull AclSnapshotRecord record) throws IOException {
+        if (record.getId() <= previousId) {
+            throw new IllegalArgumentException("Records should be ordered by id, " + record.getId()
+                    + " goes after " + previousId);
+        }
+        writeVarLong(record.getId() - previousId);
+        previousId = record.getId();
+        writeType(record.getType());
+        writeVarLong(zigZag(record.getIdentifier()));
+        writeVarLong(record.getParentId() == null ? 0 : zigZag(record.getParentId()) + 1);
+        writeSid(record.getOwner());
+        out.writeBoolean(record.isEntriesInheriting());
+        writeVarLong(record.getEntries().size());
+        long previousEntryId = 0;
+        for (Entry entry : record.getEntries()) {
+            writeVarLong(zigZag(entry.getId() - previousEntryId));
+            previousEntryId = entry.getId();
+            writeSid(entry.getSid());
+            int flags = (entry.isGranting() ? GRANTING : 0) | (entry.isAuditSuccess() ? AUDIT_SUCCESS : 0)
+                    | (entry.isAuditFailure() ? AUDIT_FAILURE : 0);
+            writeVarLong(((entry.getMask() & 0xFFFFFFFFL) << FLAG_BITS) | flags);
+        }
+        count++;
+    }
+
+    /**
+     * @return the number of records written so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the end of the snapshot and closes the underlying stream.
+     *
+     * @throws IOException if the stream can't be written to
+     */
+    @Override
+    public void close() throws IOException {
+        writeVarLong(0);
+        out.close();
+    }
+
+    private void writeType(String type) throws IOException {
+        Integer index = types.get(type);
+        if (index != null) {
+            writeVarLong(index + 1);
+        } else {
+            types.put(type, types.size());
+            writeVarLong(types.size());
+            out.writeUTF(type);
+        }
+    }
+
+    private void writeSid(@Nullable SidName sid) throws IOException {
+        if (sid == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = sids.get(sid);
+        if (index != null) {
+            writeVarLong(index + 1);
+        } else {
+            sids.put(sid, sids.size());
+            writeVarLong(sids.size());
+            out.writeBoolean(sid.isPrincipal());
+            out.writeUTF(sid.getName());
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Set;
+
+/**
+ * Guards snapshot files: the importer puts their content into the ACL cache as is, so a file that somebody else could
+ * have written must not be trusted.
+ */
+final class SnapshotFiles {
+    private SnapshotFiles() {
+    }
+
+    /**
+     * Makes the file readable and writable by its owner only, should be called before anything is written to it.
+     *
+     * @param file the file to restrict
+     * @return {@code true} if the permissions were set
+     */
+    static boolean restrictToOwner(File file) {
+        return file.setReadable(false, false) & file.setReadable(true, true)
+                & file.setWritable(false, false) & file.setWritable(true, true)
+                & file.setExecutable(false, false);
+    }
+
+    /**
+     * Checks that neither the file nor its directory can be written by users other than the owner, otherwise the
+     * file could have been created or replaced by them. POSIX permissions are read with {@code java.nio.file} which
+     * is looked up reflectively since the code is compiled for Java 6.
+     *
+     * @param file the file to check
+     * @return {@code true} if only the owner can write the file and its directory, {@code false} if others can or if
+     *         the permissions can't be read (Java 6 or a file system without POSIX permissions)
+     */
+    static boolean isWritableByOwnerOnly(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        return !isWritableByOthers(file) && (directory == null || !isWritableByOthers(directory));
+    }
+
+    private static boolean isWritableByOthers(File file) {
+        try {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> linkOptionClass = Class.forName("java.nio.file.LinkOption");
+            Object path = File.class.getMethod("toPath").invoke(file);
+            Method getPermissions = Class.forName("java.nio.file.Files").getMethod("getPosixFilePermissions",
+                    pathClass, Array.newInstance(linkOptionClass, 0).getClass());
+            Set<?> permissions = (Set<?>) getPermissions.invoke(null, path, Array.newInstance(linkOptionClass, 0));
+            for (Object permission : permissions) {
+                String name = ((Enum<?>) permission).name();
+                if ("GROUP_WRITE".equals(name) || "OTHERS_WRITE".equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+}
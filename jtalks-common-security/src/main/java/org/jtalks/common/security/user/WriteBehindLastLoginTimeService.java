@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.user;
+
+import org.jtalks.common.model.entity.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records last login times in memory and writes them to the database later, so a login doesn't update the user row
+ * and doesn't bump its optimistic lock {@code VERSION} which would make a concurrent profile edit fail. Only the latest
+ * time of each user is kept, so many logins of one user between flushes cost a single update. Times are flushed with
+ * one batched {@code UPDATE} every {@link #setFlushIntervalMillis(long) interval} after {@link #start()}, and the rest
+ * are flushed on {@link #stop()}. Times that were not flushed before the application died are lost, which is
+ * acceptable for this statistic.
+ * <p/>
+ * The time is also set to the user object, which is the detached principal of the authentication, so that a later
+ * {@code saveOrUpdate} of that object doesn't write the previous time back. The user is removed from the {@link
+ * UserCache} if it's {@link #setUserCache(UserCache) set}, so that the cached copies don't keep the previous time
+ * either. Applications should map {@code LAST_LOGIN} with {@code update="false"}, so that other stale copies of the
+ * user can't overwrite it and setting the time doesn't make a session-bound user dirty.
+ */
+@ThreadSafe
+public class WriteBehindLastLoginTimeService implements LastLoginTimeServiceMixin {
+    private static final String UPDATE_LAST_LOGIN = "update USERS set LAST_LOGIN = ? where ID = ?";
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentMap<Long, Long> pendingTimes = new ConcurrentHashMap<Long, Long>();
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private ScheduledExecutorService scheduler;
+    private UserCache userCache;
+
+    /**
+     * @param dataSource the data source with the {@code USERS} table
+     */
+    public WriteBehindLastLoginTimeService(@Nonnull DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Sets the current time as the last login time of the user object and remembers it to be written to the database
+     * on the next flush. The user is removed from the cache, if any.
+     *
+     * @param user user which must be updated
+     */
+    @Override
+    public void updateLastLoginTime(User user) {
+        user.updateLastLoginTime();
+        record(user.getId(), user.getLastLogin().getMillis());
+        if (userCache != null) {
+            userCache.removeUserFromCache(user.getUsername());
+        }
+    }
+
+    /**
+     * Writes all the remembered times to the database. If writing fails, the times are remembered again to be written
+     * on the next flush, unless newer times were recorded meanwhile.
+     *
+     * @return how many users were updated
+     */
+    public int flush() {
+        List<Object[]> batch = new ArrayList<Object[]>();
+        int flushed = 0;
+        for (Map.Entry<Long, Long> entry : pendingTimes.entrySet()) {
+            Long userId = entry.getKey();
+            Long time = entry.getValue();
+            // a concurrent login replaces the time, then it stays for the next flush
+            if (pendingTimes.remove(userId, time)) {
+                batch.add(new Object[]{new Timestamp(time), userId});
+            }
+            if (batch.size() == batchSize) {
+                flushed += write(batch);
+                batch = new ArrayList<Object[]>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushed += write(batch);
+        }
+        return flushed;
+    }
+
+    /**
+     * @return the number of users whose last login time is not written yet
+     */
+    public int getPendingCount() {
+        return pendingTimes.size();
+    }
+
+    /**
+     * Flushes every {@link #setFlushIntervalMillis(long) interval} on a background daemon thread until {@link #stop()}.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "last-login-time-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.warn("Writing of last login times failed", e);
+                }
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops background flushing and writes the times that are left.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        flush();
+    }
+
+    /**
+     * Keeps the time if there is no time for the user yet or the remembered one is older.
+     */
+    private void record(long userId, long time) {
+        Long key = userId;
+        Long previous = pendingTimes.putIfAbsent(key, time);
+        while (previous != null && previous < time && !pendingTimes.replace(key, previous, time)) {
+            previous = pendingTimes.putIfAbsent(key, time);
+        }
+    }
+
+    /**
+     * Executes the batch, remembers its times again if it fails.
+     *
+     * @return the number of users in the batch
+     */
+    private int write(List<Object[]> batch) {
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_LOGIN, batch);
+            return batch.size();
+        } catch (RuntimeException e) {
+            for (Object[] args : batch) {
+                record((Long) args[1], ((Timestamp) args[0]).getTime());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param batchSize how many updates are sent to the database at once, 500 by default
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param flushIntervalMillis the delay between background flushes, 30 seconds by default, is applied on {@link
+     *                            #start()}
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * @param userCache the cache to remove the users from when their last login time changes, may be {@code null}
+     */
+    public void setUserCache(UserCache userCache) {
+        this.userCache = userCache;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.web;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserCache;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.sql.DataSource;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Revocation state of {@link SignedRememberMeServices} tokens. The token version of a user, which revokes all the
+ * tokens of the user when it's incremented, is kept in {@code USERS.REMEMBER_ME_VERSION}, so it survives restarts and
+ * is shared by all the nodes. The services read it from the loaded user, so the user is removed from the {@link
+ * UserCache}, if it's {@link #setUserCache(UserCache) set}, when the version is incremented. The single tokens revoked by logout are kept in memory only (64 bits of the signature
+ * until the token expires anyway): after a restart those of them that haven't expired become valid again.
+ */
+@ThreadSafe
+public class RememberMeRevocations {
+    static final int PURGE_EVERY_REVOCATIONS = 64;
+    private static final int REVOKED_ID_LENGTH = 16;
+
+    private static final String SELECT_USERNAME = "select USERNAME from USERS where ID = ?";
+    private static final String INCREMENT_VERSION =
+            "update USERS set REMEMBER_ME_VERSION = REMEMBER_ME_VERSION + 1 where ID = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentMap<String, Long> revokedTokens = new ConcurrentHashMap<String, Long>();
+    private final AtomicInteger revocationsSincePurge = new AtomicInteger();
+    private volatile UserCache userCache;
+
+    /**
+     * @param dataSource the data source with {@code USERS} table
+     */
+    public RememberMeRevocations(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Revokes all the tokens of the user issued so far, e.g. when the user asks to log out everywhere.
+     *
+     * @param userId id of the user
+     */
+    public void revokeAll(long userId) {
+        jdbcTemplate.update(INCREMENT_VERSION, userId);
+        UserCache cache = userCache;
+        if (cache != null) {
+            for (String username : jdbcTemplate.queryForList(SELECT_USERNAME, String.class, userId)) {
+                cache.removeUserFromCache(username);
+            }
+        }
+    }
+
+    /**
+     * Revokes a single token.
+     *
+     * @param signature       signature of the token
+     * @param expiresAtMillis when the token expires, it's forgotten after that
+     */
+    public void revoke(String signature, long expiresAtMillis) {
+        revokedTokens.put(revokedId(signature), expiresAtMillis);
+        if (revocationsSincePurge.incrementAndGet() >= PURGE_EVERY_REVOCATIONS) {
+            revocationsSincePurge.set(0);
+            purgeExpired(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param signature signature of the token
+     * @return {@code true} if the token was revoked with {@link #revoke(String, long)}
+     */
+    public boolean isRevoked(String signature) {
+        return revokedTokens.containsKey(revokedId(signature));
+    }
+
+    /**
+     * @return the number of single tokens remembered as revoked
+     */
+    public int getRevokedTokenCount() {
+        return revokedTokens.size();
+    }
+
+    /**
+     * Forgets the revoked tokens that have expired, they are rejected as expired anyway.
+     *
+     * @param nowMillis current time
+     */
+    void purgeExpired(long nowMillis) {
+        for (Iterator<Map.Entry<String, Long>> it = revokedTokens.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue() < nowMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String revokedId(String signature) {
+        return signature.length() > REVOKED_ID_LENGTH ? signature.substring(0, REVOKED_ID_LENGTH) : signature;
+    }
+
+    /**
+     * @param userCache the cache to remove the users from when their token version changes, may be {@code null}
+     */
+    public void setUserCache(UserCache userCache) {
+        this.userCache = userCache;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.web;
+
+import org.jtalks.common.model.entity.User;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.rememberme.AbstractRememberMeServices;
+import org.springframework.security.web.authentication.rememberme.InvalidCookieException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Remember-me services that keep nothing in the database: the cookie holds the username, the user id, the expiration
+ * time and the token version of the user, signed with HMAC-SHA256 over these values and the password hash of the user.
+ * Unlike the {@code PERSISTENT_LOGINS} based services, an auto-login only loads the user (which the user cache usually
+ * has) and writes nothing: the token version is a property of the user, {@link User#getRememberMeVersion()}. The
+ * signature is checked before anything else about the user, so forged cookies cost no more than loading the user.
+ * <p>A token stops working when it expires, when the password of the user changes, when the user with this name is
+ * recreated with another id, or when it's revoked in {@link RememberMeRevocations}: on logout the token itself is
+ * revoked, {@link RememberMeRevocations#revokeAll(long)} revokes all the tokens of a user.
+ */
+public class SignedRememberMeServices extends AbstractRememberMeServices {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int TOKEN_COUNT = 5;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final RememberMeRevocations revocations;
+
+    /**
+     * @param revocations revoked tokens and token versions of the users
+     */
+    public SignedRememberMeServices(RememberMeRevocations revocations) {
+        this.revocations = revocations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onLoginSuccess(HttpServletRequest request, HttpServletResponse response,
+                                  Authentication successfulAuthentication) {
+        User user = toUser(successfulAuthentication.getPrincipal() instanceof User
+                ? (User) successfulAuthentication.getPrincipal()
+                : getUserDetailsService().loadUserByUsername(successfulAuthentication.getName()));
+        long expiresAt = System.currentTimeMillis() + getTokenValiditySeconds() * 1000L;
+        int version = user.getRememberMeVersion();
+        String signature = sign(user.getUsername(), user.getId(), expiresAt, version, user.getPassword());
+        setCookie(new String[]{user.getUsername(), Long.toString(user.getId()), Long.toString(expiresAt),
+                Integer.toString(version), signature}, getTokenValiditySeconds(), request, response);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected UserDetails processAutoLoginCookie(String[] cookieTokens, HttpServletRequest request,
+                                                 HttpServletResponse response) {
+        if (cookieTokens.length != TOKEN_COUNT) {
+            throw new InvalidCookieException("Cookie should contain " + TOKEN_COUNT + " tokens, but contained "
+                    + cookieTokens.length);
+        }
+        String username = cookieTokens[0];
+        long userId;
+        long expiresAt;
+        int version;
+        try {
+            userId = Long.parseLong(cookieTokens[1]);
+            expiresAt = Long.parseLong(cookieTokens[2]);
+            version = Integer.parseInt(cookieTokens[3]);
+        } catch (NumberFormatException e) {
+            throw new InvalidCookieException("Cookie contains malformed numbers");
+        }
+        String signature = cookieTokens[4];
+        if (expiresAt < System.currentTimeMillis()) {
+            throw new InvalidCookieException("Cookie token has expired");
+        }
+        User user = toUser(getUserDetailsService().loadUserByUsername(username));
+        String expected = sign(username, user.getId(), expiresAt, version, user.getPassword());
+        if (user.getId() != userId || !constantTimeEquals(toUtf8(expected), toUtf8(signature))) {
+            throw new InvalidCookieException("Cookie token signature is wrong");
+        }
+        if (version != user.getRememberMeVersion() || revocations.isRevoked(signature)) {
+            throw new InvalidCookieException("Cookie token was revoked");
+        }
+        return user;
+    }
+
+    /**
+     * Revokes the token of the cookie, so it doesn't work even if it was copied, and then cancels the cookie. Only a
+     * token that passes all the checks of an auto-login is revoked, so forged cookies can't fill the revocations up,
+     * and it's remembered no longer than the tokens issued now are valid.
+     *
+     * @param request        http request
+     * @param response       http response
+     * @param authentication user's authentication
+     */
+    @Override
+    public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        String cookie = extractRememberMeCookie(request);
+        if (cookie != null) {
+            try {
+                String[] tokens = decodeCookie(cookie);
+                processAutoLoginCookie(tokens, request, response);
+                long maxExpiresAt = System.currentTimeMillis() + getTokenValiditySeconds() * 1000L;
+                revocations.revoke(tokens[4], Math.min(Long.parseLong(tokens[2]), maxExpiresAt));
+            } catch (AuthenticationException e) {
+                logger.debug("Remember-me cookie is not revoked since it's not valid", e);
+            }
+        }
+        super.logout(request, response, authentication);
+    }
+
+    /**
+     * Signs the token values along with the password hash, so the token is bound to the current password.
+     *
+     * @return hex encoded signature
+     */
+    String sign(String username, long userId, long expiresAt, int version, String password) {
+        String data = username + ':' + userId + ':' + expiresAt + ':' + version + ':' + password;
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(toUtf8(getKey()), HMAC_ALGORITHM));
+            return toHex(mac.doFinal(toUtf8(data)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not supported by this JRE", e);
+        }
+    }
+
+    private static User toUser(UserDetails userDetails) {
+        if (!(userDetails instanceof User)) {
+            throw new IllegalStateException("Signed remember-me tokens need users with ids, but got "
+                    + userDetails.getClass().getName());
+        }
+        return (User) userDetails;
+    }
+
+    /**
+     * Compares the arrays in the time that depends only on their lengths, so that the signature can't be guessed byte
+     * by byte measuring how long the comparison takes.
+     *
+     * @return {@code true} if the arrays are equal
+     */
+    private static boolean constantTimeEquals(byte[] expected, byte[] actual) {
+        if (expected.length != actual.length) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < expected.length; i++) {
+            difference |= expected[i] ^ actual[i];
+        }
+        return difference == 0;
+    }
+
+    private static byte[] toUtf8(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.entity.Branch;
+import org.jtalks.common.model.entity.Component;
+import org.jtalks.common.model.entity.ComponentType;
+import org.jtalks.common.model.entity.Entity;
+import org.jtalks.common.model.entity.Section;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class AclCacheWarmerTest {
+    private DriverManagerDataSource dataSource;
+    private LookupStrategy lookupStrategy;
+
+    @BeforeMethod
+    public void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_acl_warmer", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table acl_class (id bigint primary key, class varchar(255) not null)");
+        jdbc.execute("create table acl_object_identity (id bigint primary key, object_id_class bigint not null, "
+                + "object_id_identity bigint not null)");
+        String[] types = {"BRANCH", "SECTION", "COMPONENT", "GROUP"};
+        for (int i = 0; i < types.length; i++) {
+            jdbc.update("insert into acl_class values (?, ?)", i + 1, types[i]);
+            jdbc.update("insert into acl_object_identity values (?, ?, 1)", i + 1, i + 1);
+        }
+        lookupStrategy = mock(LookupStrategy.class);
+    }
+
+    @AfterMethod
+    public void dropDatabase() {
+        new JdbcTemplate(dataSource).execute("drop schema public cascade");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDefaultTypesAreThoseOfDefaultGenerator() throws Exception {
+        AclCacheWarmer warmer = new AclCacheWarmer(dataSource, lookupStrategy);
+
+        assertEquals(warmer.warmUp(), 3);
+
+        ArgumentCaptor<List> identities = ArgumentCaptor.forClass(List.class);
+        verify(lookupStrategy, times(3)).readAclsById(identities.capture(), anyListOf(Sid.class));
+        Set<String> warmedTypes = new HashSet<String>();
+        for (List<ObjectIdentity> batch : identities.getAllValues()) {
+            for (ObjectIdentity identity : batch) {
+                warmedTypes.add(identity.getType());
+            }
+        }
+        assertEquals(warmedTypes, new HashSet<String>(Arrays.asList(
+                typeOf(new Branch("branch", "")), typeOf(new Section("section")),
+                typeOf(new Component("component", "", ComponentType.FORUM)))));
+        assertTrue(warmer.isWarmedUp());
+    }
+
+    private static String typeOf(Entity entity) {
+        entity.setId(1);
+        return TypeConvertingObjectIdentityGenerator.createDefaultGenerator().getObjectIdentity(entity).getType();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import com.google.common.collect.Lists;
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.jtalks.common.security.acl.AclEntriesDiff.StoredAce;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.Permission;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AclEntriesDiffTest {
+    private MutableAcl acl;
+
+    @BeforeMethod
+    public void setUp() {
+        acl = mock(MutableAcl.class);
+    }
+
+    @Test
+    public void testCompute_withoutChanges() {
+        List<StoredAce> stored = Lists.newArrayList(stored(10L, 0, BranchPermission.VIEW_TOPICS),
+                stored(11L, 1, BranchPermission.CREATE_POSTS));
+        List<AccessControlEntry> current = Lists.newArrayList(entry(10L, BranchPermission.VIEW_TOPICS),
+                entry(11L, BranchPermission.CREATE_POSTS));
+
+        assertTrue(AclEntriesDiff.compute(stored, current).isEmpty());
+    }
+
+    @Test
+    public void testCompute_deletedInTheMiddleAndAppended() {
+        List<StoredAce> stored = Lists.newArrayList(stored(10L, 0, BranchPermission.VIEW_TOPICS),
+                stored(11L, 1, BranchPermission.CREATE_POSTS), stored(12L, 2, BranchPermission.DELETE_OWN_POSTS));
+        AccessControlEntry appended = entry(null, BranchPermission.CREATE_POSTS);
+        List<AccessControlEntry> current = Lists.newArrayList(entry(10L, BranchPermission.VIEW_TOPICS),
+                entry(12L, BranchPermission.DELETE_OWN_POSTS), appended);
+
+        AclEntriesDiff diff = AclEntriesDiff.compute(stored, current);
+        assertEquals(Lists.newArrayList(diff.getDeletedIds()), Lists.newArrayList(11L));
+        assertTrue(diff.getUpdatedEntries().isEmpty());
+        assertEquals(diff.getInsertedEntries(), Lists.newArrayList(appended));
+        assertEquals(diff.getInsertedOrders(), Lists.newArrayList(3));
+    }
+
+    @Test
+    public void testCompute_withChangedPermission() {
+        List<StoredAce> stored = Lists.newArrayList(stored(10L, 0, BranchPermission.VIEW_TOPICS));
+        AccessControlEntry changed = entry(10L, BranchPermission.CREATE_POSTS);
+
+        AclEntriesDiff diff = AclEntriesDiff.compute(stored, Lists.newArrayList(changed));
+        assertEquals(diff.getUpdatedEntries(), Lists.newArrayList(changed));
+        assertTrue(diff.getDeletedIds().isEmpty());
+        assertTrue(diff.getInsertedEntries().isEmpty());
+    }
+
+    @Test
+    public void testCompute_insertedBeforeEntryWithoutFreeOrder() {
+        List<StoredAce> stored = Lists.newArrayList(stored(10L, 0, BranchPermission.VIEW_TOPICS),
+                stored(11L, 5, BranchPermission.CREATE_POSTS));
+        AccessControlEntry inserted = entry(null, BranchPermission.DELETE_OWN_POSTS);
+        AccessControlEntry moved = entry(10L, BranchPermission.VIEW_TOPICS);
+        AccessControlEntry kept = entry(11L, BranchPermission.CREATE_POSTS);
+
+        AclEntriesDiff diff = AclEntriesDiff.compute(stored, Lists.newArrayList(inserted, moved, kept));
+        assertEquals(Lists.newArrayList(diff.getDeletedIds()), Lists.newArrayList(10L));
+        assertEquals(diff.getInsertedEntries(), Lists.newArrayList(inserted, moved));
+        assertEquals(diff.getInsertedOrders(), Lists.newArrayList(0, 1));
+        assertTrue(diff.getUpdatedEntries().isEmpty());
+    }
+
+    @Test
+    public void testCompute_allRemoved() {
+        List<StoredAce> stored = Lists.newArrayList(stored(10L, 0, BranchPermission.VIEW_TOPICS),
+                stored(11L, 1, BranchPermission.CREATE_POSTS));
+
+        AclEntriesDiff diff = AclEntriesDiff.compute(stored, Lists.<AccessControlEntry>newArrayList());
+        assertEquals(diff.getDeletedIds().size(), 2);
+        assertTrue(diff.getInsertedEntries().isEmpty());
+    }
+
+    private StoredAce stored(long id, int order, Permission permission) {
+        return new StoredAce(id, order, permission.getMask(), true, false, false);
+    }
+
+    private AccessControlEntry entry(Long id, Permission permission) {
+        return new AccessControlEntryImpl(id, acl, new UserGroupSid(1L), permission, true, false, false);
+    }
+}
@@ -14,8 +14,10 @@
  */
 package org.jtalks.common.security.acl;
 
+import com.google.common.collect.Lists;
 import org.jtalks.common.model.entity.Branch;
 import org.jtalks.common.model.entity.Entity;
+import org.jtalks.common.model.entity.Section;
 import org.jtalks.common.security.acl.sids.UserGroupSid;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -63,6 +65,41 @@ public class AclManagerTest {
         }
     }
 
+    @Test
+    public void testInheritFromSection() {
+        Section section = new Section("section");
+        Branch branch = new Branch("branch", "description");
+        branch.setSection(section);
+        MutableAcl branchAcl = mock(MutableAcl.class);
+        MutableAcl sectionAcl = mock(MutableAcl.class);
+        ExtendedMutableAcl extendedBranchAcl = ExtendedMutableAcl.create(branchAcl);
+        when(mockAclUtil.getAclFor(branch)).thenReturn(extendedBranchAcl);
+        when(mockAclUtil.getAclFor(section)).thenReturn(ExtendedMutableAcl.create(sectionAcl));
+
+        manager.inheritFromSection(branch);
+
+        verify(branchAcl).setParent(sectionAcl);
+        verify(branchAcl).setEntriesInheriting(true);
+        verify(aclService).updateAcl(extendedBranchAcl);
+    }
+
+    @Test
+    public void testSetParentToNullStopsInheriting() {
+        Branch branch = new Branch("branch", "description");
+        MutableAcl branchAcl = mock(MutableAcl.class);
+        when(mockAclUtil.getAclFor(branch)).thenReturn(ExtendedMutableAcl.create(branchAcl));
+
+        manager.setParent(branch, null);
+
+        verify(branchAcl).setParent(null);
+        verify(branchAcl).setEntriesInheriting(false);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInheritFromSectionWithoutSection() {
+        manager.inheritFromSection(new Branch("branch", "description"));
+    }
+
     private GroupAce findWithOriginalAce(List<GroupAce> groupAces, AccessControlEntry originalAce) {
         for (GroupAce groupAce : groupAces) {
             if (groupAce.getOriginalAce() == originalAce) {
@@ -93,6 +130,32 @@ public class AclManagerTest {
         verify(aclService).updateAcl(ExtendedMutableAcl.NULL_ACL);
     }
 
+    @Test(dataProvider = "randomSidsAndPermissionsAndEntity", dataProviderClass = AclDataProvider.class)
+    public void testGrantOnSeveralTargets(List<Sid> sids, List<Permission> permissions, Entity target) {
+        List<Entity> targets = Lists.newArrayList(target, target);
+        ExtendedMutableAcl first = ExtendedMutableAcl.create(mock(MutableAcl.class));
+        ExtendedMutableAcl second = ExtendedMutableAcl.create(mock(MutableAcl.class));
+        when(mockAclUtil.grant(sids, permissions, targets)).thenReturn(Lists.newArrayList(first, second));
+        manager.grant(sids, permissions, targets);
+        verify(aclService).updateAcl(first);
+        verify(aclService).updateAcl(second);
+    }
+
+    @Test(dataProvider = "randomSidsAndPermissionsAndEntity", dataProviderClass = AclDataProvider.class)
+    public void testGrantOnSeveralTargets_withBatchUpdate(List<Sid> sids, List<Permission> permissions,
+                                                          Entity target) {
+        JtalksMutableAcService jtalksAclService = mock(JtalksMutableAcService.class);
+        manager = new AclManager(jtalksAclService);
+        manager.setAclUtil(mockAclUtil);
+        List<Entity> targets = Lists.newArrayList(target);
+        List<ExtendedMutableAcl> acls = Lists.newArrayList(ExtendedMutableAcl.create(mock(MutableAcl.class)));
+        when(mockAclUtil.restrict(sids, permissions, targets)).thenReturn(acls);
+
+        manager.restrict(sids, permissions, targets);
+        verify(jtalksAclService).updateAcls(acls);
+        verify(jtalksAclService, never()).updateAcl(any(MutableAcl.class));
+    }
+
     @Test(dataProvider = "randomEntity", dataProviderClass = AclDataProvider.class)
     public void testDeleteFromAcl(Entity target) throws Exception {
         ObjectIdentity objectIdentity = new ObjectIdentityImpl(target.getClass(), target.getId());
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.entity.Branch;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.entity.User;
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.jtalks.common.security.acl.sids.JtalksSidFactory;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AclPermissionFilterTest {
+    private static final List<Sid> SIDS = Collections.<Sid>singletonList(new UserSid(1L));
+
+    private LookupStrategy lookupStrategy;
+    private AclPermissionFilter filter;
+    private Map<ObjectIdentity, Acl> acls;
+
+    @BeforeMethod
+    public void setUp() {
+        lookupStrategy = mock(LookupStrategy.class);
+        acls = new HashMap<ObjectIdentity, Acl>();
+        when(lookupStrategy.readAclsById(anyListOf(ObjectIdentity.class), anyListOf(Sid.class))).thenReturn(acls);
+        filter = new AclPermissionFilter(lookupStrategy, new JtalksSidFactory());
+    }
+
+    @Test
+    public void testFilterReadsAllAclsAtOnce() {
+        Branch permitted = branch(1L);
+        Branch restricted = branch(2L);
+        Branch withoutAcl = branch(3L);
+        givenAcl(permitted, true);
+        givenAcl(restricted, false);
+
+        List<Branch> result = filter.filter(Arrays.asList(permitted, restricted, withoutAcl),
+                BranchPermission.VIEW_TOPICS, SIDS);
+
+        assertEquals(result, Arrays.asList(permitted));
+        verify(lookupStrategy, times(1)).readAclsById(anyListOf(ObjectIdentity.class), anyListOf(Sid.class));
+    }
+
+    @Test
+    public void testFilterKeepsDuplicatesAndOrder() {
+        Branch first = branch(1L);
+        Branch second = branch(2L);
+        givenAcl(first, true);
+        givenAcl(second, true);
+
+        List<Branch> result = filter.filter(Arrays.asList(second, first, second), BranchPermission.VIEW_TOPICS, SIDS);
+
+        assertEquals(result, Arrays.asList(second, first, second));
+    }
+
+    @Test
+    public void testEntityWithoutMatchingEntriesIsNotPermitted() {
+        Branch branch = branch(1L);
+        Acl acl = givenAcl(branch, true);
+        when(acl.isGranted(anyListOf(Permission.class), anyListOf(Sid.class), anyBoolean()))
+                .thenThrow(new NotFoundException(""));
+
+        assertTrue(filter.filter(Arrays.asList(branch), BranchPermission.VIEW_TOPICS, SIDS).isEmpty());
+    }
+
+    @Test
+    public void testEffectiveAclResolverDecidesIfSet() {
+        Branch inheriting = branch(1L);
+        Branch restricted = branch(2L);
+        Acl section = mock(Acl.class);
+        when(section.getEntries()).thenReturn(Arrays.<AccessControlEntry>asList(
+                new AccessControlEntryImpl(null, section, SIDS.get(0), BranchPermission.VIEW_TOPICS, true, false,
+                        false)));
+        givenAcl(inheriting, false, section);
+        givenAcl(restricted, true, null);
+        filter.setEffectiveAclResolver(new EffectiveAclResolver(mock(AclService.class)));
+
+        List<Branch> result = filter.filter(Arrays.asList(inheriting, restricted), BranchPermission.VIEW_TOPICS,
+                SIDS);
+
+        assertEquals(result, Arrays.asList(inheriting));
+    }
+
+    @Test
+    public void testEmptyCollectionIsNotLookedUp() {
+        assertTrue(filter.filter(Collections.<Branch>emptyList(), BranchPermission.VIEW_TOPICS, SIDS).isEmpty());
+
+        verifyZeroInteractions(lookupStrategy);
+    }
+
+    @Test
+    public void testGetSidsIncludesGroupsOfUser() {
+        User user = new User("username", "email", "password", "salt");
+        user.setId(1L);
+        Group group = new Group("group");
+        group.setId(5L);
+        user.setGroups(Arrays.asList(group));
+        Authentication authentication = new UsernamePasswordAuthenticationToken(user, null);
+
+        List<Sid> sids = filter.getSids(authentication);
+
+        assertEquals(sids, Arrays.<Sid>asList(new UserSid(user), new UserGroupSid(group)));
+    }
+
+    private Acl givenAcl(Branch branch, boolean granted) {
+        Acl acl = mock(Acl.class);
+        when(acl.isGranted(anyListOf(Permission.class), anyListOf(Sid.class), anyBoolean())).thenReturn(granted);
+        acls.put(TypeConvertingObjectIdentityGenerator.createDefaultGenerator().getObjectIdentity(branch), acl);
+        return acl;
+    }
+
+    private Acl givenAcl(Branch branch, boolean granted, Acl parent) {
+        Acl acl = givenAcl(branch, granted);
+        when(acl.getParentAcl()).thenReturn(parent);
+        when(acl.isEntriesInheriting()).thenReturn(parent != null);
+        when(acl.getEntries()).thenReturn(Collections.<AccessControlEntry>emptyList());
+        return acl;
+    }
+
+    private static Branch branch(long id) {
+        Branch branch = new Branch("name", "description");
+        branch.setId(id);
+        return branch;
+    }
+}
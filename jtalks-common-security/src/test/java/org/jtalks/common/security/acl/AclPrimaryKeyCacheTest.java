@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class AclPrimaryKeyCacheTest {
+    private AclPrimaryKeyCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new AclPrimaryKeyCache();
+    }
+
+    @Test
+    public void testPutSid() {
+        cache.putSid(5L, "user:1", true);
+
+        assertEquals(cache.getSidId("user:1", true), Long.valueOf(5L));
+        assertEquals(cache.getSidName(5L), "user:1");
+        assertTrue(cache.isPrincipal(5L));
+        assertNull(cache.getSidId("user:1", false));
+    }
+
+    @Test
+    public void testRemoveSid() {
+        cache.putSid(5L, "user:1", true);
+
+        cache.removeSid("user:1", true);
+
+        assertNull(cache.getSidId("user:1", true));
+        assertNull(cache.getSidName(5L));
+    }
+
+    @Test
+    public void testPutClass() {
+        cache.putClass(3L, "BRANCH");
+
+        assertEquals(cache.getClassId("BRANCH"), Long.valueOf(3L));
+        assertEquals(cache.getClassName(3L), "BRANCH");
+    }
+
+    @Test
+    public void testClear() {
+        cache.putSid(5L, "user:1", true);
+        cache.putClass(3L, "BRANCH");
+
+        cache.clear();
+
+        assertNull(cache.getSidId("user:1", true));
+        assertNull(cache.getClassId("BRANCH"));
+    }
+}
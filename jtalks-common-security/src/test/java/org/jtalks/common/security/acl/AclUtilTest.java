@@ -14,16 +14,24 @@
  */
 package org.jtalks.common.security.acl;
 
+import org.jtalks.common.model.entity.Branch;
 import org.jtalks.common.model.entity.Entity;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.security.acls.domain.ObjectIdentityImpl;
 import org.springframework.security.acls.model.*;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertSame;
@@ -48,10 +56,8 @@ public class AclUtilTest {
     @Test(dataProvider = "randomSidsAndPermissions", dataProviderClass = AclDataProvider.class)
     public void testDeletePermissionFromAcl(List<Sid> sids, List<Permission> permissions) throws Exception {
         ExtendedMutableAcl acl = mock(ExtendedMutableAcl.class);
-        List<AccessControlEntry> entries = AclDataProvider.createEntries(acl, sids, permissions);
-        when(acl.getEntries()).thenReturn(entries);
         util.deletePermissionsFromAcl(acl, sids, permissions);
-        verify(acl).delete(entries);
+        verify(acl).deletePermissions(sids, permissions);
     }
 
     @Test
@@ -105,4 +111,74 @@ public class AclUtilTest {
         when(aclService.createAcl(oid)).thenReturn(acl);
         assertSame(((ExtendedMutableAcl)util.aclFromObjectIdentity(1L, "type")).getAcl(), acl);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetAclsForReadsAgainOnlyMissingAcls() throws Exception {
+        List<Branch> branches = Arrays.asList(branch(1), branch(2), branch(3), branch(4));
+        final ObjectIdentity missing = util.createIdentityFor(branches.get(2));
+        final Map<ObjectIdentity, Acl> stored = new HashMap<ObjectIdentity, Acl>();
+        for (Branch branch : branches) {
+            ObjectIdentity oid = util.createIdentityFor(branch);
+            if (!oid.equals(missing)) {
+                stored.put(oid, mock(MutableAcl.class));
+            }
+        }
+        Answer<Map<ObjectIdentity, Acl>> lookup = new Answer<Map<ObjectIdentity, Acl>>() {
+            @Override
+            public Map<ObjectIdentity, Acl> answer(InvocationOnMock invocation) throws Throwable {
+                List<ObjectIdentity> oids = (List<ObjectIdentity>) invocation.getArguments()[0];
+                if (oids.contains(missing)) {
+                    throw new NotFoundException("");
+                }
+                Map<ObjectIdentity, Acl> found = new HashMap<ObjectIdentity, Acl>();
+                for (ObjectIdentity oid : oids) {
+                    found.put(oid, stored.get(oid));
+                }
+                return found;
+            }
+        };
+        when(aclService.readAclsById(anyListOf(ObjectIdentity.class))).thenAnswer(lookup);
+        MutableAcl created = mock(MutableAcl.class);
+        when(aclService.readAclById(missing)).thenThrow(new NotFoundException(""));
+        when(aclService.createAcl(missing)).thenReturn(created);
+
+        List<ExtendedMutableAcl> acls = util.getAclsFor(branches);
+
+        assertEquals(acls.size(), 4);
+        assertSame(acls.get(0).getAcl(), stored.get(util.createIdentityFor(branches.get(0))));
+        assertSame(acls.get(2).getAcl(), created);
+        assertSame(acls.get(3).getAcl(), stored.get(util.createIdentityFor(branches.get(3))));
+        verify(aclService).readAclById(missing);
+        verify(aclService).createAcl(missing);
+        verify(aclService, never()).readAclById(util.createIdentityFor(branches.get(0)));
+    }
+
+    @Test
+    public void testGetAclsForSkipsMissingAclsWithJtalksService() throws Exception {
+        JtalksMutableAcService jtalksAclService = mock(JtalksMutableAcService.class);
+        util = new AclUtil(jtalksAclService);
+        List<Branch> branches = Arrays.asList(branch(1), branch(2));
+        ObjectIdentity existingOid = util.createIdentityFor(branches.get(0));
+        ObjectIdentity missing = util.createIdentityFor(branches.get(1));
+        MutableAcl existing = mock(MutableAcl.class);
+        MutableAcl created = mock(MutableAcl.class);
+        when(jtalksAclService.readExistingAclsById(Arrays.asList(existingOid, missing)))
+                .thenReturn(Collections.<ObjectIdentity, Acl>singletonMap(existingOid, existing));
+        when(jtalksAclService.readAclById(missing)).thenThrow(new NotFoundException(""));
+        when(jtalksAclService.createAcl(missing)).thenReturn(created);
+
+        List<ExtendedMutableAcl> acls = util.getAclsFor(branches);
+
+        assertSame(acls.get(0).getAcl(), existing);
+        assertSame(acls.get(1).getAcl(), created);
+        verify(jtalksAclService, never()).readAclsById(anyListOf(ObjectIdentity.class));
+        verify(jtalksAclService, never()).readAclById(existingOid);
+    }
+
+    private static Branch branch(long id) {
+        Branch branch = new Branch("branch" + id, "");
+        branch.setId(id);
+        return branch;
+    }
 }
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.security.acl.invalidation.AclInvalidationPublisher;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class ChunkedSidRemoverTest {
+    private static final UserGroupSid GROUP = new UserGroupSid(3L);
+    private static final UserSid HEIR = new UserSid(7L);
+
+    private JdbcTemplate jdbc;
+    private JtalksMutableAcService aclService;
+    private AclPrimaryKeyCache primaryKeyCache;
+    private ChunkedSidRemover remover;
+
+    @BeforeMethod
+    public void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_sid_remover", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table acl_sid (id bigint generated by default as identity (start with 10) primary key, "
+                + "principal boolean not null, sid varchar(100) not null)");
+        jdbc.execute("create table acl_class (id bigint primary key, class varchar(255) not null)");
+        jdbc.execute("create table acl_object_identity (id bigint primary key, object_id_class bigint not null, "
+                + "object_id_identity bigint not null, parent_object bigint, owner_sid bigint, "
+                + "entries_inheriting boolean not null)");
+        jdbc.execute("create table acl_entry (id bigint primary key, acl_object_identity bigint not null, "
+                + "ace_order int not null, sid bigint not null, mask int not null, granting boolean not null, "
+                + "audit_success boolean not null, audit_failure boolean not null)");
+        jdbc.update("insert into acl_sid values (1, false, 'usergroup:3')");
+        jdbc.update("insert into acl_sid values (2, false, 'usergroup:4')");
+        jdbc.update("insert into acl_class values (1, 'BRANCH')");
+        for (int branch = 1; branch <= 5; branch++) {
+            jdbc.update("insert into acl_object_identity values (?, 1, ?, null, ?, true)",
+                    branch, branch, branch <= 3 ? 1 : 2);
+            jdbc.update("insert into acl_entry values (?, ?, 0, 1, 1, true, false, false)", branch, branch);
+            jdbc.update("insert into acl_entry values (?, ?, 1, 2, 1, true, false, false)", 10 + branch, branch);
+        }
+
+        aclService = mock(JtalksMutableAcService.class);
+        primaryKeyCache = spy(new AclPrimaryKeyCache());
+        when(aclService.getPrimaryKeyCache()).thenReturn(primaryKeyCache);
+        remover = new ChunkedSidRemover(aclService, dataSource, new DataSourceTransactionManager(dataSource));
+        remover.setChunkSize(2);
+    }
+
+    @AfterMethod
+    public void dropTables() {
+        jdbc.execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testSidIsRemovedInChunks() {
+        ProgressCollector listener = new ProgressCollector(Integer.MAX_VALUE);
+
+        SidRemovalProgress progress = remover.removeSid(GROUP, HEIR, listener);
+
+        assertTrue(progress.isFinished());
+        assertEquals(progress.getTotalRows(), 8);
+        assertEquals(progress.getDeletedEntries(), 5);
+        assertEquals(progress.getReassignedObjects(), 3);
+        long[][] expected = {{2, 0}, {4, 0}, {5, 0}, {5, 2}, {5, 3}, {5, 3}};
+        assertEquals(listener.progresses.size(), expected.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(listener.progresses.get(i).getDeletedEntries(), expected[i][0]);
+            assertEquals(listener.progresses.get(i).getReassignedObjects(), expected[i][1]);
+        }
+        assertTrue(listener.progresses.get(expected.length - 1).isFinished());
+        verify(aclService, times(5)).evictFromCache(anyCollectionOf(ObjectIdentity.class));
+    }
+
+    @Test
+    public void testEntriesOfOtherSidsAreKept() {
+        remover.removeSid(GROUP, HEIR, null);
+
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 1"), 0);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 2"), 5);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_sid where sid = 'usergroup:3'"), 0);
+        verify(primaryKeyCache).removeSid("usergroup:3", false);
+    }
+
+    @Test
+    public void testRemovedSidIsPublishedToOtherNodes() {
+        AclInvalidationPublisher publisher = mock(AclInvalidationPublisher.class);
+        when(aclService.getInvalidationPublisher()).thenReturn(publisher);
+
+        remover.removeSid(GROUP, HEIR, null);
+
+        verify(publisher).invalidateSid("usergroup:3", false);
+    }
+
+    @Test
+    public void testOwnedObjectsArePassedToCreatedHeir() {
+        remover.removeSid(GROUP, HEIR, null);
+
+        long heirId = jdbc.queryForLong("select id from acl_sid where sid = 'user:7' and principal = true");
+        assertEquals(jdbc.queryForInt("select count(*) from acl_object_identity where owner_sid = ?", heirId), 3);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_object_identity where owner_sid = 2"), 2);
+    }
+
+    @Test
+    public void testCreatedHeirIsCached() {
+        remover.removeSid(GROUP, HEIR, null);
+
+        long heirId = jdbc.queryForLong("select id from acl_sid where sid = 'user:7' and principal = true");
+        assertEquals(primaryKeyCache.getSidId("user:7", true), Long.valueOf(heirId));
+    }
+
+    @Test
+    public void testStoppedRemovalIsResumed() {
+        SidRemovalProgress stopped = remover.removeSid(GROUP, HEIR, new ProgressCollector(1));
+
+        assertFalse(stopped.isFinished());
+        assertEquals(stopped.getDeletedEntries(), 2);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 1"), 3);
+
+        SidRemovalProgress resumed = remover.removeSid(GROUP, HEIR, null);
+
+        assertTrue(resumed.isFinished());
+        assertEquals(resumed.getTotalRows(), 6);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 1"), 0);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_sid where sid = 'usergroup:3'"), 0);
+    }
+
+    @Test
+    public void testHeirIsRequiredIfSidOwnsObjects() {
+        try {
+            remover.removeSid(GROUP, null, null);
+            fail("Heir should be required");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 1"), 5);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_object_identity where owner_sid = 1"), 3);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_sid where sid = 'usergroup:3'"), 1);
+        verify(aclService, never()).evictFromCache(anyCollectionOf(ObjectIdentity.class));
+    }
+
+    @Test
+    public void testUnknownSidIsRemovedAtOnce() {
+        SidRemovalProgress progress = remover.removeSid(new UserGroupSid(100L), null, null);
+
+        assertTrue(progress.isFinished());
+        assertEquals(progress.getTotalRows(), 0);
+        verify(aclService, never()).evictFromCache(anyCollectionOf(ObjectIdentity.class));
+    }
+
+    /**
+     * Remembers all the progress notifications and stops the removal after the specified number of them.
+     */
+    private static class ProgressCollector implements SidRemovalListener {
+        private final List<SidRemovalProgress> progresses = new ArrayList<SidRemovalProgress>();
+        private final int chunksToProcess;
+
+        ProgressCollector(int chunksToProcess) {
+            this.chunksToProcess = chunksToProcess;
+        }
+
+        @Override
+        public boolean onChunkCommitted(@Nonnull SidRemovalProgress progress) {
+            progresses.add(progress);
+            return progresses.size() < chunksToProcess;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.BasePermission;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class EffectiveAclPermissionEvaluatorTest {
+    private static final ObjectIdentity SECTION = new ObjectIdentityImpl("SECTION", 1L);
+    private static final ObjectIdentity BRANCH = new ObjectIdentityImpl("BRANCH", 2L);
+    private static final Sid USER = new PrincipalSid("username");
+
+    private AclService aclService;
+    private EffectiveAclPermissionEvaluator evaluator;
+    private Authentication authentication;
+
+    @BeforeMethod
+    public void setUp() {
+        aclService = mock(AclService.class);
+        evaluator = new EffectiveAclPermissionEvaluator(new EffectiveAclResolver(aclService));
+        authentication = new UsernamePasswordAuthenticationToken("username", null);
+    }
+
+    @Test
+    public void testPermissionInheritedFromParentIsGranted() {
+        Acl section = acl(null, false, entry(USER, BasePermission.READ, true));
+        when(aclService.readAclById(BRANCH)).thenReturn(acl(section, true));
+
+        assertTrue(evaluator.hasPermission(authentication, 2L, "BRANCH", BasePermission.READ));
+        assertTrue(evaluator.hasPermission(authentication, 2L, "BRANCH", "read"));
+        assertTrue(evaluator.hasPermission(authentication, 2L, "BRANCH", BasePermission.READ.getMask()));
+    }
+
+    @Test
+    public void testOwnRestrictingEntryOverridesParent() {
+        Acl section = acl(null, false, entry(USER, BasePermission.READ, true));
+        when(aclService.readAclById(BRANCH)).thenReturn(acl(section, true, entry(USER, BasePermission.READ, false)));
+
+        assertFalse(evaluator.hasPermission(authentication, 2L, "BRANCH", BasePermission.READ));
+    }
+
+    @Test
+    public void testObjectWithoutAclIsNotPermitted() {
+        when(aclService.readAclById(SECTION)).thenThrow(new NotFoundException(""));
+
+        assertFalse(evaluator.hasPermission(authentication, 1L, "SECTION", BasePermission.READ));
+        assertFalse(evaluator.hasPermission(authentication, null, BasePermission.READ));
+    }
+
+    @Test
+    public void testArrayOfPermissionsIsResolved() {
+        Permission[] permissions = {BranchPermission.VIEW_TOPICS, BasePermission.READ};
+
+        assertEquals(evaluator.resolvePermission(permissions), Arrays.asList(permissions));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedPermissionIsRejected() {
+        evaluator.resolvePermission(1L);
+    }
+
+    private static Acl acl(Acl parent, boolean inheriting, AccessControlEntry... entries) {
+        Acl acl = mock(Acl.class);
+        when(acl.getParentAcl()).thenReturn(parent);
+        when(acl.isEntriesInheriting()).thenReturn(inheriting);
+        when(acl.getEntries()).thenReturn(new ArrayList<AccessControlEntry>(Arrays.asList(entries)));
+        return acl;
+    }
+
+    private static AccessControlEntry entry(Sid sid, Permission permission, boolean granting) {
+        return new AccessControlEntryImpl(null, mock(Acl.class), sid, permission, granting, false, false);
+    }
+}
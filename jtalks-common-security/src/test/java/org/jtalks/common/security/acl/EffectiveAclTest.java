@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class EffectiveAclTest {
+    private static final Sid USER = new UserSid(1L);
+    private static final Sid GROUP = new UserGroupSid(2L);
+    private static final List<Sid> SIDS = Arrays.asList(USER, GROUP);
+    private static final List<Permission> VIEW = Collections.<Permission>singletonList(BranchPermission.VIEW_TOPICS);
+
+    @Test
+    public void testOwnEntryIsUsed() {
+        Acl acl = acl(null, true, entry(GROUP, BranchPermission.VIEW_TOPICS, true));
+
+        assertTrue(EffectiveAcl.of(acl).isGranted(VIEW, SIDS));
+    }
+
+    @Test
+    public void testParentEntryIsInherited() {
+        Acl section = acl(null, false, entry(GROUP, BranchPermission.VIEW_TOPICS, true));
+        Acl branch = acl(section, true);
+
+        EffectiveAcl effectiveAcl = EffectiveAcl.of(branch);
+
+        assertTrue(effectiveAcl.isGranted(VIEW, SIDS));
+        assertEquals(effectiveAcl.getDepth(), 2);
+    }
+
+    @Test
+    public void testOwnEntryOverridesParentEntry() {
+        Acl section = acl(null, false, entry(GROUP, BranchPermission.VIEW_TOPICS, true));
+        Acl branch = acl(section, true, entry(USER, BranchPermission.VIEW_TOPICS, false));
+
+        assertFalse(EffectiveAcl.of(branch).isGranted(VIEW, SIDS));
+    }
+
+    @Test
+    public void testParentIsIgnoredWithoutInheriting() {
+        Acl section = acl(null, false, entry(GROUP, BranchPermission.VIEW_TOPICS, true));
+        Acl branch = acl(section, false);
+
+        EffectiveAcl effectiveAcl = EffectiveAcl.of(branch);
+
+        assertFalse(effectiveAcl.isGranted(VIEW, SIDS));
+        assertEquals(effectiveAcl.getDepth(), 1);
+    }
+
+    @Test
+    public void testFirstMatchingEntryOfLevelWins() {
+        Acl acl = acl(null, true,
+                entry(USER, BranchPermission.VIEW_TOPICS, false), entry(USER, BranchPermission.VIEW_TOPICS, true));
+
+        assertFalse(EffectiveAcl.of(acl).isGranted(VIEW, SIDS));
+    }
+
+    private static Acl acl(Acl parent, boolean inheriting, AccessControlEntry... entries) {
+        Acl acl = mock(Acl.class);
+        when(acl.getParentAcl()).thenReturn(parent);
+        when(acl.isEntriesInheriting()).thenReturn(inheriting);
+        when(acl.getEntries()).thenReturn(new ArrayList<AccessControlEntry>(Arrays.asList(entries)));
+        return acl;
+    }
+
+    private static AccessControlEntry entry(Sid sid, Permission permission, boolean granting) {
+        return new AccessControlEntryImpl(null, mock(Acl.class), sid, permission, granting, false, false);
+    }
+}
@@ -16,13 +16,18 @@ package org.jtalks.common.security.acl;
 
 import com.google.common.collect.Lists;
 import org.jtalks.common.model.permissions.BranchPermission;
+import org.mockito.InOrder;
 import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AclImpl;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
 import org.springframework.security.acls.domain.PrincipalSid;
 import org.springframework.security.acls.model.*;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -103,13 +108,83 @@ public class ExtendedMutableAclTest {
         List<Sid> sids = getRandomSids();
         List<Permission> permissions = createPermissions();
         extendedMutableAcl.addPermissions(sids, permissions, true);
-        for (int i = 0; i < permissions.size(); i++) {
-            for (Sid sid : sids) {
-                verify(wrappedMock).insertAce(i, permissions.get(i), sid, true);
+        for (int sidIndex = 0; sidIndex < sids.size(); sidIndex++) {
+            for (int i = 0; i < permissions.size(); i++) {
+                int expectedPosition = sidIndex * permissions.size() + i;
+                verify(wrappedMock).insertAce(expectedPosition, permissions.get(i), sids.get(sidIndex), true);
             }
         }
     }
 
+    @Test(dataProvider = "extendedMutableAclAndWrappedMock")
+    public void testDeletePermissions(ExtendedMutableAcl extendedMutableAcl, MutableAcl wrappedMock) {
+        Sid first = new PrincipalSid("1");
+        Sid second = new PrincipalSid("2");
+        List<AccessControlEntry> entries = Lists.newArrayList(
+                createEntry(0, wrappedMock, first, BranchPermission.VIEW_TOPICS),
+                createEntry(1, wrappedMock, second, BranchPermission.VIEW_TOPICS),
+                createEntry(2, wrappedMock, first, BranchPermission.CREATE_POSTS),
+                createEntry(3, wrappedMock, first, BranchPermission.DELETE_OWN_POSTS));
+        when(wrappedMock.getEntries()).thenReturn(entries);
+
+        int deleted = extendedMutableAcl.deletePermissions(Lists.newArrayList(first),
+                Lists.<Permission>newArrayList(BranchPermission.VIEW_TOPICS, BranchPermission.DELETE_OWN_POSTS));
+        assertEquals(deleted, 2);
+        InOrder inOrder = inOrder(wrappedMock);
+        inOrder.verify(wrappedMock).deleteAce(3);
+        inOrder.verify(wrappedMock).deleteAce(0);
+        verify(wrappedMock, times(2)).deleteAce(anyInt());
+    }
+
+    @Test(dataProvider = "extendedMutableAclAndWrappedMock")
+    public void testDeletePermissions_withNoMatchingEntries(ExtendedMutableAcl extendedMutableAcl,
+                                                            MutableAcl wrappedMock) {
+        List<AccessControlEntry> entries = createEntries(wrappedMock);
+        when(wrappedMock.getEntries()).thenReturn(entries);
+
+        int deleted = extendedMutableAcl.deletePermissions(Lists.newArrayList(new PrincipalSid("2")),
+                Lists.<Permission>newArrayList(BranchPermission.CREATE_STICKED_TOPICS));
+        assertEquals(deleted, 0);
+        verify(wrappedMock, times(0)).deleteAce(anyInt());
+    }
+
+    @Test
+    public void testDeletePermissionsOfAclImplKeepsOrderOfOtherEntries() {
+        AclAuthorizationStrategy authorizationStrategy = mock(AclAuthorizationStrategy.class);
+        AclImpl acl = new AclImpl(new ObjectIdentityImpl("BRANCH", 1L), 1L, authorizationStrategy,
+                mock(PermissionGrantingStrategy.class), null, null, true, new PrincipalSid("owner"));
+        Sid removed = new PrincipalSid("removed");
+        Sid kept = new PrincipalSid("kept");
+        acl.insertAce(0, BranchPermission.VIEW_TOPICS, removed, true);
+        acl.insertAce(1, BranchPermission.VIEW_TOPICS, kept, true);
+        acl.insertAce(2, BranchPermission.DELETE_OWN_POSTS, removed, false);
+        acl.insertAce(3, BranchPermission.DELETE_OWN_POSTS, kept, false);
+        reset(authorizationStrategy);
+
+        int deleted = ExtendedMutableAcl.create(acl).deletePermissions(Arrays.asList(removed),
+                Arrays.<Permission>asList(BranchPermission.VIEW_TOPICS, BranchPermission.DELETE_OWN_POSTS));
+
+        assertEquals(deleted, 2);
+        assertEquals(acl.getEntries().size(), 2);
+        assertEquals(acl.getEntries().get(0).getPermission(), BranchPermission.VIEW_TOPICS);
+        assertEquals(acl.getEntries().get(1).getPermission(), BranchPermission.DELETE_OWN_POSTS);
+        assertEquals(acl.getEntries().get(0).getSid(), kept);
+        assertEquals(acl.getEntries().get(1).getSid(), kept);
+        verify(authorizationStrategy, times(2)).securityCheck(acl, AclAuthorizationStrategy.CHANGE_GENERAL);
+    }
+
+    @Test
+    public void testDeleteNothingFromAclImplDoesNotCheckPermissions() {
+        AclAuthorizationStrategy authorizationStrategy = mock(AclAuthorizationStrategy.class);
+        AclImpl acl = new AclImpl(new ObjectIdentityImpl("BRANCH", 1L), 1L, authorizationStrategy,
+                mock(PermissionGrantingStrategy.class), null, null, true, new PrincipalSid("owner"));
+
+        ExtendedMutableAcl.create(acl).deletePermissions(Arrays.asList(new PrincipalSid("user")),
+                Arrays.<Permission>asList(BranchPermission.VIEW_TOPICS));
+
+        verifyZeroInteractions(authorizationStrategy);
+    }
+
     @DataProvider(name = "mutableAclMock")
     public Object[][] provideMutableAclMock() {
         return new Object[][]{{mock(MutableAcl.class)}};
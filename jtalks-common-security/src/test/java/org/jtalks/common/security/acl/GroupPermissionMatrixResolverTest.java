@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.dao.GroupDao;
+import org.jtalks.common.model.entity.Branch;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.jtalks.common.model.permissions.GeneralPermission;
+import org.jtalks.common.security.acl.GroupPermissionMatrix.Cell;
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class GroupPermissionMatrixResolverTest {
+    private static final ObjectIdentity BRANCH = new ObjectIdentityImpl(Branch.class, 1L);
+
+    private AclUtil aclUtil;
+    private GroupDao groupDao;
+    private GroupPermissionMatrixResolver resolver;
+    private Group moderators;
+    private Group banned;
+
+    @BeforeMethod
+    public void setUp() {
+        aclUtil = mock(AclUtil.class);
+        groupDao = mock(GroupDao.class);
+        resolver = new GroupPermissionMatrixResolver(aclUtil, groupDao);
+        moderators = group(1);
+        banned = group(2);
+        when(groupDao.getGroupsByIds(anyCollectionOf(Long.class))).thenReturn(Arrays.asList(moderators, banned));
+    }
+
+    @Test
+    public void testMatrixCells() {
+        givenAcl(
+                ace(new UserGroupSid(1L), BranchPermission.VIEW_TOPICS, true),
+                ace(new UserGroupSid(2L), BranchPermission.VIEW_TOPICS, false),
+                ace(new UserSid(5L), BranchPermission.CREATE_TOPICS, true),
+                ace(new UserGroupSid(1L), GeneralPermission.ADMIN, true),
+                ace(new UserGroupSid(1L), GeneralPermission.ADMIN, false));
+
+        GroupPermissionMatrix matrix = resolver.getMatrix(BRANCH);
+
+        assertEquals(matrix.getGroups(), Arrays.asList(moderators, banned));
+        assertEquals(matrix.getPermissions(), Arrays.asList(BranchPermission.VIEW_TOPICS, GeneralPermission.ADMIN));
+        assertEquals(matrix.getCell(moderators, BranchPermission.VIEW_TOPICS), Cell.GRANTED);
+        assertEquals(matrix.getCell(banned, BranchPermission.VIEW_TOPICS), Cell.RESTRICTED);
+        assertEquals(matrix.getCell(moderators, GeneralPermission.ADMIN), Cell.GRANTED);
+        assertEquals(matrix.getCell(banned, GeneralPermission.ADMIN), Cell.NOT_SET);
+        assertEquals(matrix.getCell(moderators, BranchPermission.CREATE_TOPICS), Cell.NOT_SET);
+        assertEquals(matrix.getGrantedGroups(BranchPermission.VIEW_TOPICS), Arrays.asList(moderators));
+        assertEquals(matrix.getRestrictedGroups(BranchPermission.VIEW_TOPICS), Arrays.asList(banned));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGroupsAreReadWithOneQuery() {
+        givenAcl(
+                ace(new UserGroupSid(1L), BranchPermission.VIEW_TOPICS, true),
+                ace(new UserGroupSid(2L), BranchPermission.VIEW_TOPICS, true),
+                ace(new UserGroupSid(1L), BranchPermission.CREATE_TOPICS, true));
+
+        resolver.getMatrix(BRANCH);
+
+        ArgumentCaptor<Collection> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(groupDao).getGroupsByIds(ids.capture());
+        verifyNoMoreInteractions(groupDao);
+        assertEquals(new ArrayList<Long>(ids.getValue()), Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    public void testDeletedGroupsAreReportedAsMissing() {
+        givenAcl(
+                ace(new UserGroupSid(1L), BranchPermission.VIEW_TOPICS, true),
+                ace(new UserGroupSid(3L), BranchPermission.VIEW_TOPICS, true));
+
+        GroupPermissionMatrix matrix = resolver.getMatrix(BRANCH);
+
+        assertEquals(matrix.getMissingGroupIds(), Arrays.asList(3L));
+        assertEquals(matrix.getCell(3L, BranchPermission.VIEW_TOPICS), Cell.NOT_SET);
+    }
+
+    @Test
+    public void testCellsAreCachedWhileAclIsNotChanged() {
+        MutableAcl acl = givenAcl(ace(new UserGroupSid(1L), BranchPermission.VIEW_TOPICS, true));
+
+        resolver.getMatrix(BRANCH);
+        resolver.getMatrix(BRANCH);
+        givenAcl(ace(new UserGroupSid(1L), BranchPermission.VIEW_TOPICS, false));
+        GroupPermissionMatrix changed = resolver.getMatrix(BRANCH);
+
+        assertEquals(changed.getCell(moderators, BranchPermission.VIEW_TOPICS), Cell.RESTRICTED);
+        verify(acl, times(1)).getEntries();
+        assertSame(changed.getObjectIdentity(), BRANCH);
+    }
+
+    @Test
+    public void testGroupsAreReadOnEachCall() {
+        givenAcl(
+                ace(new UserGroupSid(1L), BranchPermission.VIEW_TOPICS, true),
+                ace(new UserGroupSid(2L), BranchPermission.VIEW_TOPICS, false));
+        resolver.getMatrix(BRANCH);
+        Group renamed = group(1);
+        renamed.setName("renamed");
+        when(groupDao.getGroupsByIds(anyCollectionOf(Long.class))).thenReturn(Arrays.asList(renamed));
+
+        GroupPermissionMatrix matrix = resolver.getMatrix(BRANCH);
+
+        assertSame(matrix.getGroups().get(0), renamed);
+        assertEquals(matrix.getGroups().size(), 1);
+        assertEquals(matrix.getMissingGroupIds(), Arrays.asList(2L));
+        assertEquals(matrix.getCell(renamed, BranchPermission.VIEW_TOPICS), Cell.GRANTED);
+        verify(groupDao, times(2)).getGroupsByIds(anyCollectionOf(Long.class));
+    }
+
+    private MutableAcl givenAcl(AccessControlEntry... entries) {
+        MutableAcl acl = mock(MutableAcl.class);
+        when(acl.getEntries()).thenReturn(new ArrayList<AccessControlEntry>(Arrays.asList(entries)));
+        when(aclUtil.getAclFor(BRANCH)).thenReturn(ExtendedMutableAcl.castAndCreate(acl));
+        return acl;
+    }
+
+    private static AccessControlEntry ace(Sid sid, Permission permission, boolean granting) {
+        return new AccessControlEntryImpl(null, mock(MutableAcl.class), sid, permission, granting, false, false);
+    }
+
+    private static Group group(long id) {
+        Group group = new Group("group" + id);
+        group.setId(id);
+        return group;
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.model.entity.Branch;
+import org.jtalks.common.model.entity.Section;
+import org.jtalks.common.security.acl.sids.JtalksSidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AuditLogger;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.*;
+
+/**
+ * Compares the {@code in}-based lookup with the lookup of {@link
+ * org.springframework.security.acls.jdbc.BasicLookupStrategy} on an in-memory database with 10k branches. The time
+ * each of them takes is logged by the {@code benchmark} group, which is disabled by default.
+ */
+public class JtalksLookupStrategyTest {
+    private static final int BRANCHES = 10000;
+    private static final int SECTIONS = 100;
+    private static final int GROUPS = 10;
+    private static final int ROUNDS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private DriverManagerDataSource dataSource;
+    private ExecutorService executor;
+    private List<ObjectIdentity> branches;
+
+    @BeforeClass
+    public void createAcls() {
+        dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_acl_lookup", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table acl_sid (id bigint primary key, principal boolean not null, "
+                + "sid varchar(100) not null)");
+        jdbc.execute("create table acl_class (id bigint primary key, class varchar(255) not null)");
+        jdbc.execute("create table acl_object_identity (id bigint primary key, object_id_class bigint not null, "
+                + "object_id_identity bigint not null, parent_object bigint, owner_sid bigint, "
+                + "entries_inheriting boolean not null, "
+                + "constraint uk_acl_objid unique (object_id_class, object_id_identity))");
+        jdbc.execute("create table acl_entry (id bigint primary key, acl_object_identity bigint not null, "
+                + "ace_order int not null, sid bigint not null, mask int not null, granting boolean not null, "
+                + "audit_success boolean not null, audit_failure boolean not null)");
+
+        jdbc.update("insert into acl_sid values (0, true, 'user:1')");
+        for (int group = 1; group <= GROUPS; group++) {
+            jdbc.update("insert into acl_sid values (?, false, ?)", group, "usergroup:" + group);
+        }
+        jdbc.update("insert into acl_class values (1, ?)", Section.class.getName());
+        jdbc.update("insert into acl_class values (2, ?)", Branch.class.getName());
+        for (int section = 1; section <= SECTIONS; section++) {
+            jdbc.update("insert into acl_object_identity values (?, 1, ?, null, 0, false)", section, section);
+            jdbc.update("insert into acl_entry values (?, ?, 0, 1, 1, true, false, false)", section, section);
+        }
+        branches = new ArrayList<ObjectIdentity>(BRANCHES);
+        for (int branch = 1; branch <= BRANCHES; branch++) {
+            long id = SECTIONS + branch;
+            jdbc.update("insert into acl_object_identity values (?, 2, ?, ?, 0, true)",
+                    id, branch, branch % SECTIONS + 1);
+            jdbc.update("insert into acl_entry values (?, ?, 0, ?, 2, true, false, false)",
+                    2 * id, id, branch % GROUPS + 1);
+            jdbc.update("insert into acl_entry values (?, ?, 1, ?, 4, false, true, true)",
+                    2 * id + 1, id, (branch + 1) % GROUPS + 1);
+            branches.add(new ObjectIdentityImpl(Branch.class.getName(), (long) branch));
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void dropDatabase() {
+        executor.shutdownNow();
+        new JdbcTemplate(dataSource).execute("shutdown");
+    }
+
+    @Test
+    public void testInClauseLookupReadsSameAclsAsBasicLookup() {
+        Map<ObjectIdentity, Acl> expected = strategy(false, false).readAclsById(branches, null);
+        Map<ObjectIdentity, Acl> actual = strategy(true, false).readAclsById(branches, null);
+
+        assertEquals(actual.size(), BRANCHES);
+        assertEquals(expected.size(), BRANCHES);
+        for (ObjectIdentity branch : branches) {
+            assertAclEquals(actual.get(branch), expected.get(branch));
+            assertAclEquals(actual.get(branch).getParentAcl(), expected.get(branch).getParentAcl());
+        }
+    }
+
+    @Test
+    public void testParallelLookupReadsAllAcls() {
+        Map<ObjectIdentity, Acl> acls = strategy(true, true).readAclsById(branches, null);
+
+        assertEquals(acls.size(), BRANCHES);
+        for (ObjectIdentity branch : branches) {
+            assertEquals(acls.get(branch).getEntries().size(), 2);
+            assertNotNull(acls.get(branch).getParentAcl());
+        }
+    }
+
+    @Test
+    public void testMissingIdentitiesAreSkipped() {
+        List<ObjectIdentity> identities = new ArrayList<ObjectIdentity>();
+        identities.add(branches.get(0));
+        identities.add(new ObjectIdentityImpl(Branch.class.getName(), (long) BRANCHES + 1));
+        identities.add(new ObjectIdentityImpl("UNKNOWN", 1L));
+
+        Map<ObjectIdentity, Acl> acls = strategy(true, false).readAclsById(identities, null);
+
+        assertEquals(acls.size(), 1);
+        assertNotNull(acls.get(branches.get(0)));
+    }
+
+    @Test
+    public void testBatchesAreNotSelectedInParallelInsideOfTransaction() {
+        ExecutorService lookupExecutor = mock(ExecutorService.class);
+        JtalksLookupStrategy strategy = strategy(true, false);
+        strategy.setLookupExecutor(lookupExecutor);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        Map<ObjectIdentity, Acl> acls;
+        try {
+            acls = strategy.readAclsById(branches, null);
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        assertEquals(acls.size(), BRANCHES);
+        verify(lookupExecutor, never()).submit(any(Callable.class));
+    }
+
+    @Test(groups = "benchmark", enabled = false)
+    public void benchmark() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long basic = measure(strategy(false, false));
+            long in = measure(strategy(true, false));
+            long parallel = measure(strategy(true, true));
+            logger.info(String.format("Lookup of %d ACLs, round %d: basic %d ms, in %d ms, parallel in %d ms",
+                    BRANCHES, round + 1, basic, in, parallel));
+        }
+    }
+
+    private long measure(JtalksLookupStrategy strategy) {
+        long start = System.nanoTime();
+        assertEquals(strategy.readAclsById(branches, null).size(), BRANCHES);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private JtalksLookupStrategy strategy(boolean inClauseLookup, boolean parallel) {
+        JtalksLookupStrategy strategy = new JtalksLookupStrategy(dataSource, new TinyLfuAclCache(2 * BRANCHES),
+                mock(AclAuthorizationStrategy.class), mock(AuditLogger.class));
+        strategy.setSidFactory(new JtalksSidFactory());
+        strategy.setLookupBatchSize(100);
+        strategy.setInClauseLookup(inClauseLookup);
+        if (parallel) {
+            strategy.setLookupExecutor(executor);
+        }
+        return strategy;
+    }
+
+    private void assertAclEquals(Acl actual, Acl expected) {
+        assertEquals(actual.getObjectIdentity(), expected.getObjectIdentity());
+        assertEquals(actual.getOwner(), expected.getOwner());
+        assertEquals(actual.isEntriesInheriting(), expected.isEntriesInheriting());
+        assertEquals(actual.getEntries().size(), expected.getEntries().size());
+        for (int i = 0; i < expected.getEntries().size(); i++) {
+            AccessControlEntry actualEntry = actual.getEntries().get(i);
+            AccessControlEntry expectedEntry = expected.getEntries().get(i);
+            assertEquals(actualEntry.getId(), expectedEntry.getId());
+            assertEquals(actualEntry.getSid(), expectedEntry.getSid());
+            assertEquals(actualEntry.getPermission(), expectedEntry.getPermission());
+            assertEquals(actualEntry.isGranting(), expectedEntry.isGranting());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.security.acl.sids.UserGroupSid;
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AclImpl;
+import org.springframework.security.acls.domain.BasePermission;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.*;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class JtalksMutableAcServiceTest {
+    private static final ObjectIdentity SECTION = new ObjectIdentityImpl("SECTION", 1L);
+
+    private JdbcTemplate jdbc;
+    private LookupStrategy lookupStrategy;
+    private AclCache aclCache;
+    private JtalksMutableAcService aclService;
+    private TransactionTemplate transaction;
+
+    @BeforeMethod
+    public void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_mutable_acl_service", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table acl_sid (id bigint generated by default as identity (start with 10) primary key, "
+                + "principal boolean not null, sid varchar(100) not null)");
+        jdbc.execute("create table acl_class (id bigint primary key, class varchar(255) not null)");
+        jdbc.execute("create table acl_object_identity (id bigint primary key, object_id_class bigint not null, "
+                + "object_id_identity bigint not null, parent_object bigint, owner_sid bigint, "
+                + "entries_inheriting boolean not null)");
+        jdbc.execute("create table acl_entry (id bigint generated by default as identity (start with 10) primary key, "
+                + "acl_object_identity bigint not null, ace_order int not null, sid bigint not null, "
+                + "mask int not null, granting boolean not null, audit_success boolean not null, "
+                + "audit_failure boolean not null)");
+        jdbc.update("insert into acl_sid values (1, true, 'user:1')");
+        jdbc.update("insert into acl_sid values (2, false, 'usergroup:3')");
+        jdbc.update("insert into acl_class values (1, 'BRANCH')");
+        jdbc.update("insert into acl_class values (2, 'SECTION')");
+        jdbc.update("insert into acl_object_identity values (1, 2, 1, null, 1, true)");
+        jdbc.update("insert into acl_object_identity values (2, 1, 1, 1, 1, true)");
+        jdbc.update("insert into acl_object_identity values (3, 1, 2, 1, 1, true)");
+        jdbc.update("insert into acl_object_identity values (4, 1, 3, 2, 1, true)");
+        jdbc.update("insert into acl_object_identity values (5, 1, 4, null, 1, true)");
+        jdbc.update("insert into acl_entry values (1, 2, 0, 1, 1, true, false, false)");
+        jdbc.update("insert into acl_entry values (2, 2, 1, 1, 2, true, false, false)");
+        jdbc.update("insert into acl_entry values (3, 2, 2, 1, 4, true, false, false)");
+        jdbc.update("insert into acl_entry values (4, 3, 0, 1, 1, true, false, false)");
+
+        lookupStrategy = mock(LookupStrategy.class);
+        aclCache = mock(AclCache.class);
+        aclService = new JtalksMutableAcService(dataSource, lookupStrategy, aclCache);
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterMethod
+    public void dropTables() {
+        jdbc.execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testUpdateAclsUpdatesObjectIdentitiesWithBatch() {
+        MutableAcl section = acl(SECTION, 1L, null, new UserSid(1L), true);
+        MutableAcl branch4 = acl(branch(4), 5L, section, new UserGroupSid(3L), false);
+        MutableAcl branch1 = acl(branch(1), 2L, null, new UserSid(1L), true);
+
+        updateInTransaction(branch4, branch1);
+
+        Map<String, Object> branch4Row = jdbc.queryForMap("select * from acl_object_identity where id = 5");
+        assertEquals(((Number) branch4Row.get("parent_object")).longValue(), 1L);
+        assertEquals(((Number) branch4Row.get("owner_sid")).longValue(), 2L);
+        assertEquals(branch4Row.get("entries_inheriting"), false);
+        assertNull(jdbc.queryForMap("select * from acl_object_identity where id = 2").get("parent_object"));
+    }
+
+    @Test
+    public void testUpdateAclsEvictsAllDescendants() {
+        updateInTransaction(acl(SECTION, 1L, null, new UserSid(1L), true));
+
+        verify(aclCache).evictFromCache(SECTION);
+        verify(aclCache).evictFromCache(branch(1));
+        verify(aclCache).evictFromCache(branch(2));
+        verify(aclCache).evictFromCache(branch(3));
+        verify(aclCache, never()).evictFromCache(branch(4));
+    }
+
+    @Test
+    public void testUpdateAclsWritesOnlyChangedEntries() {
+        MutableAcl branch1 = aclWithEntries(branch(1), 2L);
+        when(branch1.getEntries()).thenReturn(Arrays.<AccessControlEntry>asList(
+                entry(1L, branch1, new UserSid(1L), BasePermission.READ, true),
+                entry(2L, branch1, new UserSid(1L), BasePermission.WRITE, false),
+                entry(null, branch1, new UserGroupSid(3L), BasePermission.DELETE, true)));
+
+        updateInTransaction(branch1);
+
+        List<Map<String, Object>> rows = jdbc.queryForList(
+                "select * from acl_entry where acl_object_identity = 2 order by ace_order");
+        assertEquals(rows.size(), 3);
+        assertRow(rows.get(0), 0, 1L, 1, true);
+        assertEquals(((Number) rows.get(0).get("id")).longValue(), 1L);
+        assertRow(rows.get(1), 1, 1L, 2, false);
+        assertEquals(((Number) rows.get(1).get("id")).longValue(), 2L);
+        assertRow(rows.get(2), 2, 2L, 8, true);
+        assertTrue(((Number) rows.get(2).get("id")).longValue() >= 10L);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where id = 3"), 0);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where acl_object_identity = 3"), 1);
+    }
+
+    @Test
+    public void testUpdateAclsReinsertsEntriesWithoutRoomForNewOnes() {
+        MutableAcl branch1 = aclWithEntries(branch(1), 2L);
+        when(branch1.getEntries()).thenReturn(Arrays.<AccessControlEntry>asList(
+                entry(1L, branch1, new UserSid(1L), BasePermission.READ, true),
+                entry(null, branch1, new UserGroupSid(3L), BasePermission.DELETE, true),
+                entry(2L, branch1, new UserSid(1L), BasePermission.WRITE, true),
+                entry(3L, branch1, new UserSid(1L), BasePermission.CREATE, true)));
+
+        updateInTransaction(branch1);
+
+        assertEquals(masksOfBranch1(), Arrays.asList(1, 8, 2, 4));
+        assertEquals(jdbc.queryForList("select ace_order from acl_entry where acl_object_identity = 2 "
+                + "order by ace_order", Integer.class), Arrays.asList(0, 1, 2, 3));
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where id = 1"), 1);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where id in (2, 3)"), 0);
+    }
+
+    @Test
+    public void testUpdateAclsReordersEntries() {
+        MutableAcl branch1 = aclWithEntries(branch(1), 2L);
+        when(branch1.getEntries()).thenReturn(Arrays.<AccessControlEntry>asList(
+                entry(3L, branch1, new UserSid(1L), BasePermission.CREATE, true),
+                entry(2L, branch1, new UserSid(1L), BasePermission.WRITE, true),
+                entry(1L, branch1, new UserSid(1L), BasePermission.READ, true)));
+
+        updateInTransaction(branch1);
+
+        assertEquals(masksOfBranch1(), Arrays.asList(4, 2, 1));
+        assertEquals(jdbc.queryForInt("select ace_order from acl_entry where id = 3"), 2);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where id in (1, 2)"), 0);
+    }
+
+    @Test
+    public void testUpdateAclsUpdatesAuditFlagsInPlace() {
+        MutableAcl branch1 = aclWithEntries(branch(1), 2L);
+        when(branch1.getEntries()).thenReturn(Arrays.<AccessControlEntry>asList(
+                entry(1L, branch1, new UserSid(1L), BasePermission.READ, true),
+                entry(2L, branch1, new UserSid(1L), BasePermission.WRITE, true),
+                entry(3L, branch1, new UserSid(1L), BasePermission.CREATE, true)));
+        jdbc.update("update acl_entry set audit_success = true where id = 2");
+
+        updateInTransaction(branch1);
+
+        assertEquals(masksOfBranch1(), Arrays.asList(1, 2, 4));
+        assertEquals(jdbc.queryForList("select id from acl_entry where acl_object_identity = 2 order by ace_order",
+                Long.class), Arrays.asList(1L, 2L, 3L));
+        assertEquals(jdbc.queryForObject("select audit_success from acl_entry where id = 2", Boolean.class), false);
+    }
+
+    @Test(expectedExceptions = NotFoundException.class)
+    public void testUpdateAclsFailsIfObjectIdentityIsNotStored() {
+        updateInTransaction(acl(branch(99), 99L, null, new UserSid(1L), true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUpdateAclsRequiresTransaction() {
+        aclService.updateAcls(Arrays.asList(acl(branch(1), 2L, null, new UserSid(1L), true)));
+    }
+
+    @Test
+    public void testReadExistingAclsByIdDoesNotRequireAllAcls() {
+        List<ObjectIdentity> oids = Arrays.asList(branch(1), branch(99));
+        Map<ObjectIdentity, Acl> found = new HashMap<ObjectIdentity, Acl>();
+        found.put(branch(1), acl(branch(1), 2L, null, new UserSid(1L), true));
+        when(lookupStrategy.readAclsById(oids, null)).thenReturn(found);
+
+        assertEquals(aclService.readExistingAclsById(oids), found);
+    }
+
+    private void updateInTransaction(final MutableAcl... acls) {
+        Map<ObjectIdentity, Acl> stored = new HashMap<ObjectIdentity, Acl>();
+        for (MutableAcl acl : acls) {
+            stored.put(acl.getObjectIdentity(), acl);
+        }
+        when(lookupStrategy.readAclsById(anyListOf(ObjectIdentity.class), anyListOf(Sid.class))).thenReturn(stored);
+        transaction.execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                return aclService.updateAcls(Arrays.asList(acls));
+            }
+        });
+    }
+
+    private static ObjectIdentity branch(long id) {
+        return new ObjectIdentityImpl("BRANCH", id);
+    }
+
+    private static MutableAcl acl(ObjectIdentity oid, long id, Acl parent, Sid owner, boolean entriesInheriting) {
+        return new AclImpl(oid, id, mock(AclAuthorizationStrategy.class), mock(PermissionGrantingStrategy.class),
+                parent, null, entriesInheriting, owner);
+    }
+
+    private List<Integer> masksOfBranch1() {
+        return jdbc.queryForList("select mask from acl_entry where acl_object_identity = 2 order by ace_order",
+                Integer.class);
+    }
+
+    private static void assertRow(Map<String, Object> row, int order, long sid, int mask, boolean granting) {
+        assertEquals(((Number) row.get("ace_order")).intValue(), order);
+        assertEquals(((Number) row.get("sid")).longValue(), sid);
+        assertEquals(((Number) row.get("mask")).intValue(), mask);
+        assertEquals(row.get("granting"), granting);
+    }
+
+    private static MutableAcl aclWithEntries(ObjectIdentity oid, long id) {
+        MutableAcl acl = mock(MutableAcl.class);
+        when(acl.getId()).thenReturn(id);
+        when(acl.getObjectIdentity()).thenReturn(oid);
+        when(acl.getOwner()).thenReturn(new UserSid(1L));
+        when(acl.isEntriesInheriting()).thenReturn(true);
+        return acl;
+    }
+
+    private static AccessControlEntry entry(Long id, Acl acl, Sid sid, Permission permission, boolean granting) {
+        return new AccessControlEntryImpl(id, acl, sid, permission, granting, false, false);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+
+public class OrphanedGroupSidSweeperTest {
+    private JdbcTemplate jdbc;
+    private JtalksMutableAcService aclService;
+    private OrphanedGroupSidSweeper sweeper;
+
+    @BeforeMethod
+    public void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_sid_sweeper", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table GROUPS (GROUP_ID bigint primary key)");
+        jdbc.execute("create table acl_sid (id bigint generated by default as identity primary key, "
+                + "principal boolean not null, sid varchar(100) not null)");
+        jdbc.execute("create table acl_class (id bigint primary key, class varchar(255) not null)");
+        jdbc.execute("create table acl_object_identity (id bigint primary key, object_id_class bigint not null, "
+                + "object_id_identity bigint not null, parent_object bigint, owner_sid bigint, "
+                + "entries_inheriting boolean not null)");
+        jdbc.execute("create table acl_entry (id bigint primary key, acl_object_identity bigint not null, "
+                + "ace_order int not null, sid bigint not null, mask int not null, granting boolean not null, "
+                + "audit_success boolean not null, audit_failure boolean not null)");
+        jdbc.update("insert into GROUPS values (1)");
+        jdbc.update("insert into GROUPS values (2)");
+        jdbc.update("insert into acl_sid values (1, false, 'usergroup:1')");
+        jdbc.update("insert into acl_sid values (2, false, 'usergroup:2')");
+        jdbc.update("insert into acl_sid values (3, false, 'usergroup:3')");
+        jdbc.update("insert into acl_sid values (4, false, 'usergroup:4')");
+        jdbc.update("insert into acl_sid values (5, true, 'user:1')");
+        jdbc.update("insert into acl_class values (1, 'BRANCH')");
+        jdbc.update("insert into acl_object_identity values (1, 1, 1, null, 5, true)");
+        jdbc.update("insert into acl_object_identity values (2, 1, 2, null, 4, true)");
+        for (int sid = 1; sid <= 4; sid++) {
+            jdbc.update("insert into acl_entry values (?, 1, ?, ?, 1, true, false, false)", sid, sid, sid);
+            jdbc.update("insert into acl_entry values (?, 2, ?, ?, 2, true, false, false)", 10 + sid, sid, sid);
+        }
+
+        aclService = mock(JtalksMutableAcService.class);
+        when(aclService.getPrimaryKeyCache()).thenReturn(new AclPrimaryKeyCache());
+        ChunkedSidRemover remover = new ChunkedSidRemover(aclService, dataSource,
+                new DataSourceTransactionManager(dataSource));
+        remover.setChunkSize(1);
+        sweeper = new OrphanedGroupSidSweeper(remover, dataSource);
+        sweeper.setChunkSize(2);
+    }
+
+    @AfterMethod
+    public void dropTables() {
+        jdbc.execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testSweepRemovesSidsOfDeletedGroups() {
+        sweeper.setSidHeir(new UserSid(1L));
+
+        OrphanedGroupSidSweeper.SweepReport report = sweeper.sweep();
+
+        assertEquals(report.getScannedSids(), 4);
+        assertEquals(report.getRemovedSids(), 2);
+        assertEquals(report.getFailedSids(), 0);
+        assertEquals(report.getDeletedEntries(), 4);
+        assertEquals(report.getReassignedObjects(), 1);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_sid where sid in ('usergroup:3', 'usergroup:4')"), 0);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry"), 4);
+        assertEquals(jdbc.queryForInt("select owner_sid from acl_object_identity where id = 2"), 5);
+        verify(aclService, atLeast(5)).evictFromCache(anyCollectionOf(ObjectIdentity.class));
+    }
+
+    @Test
+    public void testSidOwningObjectsIsNotRemovedWithoutHeir() {
+        OrphanedGroupSidSweeper.SweepReport report = sweeper.sweep();
+
+        assertEquals(report.getRemovedSids(), 1);
+        assertEquals(report.getFailedSids(), 1);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_sid where sid = 'usergroup:4'"), 1);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 3"), 0);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry where sid = 4"), 2);
+    }
+
+    @Test
+    public void testSweepWithoutOrphansChangesNothing() {
+        jdbc.update("insert into GROUPS values (3)");
+        jdbc.update("insert into GROUPS values (4)");
+
+        OrphanedGroupSidSweeper.SweepReport report = sweeper.sweep();
+
+        assertEquals(report.getScannedSids(), 4);
+        assertEquals(report.getRemovedSids(), 0);
+        assertEquals(jdbc.queryForInt("select count(*) from acl_entry"), 8);
+        verify(aclService, never()).evictFromCache(anyCollectionOf(ObjectIdentity.class));
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class TinyLfuAclCacheTest {
+    private TinyLfuAclCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new TinyLfuAclCache(100);
+    }
+
+    @Test
+    public void testPutInCache() {
+        MutableAcl acl = acl(1);
+
+        cache.putInCache(acl);
+
+        assertSame(cache.getFromCache(acl.getObjectIdentity()), acl);
+        assertSame(cache.getFromCache(1L), acl);
+        assertEquals(cache.getSize(), 1);
+    }
+
+    @Test
+    public void testPutInCache_replacesAclOfSameIdentity() {
+        MutableAcl old = acl(1);
+        MutableAcl fresh = acl(1);
+        cache.putInCache(old);
+
+        cache.putInCache(fresh);
+
+        assertSame(cache.getFromCache(oid(1)), fresh);
+        assertEquals(cache.getSize(), 1);
+    }
+
+    @Test
+    public void testPutInCache_cachesParent() {
+        MutableAcl parent = acl(1);
+        MutableAcl acl = acl(2);
+        when(acl.getParentAcl()).thenReturn(parent);
+
+        cache.putInCache(acl);
+
+        assertSame(cache.getFromCache(oid(1)), parent);
+    }
+
+    @Test
+    public void testEvictFromCache() {
+        cache.putInCache(acl(1));
+        cache.putInCache(acl(2));
+
+        cache.evictFromCache(oid(1));
+        cache.evictFromCache(2L);
+
+        assertNull(cache.getFromCache(oid(1)));
+        assertNull(cache.getFromCache(2L));
+        assertEquals(cache.getWeightedSize(), 0);
+    }
+
+    @Test
+    public void testClearCache() {
+        cache.putInCache(acl(1));
+
+        cache.clearCache();
+
+        assertNull(cache.getFromCache(oid(1)));
+        assertEquals(cache.getSize(), 0);
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        for (int i = 0; i < 1000; i++) {
+            cache.putInCache(acl(i));
+        }
+
+        assertEquals(cache.getSize(), 100);
+        assertEquals(cache.getEvictionCount(), 900);
+    }
+
+    @Test
+    public void testFrequentlyReadAclSurvivesScan() {
+        cache.putInCache(acl(0));
+        for (int i = 0; i < 5; i++) {
+            cache.getFromCache(oid(0));
+        }
+
+        for (int i = 1; i < 1000; i++) {
+            cache.putInCache(acl(i));
+        }
+
+        assertNotNull(cache.getFromCache(oid(0)));
+    }
+
+    @Test
+    public void testWeighByEntries() {
+        cache.setWeighByEntries(true);
+        MutableAcl acl = acl(1);
+        List<AccessControlEntry> entries = Collections.nCopies(9, mock(AccessControlEntry.class));
+        when(acl.getEntries()).thenReturn(entries);
+
+        cache.putInCache(acl);
+
+        assertEquals(cache.getWeightedSize(), 10);
+    }
+
+    @Test
+    public void testStatistics() {
+        cache.putInCache(acl(1));
+
+        cache.getFromCache(oid(1));
+        cache.getFromCache(oid(2));
+
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitRate(), 0.5);
+    }
+
+    @Test
+    public void testStaleAclIsRefreshed() {
+        LookupStrategy strategy = mock(LookupStrategy.class);
+        cache.setRefreshStrategy(strategy);
+        cache.setRefreshAfterWriteMillis(1);
+        cache.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        MutableAcl acl = acl(1);
+        cache.putInCache(acl);
+        sleep(5);
+
+        assertSame(cache.getFromCache(oid(1)), acl);
+
+        verify(strategy).readAclsById(Collections.<ObjectIdentity>singletonList(oid(1)), null);
+        assertEquals(cache.getRefreshCount(), 1);
+    }
+
+    @Test
+    public void testRefreshedAclReplacesCachedOne() {
+        final MutableAcl refreshed = acl(1);
+        refreshWith(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                cache.putInCache(refreshed);
+                return null;
+            }
+        });
+        cache.putInCache(acl(1));
+        sleep(5);
+
+        cache.getFromCache(oid(1));
+
+        assertSame(cache.getFromCache(oid(1)), refreshed);
+    }
+
+    @Test
+    public void testRefreshedAclIsDroppedIfEvictedMeanwhile() {
+        refreshWith(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                cache.evictFromCache(oid(1));
+                cache.putInCache(acl(1));
+                return null;
+            }
+        });
+        cache.putInCache(acl(1));
+        sleep(5);
+
+        cache.getFromCache(oid(1));
+
+        assertNull(cache.getFromCache(oid(1)));
+    }
+
+    @Test
+    public void testRefreshedAclIsDroppedIfReplacedMeanwhile() {
+        final MutableAcl updated = acl(1);
+        refreshWith(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Thread updater = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        cache.putInCache(updated);
+                    }
+                });
+                updater.start();
+                updater.join();
+                cache.putInCache(acl(1));
+                return null;
+            }
+        });
+        cache.putInCache(acl(1));
+        sleep(5);
+
+        cache.getFromCache(oid(1));
+
+        assertSame(cache.getFromCache(oid(1)), updated);
+    }
+
+    @Test
+    public void testFreshAclIsNotRefreshed() {
+        LookupStrategy strategy = mock(LookupStrategy.class);
+        cache.setRefreshStrategy(strategy);
+        cache.setRefreshAfterWriteMillis(60000);
+        cache.putInCache(acl(1));
+
+        cache.getFromCache(oid(1));
+
+        verifyZeroInteractions(strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refreshWith(Answer<Object> lookup) {
+        LookupStrategy strategy = mock(LookupStrategy.class);
+        when(strategy.readAclsById(anyList(), anyList())).thenAnswer(lookup);
+        cache.setRefreshStrategy(strategy);
+        cache.setRefreshAfterWriteMillis(1);
+        cache.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    private static MutableAcl acl(long id) {
+        MutableAcl acl = mock(MutableAcl.class);
+        when(acl.getId()).thenReturn(id);
+        when(acl.getObjectIdentity()).thenReturn(oid(id));
+        return acl;
+    }
+
+    private static ObjectIdentity oid(long id) {
+        return new ObjectIdentityImpl("BRANCH", id);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
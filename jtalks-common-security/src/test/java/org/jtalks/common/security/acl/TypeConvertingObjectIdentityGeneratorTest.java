@@ -14,12 +14,16 @@
  */
 package org.jtalks.common.security.acl;
 
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
 import org.jtalks.common.model.entity.Branch;
 import org.jtalks.common.model.entity.Component;
+import org.jtalks.common.model.entity.Entity;
 import org.springframework.security.acls.model.ObjectIdentity;
 import org.testng.annotations.Test;
 
 import static org.jtalks.common.security.acl.TypeConvertingObjectIdentityGenerator.createDefaultGenerator;
+import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 
 /**
@@ -66,6 +70,39 @@ public class TypeConvertingObjectIdentityGeneratorTest {
         assertEquals(domainObject.getId(), objectIdentity.getIdentifier());
     }
 
+    @Test
+    public void getObjectIdentityShouldUseEntityClassOfHibernateProxy() {
+        TypeConvertingObjectIdentityGenerator sut = new TypeConvertingObjectIdentityGenerator();
+        LazyInitializer initializer = mock(LazyInitializer.class);
+        when(initializer.getPersistentClass()).thenReturn(Branch.class);
+        Entity proxy = mock(Entity.class, withSettings().extraInterfaces(HibernateProxy.class));
+        when(((HibernateProxy) proxy).getHibernateLazyInitializer()).thenReturn(initializer);
+        when(proxy.getId()).thenReturn(1L);
+
+        ObjectIdentity objectIdentity = sut.getObjectIdentity(proxy);
+        assertEquals(objectIdentity.getType(), Branch.class.getSimpleName());
+    }
+
+    @Test
+    public void getObjectIdentityShouldApplyRuleAddedAfterTypeWasResolved() {
+        TypeConvertingObjectIdentityGenerator sut = new TypeConvertingObjectIdentityGenerator();
+        Branch domainObject = givenPersistedBranch();
+        sut.getObjectIdentity(domainObject);
+
+        sut.addConversionRule(Branch.class, "BRANCH");
+
+        assertEquals(sut.getObjectIdentity(domainObject).getType(), "BRANCH");
+    }
+
+    @Test
+    public void getObjectIdentityShouldPreferRuleOfMostSpecificClass() {
+        TypeConvertingObjectIdentityGenerator sut = createDefaultGenerator()
+                .addConversionRule(BranchOffspring.class, "OFFSPRING");
+
+        assertEquals(sut.getObjectIdentity(new BranchOffspring()).getType(), "OFFSPRING");
+        assertEquals(sut.getObjectIdentity(givenPersistedBranch()).getType(), "BRANCH");
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void getObjectIdentityShouldThrowIfEntityIsNotPersisted() throws Exception {
         new TypeConvertingObjectIdentityGenerator().getObjectIdentity(new Component());
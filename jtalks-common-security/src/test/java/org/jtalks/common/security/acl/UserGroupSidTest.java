@@ -22,6 +22,7 @@ import org.testng.annotations.Test;
 import java.util.List;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -43,6 +44,22 @@ public class UserGroupSidTest {
         new UserGroupSid("groupname:1:2").getGroupId();
     }
 
+    @Test(expectedExceptions = UniversalSid.WrongFormatException.class)
+    public void testConstructor_withNotNumericGroupId() throws Exception {
+        new UserGroupSid("usergroup:admins");
+    }
+
+    @Test
+    public void testEqualsComparesGroupIds() throws Exception {
+        Group group = new Group("1");
+        group.setId(1L);
+
+        assertEquals(new UserGroupSid("usergroup:1"), new UserGroupSid(1L));
+        assertEquals(new UserGroupSid(group), new UserGroupSid(1L));
+        assertEquals(new UserGroupSid("usergroup:1").hashCode(), new UserGroupSid(1L).hashCode());
+        assertFalse(new UserGroupSid(1L).equals(new UserGroupSid(2L)));
+    }
+
     @Test
     public void testCreateFromGroups() throws Exception {
         Group[] groups = new Group[]{new Group("1"), new Group("2")};
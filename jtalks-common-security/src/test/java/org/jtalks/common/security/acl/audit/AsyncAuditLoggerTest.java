@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import org.jtalks.common.model.permissions.BranchPermission;
+import org.jtalks.common.security.acl.sids.UserSid;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AsyncAuditLoggerTest {
+    private AuditSink sink;
+    private RecordingSink recordingSink;
+
+    @BeforeMethod
+    public void setUp() {
+        sink = mock(AuditSink.class);
+        recordingSink = new RecordingSink();
+    }
+
+    @Test
+    public void testAuditedDecisionsAreWritten() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(recordingSink);
+
+        logger.logIfNeeded(true, ace(1L, true, false));
+        logger.logIfNeeded(false, ace(2L, false, true));
+        logger.writeBatch(new ArrayList<AuditEvent>());
+
+        assertEquals(recordingSink.events.size(), 2);
+        assertTrue(recordingSink.events.get(0).isGranted());
+        assertEquals(recordingSink.events.get(0).getAceId(), 1L);
+        assertFalse(recordingSink.events.get(1).isGranted());
+        assertEquals(logger.getWrittenCount(), 2);
+    }
+
+    @Test
+    public void testNotAuditedDecisionsAreSkipped() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(sink);
+
+        logger.logIfNeeded(true, ace(1L, false, true));
+        logger.logIfNeeded(false, ace(2L, true, false));
+        logger.writeBatch(new ArrayList<AuditEvent>());
+
+        verify(sink, never()).write(anyListOf(AuditEvent.class));
+    }
+
+    @Test
+    public void testEventsAreDroppedWhenBufferIsFull() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(sink, 4);
+
+        for (int i = 0; i < 10; i++) {
+            logger.log(event());
+        }
+
+        assertEquals(logger.getDroppedCount(), 6);
+    }
+
+    @Test
+    public void testEventsAreSampledWhenBufferIsMoreThanHalfFull() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(sink, 16);
+        logger.setOverflowPolicy(AsyncAuditLogger.OverflowPolicy.SAMPLE);
+        logger.setSampleRate(4);
+
+        int accepted = 0;
+        for (int i = 0; i < 24; i++) {
+            if (logger.log(event())) {
+                accepted++;
+            }
+        }
+
+        assertEquals(accepted, 12);
+        assertEquals(logger.getDroppedCount(), 12);
+    }
+
+    @Test
+    public void testEventsAreWrittenInBatches() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(recordingSink);
+        logger.setBatchSize(3);
+        for (int i = 0; i < 5; i++) {
+            logger.log(event());
+        }
+
+        List<AuditEvent> batch = new ArrayList<AuditEvent>();
+        assertEquals(logger.writeBatch(batch), 3);
+        assertEquals(logger.writeBatch(batch), 2);
+        assertEquals(logger.writeBatch(batch), 0);
+        assertEquals(recordingSink.batches, 2);
+    }
+
+    @Test
+    public void testStopWritesRemainingEventsAndClosesSink() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(sink);
+        logger.setFlushIntervalMillis(10000);
+        logger.start();
+        logger.log(event());
+
+        logger.stop();
+
+        verify(sink).write(anyListOf(AuditEvent.class));
+        verify(sink).close();
+    }
+
+    @Test
+    public void testSinkFailureDoesNotStopWriting() {
+        AsyncAuditLogger logger = new AsyncAuditLogger(sink);
+        doThrow(new IllegalStateException()).when(sink).write(anyListOf(AuditEvent.class));
+        logger.log(event());
+
+        assertEquals(logger.writeBatch(new ArrayList<AuditEvent>()), 1);
+        assertEquals(logger.getWrittenCount(), 0);
+    }
+
+    private static AuditEvent event() {
+        return new AuditEvent(System.currentTimeMillis(), true, 1L, "BRANCH", 1L, "user:1", 1);
+    }
+
+    private static AccessControlEntry ace(long id, boolean auditSuccess, boolean auditFailure) {
+        return new AccessControlEntryImpl(id, mock(Acl.class), new UserSid(1L), BranchPermission.VIEW_TOPICS,
+                true, auditSuccess, auditFailure);
+    }
+
+    private static class RecordingSink implements AuditSink {
+        private final List<AuditEvent> events = new ArrayList<AuditEvent>();
+        private int batches;
+
+        @Override
+        public void write(List<AuditEvent> batch) {
+            events.addAll(batch);
+            batches++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.audit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class JdbcAuditSinkTest {
+    private JdbcTemplate jdbc;
+    private JdbcAuditSink sink;
+
+    @BeforeMethod
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_acl_audit", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table acl_audit (id bigint generated by default as identity primary key, "
+                + "event_time timestamp not null, granted boolean not null, ace_id bigint, "
+                + "object_type varchar(255), object_id bigint, sid varchar(100), mask int not null)");
+        sink = new JdbcAuditSink(dataSource);
+    }
+
+    @AfterMethod
+    public void dropTables() {
+        jdbc.execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testEventsAreInsertedWithBatch() {
+        sink.write(Arrays.asList(
+                new AuditEvent(1000L, true, 5L, "BRANCH", 7L, "user:1", 1),
+                new AuditEvent(2000L, false, null, null, null, "usergroup:3", 2)));
+
+        List<Map<String, Object>> rows = jdbc.queryForList("select * from acl_audit order by id");
+        assertEquals(rows.size(), 2);
+        assertEquals(((Timestamp) rows.get(0).get("event_time")).getTime(), 1000L);
+        assertEquals(rows.get(0).get("granted"), true);
+        assertEquals(((Number) rows.get(0).get("ace_id")).longValue(), 5L);
+        assertEquals(rows.get(0).get("object_type"), "BRANCH");
+        assertEquals(((Number) rows.get(0).get("object_id")).longValue(), 7L);
+        assertEquals(rows.get(0).get("sid"), "user:1");
+        assertEquals(((Number) rows.get(0).get("mask")).intValue(), 1);
+        assertEquals(rows.get(1).get("granted"), false);
+        assertNull(rows.get(1).get("ace_id"));
+        assertNull(rows.get(1).get("object_id"));
+    }
+}
@@ -15,13 +15,16 @@
 package org.jtalks.common.security.acl.builders;
 
 import org.jtalks.common.model.entity.Branch;
+import org.jtalks.common.model.entity.Entity;
 import org.jtalks.common.model.entity.User;
 import org.jtalks.common.model.permissions.GeneralPermission;
 import org.jtalks.common.security.acl.AclManager;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import static org.mockito.Mockito.mock;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
 
 /**
  * @author stanislav bashkirtsev
@@ -43,4 +46,16 @@ public class AclBuildersTest {
                 .on(new Branch("", ""))
                 .flush();
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNewBuilder_withSeveralObjectIdentities() throws Exception {
+        Branch first = new Branch("", "");
+        Branch second = new Branch("", "");
+        builders.<User>newBuilder(aclManager).restrict(GeneralPermission.WRITE)
+                .to(new User("", "", "", ""))
+                .on(first, second)
+                .flush();
+        verify(aclManager).restrict(anyList(), anyList(), eq(Arrays.<Entity>asList(first, second)));
+    }
 }
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.invalidation;
+
+import org.jtalks.common.security.acl.AclPrimaryKeyCache;
+import org.jtalks.common.security.acl.invalidation.AclInvalidationEvent.RemovedSid;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AclInvalidationPublisherTest {
+    private static final ObjectIdentity BRANCH_1 = new ObjectIdentityImpl("BRANCH", 1L);
+    private static final ObjectIdentity BRANCH_2 = new ObjectIdentityImpl("BRANCH", 2L);
+
+    private LoopbackAclInvalidationTransport transport;
+    private AclCache localCache;
+    private AclCache remoteCache;
+    private AclPrimaryKeyCache localPrimaryKeyCache;
+    private AclPrimaryKeyCache remotePrimaryKeyCache;
+    private AclInvalidationPublisher local;
+
+    @BeforeMethod
+    public void setUp() {
+        transport = new LoopbackAclInvalidationTransport();
+        localCache = mock(AclCache.class);
+        remoteCache = mock(AclCache.class);
+        localPrimaryKeyCache = mock(AclPrimaryKeyCache.class);
+        remotePrimaryKeyCache = mock(AclPrimaryKeyCache.class);
+        local = new AclInvalidationPublisher(localCache, transport);
+        local.setPrimaryKeyCache(localPrimaryKeyCache);
+        new AclInvalidationPublisher(remoteCache, transport).setPrimaryKeyCache(remotePrimaryKeyCache);
+    }
+
+    @Test
+    public void testInvalidateEvictsOnOtherNodes() {
+        local.invalidate(Arrays.asList(BRANCH_1, BRANCH_2));
+
+        verify(remoteCache).evictFromCache(BRANCH_1);
+        verify(remoteCache).evictFromCache(BRANCH_2);
+        verifyZeroInteractions(localCache);
+    }
+
+    @Test
+    public void testInvalidateAllClearsCachesOfOtherNodes() {
+        local.invalidateAll();
+
+        verify(remoteCache).clearCache();
+        verifyZeroInteractions(localCache);
+    }
+
+    @Test
+    public void testRemovedSidIsRemovedFromCachesOfOtherNodes() {
+        local.invalidateSid("usergroup:3", false);
+
+        verify(remotePrimaryKeyCache).removeSid("usergroup:3", false);
+        verifyZeroInteractions(localPrimaryKeyCache, remoteCache);
+    }
+
+    @Test
+    public void testRemovedSidsArePublishedWithOtherInvalidationsOfTransaction() {
+        AclInvalidationTransport mockTransport = mock(AclInvalidationTransport.class);
+        AclInvalidationPublisher publisher = new AclInvalidationPublisher(localCache, mockTransport);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            publisher.invalidateAll();
+            publisher.invalidateSid("usergroup:3", false);
+            publisher.invalidateSid("user:7", true);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ArgumentCaptor<AclInvalidationEvent> captor = ArgumentCaptor.forClass(AclInvalidationEvent.class);
+        verify(mockTransport).publish(captor.capture());
+        assertTrue(captor.getValue().isAll());
+        assertEquals(captor.getValue().getRemovedSids(),
+                Arrays.asList(new RemovedSid("usergroup:3", false), new RemovedSid("user:7", true)));
+    }
+
+    @Test
+    public void testInvalidationsOfTransactionArePublishedOnceAfterCommit() {
+        AclInvalidationTransport mockTransport = mock(AclInvalidationTransport.class);
+        AclInvalidationPublisher publisher = new AclInvalidationPublisher(localCache, mockTransport);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            publisher.invalidate(Collections.singletonList(BRANCH_1));
+            publisher.invalidate(Arrays.asList(BRANCH_2, BRANCH_1));
+            verify(mockTransport, never()).publish(any(AclInvalidationEvent.class));
+
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.afterCommit();
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ArgumentCaptor<AclInvalidationEvent> captor = ArgumentCaptor.forClass(AclInvalidationEvent.class);
+        verify(mockTransport).publish(captor.capture());
+        assertEquals(captor.getValue().getObjectIdentities(), Arrays.asList(BRANCH_1, BRANCH_2));
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    public void testNothingIsPublishedOnRollback() {
+        AclInvalidationTransport mockTransport = mock(AclInvalidationTransport.class);
+        AclInvalidationPublisher publisher = new AclInvalidationPublisher(localCache, mockTransport);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            publisher.invalidate(Collections.singletonList(BRANCH_1));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(mockTransport, never()).publish(any(AclInvalidationEvent.class));
+    }
+}
@@ -48,4 +48,18 @@ public class AnonymousUserSidTest {
         assertEquals(sid.getSidId(), "user:anonymousUser");
         assertSame(AnonymousUserSid.create(), sid);
     }
+
+    @Test
+    public void testParsedAnonymousEqualsCreated() {
+        UserSid parsed = new UserSid("user:anonymousUser");
+
+        assertEquals(parsed, AnonymousUserSid.create());
+        assertEquals(parsed.getUserId(), "anonymousUser");
+        assertEquals(parsed.hashCode(), AnonymousUserSid.create().hashCode());
+    }
+
+    @Test
+    public void testUserWithIdIsNotAnonymous() {
+        assertFalse(new UserSid(1L).equals(AnonymousUserSid.create()));
+    }
 }
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.sids;
+
+import org.jtalks.common.model.entity.Group;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.GrantedAuthorityImpl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class InterningSidFactoryTest {
+    private InterningSidFactory factory;
+
+    @BeforeMethod
+    public void setUp() {
+        factory = new InterningSidFactory();
+    }
+
+    @Test
+    public void testGroupSidsAreShared() {
+        Sid sid = factory.create("usergroup:12", false);
+
+        assertTrue(sid instanceof UserGroupSid);
+        assertEquals(((UserGroupSid) sid).getSidId(), "usergroup:12");
+        assertSame(factory.create("usergroup:12", false), sid);
+        assertSame(factory.create(group(12)), sid);
+    }
+
+    @Test
+    public void testUserSidsAreShared() {
+        Sid sid = factory.create("user:7", true);
+
+        assertTrue(sid instanceof UserSid);
+        assertEquals(((UserSid) sid).getSidId(), "user:7");
+        assertSame(factory.create("user:7", true), sid);
+    }
+
+    @Test
+    public void testAnonymousSidIsTheSingleton() {
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(AnonymousUserSid.ANONYMOUS_USER_NAME);
+
+        assertSame(factory.create(AnonymousUserSid.ANONYMOUS_USER_SID_ID, true), UserSid.createAnonymous());
+        assertSame(factory.createPrincipal(authentication), UserSid.createAnonymous());
+    }
+
+    @Test
+    public void testNonCanonicalIdsKeepTheirNames() {
+        Sid sid = factory.create("usergroup:007", false);
+
+        assertEquals(((GrantedAuthoritySid) sid).getGrantedAuthority(), "usergroup:007");
+        assertEquals(((PrincipalSid) factory.create("user:abc", true)).getPrincipal(), "user:abc");
+        assertSame(factory.create("user:abc", true), factory.create("user:abc", true));
+    }
+
+    @Test
+    public void testStandardSidsAreShared() {
+        Sid role = factory.create("ROLE_ADMIN", false);
+        Sid principal = factory.create("admin", true);
+        List<? extends Sid> authorities = factory.createGrantedAuthorities(
+                Arrays.<GrantedAuthority>asList(new GrantedAuthorityImpl("ROLE_ADMIN")));
+
+        assertEquals(role, new GrantedAuthoritySid("ROLE_ADMIN"));
+        assertEquals(principal, new PrincipalSid("admin"));
+        assertSame(factory.create("ROLE_ADMIN", false), role);
+        assertSame(authorities.get(0), role);
+    }
+
+    @Test(expectedExceptions = UniversalSid.WrongFormatException.class)
+    public void testMalformedGroupSidIsRejected() {
+        new UserGroupSid("usergroup:1:2");
+    }
+
+    private static Group group(long id) {
+        Group group = new Group("group");
+        group.setId(id);
+        return group;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.sids;
+
+import org.jtalks.common.model.entity.User;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class UserSidTest {
+    @Test
+    public void testSidsOfTheSameUserAreEqual() {
+        User user = new User("username", "email", "password");
+        user.setId(1L);
+
+        assertEquals(new UserSid("user:1"), new UserSid(1L));
+        assertEquals(new UserSid(user), new UserSid(1L));
+        assertEquals(new UserSid("user:1").hashCode(), new UserSid(user).hashCode());
+        assertEquals(new UserSid(user).getSidId(), "user:1");
+        assertEquals(new UserSid(user).getUserId(), "1");
+    }
+
+    @Test
+    public void testSidsOfDifferentUsersAreNotEqual() {
+        assertFalse(new UserSid(1L).equals(new UserSid(2L)));
+    }
+
+    @Test
+    public void testPrincipalSidWithSameNameIsEqual() {
+        assertEquals(new UserSid(1L), new PrincipalSid("user:1"));
+    }
+
+    @Test(expectedExceptions = UniversalSid.WrongFormatException.class)
+    public void testNotNumericUserIdIsRejected() {
+        new UserSid("user:admin");
+    }
+
+    @Test(expectedExceptions = UniversalSid.WrongFormatException.class)
+    public void testSidWithoutSeparatorIsRejected() {
+        new UserSid("admin");
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AuditLogger;
+import org.springframework.security.acls.domain.ObjectIdentityImpl;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.MutableAcl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+
+public class AclSnapshotImporterTest {
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private AclCache aclCache;
+    private AclSnapshotImporter importer;
+
+    @BeforeMethod
+    public void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_acl_snapshot", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table acl_class (id bigint primary key, class varchar(255) not null)");
+        jdbc.execute("create table acl_sid (id bigint primary key, principal boolean not null, "
+                + "sid varchar(100) not null)");
+        jdbc.execute("create table acl_object_identity (id bigint primary key, object_id_class bigint not null, "
+                + "object_id_identity bigint not null, parent_object bigint, owner_sid bigint, "
+                + "entries_inheriting boolean not null)");
+        jdbc.execute("create table acl_entry (id bigint primary key, acl_object_identity bigint not null, "
+                + "ace_order int not null, sid bigint not null, mask int not null, granting boolean not null, "
+                + "audit_success boolean not null, audit_failure boolean not null)");
+        jdbc.execute("create table acl_change (id bigint primary key, acl_object_identity bigint not null)");
+        jdbc.update("insert into acl_class values (1, 'BRANCH')");
+        jdbc.update("insert into acl_sid values (1, true, 'admin')");
+        jdbc.update("insert into acl_sid values (2, false, 'ROLE_USER')");
+        jdbc.update("insert into acl_object_identity values (1, 1, 10, null, 1, true)");
+        jdbc.update("insert into acl_object_identity values (2, 1, 11, 1, 1, true)");
+        jdbc.update("insert into acl_object_identity values (3, 1, 12, null, 1, true)");
+        jdbc.update("insert into acl_entry values (1, 1, 0, 2, 1, true, false, false)");
+        jdbc.update("insert into acl_entry values (2, 3, 0, 2, 1, false, false, false)");
+        aclCache = mock(AclCache.class);
+        importer = new AclSnapshotImporter(dataSource, aclCache, mock(AclAuthorizationStrategy.class),
+                mock(AuditLogger.class));
+        importer.setRecheckedChanges(0);
+    }
+
+    @AfterMethod
+    public void dropDatabase() {
+        jdbc.execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testUnchangedAclsAreImported() throws IOException {
+        logChanges(1, 3);
+        byte[] snapshot = export();
+
+        assertEquals(importer.importSnapshot(new ByteArrayInputStream(snapshot)), 3);
+        verify(aclCache, times(3)).putInCache(any(MutableAcl.class));
+    }
+
+    @Test
+    public void testAclsChangedAfterSnapshotAndTheirChildrenAreNotImported() throws IOException {
+        logChanges(1, 3);
+        byte[] snapshot = export();
+        logChanges(2, 1);
+
+        assertEquals(importer.importSnapshot(new ByteArrayInputStream(snapshot)), 1);
+        assertImported(12);
+    }
+
+    @Test
+    public void testChangesLoggedShortlyBeforeSnapshotAreRechecked() throws IOException {
+        logChanges(1, 3);
+        byte[] snapshot = export();
+        importer.setRecheckedChanges(1);
+
+        assertEquals(importer.importSnapshot(new ByteArrayInputStream(snapshot)), 2);
+        verify(aclCache, times(2)).putInCache(any(MutableAcl.class));
+    }
+
+    @Test
+    public void testSnapshotIsNotImportedIfChangesAfterItWereDeleted() throws IOException {
+        logChanges(1, 3);
+        byte[] snapshot = export();
+        jdbc.update("delete from acl_change");
+        logChanges(5, 3);
+
+        assertEquals(importer.importSnapshot(new ByteArrayInputStream(snapshot)), 0);
+        verify(aclCache, never()).putInCache(any(MutableAcl.class));
+    }
+
+    @Test
+    public void testSnapshotIsNotImportedIfChangeLogWasCleared() throws IOException {
+        logChanges(1, 3);
+        byte[] snapshot = export();
+        jdbc.update("delete from acl_change");
+
+        assertEquals(importer.importSnapshot(new ByteArrayInputStream(snapshot)), 0);
+    }
+
+    @Test
+    public void testSnapshotWithoutChangesIsImported() throws IOException {
+        byte[] snapshot = export();
+
+        assertEquals(importer.importSnapshot(new ByteArrayInputStream(snapshot)), 3);
+    }
+
+    @Test
+    public void testExportDeletesChangesThatAreNotRetained() throws IOException {
+        for (int id = 1; id <= 5; id++) {
+            logChanges(id, 3);
+        }
+        AclSnapshotExporter exporter = new AclSnapshotExporter(dataSource);
+        exporter.setRetainedChanges(2);
+        exporter.export(new ByteArrayOutputStream());
+
+        assertEquals(jdbc.queryForLong("select min(id) from acl_change"), 3L);
+        assertEquals(jdbc.queryForLong("select count(*) from acl_change"), 3L);
+    }
+
+    private void logChanges(long id, long objectIdentityId) {
+        jdbc.update("insert into acl_change values (?, ?)", id, objectIdentityId);
+    }
+
+    private byte[] export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AclSnapshotExporter(dataSource).export(out);
+        return out.toByteArray();
+    }
+
+    private void assertImported(long identifier) {
+        ArgumentCaptor<MutableAcl> acl = ArgumentCaptor.forClass(MutableAcl.class);
+        verify(aclCache).putInCache(acl.capture());
+        assertEquals(acl.getValue().getObjectIdentity(), new ObjectIdentityImpl("BRANCH", identifier));
+    }
+}
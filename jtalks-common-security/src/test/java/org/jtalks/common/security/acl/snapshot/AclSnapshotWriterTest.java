@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.acl.snapshot;
+
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.Entry;
+import org.jtalks.common.security.acl.snapshot.AclSnapshotRecord.SidName;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.*;
+
+public class AclSnapshotWriterTest {
+    private static final SidName GROUP = new SidName("usergroup:1", false);
+    private static final SidName USER = new SidName("user:2", true);
+
+    @Test
+    public void testRecordsAreReadAsWritten() throws IOException {
+        AclSnapshotRecord branch = new AclSnapshotRecord(3, "BRANCH", 10, null, USER, true)
+                .addEntry(new Entry(7, GROUP, 1, true, false, true))
+                .addEntry(new Entry(5, USER, Integer.MIN_VALUE, false, true, false));
+        AclSnapshotRecord topic = new AclSnapshotRecord(1000, "BRANCH", -1, 3L, GROUP, false)
+                .addEntry(new Entry(6, GROUP, 4, true, true, true));
+        AclSnapshotRecord empty = new AclSnapshotRecord(1001, "SECTION", 11, null, null, false);
+
+        AclSnapshotReader reader = readerOf(branch, topic, empty);
+
+        assertEquals(reader.getCreationTime(), 42L);
+        assertEquals(reader.getLastChangeId(), 7L);
+        assertRecordEquals(reader.read(), branch);
+        assertRecordEquals(reader.read(), topic);
+        assertRecordEquals(reader.read(), empty);
+        assertNull(reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testEmptySnapshot() throws IOException {
+        assertNull(readerOf().read());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRecordsShouldBeOrderedById() throws IOException {
+        AclSnapshotWriter writer = new AclSnapshotWriter(new ByteArrayOutputStream(), 0, 0);
+        writer.write(new AclSnapshotRecord(2, "BRANCH", 1, null, USER, true));
+        writer.write(new AclSnapshotRecord(1, "BRANCH", 2, null, USER, true));
+    }
+
+    @Test(expectedExceptions = StreamCorruptedException.class)
+    public void testNotSnapshotIsRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(new byte[]{1, 2, 3, 4, 5});
+        gzip.close();
+
+        new AclSnapshotReader(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private AclSnapshotReader readerOf(AclSnapshotRecord... records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AclSnapshotWriter writer = new AclSnapshotWriter(out, 42L, 7L);
+        for (AclSnapshotRecord record : records) {
+            writer.write(record);
+        }
+        writer.close();
+        assertEquals(writer.getCount(), records.length);
+        return new AclSnapshotReader(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private void assertRecordEquals(AclSnapshotRecord actual, AclSnapshotRecord expected) {
+        assertNotNull(actual);
+        assertEquals(actual.getId(), expected.getId());
+        assertEquals(actual.getType(), expected.getType());
+        assertEquals(actual.getIdentifier(), expected.getIdentifier());
+        assertEquals(actual.getParentId(), expected.getParentId());
+        assertEquals(actual.getOwner(), expected.getOwner());
+        assertEquals(actual.isEntriesInheriting(), expected.isEntriesInheriting());
+        assertEquals(actual.getEntries().size(), expected.getEntries().size());
+        for (int i = 0; i < expected.getEntries().size(); i++) {
+            Entry actualEntry = actual.getEntries().get(i);
+            Entry expectedEntry = expected.getEntries().get(i);
+            assertEquals(actualEntry.getId(), expectedEntry.getId());
+            assertEquals(actualEntry.getSid(), expectedEntry.getSid());
+            assertEquals(actualEntry.getMask(), expectedEntry.getMask());
+            assertEquals(actualEntry.isGranting(), expectedEntry.isGranting());
+            assertEquals(actualEntry.isAuditSuccess(), expectedEntry.isAuditSuccess());
+            assertEquals(actualEntry.isAuditFailure(), expectedEntry.isAuditFailure());
+        }
+    }
+}
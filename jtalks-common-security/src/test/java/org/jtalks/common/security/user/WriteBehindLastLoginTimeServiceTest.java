@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.user;
+
+import org.jtalks.common.model.entity.User;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.core.userdetails.UserCache;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.*;
+
+public class WriteBehindLastLoginTimeServiceTest {
+    private JdbcTemplate jdbc;
+    private WriteBehindLastLoginTimeService service;
+
+    @BeforeMethod
+    public void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_last_login", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table USERS (ID bigint primary key, LAST_LOGIN timestamp, VERSION bigint not null)");
+        for (long id = 1; id <= 3; id++) {
+            jdbc.update("insert into USERS values (?, null, 0)", id);
+        }
+        service = new WriteBehindLastLoginTimeService(dataSource);
+        service.setBatchSize(2);
+    }
+
+    @AfterMethod
+    public void dropTables() {
+        jdbc.execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testLoginIsWrittenOnFlushOnly() {
+        long before = System.currentTimeMillis();
+        service.updateLastLoginTime(user(1));
+
+        assertNull(lastLogin(1));
+        assertEquals(service.getPendingCount(), 1);
+
+        assertEquals(service.flush(), 1);
+
+        assertTrue(lastLogin(1).getTime() >= before);
+        assertTrue(lastLogin(1).getTime() <= System.currentTimeMillis());
+        assertEquals(service.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testRepeatedLoginsAreCoalesced() {
+        User user = user(2);
+        service.updateLastLoginTime(user);
+        service.updateLastLoginTime(user);
+        service.updateLastLoginTime(user(1));
+        service.updateLastLoginTime(user(3));
+
+        assertEquals(service.getPendingCount(), 3);
+        assertEquals(service.flush(), 3);
+        assertNotNull(lastLogin(2));
+        assertNotNull(lastLogin(1));
+        assertNotNull(lastLogin(3));
+    }
+
+    @Test
+    public void testUserGetsTheWrittenTime() {
+        User user = user(1);
+
+        service.updateLastLoginTime(user);
+        service.flush();
+
+        assertEquals(user.getLastLogin().getMillis(), lastLogin(1).getTime());
+    }
+
+    @Test
+    public void testUserIsRemovedFromCache() {
+        UserCache userCache = mock(UserCache.class);
+        service.setUserCache(userCache);
+
+        service.updateLastLoginTime(user(1));
+
+        verify(userCache).removeUserFromCache("user1");
+    }
+
+    @Test
+    public void testVersionIsNotChanged() {
+        service.updateLastLoginTime(user(1));
+
+        service.flush();
+
+        assertEquals(jdbc.queryForLong("select VERSION from USERS where ID = 1"), 0);
+    }
+
+    @Test
+    public void testStopFlushesTheRest() {
+        service.start();
+        service.updateLastLoginTime(user(1));
+
+        service.stop();
+
+        assertNotNull(lastLogin(1));
+    }
+
+    private Timestamp lastLogin(long userId) {
+        return jdbc.queryForObject("select LAST_LOGIN from USERS where ID = ?", Timestamp.class, userId);
+    }
+
+    private static User user(long id) {
+        User user = new User("user" + id, "user" + id + "@jtalks.org", "password");
+        user.setId(id);
+        return user;
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.security.web;
+
+import org.jtalks.common.model.entity.User;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.web.authentication.rememberme.AbstractRememberMeServices;
+import org.springframework.security.web.authentication.rememberme.InvalidCookieException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.DatatypeConverter;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class SignedRememberMeServicesTest {
+    private static final long USER_ID = 7;
+    private static final String USERNAME = "username";
+
+    private DriverManagerDataSource dataSource;
+    private User user;
+    private RememberMeRevocations revocations;
+    private SignedRememberMeServices services;
+
+    @BeforeMethod
+    public void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:jtalks_remember_me", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table USERS (ID bigint primary key, USERNAME varchar(50), "
+                + "REMEMBER_ME_VERSION int default 0 not null)");
+        jdbc.update("insert into USERS (ID, USERNAME) values (?, ?)", USER_ID, USERNAME);
+        user = new User(USERNAME, "username@jtalks.org", "password hash", "salt");
+        user.setId(USER_ID);
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername(USERNAME)).thenReturn(user);
+        revocations = new RememberMeRevocations(dataSource);
+        services = new SignedRememberMeServices(revocations);
+        services.setKey("secret");
+        services.setUserDetailsService(userDetailsService);
+    }
+
+    @Test
+    public void testIssuedTokenLogsIn() {
+        String[] tokens = issueTokens();
+
+        assertEquals(tokens.length, 5);
+        assertEquals(tokens[0], USERNAME);
+        assertEquals(tokens[1], Long.toString(USER_ID));
+        assertSame(services.processAutoLoginCookie(tokens, null, null), user);
+    }
+
+    @Test(expectedExceptions = InvalidCookieException.class)
+    public void testTamperedTokenIsRejected() {
+        String[] tokens = issueTokens();
+        tokens[2] = Long.toString(Long.parseLong(tokens[2]) + 1000);
+
+        services.processAutoLoginCookie(tokens, null, null);
+    }
+
+    @Test(expectedExceptions = InvalidCookieException.class)
+    public void testTokenIsRejectedAfterPasswordChange() {
+        String[] tokens = issueTokens();
+        user.setPassword("new password hash");
+
+        services.processAutoLoginCookie(tokens, null, null);
+    }
+
+    @Test(expectedExceptions = InvalidCookieException.class)
+    public void testTokenIsRejectedForRecreatedUser() {
+        String[] tokens = issueTokens();
+        user.setId(USER_ID + 1);
+
+        services.processAutoLoginCookie(tokens, null, null);
+    }
+
+    @Test(expectedExceptions = InvalidCookieException.class)
+    public void testExpiredTokenIsRejected() {
+        long expiredAt = System.currentTimeMillis() - 1;
+        String signature = services.sign(USERNAME, USER_ID, expiredAt, 0, user.getPassword());
+
+        services.processAutoLoginCookie(new String[]{USERNAME, Long.toString(USER_ID), Long.toString(expiredAt),
+                "0", signature}, null, null);
+    }
+
+    @Test
+    public void testRevokeAllRejectsIssuedTokens() {
+        String[] tokens = issueTokens();
+
+        revocations.revokeAll(USER_ID);
+        user.setRememberMeVersion(1);
+
+        try {
+            services.processAutoLoginCookie(tokens, null, null);
+            fail("Token should be revoked");
+        } catch (InvalidCookieException expected) {
+            // expected
+        }
+        assertSame(services.processAutoLoginCookie(issueTokens(), null, null), user);
+    }
+
+    @AfterMethod
+    public void dropDatabase() {
+        new JdbcTemplate(dataSource).execute("drop schema public cascade");
+    }
+
+    @Test
+    public void testRevokeAllIsPersisted() {
+        String[] tokens = issueTokens();
+
+        revocations.revokeAll(USER_ID);
+
+        assertEquals(new JdbcTemplate(dataSource).queryForInt(
+                "select REMEMBER_ME_VERSION from USERS where ID = ?", USER_ID), 1);
+        assertEquals(tokens[3], "0");
+    }
+
+    @Test
+    public void testRevokeAllRemovesUserFromCache() {
+        UserCache userCache = mock(UserCache.class);
+        revocations.setUserCache(userCache);
+
+        revocations.revokeAll(USER_ID);
+
+        verify(userCache).removeUserFromCache(USERNAME);
+    }
+
+    @Test
+    public void testTokenVersionIsTakenFromUser() {
+        user.setRememberMeVersion(3);
+        String[] tokens = issueTokens();
+        new JdbcTemplate(dataSource).execute("drop table USERS");
+
+        assertEquals(tokens[3], "3");
+        assertSame(services.processAutoLoginCookie(tokens, null, null), user);
+    }
+
+    @Test
+    public void testForgedTokenIsRejectedBeforeRevocationsAreChecked() {
+        String[] tokens = issueTokens();
+        tokens[4] = "0123456789abcdef0123456789abcdef";
+        revocations = mock(RememberMeRevocations.class);
+        services = new SignedRememberMeServices(revocations);
+        services.setKey("secret");
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername(USERNAME)).thenReturn(user);
+        services.setUserDetailsService(userDetailsService);
+
+        try {
+            services.processAutoLoginCookie(tokens, null, null);
+            fail("Forged token should be rejected");
+        } catch (InvalidCookieException expected) {
+            // expected
+        }
+        verifyZeroInteractions(revocations);
+    }
+
+    @Test
+    public void testLogoutRevokesToken() {
+        String[] tokens = issueTokens();
+
+        services.logout(requestWithCookie(tokens), mock(HttpServletResponse.class), null);
+
+        assertTrue(revocations.isRevoked(tokens[4]));
+    }
+
+    @Test
+    public void testLogoutDoesNotRevokeForgedToken() {
+        String[] tokens = issueTokens();
+        tokens[4] = "0123456789abcdef0123456789abcdef";
+
+        services.logout(requestWithCookie(tokens), mock(HttpServletResponse.class), null);
+
+        assertEquals(revocations.getRevokedTokenCount(), 0);
+    }
+
+    @Test
+    public void testLogoutRemembersRevokedTokenNoLongerThanTokenValidity() {
+        long expiresAt = Long.MAX_VALUE;
+        String signature = services.sign(USERNAME, USER_ID, expiresAt, 0, user.getPassword());
+
+        services.logout(requestWithCookie(new String[]{USERNAME, Long.toString(USER_ID), Long.toString(expiresAt),
+                "0", signature}), mock(HttpServletResponse.class), null);
+
+        assertTrue(revocations.isRevoked(signature));
+        revocations.purgeExpired(System.currentTimeMillis() + AbstractRememberMeServices.TWO_WEEKS_S * 1000L + 1);
+        assertEquals(revocations.getRevokedTokenCount(), 0);
+    }
+
+    @Test(expectedExceptions = InvalidCookieException.class)
+    public void testRevokedTokenIsRejected() {
+        String[] tokens = issueTokens();
+
+        revocations.revoke(tokens[4], Long.parseLong(tokens[2]));
+
+        services.processAutoLoginCookie(tokens, null, null);
+    }
+
+    @Test
+    public void testExpiredRevocationsArePurged() {
+        revocations.revoke("0123456789abcdef0123", 1);
+        revocations.revoke("fedcba9876543210fedc", Long.MAX_VALUE);
+
+        revocations.purgeExpired(2);
+
+        assertEquals(revocations.getRevokedTokenCount(), 1);
+        assertTrue(revocations.isRevoked("fedcba9876543210fedc"));
+    }
+
+    private String[] issueTokens() {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getContextPath()).thenReturn("/");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        services.onLoginSuccess(request, response, new UsernamePasswordAuthenticationToken(user, "password"));
+
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        return decode(cookie.getValue().getValue());
+    }
+
+    private HttpServletRequest requestWithCookie(String[] tokens) {
+        StringBuilder value = new StringBuilder();
+        for (String token : tokens) {
+            value.append(value.length() == 0 ? "" : ":").append(token);
+        }
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getContextPath()).thenReturn("/");
+        when(request.getCookies()).thenReturn(new Cookie[]{new Cookie(
+                AbstractRememberMeServices.SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                DatatypeConverter.printBase64Binary(value.toString().getBytes()))});
+        return request;
+    }
+
+    private static String[] decode(String cookieValue) {
+        StringBuilder padded = new StringBuilder(cookieValue);
+        while (padded.length() % 4 != 0) {
+            padded.append('=');
+        }
+        return new String(DatatypeConverter.parseBase64Binary(padded.toString())).split(":");
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service;
+
+/**
+ * Saves passwords that were encoded anew with a stronger encoder when the user logged in, see {@link
+ * org.jtalks.common.service.security.password.PooledDaoAuthenticationProvider}.
+ */
+public interface PasswordRehashService {
+    /**
+     * Replaces the password hash of the user in its own transaction, the users being authenticated are usually
+     * detached copies, so the user is read anew and only its password is changed.
+     *
+     * @param userId          id of the user to change the password of
+     * @param encodedPassword the password encoded with the current encoder
+     */
+    void saveEncodedPassword(long userId, String encodedPassword);
+}
@@ -21,11 +21,14 @@ import org.jtalks.common.service.SecurityService;
 import org.jtalks.common.service.security.AclBuilder;
 import org.jtalks.common.service.security.AclBuilderImpl;
 import org.jtalks.common.service.security.AclManager;
+import org.jtalks.common.service.security.CurrentUserHolder;
 import org.jtalks.common.service.security.SecurityConstants;
 import org.jtalks.common.service.security.SecurityContextFacade;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
 
 
 /**
@@ -42,6 +45,8 @@ public class SecurityServiceImpl implements SecurityService {
     private UserDao userDao;
     private AclManager aclManager;
     private SecurityContextFacade securityContextFacade;
+    private CurrentUserHolder currentUserHolder;
+    private UserCache userCache = new NullUserCache();
 
     /**
      * Constructor creates an instance of service.
@@ -51,17 +56,62 @@ public class SecurityServiceImpl implements SecurityService {
      * @param aclManager            manager for actions with ACLs
      */
     public SecurityServiceImpl(UserDao userDao, SecurityContextFacade securityContextFacade, AclManager aclManager) {
+        this(userDao, securityContextFacade, aclManager, new CurrentUserHolder());
+    }
+
+    /**
+     * Constructor creates an instance of service.
+     *
+     * @param userDao               {@link UserDao} to be injected
+     * @param securityContextFacade {@link .SecurityContextFacade} to be injected
+     * @param aclManager            manager for actions with ACLs
+     * @param currentUserHolder     remembers the current user within a request
+     */
+    public SecurityServiceImpl(UserDao userDao, SecurityContextFacade securityContextFacade, AclManager aclManager,
+                               CurrentUserHolder currentUserHolder) {
         this.userDao = userDao;
         this.securityContextFacade = securityContextFacade;
         this.aclManager = aclManager;
+        this.currentUserHolder = currentUserHolder;
     }
 
     /**
      * {@inheritDoc}
+     * <p>The user is resolved at most once per web request, subsequent calls within the same request return the same
+     * instance.
      */
     @Override
     public User getCurrentUser() {
-        return (User) userDao.getByUsername(getCurrentUserUsername());
+        Authentication auth = securityContextFacade.getContext().getAuthentication();
+        CurrentUserHolder.Entry remembered = currentUserHolder.get(auth);
+        if (remembered != null) {
+            return remembered.getUser();
+        }
+        User user = loadCurrentUser(auth);
+        currentUserHolder.set(auth, user);
+        return user;
+    }
+
+    /**
+     * Loads the user the authentication belongs to. If the principal is an already persisted {@link User}, it is
+     * loaded by its id, otherwise the user is looked up by the username.
+     *
+     * @param auth current authentication, may be {@code null}
+     * @return the user or {@code null} if there is no authenticated user
+     */
+    private User loadCurrentUser(Authentication auth) {
+        if (auth == null) {
+            return null;
+        }
+        Object principal = auth.getPrincipal();
+        if (principal instanceof User && ((User) principal).isPersistent()) {
+            return (User) userDao.get(((User) principal).getId());
+        }
+        String username = extractUsername(principal);
+        if (isAnonymous(username)) {
+            return null;
+        }
+        return (User) userDao.getByUsername(username);
     }
 
     /**
@@ -166,11 +216,26 @@ public class SecurityServiceImpl implements SecurityService {
      */
     @Override
     public UserDetails loadUserByUsername(String username) {
+        UserDetails cached = userCache.getUserFromCache(username);
+        if (cached != null) {
+            return cached;
+        }
         User user = (User) userDao.getByUsername(username);
         if (user == null) {
             throw new UsernameNotFoundException("User not found: " + username);
         }
+        userCache.putUserInCache(user);
         return user;
     }
 
+    /**
+     * Sets the cache consulted by {@link #loadUserByUsername(String)} before going to the database. Nothing is cached
+     * by default.
+     *
+     * @param userCache cache of the users being authenticated
+     */
+    public void setUserCache(UserCache userCache) {
+        this.userCache = userCache;
+    }
+
 }
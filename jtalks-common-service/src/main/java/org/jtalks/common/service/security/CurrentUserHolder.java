@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security;
+
+import org.jtalks.common.model.entity.User;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Remembers the current user for the duration of a web request, so that the interceptors and controllers that ask
+ * for it during one request share a single database lookup. The user is stored as a request attribute together with
+ * the authentication it was resolved for: if the authentication changes in the middle of the request (e.g. the user
+ * logs in or out), the remembered user is dropped. Outside of a request nothing is remembered.
+ */
+public class CurrentUserHolder {
+    static final String ATTRIBUTE_NAME = CurrentUserHolder.class.getName() + ".CURRENT_USER";
+
+    /**
+     * Returns the user remembered for the given authentication in the current request.
+     *
+     * @param authentication authentication the user was resolved for, may be {@code null} for anonymous requests
+     * @return the remembered entry or {@code null} if the user was not resolved yet in this request; note that the
+     *         entry itself may hold a {@code null} user if the request is anonymous
+     */
+    public Entry get(Authentication authentication) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Entry entry = (Entry) attributes.getAttribute(ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+        if (entry == null || entry.authentication != authentication) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Remembers the user resolved for the given authentication until the end of the current request. Does nothing if
+     * there is no request bound to the current thread.
+     *
+     * @param authentication authentication the user was resolved for, may be {@code null}
+     * @param user           the resolved user or {@code null} if there is no authenticated user
+     */
+    public void set(Authentication authentication, User user) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(ATTRIBUTE_NAME, new Entry(authentication, user), RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * Forgets the user remembered in the current request, should be called when the current user is changed and
+     * should be read anew.
+     */
+    public void clear() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.removeAttribute(ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * The user remembered in a request along with the authentication it belongs to.
+     */
+    public static final class Entry {
+        private final Authentication authentication;
+        private final User user;
+
+        private Entry(Authentication authentication, User user) {
+            this.authentication = authentication;
+            this.user = user;
+        }
+
+        /**
+         * @return the remembered user or {@code null} if the request is anonymous
+         */
+        public User getUser() {
+            return user;
+        }
+    }
+}
@@ -14,16 +14,31 @@
  */
 package org.jtalks.common.service.security;
 
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * <p>This class is used to retrieve DTO mapping to entities.</p>
  * <p>Mappings are being configured using annotation {@link ModelEntity},
  * added to class should be mapped to model class.</p>
+ * <p>Mappings are kept in a table that is filled at startup either by scanning the
+ * {@link #setBasePackages(String...) packages} for classes annotated with {@link ModelEntity} or from
+ * {@link #setDtoClasses(Collection) explicitly registered} classes. Classes that weren't registered are resolved with
+ * reflection the first time they are asked for and then are taken from the table as well.</p>
  * Date: 16.09.2011<br />
  * Time: 15:19
  *
  * @author Alexey Malev
  */
 public class DtoMapper {
+    private final ConcurrentMap<String, Mapping> mappings = new ConcurrentHashMap<String, Mapping>();
+
     /**
      * This method resolves the mapping of the specified class.
      *
@@ -34,13 +49,95 @@ public class DtoMapper {
      * @throws IllegalStateException If there is no class with <code>classname</code> can be resolved
      */
     public Class getMapping(String classname) {
-        try {
-            Class providedClass = Class.forName(classname);
-            ModelEntity annotation = (ModelEntity) providedClass.getAnnotation(ModelEntity.class);
+        return getOrResolve(classname).modelClass;
+    }
+
+    /**
+     * Same as {@link #getMapping(String)}, but returns the canonical name of the mapped class that is used as the
+     * type of object identities, so that the name is not built on each call.
+     *
+     * @param classname Fully-qualified classname, mapping of which needs to be resolved.
+     * @return canonical name of the mapped class or <code>null</code> if the class is not mapped
+     * @throws IllegalStateException If there is no class with <code>classname</code> can be resolved
+     */
+    public String getMappedTypeName(String classname) {
+        return getOrResolve(classname).modelClassName;
+    }
+
+    /**
+     * Puts the mapping of the specified class into the table, the class doesn't have to be annotated, in this case
+     * it's remembered as not mapped.
+     *
+     * @param dtoClass the class to register
+     */
+    public void register(Class<?> dtoClass) {
+        Mapping mapping = Mapping.of(dtoClass);
+        mappings.put(dtoClass.getName(), mapping);
+        if (dtoClass.getCanonicalName() != null) {
+            mappings.put(dtoClass.getCanonicalName(), mapping);
+        }
+    }
+
+    /**
+     * Registers the mappings of the specified classes.
+     *
+     * @param dtoClasses the classes to register
+     * @see #register(Class)
+     */
+    public void setDtoClasses(Collection<Class<?>> dtoClasses) {
+        for (Class<?> dtoClass : dtoClasses) {
+            register(dtoClass);
+        }
+    }
+
+    /**
+     * Scans the specified packages for the classes annotated with {@link ModelEntity} and registers their mappings.
+     *
+     * @param basePackages the packages to scan including their sub-packages
+     */
+    public void setBasePackages(String... basePackages) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(ModelEntity.class));
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+        for (String basePackage : basePackages) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                try {
+                    register(ClassUtils.forName(candidate.getBeanClassName(), classLoader));
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException("Class [" + candidate.getBeanClassName() + "] not found.", e);
+                }
+            }
+        }
+    }
+
+    private Mapping getOrResolve(String classname) {
+        Mapping mapping = mappings.get(classname);
+        if (mapping == null) {
+            try {
+                mapping = Mapping.of(Class.forName(classname));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Class [" + classname + "] not found.", e);
+            }
+            mappings.putIfAbsent(classname, mapping);
+        }
+        return mapping;
+    }
+
+    /**
+     * Model class the DTO is mapped to, both fields are <code>null</code> if the DTO is not mapped.
+     */
+    private static final class Mapping {
+        private final Class modelClass;
+        private final String modelClassName;
+
+        private Mapping(Class modelClass) {
+            this.modelClass = modelClass;
+            this.modelClassName = modelClass == null ? null : modelClass.getCanonicalName();
+        }
 
-            return annotation == null ? null : annotation.value();
-        } catch (ClassNotFoundException e) {
-            throw new IllegalStateException("Class [" + classname + "] not found.", e);
+        private static Mapping of(Class<?> dtoClass) {
+            ModelEntity annotation = dtoClass.getAnnotation(ModelEntity.class);
+            return new Mapping(annotation == null ? null : annotation.value());
         }
     }
 }
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security;
+
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.entity.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory {@link UserCache} whose entries expire after a fixed time. It keeps form logins and remember-me
+ * logins from querying the users table every time, while the expiration bounds how long a changed user may stay
+ * stale if nobody evicted it. When the cache is full, the least recently used user is dropped.
+ * <p>Users are mutable entities, so the cache keeps a serialized snapshot of the user and each read gets its own copy:
+ * changes made to a returned user (e.g. the last login time) neither leak to other threads nor stay in the cache.
+ * The fields of a {@link User} that aren't serialized (the id and uuid of the entity and the transient groups) are
+ * kept along with the snapshot and set to each copy.
+ * <p>Any code that changes the credentials or the state of a user (password, email, ban, disabling) should call
+ * {@link #removeUserFromCache(String)}, see {@link UserCacheEvictionAdvice}.
+ */
+public class ExpiringUserCache implements UserCache {
+    static final int DEFAULT_MAX_SIZE = 1000;
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final int maxSize;
+    private final long timeToLiveMillis;
+    private final Map<String, CachedUser> users;
+
+    /**
+     * Creates a cache of {@value #DEFAULT_MAX_SIZE} users that are kept for 5 minutes.
+     */
+    public ExpiringUserCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    /**
+     * @param maxSize          how many users are kept at most
+     * @param timeToLiveMillis how long a user is kept after it was put into the cache
+     */
+    public ExpiringUserCache(final int maxSize, long timeToLiveMillis) {
+        if (maxSize <= 0 || timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("Cache size and time to live should be positive");
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.users = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        CachedUser cached;
+        synchronized (users) {
+            cached = users.get(username);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt <= currentTimeMillis()) {
+                users.remove(username);
+                return null;
+            }
+        }
+        return cached.copy();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putUserInCache(UserDetails user) {
+        CachedUser cached = new CachedUser(user, currentTimeMillis() + timeToLiveMillis);
+        synchronized (users) {
+            users.put(user.getUsername(), cached);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeUserFromCache(String username) {
+        synchronized (users) {
+            users.remove(username);
+        }
+    }
+
+    /**
+     * Removes all the users from the cache.
+     */
+    public void clear() {
+        synchronized (users) {
+            users.clear();
+        }
+    }
+
+    /**
+     * @return how many users are kept at most
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of users currently in the cache, including the expired ones that were not dropped yet
+     */
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    /**
+     * Is overridden in tests to move the time forward.
+     *
+     * @return current time in milliseconds
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * A serialized snapshot of a user along with the moment it expires.
+     */
+    private static final class CachedUser {
+        private final byte[] snapshot;
+        private final long id;
+        private final String uuid;
+        private final List<Group> groups;
+        private final long expiresAt;
+
+        private CachedUser(UserDetails user, long expiresAt) {
+            this.snapshot = serialize(user);
+            if (user instanceof User) {
+                User entity = (User) user;
+                this.id = entity.getId();
+                this.uuid = entity.getUuid();
+                this.groups = new ArrayList<Group>(entity.getGroups());
+            } else {
+                this.id = 0;
+                this.uuid = null;
+                this.groups = null;
+            }
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return a new copy of the cached user
+         */
+        private UserDetails copy() {
+            UserDetails user = deserialize(snapshot);
+            if (user instanceof User) {
+                User entity = (User) user;
+                entity.setId(id);
+                entity.setUuid(uuid);
+                entity.setGroups(new ArrayList<Group>(groups));
+            }
+            return user;
+        }
+
+        private static byte[] serialize(UserDetails user) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(user);
+                out.close();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("User " + user.getUsername() + " can't be cached", e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static UserDetails deserialize(byte[] snapshot) {
+            try {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(snapshot));
+                try {
+                    return (UserDetails) in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cached user can't be read", e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Cached user can't be read", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security;
+
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+
+/**
+ * Drops users from the {@link UserCache} after the advised methods have changed them, so the next login reads the
+ * new password or state from the database. The users to evict are the ones the method returns or takes as
+ * arguments. It is applied to {@link org.jtalks.common.service.UserService#editUserProfile} in the service context
+ * and should be applied to any other method that changes credentials, bans or disables users.
+ * <p>If the method runs in a transaction, the users are evicted after it commits: evicted earlier, they could be read
+ * from the database and cached again by a concurrent login before the changes are visible. That's why the order of the
+ * advisor relative to the transaction advisor doesn't matter.
+ */
+public class UserCacheEvictionAdvice implements AfterReturningAdvice {
+    private final UserCache userCache;
+
+    /**
+     * @param userCache cache to evict the changed users from
+     */
+    public UserCacheEvictionAdvice(UserCache userCache) {
+        this.userCache = userCache;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) {
+        evict(returnValue);
+        if (args != null) {
+            for (Object arg : args) {
+                evict(arg);
+            }
+        }
+    }
+
+    /**
+     * Evicts the object from the cache if it's a user.
+     *
+     * @param object a returned value or an argument of the advised method
+     */
+    private void evict(Object object) {
+        if (!(object instanceof UserDetails)) {
+            return;
+        }
+        final String username = ((UserDetails) object).getUsername();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    userCache.removeUserFromCache(username);
+                }
+            });
+        } else {
+            userCache.removeUserFromCache(username);
+        }
+    }
+}
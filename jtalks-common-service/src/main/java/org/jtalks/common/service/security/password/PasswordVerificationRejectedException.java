@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security.password;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown when a password can't be checked right now because the hashing pool is overloaded: its queue is full or the
+ * password waited in it for too long. The login should be retried later, the password wasn't found wrong.
+ */
+public class PasswordVerificationRejectedException extends AuthenticationServiceException {
+
+    /**
+     * @param message the reason of the rejection
+     */
+    public PasswordVerificationRejectedException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message the reason of the rejection
+     * @param cause   the exception the rejection was caused by
+     */
+    public PasswordVerificationRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
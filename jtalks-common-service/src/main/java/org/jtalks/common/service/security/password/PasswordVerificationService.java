@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security.password;
+
+import org.springframework.security.authentication.encoding.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes and checks passwords on a dedicated bounded pool of threads instead of the request threads. Adaptive hashes
+ * are slow by design, so a burst of logins would otherwise occupy every request thread of the container. When the
+ * queue of the pool is full, or a password waited for its turn longer than the timeout, the request is rejected at
+ * once with {@link PasswordVerificationRejectedException} rather than piling up.
+ * <p>Passwords are encoded with the current encoder, but the ones encoded with any of the legacy encoders are still
+ * accepted: {@link #verify} reports them with {@link Result#MATCH_NEEDS_REHASH} so the caller can store the password
+ * encoded anew, see {@link PooledDaoAuthenticationProvider}.
+ */
+public class PasswordVerificationService {
+    static final int DEFAULT_QUEUE_CAPACITY = 100;
+    static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The outcome of checking a password.
+     */
+    public enum Result {
+        /**
+         * The password is right and is encoded with the current encoder.
+         */
+        MATCH,
+        /**
+         * The password is right, but it's encoded with a legacy encoder and should be encoded with the current one.
+         */
+        MATCH_NEEDS_REHASH,
+        /**
+         * The password is wrong.
+         */
+        MISMATCH
+    }
+
+    private final PasswordEncoder currentEncoder;
+    private final List<PasswordEncoder> legacyEncoders;
+    private final ThreadPoolExecutor executor;
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * Creates a service with one thread per processor and a queue of {@value #DEFAULT_QUEUE_CAPACITY} passwords.
+     *
+     * @param currentEncoder encodes the new passwords
+     * @param legacyEncoders encoders of the passwords that should still be accepted, may be empty
+     */
+    public PasswordVerificationService(PasswordEncoder currentEncoder, List<PasswordEncoder> legacyEncoders) {
+        this(currentEncoder, legacyEncoders, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param currentEncoder encodes the new passwords
+     * @param legacyEncoders encoders of the passwords that should still be accepted, may be empty
+     * @param threads        how many passwords are hashed at the same time
+     * @param queueCapacity  how many passwords may wait for hashing, the rest are rejected
+     */
+    public PasswordVerificationService(PasswordEncoder currentEncoder, List<PasswordEncoder> legacyEncoders,
+                                       int threads, int queueCapacity) {
+        this.currentEncoder = currentEncoder;
+        this.legacyEncoders = Collections.unmodifiableList(new ArrayList<PasswordEncoder>(legacyEncoders));
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new HashingThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Checks the password against the encoded one.
+     *
+     * @param encPass the encoded password that is stored for the user
+     * @param rawPass the password the user entered
+     * @param salt    the salt of the user, may be {@code null}
+     * @return whether the password is right and whether it should be encoded anew
+     * @throws PasswordVerificationRejectedException if the hashing pool is overloaded
+     */
+    public Result verify(final String encPass, final String rawPass, final Object salt) {
+        return execute(new Callable<Result>() {
+            @Override
+            public Result call() {
+                return doVerify(encPass, rawPass, salt);
+            }
+        });
+    }
+
+    /**
+     * Encodes the password with the current encoder.
+     *
+     * @param rawPass the password to encode
+     * @param salt    the salt of the user, may be {@code null}
+     * @return the encoded password
+     * @throws PasswordVerificationRejectedException if the hashing pool is overloaded
+     */
+    public String encode(final String rawPass, final Object salt) {
+        return execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return currentEncoder.encodePassword(rawPass, salt);
+            }
+        });
+    }
+
+    /**
+     * Checks the password on the calling thread.
+     */
+    Result doVerify(String encPass, String rawPass, Object salt) {
+        if (currentEncoder.isPasswordValid(encPass, rawPass, salt)) {
+            if (currentEncoder instanceof Pbkdf2PasswordEncoder
+                    && ((Pbkdf2PasswordEncoder) currentEncoder).isWeakerThanCurrent(encPass)) {
+                return Result.MATCH_NEEDS_REHASH;
+            }
+            return Result.MATCH;
+        }
+        for (PasswordEncoder legacyEncoder : legacyEncoders) {
+            if (legacyEncoder.isPasswordValid(encPass, rawPass, salt)) {
+                return Result.MATCH_NEEDS_REHASH;
+            }
+        }
+        return Result.MISMATCH;
+    }
+
+    /**
+     * Runs the task on the pool and waits for it not longer than the timeout.
+     */
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new PasswordVerificationRejectedException("Too many passwords are being checked, try again later", e);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new PasswordVerificationRejectedException("Password check took too long, try again later", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordVerificationRejectedException("Interrupted while checking the password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Sets how long a caller waits for its password to be hashed, including the time spent in the queue.
+     *
+     * @param timeoutMillis the timeout in milliseconds
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the number of passwords waiting in the queue, useful for monitoring
+     */
+    public int getQueueLength() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops the hashing threads, the passwords being hashed are hashed to the end.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Creates daemon threads with recognizable names.
+     */
+    private static class HashingThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security.password;
+
+import org.springframework.security.authentication.encoding.PasswordEncoder;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Adaptive {@link PasswordEncoder} based on PBKDF2 with HMAC-SHA1 that is available in every JRE. The number of
+ * iterations is stored together with the hash, e.g. {@code {pbkdf2}10000$6f1e...}, so it can be raised later without
+ * making the existing hashes invalid. The prefix lets {@link PasswordVerificationService} tell these hashes from the
+ * legacy ones.
+ */
+public class Pbkdf2PasswordEncoder implements PasswordEncoder {
+    /**
+     * Starts every password encoded by this encoder.
+     */
+    public static final String PREFIX = "{pbkdf2}";
+    static final int DEFAULT_ITERATIONS = 10000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final char ITERATIONS_SEPARATOR = '$';
+    private static final int KEY_LENGTH_BITS = 256;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final int iterations;
+
+    /**
+     * Creates an encoder with {@value #DEFAULT_ITERATIONS} iterations.
+     */
+    public Pbkdf2PasswordEncoder() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * @param iterations the number of iterations the new passwords are encoded with, the more the slower
+     */
+    public Pbkdf2PasswordEncoder(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("The number of iterations should be positive: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String encodePassword(String rawPass, Object salt) {
+        return PREFIX + iterations + ITERATIONS_SEPARATOR + toHex(hash(rawPass, salt, iterations));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPasswordValid(String encPass, String rawPass, Object salt) {
+        int encodedIterations = parseIterations(encPass);
+        if (encodedIterations <= 0) {
+            return false;
+        }
+        int separator = encPass.indexOf(ITERATIONS_SEPARATOR, PREFIX.length());
+        String expected = toHex(hash(rawPass, salt, encodedIterations));
+        return MessageDigest.isEqual(expected.getBytes(), encPass.substring(separator + 1).getBytes());
+    }
+
+    /**
+     * @param encPass an encoded password
+     * @return {@code true} if the password looks like one encoded by this encoder
+     */
+    public boolean isEncodedByThis(String encPass) {
+        return encPass != null && encPass.startsWith(PREFIX);
+    }
+
+    /**
+     * @param encPass an encoded password
+     * @return {@code true} if the password was encoded by this encoder with fewer iterations than are used now and
+     *         should be encoded again
+     */
+    public boolean isWeakerThanCurrent(String encPass) {
+        return parseIterations(encPass) < iterations;
+    }
+
+    /**
+     * @param encPass an encoded password
+     * @return the number of iterations the password was encoded with or {@code -1} if it wasn't encoded by this
+     *         encoder
+     */
+    private static int parseIterations(String encPass) {
+        if (encPass == null || !encPass.startsWith(PREFIX)) {
+            return -1;
+        }
+        int separator = encPass.indexOf(ITERATIONS_SEPARATOR, PREFIX.length());
+        if (separator < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(encPass.substring(PREFIX.length(), separator));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] hash(String rawPass, Object salt, int iterations) {
+        String saltString = salt == null ? "" : salt.toString();
+        char[] password = rawPass == null ? new char[0] : rawPass.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(password, toUtf8(saltString), iterations, KEY_LENGTH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not supported by this JRE", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] toUtf8(String string) {
+        try {
+            byte[] bytes = string.getBytes("UTF-8");
+            // PBEKeySpec doesn't accept an empty salt
+            return bytes.length == 0 ? new byte[1] : bytes;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
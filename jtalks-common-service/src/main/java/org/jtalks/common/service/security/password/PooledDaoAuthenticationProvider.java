@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security.password;
+
+import org.jtalks.common.model.entity.User;
+import org.jtalks.common.service.PasswordRehashService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authentication.dao.SaltSource;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+
+/**
+ * Authentication provider that checks passwords with {@link PasswordVerificationService}, so the hashing happens on
+ * its bounded pool instead of the request thread. If the password of the user turns out to be encoded with a legacy
+ * encoder, it's encoded with the current one and saved right after the successful login, so the users migrate to the
+ * new hash one by one as they log in.
+ */
+public class PooledDaoAuthenticationProvider extends DaoAuthenticationProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final PasswordVerificationService verificationService;
+    private final PasswordRehashService rehashService;
+    private SaltSource saltSource;
+    private UserCache rehashedUserCache = new NullUserCache();
+
+    /**
+     * @param verificationService checks and encodes the passwords
+     * @param rehashService       saves the passwords that were encoded anew
+     */
+    public PooledDaoAuthenticationProvider(PasswordVerificationService verificationService,
+                                           PasswordRehashService rehashService) {
+        this.verificationService = verificationService;
+        this.rehashService = rehashService;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+        if (authentication.getCredentials() == null) {
+            throw new BadCredentialsException(
+                    messages.getMessage("AbstractUserDetailsAuthenticationProvider.badCredentials", "Bad credentials"));
+        }
+        String rawPassword = authentication.getCredentials().toString();
+        Object salt = saltSource == null ? null : saltSource.getSalt(userDetails);
+        PasswordVerificationService.Result result =
+                verificationService.verify(userDetails.getPassword(), rawPassword, salt);
+        if (result == PasswordVerificationService.Result.MISMATCH) {
+            throw new BadCredentialsException(
+                    messages.getMessage("AbstractUserDetailsAuthenticationProvider.badCredentials", "Bad credentials"));
+        }
+        if (result == PasswordVerificationService.Result.MATCH_NEEDS_REHASH && userDetails instanceof User) {
+            rehash((User) userDetails, rawPassword, salt);
+        }
+    }
+
+    /**
+     * Encodes the password with the current encoder and saves it in a transaction of its own. The user is changed and
+     * evicted from the cache only after the new password was saved. Failing to do that doesn't fail the login, the
+     * password is encoded anew next time.
+     *
+     * @param user        the user that has just logged in
+     * @param rawPassword the password the user entered
+     * @param salt        the salt of the user
+     */
+    private void rehash(User user, String rawPassword, Object salt) {
+        try {
+            String encodedPassword = verificationService.encode(rawPassword, salt);
+            rehashService.saveEncodedPassword(user.getId(), encodedPassword);
+            user.setPassword(encodedPassword);
+            rehashedUserCache.removeUserFromCache(user.getUsername());
+        } catch (RuntimeException e) {
+            logger.warn("Could not encode the password of user [{}] anew", user.getUsername(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSaltSource(SaltSource saltSource) {
+        super.setSaltSource(saltSource);
+        this.saltSource = saltSource;
+    }
+
+    /**
+     * Sets the cache the users are evicted from after their password was encoded anew, it's the cache used by the
+     * user details service if it has one.
+     *
+     * @param rehashedUserCache cache of the users being authenticated
+     */
+    public void setRehashedUserCache(UserCache rehashedUserCache) {
+        this.rehashedUserCache = rehashedUserCache;
+    }
+}
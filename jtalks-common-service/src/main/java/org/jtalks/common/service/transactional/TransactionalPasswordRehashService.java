@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.transactional;
+
+import org.jtalks.common.model.dao.UserDao;
+import org.jtalks.common.model.entity.User;
+import org.jtalks.common.service.PasswordRehashService;
+
+/**
+ * Saves the re-encoded passwords with {@link UserDao}, transactions are applied to it as to the other services of this
+ * package.
+ */
+public class TransactionalPasswordRehashService implements PasswordRehashService {
+    private final UserDao<User> userDao;
+
+    /**
+     * @param userDao to read and save the users with
+     */
+    public TransactionalPasswordRehashService(UserDao<User> userDao) {
+        this.userDao = userDao;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveEncodedPassword(long userId, String encodedPassword) {
+        User user = userDao.get(userId);
+        if (user == null) {
+            throw new IllegalArgumentException("User with id " + userId + " was not found");
+        }
+        user.setPassword(encodedPassword);
+        userDao.saveOrUpdate(user);
+    }
+}
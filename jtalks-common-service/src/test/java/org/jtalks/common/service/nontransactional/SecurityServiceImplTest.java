@@ -20,20 +20,27 @@ import org.jtalks.common.model.entity.User;
 import org.jtalks.common.service.SecurityService;
 import org.jtalks.common.service.security.AclBuilder;
 import org.jtalks.common.service.security.AclManager;
+import org.jtalks.common.service.security.ExpiringUserCache;
 import org.jtalks.common.service.security.SecurityConstants;
 import org.jtalks.common.service.security.SecurityContextFacade;
+import org.mockito.ArgumentCaptor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import sun.security.acl.PrincipalImpl;
 
 import java.security.Principal;
 
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.*;
@@ -106,6 +113,72 @@ public class SecurityServiceImplTest {
         verify(userDao, never()).getByUsername(USERNAME);
     }
 
+    @Test
+    public void testGetCurrentUserByPrincipalId() throws Exception {
+        User principal = getUser();
+        principal.setId(1L);
+        User user = getUser();
+        Authentication auth = mock(Authentication.class);
+        when(auth.getPrincipal()).thenReturn(principal);
+        when(securityContext.getAuthentication()).thenReturn(auth);
+        when(userDao.get(1L)).thenReturn(user);
+
+        User result = securityService.getCurrentUser();
+
+        assertSame(result, user);
+        verify(userDao, never()).getByUsername(USERNAME);
+    }
+
+    @Test
+    public void testGetCurrentUserIsResolvedOncePerRequest() throws Exception {
+        User user = getUser();
+        Authentication auth = mock(Authentication.class);
+        when(auth.getPrincipal()).thenReturn(user);
+        when(securityContext.getAuthentication()).thenReturn(auth);
+        when(userDao.getByUsername(USERNAME)).thenReturn(user);
+        RequestAttributes request = mock(RequestAttributes.class);
+        RequestContextHolder.setRequestAttributes(request);
+        try {
+            securityService.getCurrentUser();
+            ArgumentCaptor<Object> remembered = ArgumentCaptor.forClass(Object.class);
+            verify(request).setAttribute(anyString(), remembered.capture(), eq(RequestAttributes.SCOPE_REQUEST));
+            when(request.getAttribute(anyString(), eq(RequestAttributes.SCOPE_REQUEST)))
+                    .thenReturn(remembered.getValue());
+
+            User result = securityService.getCurrentUser();
+
+            assertSame(result, user);
+            verify(userDao, times(1)).getByUsername(USERNAME);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void testGetCurrentUserIsResolvedAgainForOtherAuthentication() throws Exception {
+        User user = getUser();
+        Authentication auth = mock(Authentication.class);
+        when(auth.getPrincipal()).thenReturn(user);
+        when(securityContext.getAuthentication()).thenReturn(auth);
+        when(userDao.getByUsername(USERNAME)).thenReturn(user);
+        RequestAttributes request = mock(RequestAttributes.class);
+        RequestContextHolder.setRequestAttributes(request);
+        try {
+            securityService.getCurrentUser();
+            ArgumentCaptor<Object> remembered = ArgumentCaptor.forClass(Object.class);
+            verify(request).setAttribute(anyString(), remembered.capture(), eq(RequestAttributes.SCOPE_REQUEST));
+            when(request.getAttribute(anyString(), eq(RequestAttributes.SCOPE_REQUEST)))
+                    .thenReturn(remembered.getValue());
+            when(securityContext.getAuthentication()).thenReturn(null);
+
+            User result = securityService.getCurrentUser();
+
+            assertNull(result);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
     @Test
     public void testGetCurrentUserUsername() throws Exception {
         User user = getUser();
@@ -177,6 +250,19 @@ public class SecurityServiceImplTest {
         securityService.loadUserByUsername(USERNAME);
     }
 
+    @Test
+    public void testLoadUserByUsernameUsesCache() throws Exception {
+        User user = getUser();
+        when(userDao.getByUsername(USERNAME)).thenReturn(user);
+        ((SecurityServiceImpl) securityService).setUserCache(new ExpiringUserCache());
+
+        securityService.loadUserByUsername(USERNAME);
+        UserDetails result = securityService.loadUserByUsername(USERNAME);
+
+        assertSame(result, user);
+        verify(userDao, times(1)).getByUsername(USERNAME);
+    }
+
     @Test
     public void testDeleteFromAcl() throws Exception {
         long entityId = 1L;
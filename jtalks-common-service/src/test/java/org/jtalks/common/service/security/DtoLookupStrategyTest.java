@@ -93,7 +93,7 @@ public class DtoLookupStrategyTest {
 
     @Test
     public void testReadAclsByIdUsingMapping() {
-        when(mapper.getMapping(c1.class.getCanonicalName())).thenReturn(c2.class);
+        when(mapper.getMappedTypeName(c1.class.getCanonicalName())).thenReturn(c2.class.getCanonicalName());
 
         ObjectIdentity mappedIdentity = mock(ObjectIdentity.class);
         when(mappedIdentity.getType()).thenReturn(c2.class.getCanonicalName());
@@ -111,8 +111,8 @@ public class DtoLookupStrategyTest {
 
     @Test
     public void testMultipleDtoOnSameEntityMappings() {
-        when(mapper.getMapping(c1.class.getCanonicalName())).thenReturn(c2.class);
-        when(mapper.getMapping(c3.class.getCanonicalName())).thenReturn(c2.class);
+        when(mapper.getMappedTypeName(c1.class.getCanonicalName())).thenReturn(c2.class.getCanonicalName());
+        when(mapper.getMappedTypeName(c3.class.getCanonicalName())).thenReturn(c2.class.getCanonicalName());
 
         ObjectIdentity mappedIdentity = mock(ObjectIdentity.class);
         when(mappedIdentity.getType()).thenReturn(c1.class.getCanonicalName());
@@ -17,6 +17,8 @@ package org.jtalks.common.service.security;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 
@@ -46,6 +48,26 @@ public class DtoMapperTest {
         assertNull(sut.getMapping(TestDtoWithoutAnnotation.class.getCanonicalName()));
     }
 
+    @Test
+    public void testGetMappedTypeName() {
+        assertEquals(sut.getMappedTypeName(TestDtoWithAnnotation.class.getCanonicalName()), "java.lang.String");
+        assertNull(sut.getMappedTypeName(TestDtoWithoutAnnotation.class.getCanonicalName()));
+    }
+
+    @Test
+    public void testGetMappingOfRegisteredClass() {
+        sut.setDtoClasses(Arrays.<Class<?>>asList(TestDtoWithAnnotation.class));
+
+        assertEquals(sut.getMapping(TestDtoWithAnnotation.class.getName()), String.class);
+    }
+
+    @Test
+    public void testGetMappingOfScannedClass() {
+        sut.setBasePackages("org.jtalks.common.service.security");
+
+        assertEquals(sut.getMapping(TestDtoWithAnnotation.class.getName()), String.class);
+    }
+
     @Test(expectedExceptions = IllegalStateException.class)
     public void testGetMappingForNonExistentClass() {
         sut.getMapping("ya.class");
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security;
+
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.common.model.entity.User;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.testng.Assert.*;
+
+public class ExpiringUserCacheTest {
+    private static final long TTL = 1000;
+
+    private long now;
+    private ExpiringUserCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        now = 0;
+        cache = new ExpiringUserCache(2, TTL) {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void testPutAndGet() {
+        User user = user("user");
+        user.setId(5);
+        Group group = new Group("group");
+        user.setGroups(Arrays.asList(group));
+        cache.putUserInCache(user);
+
+        User cached = (User) cache.getUserFromCache("user");
+
+        assertNotSame(cached, user);
+        assertEquals(cached.getId(), user.getId());
+        assertEquals(cached.getUuid(), user.getUuid());
+        assertEquals(cached.getUsername(), user.getUsername());
+        assertEquals(cached.getPassword(), user.getPassword());
+        assertEquals(cached.getGroups(), Arrays.asList(group));
+        assertNull(cache.getUserFromCache("another"));
+    }
+
+    @Test
+    public void testChangesOfReturnedUserAreNotCached() {
+        User user = user("user");
+        cache.putUserInCache(user);
+
+        User first = (User) cache.getUserFromCache("user");
+        first.setPassword("changed");
+        first.updateLastLoginTime();
+        user.setEmail("changed@jtalks.org");
+
+        User second = (User) cache.getUserFromCache("user");
+        assertNotSame(second, first);
+        assertEquals(second.getPassword(), "password");
+        assertNull(second.getLastLogin());
+        assertEquals(second.getEmail(), "user@jtalks.org");
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        cache.putUserInCache(user("user"));
+        now = TTL - 1;
+        assertNotNull(cache.getUserFromCache("user"));
+
+        now = TTL;
+
+        assertNull(cache.getUserFromCache("user"));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsDroppedWhenFull() {
+        cache.putUserInCache(user("first"));
+        cache.putUserInCache(user("second"));
+        cache.getUserFromCache("first");
+
+        cache.putUserInCache(user("third"));
+
+        assertNotNull(cache.getUserFromCache("first"));
+        assertNull(cache.getUserFromCache("second"));
+        assertNotNull(cache.getUserFromCache("third"));
+    }
+
+    @Test
+    public void testRemove() {
+        cache.putUserInCache(user("user"));
+
+        cache.removeUserFromCache("user");
+
+        assertNull(cache.getUserFromCache("user"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSizeShouldBePositive() {
+        new ExpiringUserCache(0, TTL);
+    }
+
+    @Test
+    public void testEvictionAdviceRemovesReturnedAndPassedUsers() throws Exception {
+        ExpiringUserCache userCache = mock(ExpiringUserCache.class);
+        UserCacheEvictionAdvice advice = new UserCacheEvictionAdvice(userCache);
+
+        advice.afterReturning(user("returned"), null, new Object[]{"email", user("passed"), null}, null);
+
+        verify(userCache).removeUserFromCache("returned");
+        verify(userCache).removeUserFromCache("passed");
+        verifyNoMoreInteractions(userCache);
+    }
+
+    @Test
+    public void testEvictionAdviceEvictsAfterCommitInsideOfTransaction() throws Exception {
+        ExpiringUserCache userCache = mock(ExpiringUserCache.class);
+        UserCacheEvictionAdvice advice = new UserCacheEvictionAdvice(userCache);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            advice.afterReturning(user("returned"), null, new Object[0], null);
+
+            verifyZeroInteractions(userCache);
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            assertEquals(synchronizations.size(), 1);
+            synchronizations.get(0).afterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(userCache).removeUserFromCache("returned");
+    }
+
+    private static User user(String username) {
+        return new User(username, username + "@jtalks.org", "password");
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security.password;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.authentication.encoding.PasswordEncoder;
+import org.springframework.security.authentication.encoding.ShaPasswordEncoder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class PasswordVerificationServiceTest {
+    private static final String SALT = "salt";
+
+    private ShaPasswordEncoder legacyEncoder;
+    private Pbkdf2PasswordEncoder currentEncoder;
+    private PasswordVerificationService service;
+
+    @BeforeMethod
+    public void setUp() {
+        legacyEncoder = new ShaPasswordEncoder(512);
+        currentEncoder = new Pbkdf2PasswordEncoder(1000);
+        service = new PasswordVerificationService(currentEncoder,
+                Arrays.<PasswordEncoder>asList(legacyEncoder), 2, 10);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void testCurrentPasswordMatches() {
+        String encoded = service.encode("password", SALT);
+
+        assertTrue(encoded.startsWith(Pbkdf2PasswordEncoder.PREFIX));
+        assertEquals(service.verify(encoded, "password", SALT), PasswordVerificationService.Result.MATCH);
+        assertEquals(service.verify(encoded, "wrong", SALT), PasswordVerificationService.Result.MISMATCH);
+        assertEquals(service.verify(encoded, "password", "another salt"), PasswordVerificationService.Result.MISMATCH);
+    }
+
+    @Test
+    public void testLegacyPasswordNeedsRehash() {
+        String encoded = legacyEncoder.encodePassword("password", SALT);
+
+        assertEquals(service.verify(encoded, "password", SALT),
+                PasswordVerificationService.Result.MATCH_NEEDS_REHASH);
+        assertEquals(service.verify(encoded, "wrong", SALT), PasswordVerificationService.Result.MISMATCH);
+    }
+
+    @Test
+    public void testPasswordWithFewerIterationsNeedsRehash() {
+        String encoded = new Pbkdf2PasswordEncoder(500).encodePassword("password", SALT);
+
+        assertEquals(service.verify(encoded, "password", SALT),
+                PasswordVerificationService.Result.MATCH_NEEDS_REHASH);
+    }
+
+    @Test
+    public void testMalformedPasswordDoesNotMatch() {
+        assertFalse(currentEncoder.isPasswordValid(Pbkdf2PasswordEncoder.PREFIX + "x$00", "password", SALT));
+        assertFalse(currentEncoder.isPasswordValid(Pbkdf2PasswordEncoder.PREFIX + "1000", "password", SALT));
+        assertFalse(currentEncoder.isPasswordValid(null, "password", SALT));
+    }
+
+    @Test(timeOut = 10000)
+    public void testOverloadedPoolRejectsAtOnce() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = blockingEncoder(release);
+        final PasswordVerificationService overloaded = new PasswordVerificationService(slowEncoder,
+                Collections.<PasswordEncoder>emptyList(), 1, 1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                callers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        overloaded.encode("password", SALT);
+                    }
+                });
+            }
+            while (overloaded.getQueueLength() < 1) {
+                Thread.sleep(10);
+            }
+
+            try {
+                overloaded.encode("password", SALT);
+                fail("Password should be rejected when the queue is full");
+            } catch (PasswordVerificationRejectedException expected) {
+                // expected
+            }
+        } finally {
+            release.countDown();
+            callers.shutdown();
+            callers.awaitTermination(5, TimeUnit.SECONDS);
+            overloaded.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = PasswordVerificationRejectedException.class, timeOut = 10000)
+    public void testSlowHashingIsRejectedAfterTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = blockingEncoder(release);
+        PasswordVerificationService slow = new PasswordVerificationService(slowEncoder,
+                Collections.<PasswordEncoder>emptyList(), 1, 1);
+        slow.setTimeoutMillis(50);
+        try {
+            slow.encode("password", SALT);
+        } finally {
+            release.countDown();
+            slow.shutdown();
+        }
+    }
+
+    private static PasswordEncoder blockingEncoder(final CountDownLatch release) {
+        PasswordEncoder encoder = mock(PasswordEncoder.class);
+        when(encoder.encodePassword(anyString(), any())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return "encoded";
+            }
+        });
+        return encoder;
+    }
+}
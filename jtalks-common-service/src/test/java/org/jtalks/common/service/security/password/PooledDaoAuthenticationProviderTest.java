@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.security.password;
+
+import org.jtalks.common.model.entity.User;
+import org.jtalks.common.service.PasswordRehashService;
+import org.mockito.InOrder;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserCache;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+
+public class PooledDaoAuthenticationProviderTest {
+    private static final String RAW_PASSWORD = "password";
+
+    private PasswordVerificationService verificationService;
+    private PasswordRehashService rehashService;
+    private UserCache userCache;
+    private PooledDaoAuthenticationProvider provider;
+    private User user;
+
+    @BeforeMethod
+    public void setUp() {
+        verificationService = mock(PasswordVerificationService.class);
+        rehashService = mock(PasswordRehashService.class);
+        userCache = mock(UserCache.class);
+        provider = new PooledDaoAuthenticationProvider(verificationService, rehashService);
+        provider.setRehashedUserCache(userCache);
+        user = new User("username", "username@jtalks.org", "legacy hash", "salt");
+        user.setId(3);
+        when(verificationService.encode(RAW_PASSWORD, null)).thenReturn("new hash");
+    }
+
+    @Test
+    public void testPasswordIsSavedBeforeUserIsChangedAndEvicted() {
+        when(verificationService.verify("legacy hash", RAW_PASSWORD, null))
+                .thenReturn(PasswordVerificationService.Result.MATCH_NEEDS_REHASH);
+
+        provider.additionalAuthenticationChecks(user, token(RAW_PASSWORD));
+
+        InOrder inOrder = inOrder(rehashService, userCache);
+        inOrder.verify(rehashService).saveEncodedPassword(3, "new hash");
+        inOrder.verify(userCache).removeUserFromCache("username");
+        assertEquals(user.getPassword(), "new hash");
+    }
+
+    @Test
+    public void testUserIsNotChangedIfPasswordCouldNotBeSaved() {
+        when(verificationService.verify("legacy hash", RAW_PASSWORD, null))
+                .thenReturn(PasswordVerificationService.Result.MATCH_NEEDS_REHASH);
+        doThrow(new IllegalStateException()).when(rehashService).saveEncodedPassword(anyLong(), anyString());
+
+        provider.additionalAuthenticationChecks(user, token(RAW_PASSWORD));
+
+        assertEquals(user.getPassword(), "legacy hash");
+        verifyZeroInteractions(userCache);
+    }
+
+    @Test
+    public void testPasswordIsNotSavedIfItDoesNotNeedRehash() {
+        when(verificationService.verify("legacy hash", RAW_PASSWORD, null))
+                .thenReturn(PasswordVerificationService.Result.MATCH);
+
+        provider.additionalAuthenticationChecks(user, token(RAW_PASSWORD));
+
+        verifyZeroInteractions(rehashService, userCache);
+    }
+
+    @Test(expectedExceptions = BadCredentialsException.class)
+    public void testWrongPasswordIsRejected() {
+        when(verificationService.verify("legacy hash", "wrong", null))
+                .thenReturn(PasswordVerificationService.Result.MISMATCH);
+
+        provider.additionalAuthenticationChecks(user, token("wrong"));
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String password) {
+        return new UsernamePasswordAuthenticationToken("username", password);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.common.service.transactional;
+
+import org.jtalks.common.model.dao.UserDao;
+import org.jtalks.common.model.entity.User;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+
+public class TransactionalPasswordRehashServiceTest {
+    private UserDao<User> userDao;
+    private TransactionalPasswordRehashService service;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        userDao = mock(UserDao.class);
+        service = new TransactionalPasswordRehashService(userDao);
+    }
+
+    @Test
+    public void testPasswordOfPersistentUserIsSaved() {
+        User persistent = new User("username", "username@jtalks.org", "legacy hash", "salt");
+        when(userDao.get(3L)).thenReturn(persistent);
+
+        service.saveEncodedPassword(3, "new hash");
+
+        assertEquals(persistent.getPassword(), "new hash");
+        verify(userDao).saveOrUpdate(persistent);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingUserIsRejected() {
+        service.saveEncodedPassword(3, "new hash");
+    }
+}
@@ -26,9 +26,15 @@ import java.io.IOException;
 
 /**
  * Filter that activated when user successfully authenticated.
+ * @deprecated use new {@code org.jtalks.common.security.web.SuccessfulAuthenticationHandler} instead from
+ *             jtalks-common-security module. This one updates the last login time through {@link UserService} which
+ *             saves the whole user and bumps its version, while the new one can be given the
+ *             {@code lastLoginTimeService} bean of the security context that writes the times in batches. This module
+ *             doesn't depend on jtalks-common-security, that's why the batching service can't be used here.
  *
  * @author Kirill Afonin
  */
+@Deprecated
 public class SuccessfulAuthenticationHandler extends SavedRequestAwareAuthenticationSuccessHandler {
     private UserService userService;
 